@@ -9,6 +9,7 @@ package coyote.commons.jdbc;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import coyote.commons.StringUtil;
@@ -57,6 +58,7 @@ public class DatabaseDialect {
   public static final String NULLABLE = "nullable";
   // Database Technologies supported
   public static final String ORACLE = "ORACLE";
+  public static final String POSTGRESQL = "POSTGRESQL";
   public static final String PRIMARY_KEY = "primary_key";
   public static final String SYS_ID_SYM = "sysid";
   // The symbols we expect to find in the symbol table
@@ -402,6 +404,213 @@ public class DatabaseDialect {
 
 
 
+  /**
+   * Determine how many rows can be placed in a single multi-row insert or
+   * merge statement.
+   *
+   * <p>This is limited by the number of bind parameters the database accepts
+   * in one statement. Databases which do not support multi-row
+   * {@code VALUES} clauses (e.g. Oracle) and unknown databases return 1.</p>
+   *
+   * @param database the database product being used
+   * @param columns the number of columns in each row
+   *
+   * @return the maximum number of rows to bind in one statement, always at least 1
+   */
+  public static int getMaxRowsPerStatement(final String database, final int columns) {
+    int params;
+    int rows = Integer.MAX_VALUE;
+    if (H2.equalsIgnoreCase(database) || MYSQL.equalsIgnoreCase(database)) {
+      params = 65535;
+    } else if (POSTGRESQL.equalsIgnoreCase(database)) {
+      params = 32767;
+    } else if (MSQL.equalsIgnoreCase(database)) {
+      params = 2100;
+      rows = 1000;
+    } else {
+      return 1;
+    }
+    return Math.max(1, Math.min(rows, params / Math.max(1, columns)));
+  }
+
+
+
+
+  /**
+   * Generate an INSERT for one or more rows of bound values.
+   *
+   * <p>If key columns are given, the statement updates the existing rows with
+   * matching keys and inserts the rest (i.e. an upsert). This uses
+   * {@code MERGE} on H2, Oracle and SQL Server, {@code ON CONFLICT} on
+   * PostgreSQL and {@code ON DUPLICATE KEY} on MySQL; the latter relies on a
+   * unique index over the key columns.</p>
+   *
+   * @param database the database product being used
+   * @param schema the name of the schema containing the table
+   * @param table the name of the table
+   * @param columns the names of the columns in the order their values are bound
+   * @param keys the columns identifying existing rows, null or empty for a plain insert
+   * @param rows the number of rows in the statement, see {@link #getMaxRowsPerStatement(String, int)}
+   *
+   * @return the SQL with a bind parameter for each column of each row
+   */
+  public static String getBulkInsert(final String database, final String schema, final String table, final List<String> columns, final List<String> keys, final int rows) {
+    final String target = schema + "." + table;
+    final String names = join(columns, "");
+    final StringBuilder values = new StringBuilder();
+    for (int row = 0; row < rows; row++) {
+      if (row > 0) {
+        values.append(", ");
+      }
+      values.append('(');
+      for (int col = 0; col < columns.size(); col++) {
+        values.append(col > 0 ? ", ?" : "?");
+      }
+      values.append(')');
+    }
+
+    final StringBuilder b = new StringBuilder();
+    if (keys == null || keys.isEmpty()) {
+      b.append("INSERT INTO ").append(target).append(" (").append(names).append(") VALUES ").append(values);
+    } else if (H2.equalsIgnoreCase(database)) {
+      b.append("MERGE INTO ").append(target).append(" (").append(names).append(") KEY (").append(join(keys, "")).append(") VALUES ").append(values);
+    } else if (POSTGRESQL.equalsIgnoreCase(database)) {
+      b.append("INSERT INTO ").append(target).append(" (").append(names).append(") VALUES ").append(values);
+      b.append(" ON CONFLICT (").append(join(keys, "")).append(')');
+      final StringBuilder updates = new StringBuilder();
+      for (final String column : columns) {
+        if (!containsIgnoreCase(keys, column)) {
+          updates.append(updates.length() > 0 ? ", " : "").append(column).append(" = EXCLUDED.").append(column);
+        }
+      }
+      b.append(updates.length() > 0 ? " DO UPDATE SET " + updates : " DO NOTHING");
+    } else if (MYSQL.equalsIgnoreCase(database)) {
+      b.append("INSERT INTO ").append(target).append(" (").append(names).append(") VALUES ").append(values);
+      final StringBuilder updates = new StringBuilder();
+      for (final String column : columns) {
+        if (!containsIgnoreCase(keys, column)) {
+          updates.append(updates.length() > 0 ? ", " : "").append(column).append(" = VALUES(").append(column).append(')');
+        }
+      }
+      if (updates.length() == 0) {
+        updates.append(keys.get(0)).append(" = ").append(keys.get(0));
+      }
+      b.append(" ON DUPLICATE KEY UPDATE ").append(updates);
+    } else {
+      // standard MERGE; Oracle selects the values from DUAL one row at a time
+      b.append("MERGE INTO ").append(target).append(" t USING (");
+      if (ORACLE.equalsIgnoreCase(database)) {
+        b.append("SELECT ");
+        for (int col = 0; col < columns.size(); col++) {
+          b.append(col > 0 ? ", " : "").append("? ").append(columns.get(col));
+        }
+        b.append(" FROM DUAL) s");
+      } else {
+        b.append("VALUES ").append(values).append(") s (").append(names).append(')');
+      }
+      b.append(" ON (");
+      for (int x = 0; x < keys.size(); x++) {
+        b.append(x > 0 ? " AND " : "").append("t.").append(keys.get(x)).append(" = s.").append(keys.get(x));
+      }
+      b.append(')');
+      final StringBuilder updates = new StringBuilder();
+      for (final String column : columns) {
+        if (!containsIgnoreCase(keys, column)) {
+          updates.append(updates.length() > 0 ? ", " : "").append("t.").append(column).append(" = s.").append(column);
+        }
+      }
+      if (updates.length() > 0) {
+        b.append(" WHEN MATCHED THEN UPDATE SET ").append(updates);
+      }
+      b.append(" WHEN NOT MATCHED THEN INSERT (").append(names).append(") VALUES (").append(join(columns, "s.")).append(')');
+      if (MSQL.equalsIgnoreCase(database)) {
+        b.append(';');
+      }
+    }
+    return b.toString();
+  }
+
+
+
+
+  /**
+   * Determine if the database can load a file of comma-separated values
+   * directly into a table.
+   *
+   * <p>PostgreSQL streams the values with {@code COPY ... FROM STDIN} and H2
+   * reads them with {@code CSVREAD}. PostgreSQL cannot update existing rows
+   * with {@code COPY} so it is not supported when key columns are used.</p>
+   *
+   * @param database the database product being used
+   * @param keys the columns identifying existing rows, null or empty for a plain insert
+   *
+   * @return true if {@link #getCopy(String, String, String, List, List, String)} is supported
+   */
+  public static boolean supportsCopy(final String database, final List<String> keys) {
+    return H2.equalsIgnoreCase(database) || (POSTGRESQL.equalsIgnoreCase(database) && (keys == null || keys.isEmpty()));
+  }
+
+
+
+
+  /**
+   * Generate the command which loads comma-separated values into a table.
+   *
+   * <p>The data is expected to be in RFC 4180 format, where an empty unquoted
+   * value is a null and an empty quoted value is an empty string. For H2 the
+   * first line of the file must contain the column names.</p>
+   *
+   * @param database the database product being used
+   * @param schema the name of the schema containing the table
+   * @param table the name of the table
+   * @param columns the names of the columns in the order they appear in the data
+   * @param keys the columns identifying existing rows, null or empty for a plain insert
+   * @param file the path to the file containing the data (H2 only)
+   *
+   * @return the command or null if the database does not support loading files
+   */
+  public static String getCopy(final String database, final String schema, final String table, final List<String> columns, final List<String> keys, final String file) {
+    final String target = schema + "." + table;
+    final String names = join(columns, "");
+    if (POSTGRESQL.equalsIgnoreCase(database)) {
+      return "COPY " + target + " (" + names + ") FROM STDIN WITH (FORMAT csv)";
+    } else if (H2.equalsIgnoreCase(database)) {
+      final String source = " (" + names + ")" + ((keys == null || keys.isEmpty()) ? "" : " KEY (" + join(keys, "") + ")");
+      final String verb = (keys == null || keys.isEmpty()) ? "INSERT INTO " : "MERGE INTO ";
+      return verb + target + source + " SELECT * FROM CSVREAD('" + file.replace("'", "''") + "', NULL, 'charset=UTF-8')";
+    }
+    return null;
+  }
+
+
+
+
+  private static String join(final List<String> names, final String prefix) {
+    final StringBuilder b = new StringBuilder();
+    for (final String name : names) {
+      if (b.length() > 0) {
+        b.append(", ");
+      }
+      b.append(prefix).append(name);
+    }
+    return b.toString();
+  }
+
+
+
+
+  private static boolean containsIgnoreCase(final List<String> names, final String name) {
+    for (final String candidate : names) {
+      if (candidate.equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+
+
   /**
    * Retrieve the syntax for a command for a particular database product.
    *
@@ -0,0 +1,980 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.db;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import coyote.commons.DaemonThreadFactory;
+import coyote.commons.StringUtil;
+import coyote.loader.log.Log;
+
+
+/**
+ * A pool of JDBC connections to one database.
+ *
+ * <p>Connections handed out by the pool are proxies to the physical
+ * connection. Calling {@code close()} on the proxy returns the physical
+ * connection to the pool for reuse by the next caller; any statements left
+ * open are closed, uncommitted work is rolled back and the auto-commit mode
+ * is restored before the connection is made available again.</p>
+ *
+ * <p>The pool keeps at least {@code min} connections open and never more
+ * than {@code max}. When all connections are in use, callers wait up to
+ * {@code wait} milliseconds for one to be returned. Idle connections are
+ * validated before they are handed out, either with the configured
+ * {@code validation} query or {@link Connection#isValid(int)}. A background
+ * thread closes connections which have been idle longer than {@code idle}
+ * milliseconds or open longer than {@code lifetime} milliseconds.</p>
+ *
+ * <p>Pools are shared. All the {@link Database} definitions with the same
+ * name, target and user name use the same pool, so jobs running in the same
+ * Service reuse each other's connections. Pools remain open between job
+ * runs and are closed when the JRE exits.</p>
+ */
+public class ConnectionPool implements Closeable {
+
+  /** Name of the configuration attribute containing the minimum number of connections to keep open. */
+  public static final String MIN = "min";
+
+  /** Name of the configuration attribute containing the maximum number of connections to open. */
+  public static final String MAX = "max";
+
+  /** Name of the configuration attribute containing the query used to validate connections. */
+  public static final String VALIDATION = "validation";
+
+  /** Name of the configuration attribute containing the milliseconds a connection may remain idle. */
+  public static final String IDLE = "idle";
+
+  /** Name of the configuration attribute containing the milliseconds a connection may remain open. */
+  public static final String LIFETIME = "lifetime";
+
+  /** Name of the configuration attribute containing the milliseconds to wait for a connection. */
+  public static final String WAIT = "wait";
+
+  public static final int DEFAULT_MIN = 0;
+  public static final int DEFAULT_MAX = 10;
+  public static final long DEFAULT_IDLE = 600000;
+  public static final long DEFAULT_LIFETIME = 1800000;
+  public static final long DEFAULT_WAIT = 30000;
+
+  /** Connections used within this many milliseconds are not validated when borrowed. */
+  private static final long VALIDATION_INTERVAL = 1000;
+
+  /** Seconds to wait for a connection to validate. */
+  private static final int VALIDATION_TIMEOUT = 5;
+
+  /** Milliseconds between housekeeping runs. */
+  private static final long HOUSEKEEPING_INTERVAL = 30000;
+
+  private static final Map<String, ConnectionPool> POOLS = new HashMap<String, ConnectionPool>();
+  private static ScheduledExecutorService housekeeper = null;
+
+  private final String name;
+  private final Database database;
+  private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+  private int minimum = DEFAULT_MIN;
+  private int maximum = DEFAULT_MAX;
+  private String validationQuery = null;
+  private long idleTimeout = DEFAULT_IDLE;
+  private long maxLifetime = DEFAULT_LIFETIME;
+  private long maxWait = DEFAULT_WAIT;
+  private ScheduledFuture<?> housekeeping = null;
+  private volatile boolean closed = false;
+
+  // metrics
+  private int active = 0;
+  private long createdCount = 0;
+  private long closedCount = 0;
+  private long borrowCount = 0;
+  private long waitCount = 0;
+  private long totalWaitTime = 0;
+  private long maxWaitTime = 0;
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread("ConnectionPoolShutdown") {
+      @Override
+      public void run() {
+        closeAll();
+      }
+    });
+  }
+
+
+
+
+  /**
+   * Create a pool of connections to the given database.
+   *
+   * @param name the name of the pool used in log messages
+   * @param database the database which creates the physical connections
+   */
+  ConnectionPool(final String name, final Database database) {
+    this.name = name;
+    this.database = database;
+  }
+
+
+
+
+  /**
+   * Retrieve the pool shared by all databases with the same name, target and
+   * credentials as the given database, creating it if necessary.
+   *
+   * <p>The pool settings are taken from the database which first creates the
+   * pool.</p>
+   *
+   * @param database the database definition
+   *
+   * @return the shared pool of connections to that database
+   */
+  public static ConnectionPool getPool(final Database database) {
+    // the password is part of the key so changed credentials get a new pool; the key is never logged
+    final String key = database.getName() + "|" + database.getTarget() + "|" + database.getUserName() + "|" + database.getPassword();
+    synchronized (POOLS) {
+      ConnectionPool retval = POOLS.get(key);
+      if (retval == null || retval.closed) {
+        final String name = StringUtil.isNotBlank(database.getName()) ? database.getName() : database.getTarget();
+        retval = new ConnectionPool(name, database);
+        retval.setMinimum(database.getPoolInteger(MIN, DEFAULT_MIN));
+        retval.setMaximum(database.getPoolInteger(MAX, DEFAULT_MAX));
+        retval.setValidationQuery(database.getPoolString(VALIDATION));
+        retval.setIdleTimeout(database.getPoolLong(IDLE, DEFAULT_IDLE));
+        retval.setMaxLifetime(database.getPoolLong(LIFETIME, DEFAULT_LIFETIME));
+        retval.setMaxWait(database.getPoolLong(WAIT, DEFAULT_WAIT));
+        retval.start();
+        POOLS.put(key, retval);
+        Log.debug("Created connection pool '" + name + "' min:" + retval.getMinimum() + " max:" + retval.getMaximum());
+      }
+      return retval;
+    }
+  }
+
+
+
+
+  /**
+   * Close all the shared pools.
+   */
+  public static void closeAll() {
+    final List<ConnectionPool> pools;
+    synchronized (POOLS) {
+      pools = new ArrayList<ConnectionPool>(POOLS.values());
+      POOLS.clear();
+    }
+    for (final ConnectionPool pool : pools) {
+      pool.close();
+    }
+  }
+
+
+
+
+  /**
+   * Schedule the housekeeping of this pool.
+   */
+  void start() {
+    synchronized (POOLS) {
+      if (housekeeper == null) {
+        housekeeper = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ConnectionPoolHousekeeper"));
+      }
+      housekeeping = housekeeper.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          evict();
+        }
+      }, 0, HOUSEKEEPING_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+  }
+
+
+
+
+  /**
+   * Borrow a connection from the pool.
+   *
+   * <p>The caller must close the returned connection to return it to the
+   * pool.</p>
+   *
+   * @return a connection to the database
+   *
+   * @throws SQLException if the pool is closed, a connection could not be
+   *         created or no connection became available in time
+   */
+  public Connection getConnection() throws SQLException {
+    final long start = System.currentTimeMillis();
+    boolean waited = false;
+    while (true) {
+      PooledConnection candidate = null;
+      synchronized (this) {
+        if (closed) {
+          throw new SQLException("Connection pool '" + name + "' is closed");
+        }
+        if (!idle.isEmpty()) {
+          candidate = idle.removeFirst();
+          active++;
+        } else if (active < maximum) {
+          active++;
+        } else {
+          final long remaining = maxWait - (System.currentTimeMillis() - start);
+          if (remaining <= 0) {
+            recordWait(start);
+            throw new SQLTimeoutException("Timed out after " + maxWait + "ms waiting for a connection from pool '" + name + "' (" + active + " active)");
+          }
+          waited = true;
+          try {
+            wait(remaining);
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection from pool '" + name + "'");
+          }
+          continue;
+        }
+      }
+
+      if (candidate == null) {
+        candidate = create();
+        if (candidate == null) {
+          synchronized (this) {
+            active--;
+            notifyAll();
+          }
+          throw new SQLException("Could not create a connection for pool '" + name + "'");
+        }
+      } else if (isExpired(candidate, System.currentTimeMillis()) || !isValid(candidate)) {
+        synchronized (this) {
+          active--;
+          notifyAll();
+        }
+        destroy(candidate);
+        continue;
+      }
+
+      synchronized (this) {
+        borrowCount++;
+        if (waited) {
+          recordWait(start);
+        }
+      }
+      return candidate.borrow(this);
+    }
+  }
+
+
+
+
+  /**
+   * Return a physical connection to the pool.
+   *
+   * <p>Any statements the borrower left open are closed first so their
+   * cursors and result sets are not carried over to the next borrower.</p>
+   *
+   * @param connection the connection being returned
+   */
+  void release(final PooledConnection connection) {
+    connection.closeStatements();
+    boolean reusable = !closed;
+    if (reusable) {
+      try {
+        final Connection raw = connection.getConnection();
+        if (raw.isClosed()) {
+          reusable = false;
+        } else {
+          if (!raw.getAutoCommit()) {
+            raw.rollback();
+            raw.setAutoCommit(true);
+          }
+          connection.reset();
+          raw.clearWarnings();
+        }
+      } catch (final SQLException e) {
+        Log.debug("Discarding pooled connection which could not be reset: " + e.getMessage());
+        reusable = false;
+      }
+    }
+
+    final long now = System.currentTimeMillis();
+    synchronized (this) {
+      active--;
+      if (reusable && !closed && !isExpired(connection, now)) {
+        connection.setLastUsed(now);
+        idle.addFirst(connection);
+        reusable = true;
+      } else {
+        reusable = false;
+      }
+      notifyAll();
+    }
+
+    if (!reusable) {
+      destroy(connection);
+    }
+  }
+
+
+
+
+  /**
+   * Close idle connections which have expired and open connections until the
+   * pool contains its minimum number of connections.
+   *
+   * <p>This is called periodically by the housekeeping thread.</p>
+   */
+  void evict() {
+    final long now = System.currentTimeMillis();
+    final List<PooledConnection> expired = new ArrayList<PooledConnection>();
+    synchronized (this) {
+      int total = active + idle.size();
+      // the oldest idle connections are at the end of the list
+      for (final Iterator<PooledConnection> it = idle.descendingIterator(); it.hasNext();) {
+        final PooledConnection connection = it.next();
+        if (isExpired(connection, now) || (total > minimum && now - connection.getLastUsed() > idleTimeout)) {
+          it.remove();
+          expired.add(connection);
+          total--;
+        }
+      }
+    }
+    for (final PooledConnection connection : expired) {
+      destroy(connection);
+    }
+
+    while (!closed) {
+      synchronized (this) {
+        if (active + idle.size() >= minimum) {
+          break;
+        }
+        active++;
+      }
+      final PooledConnection connection = create();
+      synchronized (this) {
+        active--;
+        if (connection != null && !closed) {
+          idle.addLast(connection);
+          notifyAll();
+        }
+      }
+      if (connection == null) {
+        break;
+      } else if (closed) {
+        destroy(connection);
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Close the pool and all its idle connections.
+   *
+   * <p>Connections in use are closed when they are returned to the pool.</p>
+   *
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() {
+    final List<PooledConnection> connections;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      connections = new ArrayList<PooledConnection>(idle);
+      idle.clear();
+      if (housekeeping != null) {
+        housekeeping.cancel(false);
+      }
+      notifyAll();
+    }
+    for (final PooledConnection connection : connections) {
+      destroy(connection);
+    }
+    Log.debug("Closed connection pool " + toString());
+  }
+
+
+
+
+  private PooledConnection create() {
+    final Connection connection = database.createConnection();
+    if (connection != null) {
+      try {
+        final PooledConnection retval = new PooledConnection(connection);
+        synchronized (this) {
+          createdCount++;
+        }
+        return retval;
+      } catch (final SQLException e) {
+        Log.error("Could not read the initial state of a connection for pool '" + name + "': " + e.getMessage());
+        try {
+          connection.close();
+        } catch (final SQLException ignore) {
+          // already failed
+        }
+      }
+    }
+    return null;
+  }
+
+
+
+
+  private void destroy(final PooledConnection connection) {
+    try {
+      connection.getConnection().close();
+    } catch (final SQLException e) {
+      Log.debug("Problems closing pooled connection: " + e.getMessage());
+    }
+    synchronized (this) {
+      closedCount++;
+    }
+  }
+
+
+
+
+  private boolean isExpired(final PooledConnection connection, final long now) {
+    return maxLifetime > 0 && now - connection.getCreated() > maxLifetime;
+  }
+
+
+
+
+  private boolean isValid(final PooledConnection connection) {
+    if (System.currentTimeMillis() - connection.getLastUsed() < VALIDATION_INTERVAL) {
+      return true;
+    }
+    final Connection raw = connection.getConnection();
+    try {
+      if (StringUtil.isBlank(validationQuery)) {
+        return raw.isValid(VALIDATION_TIMEOUT);
+      }
+      try (Statement statement = raw.createStatement()) {
+        statement.setQueryTimeout(VALIDATION_TIMEOUT);
+        statement.execute(validationQuery);
+      }
+      return true;
+    } catch (final SQLException e) {
+      Log.debug("Pooled connection failed validation: " + e.getMessage());
+      return false;
+    }
+  }
+
+
+
+
+  /**
+   * Must be called while holding the lock on this pool.
+   */
+  private void recordWait(final long start) {
+    final long elapsed = System.currentTimeMillis() - start;
+    waitCount++;
+    totalWaitTime += elapsed;
+    if (elapsed > maxWaitTime) {
+      maxWaitTime = elapsed;
+    }
+  }
+
+
+
+
+  /**
+   * @return the name of this pool
+   */
+  public String getName() {
+    return name;
+  }
+
+
+
+
+  /**
+   * @return the number of connections currently borrowed from the pool
+   */
+  public synchronized int getActiveCount() {
+    return active;
+  }
+
+
+
+
+  /**
+   * @return the number of open connections waiting to be borrowed
+   */
+  public synchronized int getIdleCount() {
+    return idle.size();
+  }
+
+
+
+
+  /**
+   * @return the number of physical connections currently open
+   */
+  public synchronized int getTotalCount() {
+    return active + idle.size();
+  }
+
+
+
+
+  /**
+   * @return the number of physical connections opened by this pool
+   */
+  public synchronized long getCreatedCount() {
+    return createdCount;
+  }
+
+
+
+
+  /**
+   * @return the number of physical connections closed by this pool
+   */
+  public synchronized long getClosedCount() {
+    return closedCount;
+  }
+
+
+
+
+  /**
+   * @return the number of connections handed out by this pool
+   */
+  public synchronized long getBorrowCount() {
+    return borrowCount;
+  }
+
+
+
+
+  /**
+   * @return the number of times a caller had to wait for a connection
+   */
+  public synchronized long getWaitCount() {
+    return waitCount;
+  }
+
+
+
+
+  /**
+   * @return the total milliseconds callers spent waiting for connections
+   */
+  public synchronized long getTotalWaitTime() {
+    return totalWaitTime;
+  }
+
+
+
+
+  /**
+   * @return the longest time in milliseconds a caller waited for a connection
+   */
+  public synchronized long getMaxWaitTime() {
+    return maxWaitTime;
+  }
+
+
+
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+
+
+
+  public int getMinimum() {
+    return minimum;
+  }
+
+
+
+
+  public void setMinimum(final int value) {
+    minimum = value < 0 ? 0 : value;
+  }
+
+
+
+
+  public int getMaximum() {
+    return maximum;
+  }
+
+
+
+
+  public void setMaximum(final int value) {
+    maximum = value < 1 ? 1 : value;
+  }
+
+
+
+
+  public String getValidationQuery() {
+    return validationQuery;
+  }
+
+
+
+
+  public void setValidationQuery(final String query) {
+    validationQuery = query;
+  }
+
+
+
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+
+
+
+  public void setIdleTimeout(final long millis) {
+    idleTimeout = millis;
+  }
+
+
+
+
+  public long getMaxLifetime() {
+    return maxLifetime;
+  }
+
+
+
+
+  public void setMaxLifetime(final long millis) {
+    maxLifetime = millis;
+  }
+
+
+
+
+  public long getMaxWait() {
+    return maxWait;
+  }
+
+
+
+
+  public void setMaxWait(final long millis) {
+    maxWait = millis;
+  }
+
+
+
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public synchronized String toString() {
+    final StringBuilder b = new StringBuilder("'");
+    b.append(name);
+    b.append("' active:");
+    b.append(active);
+    b.append(" idle:");
+    b.append(idle.size());
+    b.append(" created:");
+    b.append(createdCount);
+    b.append(" closed:");
+    b.append(closedCount);
+    b.append(" borrowed:");
+    b.append(borrowCount);
+    b.append(" waits:");
+    b.append(waitCount);
+    b.append(" wait time:");
+    b.append(totalWaitTime);
+    b.append("ms max wait:");
+    b.append(maxWaitTime);
+    b.append("ms");
+    return b.toString();
+  }
+
+
+
+
+  /**
+   * A physical connection managed by the pool.
+   */
+  static class PooledConnection {
+    private final Connection connection;
+    private final long created;
+    private long lastUsed;
+    private final boolean readOnly;
+    private final int isolation;
+    private final String catalog;
+    private final List<Statement> statements = new ArrayList<Statement>();
+
+
+
+
+    PooledConnection(final Connection connection) throws SQLException {
+      this.connection = connection;
+      created = System.currentTimeMillis();
+      lastUsed = created;
+      readOnly = connection.isReadOnly();
+      isolation = connection.getTransactionIsolation();
+      catalog = connection.getCatalog();
+    }
+
+
+
+
+    /**
+     * Restore the session state a borrower may have changed to what it was
+     * when the connection was created.
+     *
+     * @throws SQLException if the state could not be restored
+     */
+    void reset() throws SQLException {
+      if (connection.isReadOnly() != readOnly) {
+        connection.setReadOnly(readOnly);
+      }
+      if (connection.getTransactionIsolation() != isolation) {
+        connection.setTransactionIsolation(isolation);
+      }
+      if (catalog != null && !catalog.equals(connection.getCatalog())) {
+        connection.setCatalog(catalog);
+      }
+    }
+
+
+
+
+    /**
+     * Record a statement created by the current borrower so it can be closed
+     * when the connection is returned.
+     *
+     * @param statement the physical statement
+     */
+    synchronized void track(final Statement statement) {
+      statements.add(statement);
+    }
+
+
+
+
+    /**
+     * @param statement the physical statement the borrower has closed
+     */
+    synchronized void untrack(final Statement statement) {
+      statements.remove(statement);
+    }
+
+
+
+
+    /**
+     * Close the statements the current borrower did not close.
+     */
+    void closeStatements() {
+      final List<Statement> open;
+      synchronized (this) {
+        open = new ArrayList<Statement>(statements);
+        statements.clear();
+      }
+      for (final Statement statement : open) {
+        try {
+          statement.close();
+        } catch (final SQLException e) {
+          Log.debug("Could not close statement left open on pooled connection: " + e.getMessage());
+        }
+      }
+    }
+
+
+
+
+    Connection getConnection() {
+      return connection;
+    }
+
+
+
+
+    long getCreated() {
+      return created;
+    }
+
+
+
+
+    long getLastUsed() {
+      return lastUsed;
+    }
+
+
+
+
+    void setLastUsed(final long millis) {
+      lastUsed = millis;
+    }
+
+
+
+
+    /**
+     * @return a new proxy which returns this connection to the pool when closed
+     */
+    Connection borrow(final ConnectionPool pool) {
+      return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new Handle(pool, this));
+    }
+  }
+
+
+
+
+  /**
+   * Handles the calls to a borrowed connection, returning the connection to
+   * the pool when it is closed and preventing its use afterwards.
+   */
+  private static class Handle implements InvocationHandler {
+    private final ConnectionPool pool;
+    private final PooledConnection connection;
+    private boolean closed = false;
+
+
+
+
+    Handle(final ConnectionPool pool, final PooledConnection connection) {
+      this.pool = pool;
+      this.connection = connection;
+    }
+
+
+
+
+    /**
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+     */
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+      final String methodName = method.getName();
+      if ("close".equals(methodName) && method.getParameterCount() == 0) {
+        synchronized (this) {
+          if (closed) {
+            return null;
+          }
+          closed = true;
+        }
+        pool.release(connection);
+        return null;
+      } else if ("isClosed".equals(methodName) && method.getParameterCount() == 0) {
+        synchronized (this) {
+          if (closed) {
+            return true;
+          }
+        }
+      } else if ("equals".equals(methodName) && method.getParameterCount() == 1) {
+        return proxy == args[0];
+      } else if ("hashCode".equals(methodName) && method.getParameterCount() == 0) {
+        return System.identityHashCode(proxy);
+      } else if ("toString".equals(methodName) && method.getParameterCount() == 0) {
+        return "Pooled " + connection.getConnection().toString();
+      } else {
+        synchronized (this) {
+          if (closed) {
+            throw new SQLException("Connection has been returned to the pool");
+          }
+        }
+      }
+
+      final Object retval;
+      try {
+        retval = method.invoke(connection.getConnection(), args);
+      } catch (final InvocationTargetException e) {
+        throw e.getCause();
+      }
+
+      // createStatement, prepareStatement and prepareCall
+      if (retval instanceof Statement) {
+        final Statement statement = (Statement)retval;
+        connection.track(statement);
+        final Class<?> type = method.getReturnType();
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new StatementHandle((Connection)proxy, connection, statement));
+      }
+      return retval;
+    }
+  }
+
+
+
+
+  /**
+   * Handles the calls to a statement created by a borrowed connection,
+   * returning the borrowed connection instead of the physical one and
+   * forgetting the statement when it is closed.
+   */
+  private static class StatementHandle implements InvocationHandler {
+    private final Connection proxy;
+    private final PooledConnection connection;
+    private final Statement statement;
+
+
+
+
+    StatementHandle(final Connection proxy, final PooledConnection connection, final Statement statement) {
+      this.proxy = proxy;
+      this.connection = connection;
+      this.statement = statement;
+    }
+
+
+
+
+    /**
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+     */
+    @Override
+    public Object invoke(final Object wrapper, final Method method, final Object[] args) throws Throwable {
+      final String methodName = method.getName();
+      if ("getConnection".equals(methodName) && method.getParameterCount() == 0) {
+        return proxy;
+      } else if ("close".equals(methodName) && method.getParameterCount() == 0) {
+        connection.untrack(statement);
+      } else if ("equals".equals(methodName) && method.getParameterCount() == 1) {
+        return wrapper == args[0];
+      } else if ("hashCode".equals(methodName) && method.getParameterCount() == 0) {
+        return System.identityHashCode(wrapper);
+      } else if ("toString".equals(methodName) && method.getParameterCount() == 0) {
+        return "Pooled " + statement.toString();
+      }
+
+      try {
+        return method.invoke(statement, args);
+      } catch (final InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+}
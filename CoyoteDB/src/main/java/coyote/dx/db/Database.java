@@ -10,12 +10,15 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import coyote.commons.CipherUtil;
 import coyote.commons.ExceptionUtil;
 import coyote.commons.StringUtil;
 import coyote.commons.jdbc.DriverDelegate;
+import coyote.dataframe.DataField;
+import coyote.dataframe.DataFrame;
 import coyote.dataframe.DataFrameException;
 import coyote.dx.AbstractConfigurableComponent;
 import coyote.dx.ConfigTag;
@@ -34,14 +37,26 @@ import coyote.loader.log.Log;
  * definitions simpler as there is only one location for the details to be 
  * updated.
  * 
- * <p>This is not a connection pool. It is a configuration convenience for 
- * components to obtain a connection from the context which is guaranteed to 
- * be closed at the end of the transform (if the transform exits normally).
+ * <p>By default this is not a connection pool. It is a configuration 
+ * convenience for components to obtain a connection from the context which 
+ * is guaranteed to be closed at the end of the transform (if the transform 
+ * exits normally).
+ * 
+ * <p>Connections are pooled when the configuration contains a {@code pool} 
+ * section (or {@code "pool": true} for the default settings):<pre>
+ * "Database": { "name": "Oracle", "target": "jdbc:...", 
+ *   "pool": { "min": 2, "max": 10, "validation": "SELECT 1 FROM DUAL", 
+ *     "idle": 600000, "lifetime": 1800000, "wait": 30000 } }</pre>
+ * 
+ * <p>The pool is shared by all database definitions with the same name, 
+ * target and user name so jobs in a Service reuse connections. See 
+ * {@link ConnectionPool} for details.
  */
 public class Database extends AbstractConfigurableComponent implements ConfigurableComponent, DatabaseConnector {
   private final List<Connection> connections = new ArrayList<Connection>();
   private volatile boolean initialized = false;
   private Driver driver = null;
+  private ConnectionPool pool = null;
 
 
 
@@ -49,10 +64,13 @@ public class Database extends AbstractConfigurableComponent implements Configura
   /**
    * Create a new connection using the configuration.
    * 
-   * <p>This does not share nor pool connections, but creates a new connection 
-   * on each request. This should be fine for this toolkit as it is expected 
-   * that maybe two connections (one for a reader and one for a writer) might 
-   * be created.
+   * <p>If pooling is not configured, this does not share connections, but 
+   * creates a new connection on each request. This should be fine for most 
+   * jobs as it is expected that maybe two connections (one for a reader and 
+   * one for a writer) might be created.
+   * 
+   * <p>If pooling is configured, the connection is borrowed from the shared 
+   * pool and closing it returns it to the pool.
    * 
    * <p>The primary benefit of this class is that many components can 
    * reference one database configuration in the job and not have to duplicate 
@@ -62,16 +80,32 @@ public class Database extends AbstractConfigurableComponent implements Configura
    * 
    * <p>Each connection is tracked and closed when this component is closed.
    * 
-   * @return a new connection
+   * @return a new connection or null if one could not be obtained
    * 
    * @see coyote.dx.db.DatabaseConnector#getConnection()
    */
   @Override
   public Connection getConnection() {
     Connection connection = null;
-    connection = createConnection();
+    if (isPooled()) {
+      try {
+        connection = getPool().getConnection();
+      } catch (SQLException e) {
+        Log.error("Could not get pooled connection to database: " + e.getClass().getSimpleName() + " - " + e.getMessage());
+      }
+    } else {
+      connection = createConnection();
+    }
     synchronized (connections) {
       if (connection != null) {
+        // forget the connections which have already been closed (returned to the pool)
+        for (Iterator<Connection> it = connections.iterator(); it.hasNext();) {
+          try {
+            if (it.next().isClosed()) {
+              it.remove();
+            }
+          } catch (SQLException ignore) {}
+        }
         connections.add(connection);
       }
     }
@@ -82,13 +116,84 @@ public class Database extends AbstractConfigurableComponent implements Configura
 
 
   /**
-   * Always returns false as we do not pool/manage connections.
+   * Returns true if a {@code pool} section (or a pool flag of true) is in the 
+   * configuration.
    * 
    * @see coyote.dx.db.DatabaseConnector#isPooled()
    */
   @Override
   public boolean isPooled() {
-    return false;
+    return getPoolConfiguration() != null;
+  }
+
+
+
+
+  /**
+   * @return the shared pool of connections to this database
+   */
+  public synchronized ConnectionPool getPool() {
+    if (pool == null || pool.isClosed()) {
+      pool = ConnectionPool.getPool(this);
+    }
+    return pool;
+  }
+
+
+
+
+  /**
+   * @return the pool configuration section, an empty frame if pooling is 
+   *         enabled with default settings or null if pooling is not enabled
+   */
+  private DataFrame getPoolConfiguration() {
+    if (configuration != null) {
+      DataField field = configuration.getFieldIgnoreCase(ConfigTag.POOL);
+      if (field != null) {
+        if (field.isFrame()) {
+          return (DataFrame)field.getObjectValue();
+        } else if (getBoolean(ConfigTag.POOL)) {
+          return new DataFrame();
+        }
+      }
+    }
+    return null;
+  }
+
+
+
+
+  String getPoolString(String name) {
+    DataFrame cfg = getPoolConfiguration();
+    if (cfg != null) {
+      DataField field = cfg.getFieldIgnoreCase(name);
+      if (field != null && !field.isNull()) {
+        return field.getStringValue();
+      }
+    }
+    return null;
+  }
+
+
+
+
+  int getPoolInteger(String name, int defaultValue) {
+    return (int)getPoolLong(name, defaultValue);
+  }
+
+
+
+
+  long getPoolLong(String name, long defaultValue) {
+    String value = getPoolString(name);
+    if (StringUtil.isNotBlank(value)) {
+      try {
+        return Long.parseLong(value.trim());
+      } catch (NumberFormatException e) {
+        Log.warn("Invalid value for pool setting '" + name + "' of '" + value + "', using " + defaultValue);
+      }
+    }
+    return defaultValue;
   }
 
 
@@ -101,7 +206,7 @@ public class Database extends AbstractConfigurableComponent implements Configura
    * 
    * @return the connection to the database or null if there were problems
    */
-  private synchronized Connection createConnection() {
+  synchronized Connection createConnection() {
     Connection retval = null;
 
     try {
@@ -118,6 +223,8 @@ public class Database extends AbstractConfigurableComponent implements Configura
           driver = (Driver)Class.forName(getDriver(), true, ucl).newInstance();
           DriverManager.registerDriver(new DriverDelegate(driver));
         }
+        // the pool creates many connections; only register the driver once
+        initialized = true;
       }
 
       retval = DriverManager.getConnection(getTarget(), getUserName(), getPassword());
@@ -254,12 +361,18 @@ public class Database extends AbstractConfigurableComponent implements Configura
    */
   @Override
   public void close() throws IOException {
-    for (Connection connection : connections) {
-      if (connection != null) {
-        try {
-          connection.close();
-        } catch (SQLException ignore) {}
+    synchronized (connections) {
+      for (Connection connection : connections) {
+        if (connection != null) {
+          try {
+            connection.close();
+          } catch (SQLException ignore) {}
+        }
       }
+      connections.clear();
+    }
+    if (pool != null) {
+      Log.debug("Connection pool " + pool.toString());
     }
   }
 
@@ -39,7 +39,7 @@ public class DefaultDatabaseFixture implements DatabaseFixture {
    */
   @Override
   public boolean isPooled() {
-    return false;
+    return database.isPooled();
   }
 
 
@@ -115,6 +115,9 @@ public abstract class AbstractDatabaseListener extends AbstractListener implemen
           if (StringUtil.isNotBlank(getString(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD)))
             cfg.put(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD, getString(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD));
 
+          if (getConfiguration().containsIgnoreCase(ConfigTag.POOL))
+            cfg.put(ConfigTag.POOL, getConfiguration().getFieldIgnoreCase(ConfigTag.POOL).getObjectValue());
+
           setConnector(database);
 
           try {
@@ -7,6 +7,7 @@
  */
 package coyote.dx.reader;
 
+import coyote.commons.DaemonThreadFactory;
 import coyote.commons.StringUtil;
 import coyote.commons.jdbc.DatabaseDialect;
 import coyote.commons.jdbc.DatabaseUtil;
@@ -27,10 +28,30 @@ import coyote.loader.log.LogMsg;
 
 import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /**
  * This is a frame reader which uses a JDBC result set to create frames.
+ *
+ * <p>The result set is read forward-only so drivers can stream the rows
+ * instead of holding the entire result in memory. {@code FetchSize} sets the
+ * number of rows retrieved from the database in each round trip (default
+ * 1000). Auto-commit is disabled while reading as some drivers (e.g.
+ * PostgreSQL) only honor the fetch size within a transaction. The column
+ * names and value conversions are resolved once when the query is
+ * executed.</p>
+ *
+ * <p>Large tables can be read in parallel by setting {@code PartitionColumn}
+ * to an integer key column and {@code Partitions} to the number of
+ * concurrent queries. The range of key values is split evenly between the
+ * partitions and each partition is read on its own connection. Rows are
+ * returned in no particular order when reading in parallel.</p>
  */
 public class JdbcReader extends AbstractFrameReader {
 
@@ -44,11 +65,34 @@ public class JdbcReader extends AbstractFrameReader {
      */
     private DatabaseConnector connector = null;
 
+    /**
+     * The default number of rows to fetch from the database at a time
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * The number of frames the partition readers can queue ahead of the reader
+     */
+    private static final int QUEUE_SIZE = 4096;
+
+    /**
+     * Placed in the queue by each partition reader when it is done
+     */
+    private static final DataFrame END_OF_PARTITION = new DataFrame();
+
     private ResultSet result = null;
     private Statement statement = null;
     private volatile boolean EOF = true;
-    private ResultSetMetaData rsmd = null;
-    private int columnCount = 0;
+    private Column[] columns = null;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private boolean restoreAutoCommit = false;
+    private DataFrame next = null;
+
+    // parallel, range partitioned reads
+    private ExecutorService executor = null;
+    private BlockingQueue<DataFrame> queue = null;
+    private int partitionsRunning = 0;
+    private volatile String partitionError = null;
 
 
     /**
@@ -99,6 +143,9 @@ public class JdbcReader extends AbstractFrameReader {
                     if (StringUtil.isNotBlank(getString(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD)))
                         cfg.put(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD, getString(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD));
 
+                    if (getConfiguration().containsIgnoreCase(ConfigTag.POOL))
+                        cfg.put(ConfigTag.POOL, getConfiguration().getFieldIgnoreCase(ConfigTag.POOL).getObjectValue());
+
                     setConnector(database);
 
                     try {
@@ -141,15 +188,29 @@ public class JdbcReader extends AbstractFrameReader {
                 String query = getString(ConfigTag.QUERY);
                 Log.debug(LogMsg.createMsg(CDX.MSG, "Component.using_query", this.getClass().getSimpleName(), query));
 
+                if (getConfiguration().containsIgnoreCase(ConfigTag.FETCH_SIZE)) {
+                    fetchSize = getInteger(ConfigTag.FETCH_SIZE);
+                }
+
                 try {
-                    statement = connection.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_READ_ONLY);
-                    result = statement.executeQuery(query);
-                    rsmd = result.getMetaData();
-                    columnCount = rsmd.getColumnCount();
+                    if (fetchSize > 0 && connection.getAutoCommit()) {
+                        connection.setAutoCommit(false);
+                        restoreAutoCommit = true;
+                    }
 
-                    if (result.isBeforeFirst()) {
-                        EOF = false;
+                    String column = getString(ConfigTag.PARTITION_COLUMN);
+                    int partitions = getInteger(ConfigTag.PARTITIONS);
+                    if (StringUtil.isNotBlank(column) && partitions > 1) {
+                        startPartitions(query, column, partitions);
+                    } else {
+                        statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                        statement.setFetchSize(fetchSize);
+                        result = statement.executeQuery(query);
+                        columns = resolveColumns(result.getMetaData());
                     }
+
+                    next = nextFrame();
+                    EOF = (next == null);
                 } catch (SQLException e) {
                     String msg = LogMsg.createMsg(CDB.MSG, "Component.error_quering_database", getClass().getSimpleName(), e.getMessage().trim(), query).toString();
                     context.setError(msg);
@@ -167,6 +228,84 @@ public class JdbcReader extends AbstractFrameReader {
     }
 
 
+    /**
+     * Split the range of values in the partition column and start reading
+     * each range on its own connection.
+     *
+     * <p>Rows with a null key are read by the first partition.</p>
+     *
+     * @param query the configured query
+     * @param column the integer column on which to partition the query
+     * @param partitions the number of partitions to read concurrently
+     *
+     * @throws SQLException if the range of the column could not be determined
+     */
+    private void startPartitions(String query, String column, int partitions) throws SQLException {
+        long min;
+        long max;
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("SELECT MIN(" + column + "), MAX(" + column + ") FROM (" + query + ") cdx_range")) {
+            rs.next();
+            min = rs.getLong(1);
+            boolean empty = rs.wasNull();
+            max = rs.getLong(2);
+            if (empty) {
+                // no keys; read the null keys (if any) with one partition
+                max = min;
+                partitions = 1;
+            }
+        }
+
+        long step = Math.max(1, (max - min) / partitions + 1);
+        String sql = "SELECT * FROM (" + query + ") cdx_partition WHERE " + column + " >= ? AND " + column + " < ?";
+        Log.debug(LogMsg.createMsg(CDB.MSG, "Reader.partitioned_read", getClass().getSimpleName(), column, min, max, partitions));
+
+        queue = new ArrayBlockingQueue<DataFrame>(QUEUE_SIZE);
+        executor = Executors.newFixedThreadPool(partitions, new DaemonThreadFactory(getClass().getSimpleName()));
+
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (long low = min; tasks.size() < partitions && low <= max; low += step) {
+            long high = (max - low < step) ? max + 1 : low + step;
+            String partitionSql = tasks.isEmpty() ? sql + " OR " + column + " IS NULL" : sql;
+            tasks.add(new Partition(partitionSql, low, high));
+        }
+        partitionsRunning = tasks.size();
+        for (Runnable task : tasks) {
+            executor.execute(task);
+        }
+    }
+
+
+    /**
+     * @return the next frame from the result set(s) or null if there are no more rows
+     *
+     * @throws SQLException if the row could not be read
+     */
+    private DataFrame nextFrame() throws SQLException {
+        if (queue != null) {
+            while (partitionsRunning > 0) {
+                DataFrame frame;
+                try {
+                    frame = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted waiting for partitioned reads");
+                }
+                if (frame != END_OF_PARTITION) {
+                    return frame;
+                }
+                partitionsRunning--;
+                if (partitionError != null) {
+                    throw new SQLException(partitionError);
+                }
+            }
+            return null;
+        } else if (result != null && result.next()) {
+            return toFrame(result, columns);
+        }
+        return null;
+    }
+
+
     /**
      * @see coyote.dx.FrameReader#read(coyote.dx.context.TransactionContext)
      */
@@ -174,30 +313,22 @@ public class JdbcReader extends AbstractFrameReader {
     public DataFrame read(TransactionContext context) {
         DataFrame retval = null;
 
-        if (result != null) {
+        if (next != null) {
+            retval = next;
             try {
-                if (result.next()) {
-                    retval = new DataFrame();
-
-                    if (result.isLast()) {
-                        EOF = true;
-                        context.setLastFrame(true);
-                    }
-
-                    for (int i = 1; i <= columnCount; i++) {
-                        retval.add(rsmd.getColumnName(i), DatabaseDialect.resolveValue(result.getObject(i), rsmd.getColumnType(i)));
-                    }
-
-                    context.setLastFrame(result.isLast());
-                } else {
-                    Log.error("Read past EOF");
-                    EOF = true;
-                }
+                next = nextFrame();
             } catch (SQLException e) {
-                e.printStackTrace();
+                String msg = LogMsg.createMsg(CDB.MSG, "Reader.error_reading_results", getClass().getSimpleName(), e.getMessage()).toString();
+                Log.error(msg);
+                context.setError(msg);
+                next = null;
+            }
+            if (next == null) {
                 EOF = true;
+                context.setLastFrame(true);
             }
         } else {
+            Log.error("Read past EOF");
             EOF = true;
         }
 
@@ -219,12 +350,55 @@ public class JdbcReader extends AbstractFrameReader {
      */
     @Override
     public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
         DatabaseUtil.closeQuietly(result);
+        DatabaseUtil.closeQuietly(statement);
+        if (restoreAutoCommit && connection != null) {
+            try {
+                connection.commit();
+                connection.setAutoCommit(true);
+            } catch (SQLException ignore) {
+                // the connection is closed below
+            }
+        }
         DatabaseUtil.closeQuietly(connection);
         super.close();
     }
 
 
+    /**
+     * Resolve the name and value conversion of each column in the result.
+     *
+     * @param rsmd the metadata of the result set
+     *
+     * @return the columns in the order they appear in the result set
+     *
+     * @throws SQLException if the metadata could not be read
+     */
+    private static Column[] resolveColumns(ResultSetMetaData rsmd) throws SQLException {
+        Column[] retval = new Column[rsmd.getColumnCount()];
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = new Column(rsmd.getColumnName(i + 1), rsmd.getColumnType(i + 1));
+        }
+        return retval;
+    }
+
+
+    /**
+     * Create a frame from the current row of the result set.
+     */
+    private static DataFrame toFrame(ResultSet rs, Column[] columns) throws SQLException {
+        DataFrame retval = new DataFrame();
+        for (int i = 0; i < columns.length; i++) {
+            retval.add(columns[i].name, columns[i].getValue(rs, i + 1));
+        }
+        return retval;
+    }
+
+
     /**
      * @return the connector we use for creating connections.
      */
@@ -267,4 +441,127 @@ public class JdbcReader extends AbstractFrameReader {
         }
     }
 
+
+    /**
+     * A column in the result set with its value conversion resolved once.
+     *
+     * <p>The conversions are the same as
+     * {@link DatabaseDialect#resolveValue(Object, int)} but use the typed
+     * accessor of the result set for each column type.</p>
+     */
+    private static class Column {
+        final String name;
+        final int type;
+
+
+        Column(String name, int type) {
+            this.name = name;
+            this.type = type;
+        }
+
+
+        Object getValue(ResultSet rs, int index) throws SQLException {
+            Object retval;
+            switch (type) {
+                case Types.NUMERIC:
+                case Types.DECIMAL:
+                    java.math.BigDecimal decimal = rs.getBigDecimal(index);
+                    return (decimal != null) ? decimal.doubleValue() : null;
+                case Types.INTEGER:
+                    retval = rs.getInt(index);
+                    break;
+                case Types.SMALLINT:
+                    retval = rs.getShort(index);
+                    break;
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    retval = rs.getDouble(index);
+                    break;
+                case Types.REAL:
+                    retval = rs.getFloat(index);
+                    break;
+                case Types.DATE:
+                    retval = rs.getDate(index);
+                    break;
+                case Types.TIME:
+                    retval = rs.getTime(index);
+                    break;
+                case Types.TIMESTAMP:
+                    retval = rs.getTimestamp(index);
+                    break;
+                default:
+                    return DatabaseDialect.resolveValue(rs.getObject(index), type);
+            }
+            if (rs.wasNull()) {
+                return null;
+            }
+            if (retval instanceof java.util.Date) {
+                retval = new java.util.Date(((java.util.Date)retval).getTime());
+            }
+            return retval;
+        }
+    }
+
+
+    /**
+     * Reads one range of the partition column and queues the frames for the
+     * reader.
+     */
+    private class Partition implements Runnable {
+        private final String sql;
+        private final long low;
+        private final long high;
+
+
+        Partition(String sql, long low, long high) {
+            this.sql = sql;
+            this.low = low;
+            this.high = high;
+        }
+
+
+        @Override
+        public void run() {
+            Connection conn = null;
+            try {
+                conn = getConnector().getConnection();
+                if (conn == null) {
+                    throw new SQLException("Could not get a connection for partition " + low + "-" + high);
+                }
+                if (fetchSize > 0) {
+                    conn.setAutoCommit(false);
+                }
+                try (PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ps.setFetchSize(fetchSize);
+                    ps.setLong(1, low);
+                    ps.setLong(2, high);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        Column[] cols = resolveColumns(rs.getMetaData());
+                        while (rs.next()) {
+                            queue.put(toFrame(rs, cols));
+                        }
+                    }
+                }
+                if (fetchSize > 0) {
+                    conn.commit();
+                }
+            } catch (InterruptedException e) {
+                // the reader was closed
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                partitionError = "Partition " + low + "-" + high + " failed: " + e.getMessage();
+                Log.error(partitionError);
+            } finally {
+                DatabaseUtil.closeQuietly(conn);
+                if (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        queue.put(END_OF_PARTITION);
+                    } catch (InterruptedException ignore) {
+                        // the reader was closed
+                    }
+                }
+            }
+        }
+    }
+
 }
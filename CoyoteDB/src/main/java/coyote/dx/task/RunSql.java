@@ -220,6 +220,10 @@ public class RunSql extends AbstractTransformTask implements TransformTask {
           cfg.put(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD, getString(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD));
         }
 
+        if (getConfiguration().containsIgnoreCase(ConfigTag.POOL)) {
+          cfg.put(ConfigTag.POOL, getConfiguration().getFieldIgnoreCase(ConfigTag.POOL).getObjectValue());
+        }
+
         setConnector(database);
 
         try {
@@ -46,11 +46,16 @@ import coyote.loader.log.Log;
  * allows for some rather dynamic processing as CSV files can be generated in 
  * other jobs before this job is executed, allowing for the creating of JDBC
  * databases with fresh data. 
+ * 
+ * <p>Rows are loaded in batches of 1000 with multi-row inserts unless the 
+ * {@code batch} and {@code bulk} options of the {@code JdbcWriter} are 
+ * configured.
  */
 public class TableLoad extends AbstractTransformTask implements TransformTask {
   private static final String XML = "XML";
   private static final String JSON = "JSON";
   private static final String CSV = "CSV";
+  private static final int DEFAULT_BATCH_SIZE = 1000;
   FrameReader reader = null;
   JdbcWriter writer = null;
 
@@ -162,7 +167,10 @@ public class TableLoad extends AbstractTransformTask implements TransformTask {
       writer.setConfiguration(getConfiguration());
       writer.setAutoAdjust(true);
       if (!getConfiguration().containsIgnoreCase(ConfigTag.BATCH)) {
-        writer.setBatchSize(2); // set the default batch size to 100 inserts 
+        writer.setBatchSize(DEFAULT_BATCH_SIZE);
+      }
+      if (!getConfiguration().containsIgnoreCase(ConfigTag.BULK)) {
+        writer.getConfiguration().set(ConfigTag.BULK, JdbcWriter.BULK_VALUES);
       }
     } catch (ConfigurationException e) {
       context.setError("Error configuring writer: " + e.getMessage());
@@ -23,14 +23,27 @@ import static java.sql.Types.TIMESTAMP;
 import static java.sql.Types.TINYINT;
 import static java.sql.Types.VARCHAR;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import coyote.commons.StringUtil;
 import coyote.commons.Version;
@@ -71,6 +84,26 @@ import coyote.loader.log.LogMsg;
  * format (DataFrame) is designed to support data types common to many
  * different technologies and therefore dictates what the framework
  * supports.</p>
+ *
+ * <p>Setting {@code bulk} changes how each batch is sent to the database:
+ * <ul>
+ * <li>{@code values} - binds as many rows as the database allows into one
+ * multi-row {@code INSERT ... VALUES} statement.</li>
+ * <li>{@code copy} - streams the rows as comma-separated values with
+ * {@code COPY ... FROM STDIN} on PostgreSQL or loads them with
+ * {@code CSVREAD} on H2. Other databases use {@code values}.</li>
+ * </ul>
+ *
+ * <p>Setting {@code keys} to a comma-separated list of columns updates the
+ * rows with matching keys and inserts the rest (i.e. an upsert) using the
+ * {@code MERGE} syntax of the database.</p>
+ *
+ * <p>When {@code bulk} or {@code CommitInterval} is set, the writer manages
+ * the transaction: auto-commit is disabled and the rows are committed every
+ * {@code CommitInterval} rows (or after every batch if not set). A batch
+ * which fails is rolled back and retried in two halves, recursively, so a
+ * batch too large for the database is still loaded and a bad row is
+ * isolated in the error message.</p>
  */
 public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, ConfigurableComponent {
 
@@ -96,6 +129,7 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
      */
     protected String SQL = null;
     protected PreparedStatement ps = null;
+    private PreparedStatement bulkps = null;
     protected volatile boolean closed = false;
     /**
      * The thing we use to get connections to the database
@@ -113,6 +147,38 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
      * Cached value of the Auto-Adjust flag to alter tables if necessary.
      */
     private volatile boolean autoAdjust = false;
+    /**
+     * The bulk loading mode, null to add each row to a JDBC batch
+     */
+    private String bulkMode = null;
+    /**
+     * The columns identifying existing rows to update instead of insert
+     */
+    private final List<String> keys = new ArrayList<String>();
+    /**
+     * The columns being written, in the order they are bound in the SQL
+     */
+    private final List<String> columns = new ArrayList<String>();
+    /**
+     * The number of rows bound in each multi-row statement
+     */
+    private int rowsPerStatement = 1;
+    /**
+     * The number of rows to write before committing, 0 to commit after each batch
+     */
+    private int commitInterval = 0;
+    /**
+     * Set when this writer disabled auto-commit and commits the rows itself
+     */
+    private boolean managingTransaction = false;
+    private long uncommitted = 0;
+    /**
+     * The file used to load batches with CSVREAD
+     */
+    private File loadFile = null;
+
+    public static final String BULK_VALUES = "values";
+    public static final String BULK_COPY = "copy";
 
     /**
      * Ensures the required schema exists and creates it if necessary.
@@ -243,6 +309,24 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
                 } catch (final SQLException e) {
                     Log.warn(LogMsg.createMsg(CDX.MSG, "Writer.could_not_commit_prior_to_close", e.getMessage()));
                 }
+                if (managingTransaction) {
+                    try {
+                        connection.setAutoCommit(true);
+                    } catch (final SQLException ignore) {
+                        // the connection may already be closed
+                    }
+                    managingTransaction = false;
+                }
+            }
+
+            if (loadFile != null) {
+                loadFile.delete();
+                loadFile = null;
+            }
+
+            if (bulkps != null) {
+                DatabaseUtil.closeQuietly(bulkps);
+                bulkps = null;
             }
 
             if (ps != null) {
@@ -279,6 +363,7 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
 
     public void commit() throws SQLException {
         connection.commit();
+        uncommitted = 0;
     }
 
 
@@ -286,6 +371,10 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
      * @return the insert SQL appropriate for this frameset
      */
     private String generateInsertSQL() {
+        if (!keys.isEmpty()) {
+            return DatabaseDialect.getBulkInsert(database, getSchema(), getTable(), columns, keys, 1);
+        }
+
         final StringBuffer c = new StringBuffer("insert into ");
         final StringBuffer v = new StringBuffer();
 
@@ -293,7 +382,7 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
         c.append('.');
         c.append(getTable());
         c.append(" (");
-        for (final String name : frameset.getColumns()) {
+        for (final String name : columns) {
             c.append(name);
             c.append(", ");
             v.append("?, ");
@@ -672,6 +761,10 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
                     cfg.put(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD, getString(Loader.ENCRYPT_PREFIX + ConfigTag.PASSWORD));
                 }
 
+                if (getConfiguration().containsIgnoreCase(ConfigTag.POOL)) {
+                    cfg.put(ConfigTag.POOL, getConfiguration().getFieldIgnoreCase(ConfigTag.POOL).getObjectValue());
+                }
+
                 setConnector(database);
 
                 try {
@@ -724,6 +817,27 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
             batchsize = getBatchSize();
         }
 
+        String mode = getString(ConfigTag.BULK);
+        if (StringUtil.isNotBlank(mode)) {
+            if (BULK_VALUES.equalsIgnoreCase(mode.trim()) || BULK_COPY.equalsIgnoreCase(mode.trim())) {
+                bulkMode = mode.trim().toLowerCase();
+            } else {
+                context.setError("Invalid '" + ConfigTag.BULK + "' value of '" + mode + "', expected '" + BULK_VALUES + "' or '" + BULK_COPY + "'");
+            }
+        }
+
+        keys.clear();
+        String keyList = getString(ConfigTag.KEYS);
+        if (StringUtil.isNotBlank(keyList)) {
+            for (String key : keyList.split(",")) {
+                if (StringUtil.isNotBlank(key)) {
+                    keys.add(key.trim());
+                }
+            }
+        }
+
+        commitInterval = Math.max(0, getInteger(ConfigTag.COMMIT_INTERVAL));
+        Log.debug(getClass().getSimpleName() + " bulk mode: " + bulkMode + " keys: " + keys + " commit interval: " + commitInterval);
     }
 
     /**
@@ -751,10 +865,14 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
      * @param field the field containing the value to add
      */
     private void setData(final PreparedStatement pstmt, final int indx, final DataField field) {
-        final short type = field.getType();
         if (pstmt != null) {
             try {
-                switch (type) {
+                if (field == null) {
+                    // the frame does not contain this column
+                    pstmt.setNull(indx, VARCHAR);
+                    return;
+                }
+                switch (field.getType()) {
                     case DataField.FRAMETYPE:
                         getContext().setError("Cannot add complex objects to table");
                         break;
@@ -901,6 +1019,11 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
             // Since this is the first time we have tried to write to the table, make
             // sure the table exists
             if (checkTable()) {
+                columns.clear();
+                for (final String name : frameset.getColumns()) {
+                    columns.add(name);
+                }
+                beginTransaction();
                 SQL = generateInsertSQL();
                 Log.debug(LogMsg.createMsg(CDX.MSG, "Writer.using_sql", getClass().getSimpleName(), SQL));
 
@@ -952,65 +1075,280 @@ public class JdbcWriter extends AbstractFrameWriter implements FrameWriter, Conf
 
             // if the table check did not generate an error
             if (getContext().isNotInError()) {
-                if (batchsize <= 1) {
-                    final DataFrame frame = frameset.get(0);
-                    Log.debug(LogMsg.createMsg(CDX.MSG, "Writer.writing_single_frame", getClass().getSimpleName(), frame.toString()));
+                final List<DataFrame> rows = new ArrayList<DataFrame>();
+                for (final DataFrame frame : frameset.getRows()) {
+                    rows.add(frame);
+                }
+                writeRows(rows);
+                frameset.clearRows();
 
-                    int indx = 1;
-                    for (final String name : frameset.getColumns()) {
-                        final DataField field = frame.getField(name);
-                        setData(ps, indx++, field);
-                        if (getContext().isInError()) {
-                            break;
+                if (managingTransaction && getContext().isNotInError()) {
+                    uncommitted += rows.size();
+                    if (uncommitted >= commitInterval) {
+                        try {
+                            commit();
+                        } catch (final SQLException e) {
+                            getContext().setError("Could not commit rows: " + e.getMessage());
                         }
                     }
+                }
+            }
+        }
+    }
 
-                    Log.debug(LogMsg.createMsg(CDX.MSG, "Writer.executing_sql", getClass().getSimpleName(), ps.toString()));
 
-                    try {
-                        ps.execute();
-                    } catch (final SQLException e) {
-                        getContext().setError("Could not insert single row: " + e.getMessage());
-                    }
+    /**
+     * Disable auto-commit if this writer is to manage the transaction.
+     *
+     * <p>The transaction is managed when bulk loading or when a commit
+     * interval is set. This allows failed batches to be rolled back to a
+     * savepoint and retried.</p>
+     */
+    private void beginTransaction() {
+        if (bulkMode != null || commitInterval > 0) {
+            try {
+                if (connection.getAutoCommit()) {
+                    connection.setAutoCommit(false);
+                    managingTransaction = true;
+                }
+            } catch (final SQLException e) {
+                Log.warn("Could not disable auto-commit, rows will be committed by the driver: " + e.getMessage());
+            }
+            if (bulkMode != null) {
+                rowsPerStatement = Math.max(1, Math.min(Math.max(1, batchsize), DatabaseDialect.getMaxRowsPerStatement(database, columns.size())));
+                Log.debug(getClass().getSimpleName() + " binding up to " + rowsPerStatement + " rows per statement");
+            }
+        }
+    }
 
-                } else {
-                    // Now write a batch
-                    for (final DataFrame frame : frameset.getRows()) {
-                        Log.debug(LogMsg.createMsg(CDX.MSG, "Writer.writing_frame", this.getClass().getSimpleName(), frame));
-
-                        int indx = 1;
-                        for (final String name : frameset.getColumns()) {
-                            final DataField field = frame.getField(name);
-                            if ((field != null) && !field.isNull()) {
-                                setData(ps, indx++, field);
-                            }
-                            if (getContext().isInError()) {
-                                break;
-                            }
-                        }
 
-                        // add this frame as a record to the batch
-                        try {
-                            ps.addBatch();
-                        } catch (final SQLException e) {
-                            getContext().setError("Could not add the record to the batch: " + e.getMessage());
-                        }
+    /**
+     * Write the rows to the database, retrying failed rows in smaller batches.
+     *
+     * <p>If this writer is managing the transaction, a savepoint is set before
+     * the rows are written. If the write fails, the work is rolled back to the
+     * savepoint and each half of the rows is written separately until the
+     * failure is isolated to a single row.</p>
+     *
+     * @param rows the rows to write
+     */
+    private void writeRows(final List<DataFrame> rows) {
+        Savepoint savepoint = null;
+        try {
+            if (managingTransaction) {
+                savepoint = connection.setSavepoint();
+            }
+            executeRows(rows);
+            if (savepoint != null) {
+                releaseQuietly(savepoint);
+            }
+        } catch (final SQLException e) {
+            boolean retry = false;
+            if (savepoint != null) {
+                try {
+                    connection.rollback(savepoint);
+                    retry = rows.size() > 1;
+                } catch (final SQLException ignore) {
+                    // cannot retry if the work could not be rolled back
+                }
+            }
 
+            if (retry) {
+                Log.warn(LogMsg.createMsg(CDB.MSG, "Writer.retrying_batch", getClass().getSimpleName(), rows.size(), e.getMessage()));
+                final int half = rows.size() / 2;
+                writeRows(rows.subList(0, half));
+                if (getContext().isNotInError()) {
+                    writeRows(rows.subList(half, rows.size()));
+                }
+            } else if (rows.size() == 1) {
+                getContext().setError("Could not insert single row: " + e.getMessage() + " - " + rows.get(0).toString());
+            } else {
+                getContext().setError("Could not insert batch: " + e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Send the rows to the database using the configured mode.
+     *
+     * @param rows the rows to write
+     *
+     * @throws SQLException if the database rejected the rows
+     */
+    private void executeRows(final List<DataFrame> rows) throws SQLException {
+        if (BULK_COPY.equals(bulkMode) && DatabaseDialect.supportsCopy(database, keys)) {
+            copyRows(rows);
+        } else if (bulkMode != null && rowsPerStatement > 1) {
+            for (int start = 0; start < rows.size(); start += rowsPerStatement) {
+                final List<DataFrame> chunk = rows.subList(start, Math.min(rows.size(), start + rowsPerStatement));
+                // the statement for a full chunk is reused, the remainder is prepared as needed
+                final boolean full = chunk.size() == rowsPerStatement;
+                if (full && bulkps == null) {
+                    bulkps = connection.prepareStatement(DatabaseDialect.getBulkInsert(database, getSchema(), getTable(), columns, keys, rowsPerStatement));
+                }
+                final PreparedStatement stmt = full ? bulkps : connection.prepareStatement(DatabaseDialect.getBulkInsert(database, getSchema(), getTable(), columns, keys, chunk.size()));
+                try {
+                    int indx = 1;
+                    for (final DataFrame frame : chunk) {
+                        for (final String name : columns) {
+                            setData(stmt, indx++, frame.getField(name));
+                        }
                     }
-                    if (getContext().isNotInError()) {
-                        try {
-                            ps.executeBatch();
-                        } catch (final SQLException e) {
-                            getContext().setError("Could not insert batch: " + e.getMessage());
+                    Log.debug(LogMsg.createMsg(CDX.MSG, "Writer.executing_sql", getClass().getSimpleName(), chunk.size() + " rows"));
+                    stmt.executeUpdate();
+                } finally {
+                    if (!full) {
+                        stmt.close();
+                    }
+                }
+            }
+        } else if (rows.size() == 1) {
+            final DataFrame frame = rows.get(0);
+            Log.debug(LogMsg.createMsg(CDX.MSG, "Writer.writing_single_frame", getClass().getSimpleName(), frame.toString()));
+            int indx = 1;
+            for (final String name : columns) {
+                setData(ps, indx++, frame.getField(name));
+                if (getContext().isInError()) {
+                    break;
+                }
+            }
+            Log.debug(LogMsg.createMsg(CDX.MSG, "Writer.executing_sql", getClass().getSimpleName(), ps.toString()));
+            ps.execute();
+        } else {
+            // Now write a batch
+            try {
+                for (final DataFrame frame : rows) {
+                    Log.debug(LogMsg.createMsg(CDX.MSG, "Writer.writing_frame", this.getClass().getSimpleName(), frame));
+                    int indx = 1;
+                    for (final String name : columns) {
+                        setData(ps, indx++, frame.getField(name));
+                        if (getContext().isInError()) {
+                            break;
                         }
                     }
+                    // add this frame as a record to the batch
+                    ps.addBatch();
                 }
-                frameset.clearRows();
+                if (getContext().isNotInError()) {
+                    ps.executeBatch();
+                }
+            } finally {
+                ps.clearBatch();
             }
         }
     }
 
 
+    /**
+     * Load the rows as comma-separated values.
+     *
+     * <p>PostgreSQL streams the values through the driver's {@code CopyManager}
+     * which is located reflectively so the driver is not a build dependency.
+     * H2 reads the values from a work file with {@code CSVREAD}.</p>
+     *
+     * @param rows the rows to write
+     *
+     * @throws SQLException if the database rejected the rows
+     */
+    private void copyRows(final List<DataFrame> rows) throws SQLException {
+        final boolean header = DatabaseDialect.H2.equalsIgnoreCase(database);
+        final StringBuilder data = new StringBuilder();
+        if (header) {
+            for (int x = 0; x < columns.size(); x++) {
+                data.append(x > 0 ? "," : "").append(columns.get(x));
+            }
+            data.append('\n');
+        }
+        for (final DataFrame frame : rows) {
+            for (int x = 0; x < columns.size(); x++) {
+                if (x > 0) {
+                    data.append(',');
+                }
+                appendCsv(data, frame.getField(columns.get(x)));
+            }
+            data.append('\n');
+        }
+
+        if (DatabaseDialect.POSTGRESQL.equalsIgnoreCase(database)) {
+            final String sql = DatabaseDialect.getCopy(database, getSchema(), getTable(), columns, keys, null);
+            try {
+                final Connection raw = connection.unwrap(Connection.class);
+                final Object copyApi = raw.getClass().getMethod("getCopyAPI").invoke(raw);
+                final Method copyIn = copyApi.getClass().getMethod("copyIn", String.class, Reader.class);
+                copyIn.invoke(copyApi, sql, new StringReader(data.toString()));
+            } catch (final java.lang.reflect.InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw new SQLException("COPY failed: " + e.getCause(), e.getCause());
+            } catch (final ReflectiveOperationException e) {
+                throw new SQLException("The driver does not support COPY: " + e.getMessage(), e);
+            }
+        } else {
+            try {
+                if (loadFile == null) {
+                    loadFile = File.createTempFile("cdx", ".csv", getWorkDirectory());
+                    loadFile.deleteOnExit();
+                }
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(loadFile), StandardCharsets.UTF_8))) {
+                    out.write(data.toString());
+                }
+            } catch (final IOException e) {
+                throw new SQLException("Could not write load file: " + e.getMessage(), e);
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate(DatabaseDialect.getCopy(database, getSchema(), getTable(), columns, keys, loadFile.getAbsolutePath()));
+            }
+        }
+    }
+
+
+    /**
+     * Append the value of the field in CSV format where an empty unquoted value
+     * is a null.
+     */
+    private void appendCsv(final StringBuilder data, final DataField field) throws SQLException {
+        if (field == null || field.isNull()) {
+            return;
+        }
+        switch (field.getType()) {
+            case DataField.FRAMETYPE:
+            case DataField.BYTEARRAY:
+            case DataField.ARRAY:
+                throw new SQLException("Cannot add complex values to table field '" + field.getName() + "'");
+            case DataField.DATE:
+                data.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format((Date) field.getObjectValue()));
+                break;
+            case DataField.STRING:
+            case DataField.URI:
+            case DataField.UDEF:
+                final String value = field.getStringValue();
+                data.append('"');
+                for (int x = 0; x < value.length(); x++) {
+                    final char ch = value.charAt(x);
+                    if (ch == '"') {
+                        data.append('"');
+                    }
+                    data.append(ch);
+                }
+                data.append('"');
+                break;
+            default:
+                data.append(field.getStringValue());
+        }
+    }
+
+
+    private void releaseQuietly(final Savepoint savepoint) {
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (final SQLException ignore) {
+            // not all drivers support releasing savepoints
+        }
+    }
+
+
     /**
      * This is where we actually write the frame.
      *
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import coyote.dataframe.DataFrame;
+import coyote.dx.ConfigTag;
+import coyote.loader.cfg.Config;
+import coyote.loader.cfg.ConfigurationException;
+
+
+/**
+ *
+ */
+public class ConnectionPoolTest {
+  private static final String JDBC_DRIVER = "org.h2.Driver";
+  private static final String USER = "username";
+  private static final String PASS = "password";
+
+
+
+
+  @AfterClass
+  public static void tearDownAfterClass() {
+    ConnectionPool.closeAll();
+  }
+
+
+
+
+  @Test
+  public void notPooled() throws ConfigurationException, IOException, SQLException {
+    Database database = createDatabase("notpooled", null);
+    assertFalse(database.isPooled());
+    Connection conn = database.getConnection();
+    assertNotNull(conn);
+    database.close();
+    assertTrue(conn.isClosed());
+  }
+
+
+
+
+  @Test
+  public void reuse() throws ConfigurationException, IOException, SQLException {
+    Database database = createDatabase("reuse", new DataFrame().set(ConnectionPool.MAX, 2));
+    assertTrue(database.isPooled());
+    ConnectionPool pool = database.getPool();
+
+    Connection conn = database.getConnection();
+    assertNotNull(conn);
+    assertEquals(1, pool.getActiveCount());
+    int isolation = conn.getTransactionIsolation();
+    conn.setAutoCommit(false);
+    conn.setTransactionIsolation(isolation == Connection.TRANSACTION_SERIALIZABLE ? Connection.TRANSACTION_READ_COMMITTED : Connection.TRANSACTION_SERIALIZABLE);
+    conn.close();
+    assertTrue(conn.isClosed());
+    assertEquals(0, pool.getActiveCount());
+    assertEquals(1, pool.getIdleCount());
+
+    try {
+      conn.createStatement();
+      fail("Returned connection should not be usable");
+    } catch (SQLException expected) {}
+
+    conn = database.getConnection();
+    assertTrue("Auto-commit should be restored", conn.getAutoCommit());
+    assertEquals("Isolation should be restored", isolation, conn.getTransactionIsolation());
+    assertEquals(1, pool.getCreatedCount());
+    assertEquals(2, pool.getBorrowCount());
+    database.close();
+    assertEquals(0, pool.getActiveCount());
+    assertEquals(1, pool.getIdleCount());
+  }
+
+
+
+
+  @Test
+  public void shared() throws ConfigurationException, IOException {
+    Database first = createDatabase("shared", new DataFrame().set(ConnectionPool.MAX, 2));
+    Database second = createDatabase("shared", new DataFrame().set(ConnectionPool.MAX, 5));
+    assertSame(first.getPool(), second.getPool());
+    assertEquals(2, second.getPool().getMaximum());
+  }
+
+
+
+
+  @Test
+  public void credentials() throws ConfigurationException, IOException {
+    Database first = createDatabase("credentials", new DataFrame().set(ConnectionPool.MAX, 2));
+    Database second = createDatabase("credentials", new DataFrame().set(ConnectionPool.MAX, 2));
+    second.setPassword("different");
+    assertNotSame(first.getPool(), second.getPool());
+  }
+
+
+
+
+  @Test
+  public void maximum() throws ConfigurationException, IOException, SQLException {
+    Database database = createDatabase("maximum", new DataFrame().set(ConnectionPool.MAX, 1).set(ConnectionPool.WAIT, 50));
+    ConnectionPool pool = database.getPool();
+    Connection conn = pool.getConnection();
+    try {
+      pool.getConnection();
+      fail("Pool should have timed out");
+    } catch (SQLException expected) {}
+    assertEquals(1, pool.getWaitCount());
+    assertTrue(pool.getMaxWaitTime() >= 50);
+    conn.close();
+    conn = pool.getConnection();
+    assertNotNull(conn);
+    conn.close();
+    database.close();
+  }
+
+
+
+
+  @Test
+  public void eviction() throws ConfigurationException, IOException, SQLException, InterruptedException {
+    DataFrame settings = new DataFrame().set(ConnectionPool.MIN, 1).set(ConnectionPool.MAX, 3).set(ConnectionPool.IDLE, 10).set(ConnectionPool.VALIDATION, "SELECT 1");
+    Database database = createDatabase("eviction", settings);
+    ConnectionPool pool = database.getPool();
+    Connection first = pool.getConnection();
+    Connection second = pool.getConnection();
+    Connection third = pool.getConnection();
+    first.close();
+    second.close();
+    third.close();
+    assertEquals(3, pool.getTotalCount());
+
+    Thread.sleep(50);
+    pool.evict();
+    assertEquals("Idle connections should be closed down to the minimum", 1, pool.getTotalCount());
+    assertEquals(2, pool.getClosedCount());
+
+    Connection conn = pool.getConnection();
+    assertFalse(conn.isClosed());
+    conn.close();
+    database.close();
+  }
+
+
+
+
+  @Test
+  public void statements() throws ConfigurationException, IOException, SQLException {
+    Database database = createDatabase("statements", new DataFrame().set(ConnectionPool.MAX, 1));
+    ConnectionPool pool = database.getPool();
+    Connection conn = pool.getConnection();
+    Statement statement = conn.createStatement();
+    PreparedStatement prepared = conn.prepareStatement("SELECT 1");
+    CallableStatement callable = conn.prepareCall("CALL 1");
+    assertSame(conn, statement.getConnection());
+    assertSame(conn, prepared.getConnection());
+    assertSame(conn, callable.getConnection());
+
+    ResultSet results = prepared.executeQuery();
+    assertTrue(results.next());
+    callable.close();
+    assertTrue(callable.isClosed());
+    conn.close();
+
+    assertTrue("Statements should be closed when the connection is returned", statement.isClosed());
+    assertTrue(prepared.isClosed());
+    assertTrue(results.isClosed());
+    database.close();
+  }
+
+
+
+
+  private Database createDatabase(String name, DataFrame pool) throws ConfigurationException {
+    DataFrame config = new DataFrame() //
+        .set(ConfigTag.NAME, name) //
+        .set(ConfigTag.DRIVER, JDBC_DRIVER) //
+        .set(ConfigTag.TARGET, "jdbc:h2:mem:" + name) //
+        .set(ConfigTag.USERNAME, USER) //
+        .set(ConfigTag.PASSWORD, PASS);
+    if (pool != null) {
+      config.set(ConfigTag.POOL, pool);
+    }
+    Database database = new Database();
+    database.setConfiguration(new Config(config));
+    return database;
+  }
+
+}
@@ -7,6 +7,7 @@
  */
 package coyote.dx.reader;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -15,6 +16,8 @@ import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -189,4 +192,43 @@ public class JdbcReaderTest {
     }
   }
 
+
+
+  @Test
+  public void partitionedRead() throws Exception {
+    DataFrame cfg = new DataFrame() //
+        .set(ConfigTag.SOURCE, DB_URL) //
+        .set(ConfigTag.DRIVER, JDBC_DRIVER) //
+        .set(ConfigTag.USERNAME, USER) //
+        .set(ConfigTag.PASSWORD, PASS) //
+        .set(ConfigTag.FETCH_SIZE, 7) //
+        .set(ConfigTag.PARTITION_COLUMN, "VISITS") //
+        .set(ConfigTag.PARTITIONS, 4) //
+        .set(ConfigTag.QUERY, "select CAST(Visits AS INT) AS VISITS, Username from " + TABLE + "");
+    Config config = new Config(cfg);
+
+    JdbcReader reader = new JdbcReader();
+    try {
+      reader.setConfiguration(config);
+      TransformContext context = new TransformContext();
+      reader.open(context);
+      assertFalse(context.getErrorMessage(), context.isInError());
+
+      TransactionContext txncontext = new TransactionContext(context);
+      Set<String> usernames = new HashSet<String>();
+      while (!reader.eof()) {
+        DataFrame frame = reader.read(txncontext);
+        assertFalse(txncontext.getErrorMessage(), txncontext.isInError());
+        usernames.add(frame.getAsString("USERNAME"));
+        if (usernames.size() > 250) {
+          break;
+        }
+      }
+      assertEquals(50, usernames.size());
+      assertTrue(txncontext.isLastFrame());
+    } finally {
+      reader.close();
+    }
+  }
+
 }
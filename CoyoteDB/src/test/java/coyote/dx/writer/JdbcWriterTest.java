@@ -7,11 +7,17 @@
  */
 package coyote.dx.writer;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -168,4 +174,61 @@ public class JdbcWriterTest {
     assertFalse(fixture.isPooled());
   }
 
+
+
+  @Test
+  public void bulk() throws Exception {
+    String[] modes = {null, JdbcWriter.BULK_VALUES, JdbcWriter.BULK_COPY};
+    for (int x = 0; x < modes.length; x++) {
+      String table = "bulk" + x;
+      // insert 25 rows then upsert 10 of them and 5 new ones
+      write(table, modes[x], null, 0, 25, "first");
+      write(table, modes[x], "ID", 20, 35, "second");
+
+      try (Connection conn = DriverManager.getConnection(DB_URL, USER, PASS); Statement stmt = conn.createStatement()) {
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*), SUM(CASE WHEN NAME = 'second' THEN 1 ELSE 0 END), COUNT(CREATED) FROM " + SCHEMA + "." + table);
+        rs.next();
+        assertEquals("rows for " + modes[x], 35, rs.getInt(1));
+        assertEquals("updated rows for " + modes[x], 15, rs.getInt(2));
+        assertEquals("null dates for " + modes[x], 34, rs.getInt(3));
+      }
+    }
+  }
+
+
+
+
+  private void write(String table, String mode, String keys, int from, int to, String name) throws Exception {
+    DataFrame cfg = new DataFrame() //
+        .set(ConfigTag.TARGET, DB_URL) //
+        .set(ConfigTag.DRIVER, JDBC_SOURCE) //
+        .set(ConfigTag.USERNAME, USER) //
+        .set(ConfigTag.PASSWORD, PASS) //
+        .set(ConfigTag.SCHEMA, SCHEMA) //
+        .set(ConfigTag.TABLE, table) //
+        .set(ConfigTag.AUTO_CREATE, true) //
+        .set(ConfigTag.BATCH, 10) //
+        .set(ConfigTag.COMMIT_INTERVAL, 20);
+    if (mode != null) {
+      cfg.set(ConfigTag.BULK, mode);
+    }
+    if (keys != null) {
+      cfg.set(ConfigTag.KEYS, keys);
+    }
+
+    JdbcWriter writer = new JdbcWriter();
+    TransformContext context = new TransformContext();
+    writer.setConfiguration(new Config(cfg));
+    writer.open(context);
+    try {
+      for (int id = from; id < to; id++) {
+        // one row has a null date
+        writer.write(new DataFrame().set("ID", id).set("NAME", name).set("CREATED", id == 3 ? null : new Date()));
+      }
+    } finally {
+      writer.close();
+    }
+    assertFalse(context.getErrorMessage(), context.isInError());
+  }
+
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Creates daemon threads named after the pool they belong to.
+ *
+ * <p>Threads are named with the given name and a sequence number (e.g.
+ * "CSVParser-1", "CSVParser-2") so they can be identified in thread dumps.
+ * They are daemon threads so an executor which was not shut down does not
+ * keep the JVM running.</p>
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+  private final String name;
+
+  private final AtomicInteger count = new AtomicInteger(0);
+
+
+
+
+  /**
+   * @param name the name of the threads, each followed by a sequence number
+   */
+  public DaemonThreadFactory(final String name) {
+    this.name = name;
+  }
+
+
+
+
+  /**
+   * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+   */
+  @Override
+  public Thread newThread(final Runnable runnable) {
+    final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+
+}
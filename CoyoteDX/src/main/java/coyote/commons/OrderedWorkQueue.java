@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Runs tasks on a pool of daemon threads and returns their results in the
+ * order the tasks were submitted.
+ *
+ * <p>This is used to read ahead of a consumer: tasks (parsing a block,
+ * compressing an entry) are submitted while the queue is not full and the
+ * oldest result is taken with {@link #next()}, which waits for its task to
+ * complete. The number of outstanding tasks is limited (by default to twice
+ * the number of threads) so the memory held by results waiting to be taken
+ * stays bounded. With a single
+ * thread, tasks are run on the calling thread as they are submitted and
+ * nothing is read ahead.</p>
+ *
+ * <p>A queue is not thread-safe; the same thread submits tasks and takes
+ * their results.</p>
+ *
+ * @param <T> the type of the results of the tasks
+ */
+public class OrderedWorkQueue<T> implements Closeable {
+
+  private final String name;
+
+  private final int threads;
+
+  private final int window;
+
+  private ExecutorService executor = null;
+
+  /** The tasks not yet taken, in the order they were submitted */
+  private final Deque<Future<T>> pending = new ArrayDeque<Future<T>>();
+
+
+
+
+  /**
+   * Create a queue which allows twice as many outstanding tasks as threads.
+   *
+   * @param name the name of the threads running the tasks
+   * @param threads the number of threads running tasks, 1 to run them on the calling thread
+   */
+  public OrderedWorkQueue(final String name, final int threads) {
+    this(name, threads, threads * 2);
+  }
+
+
+
+
+  /**
+   * Create a queue with a given limit of outstanding tasks.
+   *
+   * <p>A larger window keeps the threads busy when tasks take very different
+   * times, at the cost of holding more results which are waiting to be
+   * taken.</p>
+   *
+   * @param name the name of the threads running the tasks
+   * @param threads the number of threads running tasks, 1 to run them on the calling thread
+   * @param window the number of tasks which may be outstanding before the queue is full
+   */
+  public OrderedWorkQueue(final String name, final int threads, final int window) {
+    this.name = name;
+    this.threads = Math.max(1, threads);
+    this.window = (this.threads == 1) ? 1 : Math.max(this.threads, window);
+  }
+
+
+
+
+  /**
+   * @return true if no more tasks should be submitted until a result is taken
+   */
+  public boolean isFull() {
+    return pending.size() >= window;
+  }
+
+
+
+
+  /**
+   * @return true if there are no results left to take
+   */
+  public boolean isEmpty() {
+    return pending.isEmpty();
+  }
+
+
+
+
+  /**
+   * Submit a task to run after the tasks already submitted.
+   *
+   * @param task the task to run
+   */
+  public void submit(final Callable<T> task) {
+    final FutureTask<T> future = new FutureTask<T>(task);
+    if (threads == 1) {
+      future.run();
+    } else {
+      if (executor == null) {
+        executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory(name));
+      }
+      executor.execute(future);
+    }
+    pending.add(future);
+  }
+
+
+
+
+  /**
+   * Wait for the oldest task to complete and return its result.
+   *
+   * @return the result of the oldest task, or null if there are no tasks
+   *
+   * @throws IOException if the task failed (its own exception if it was an
+   *         IOException) or the calling thread was interrupted
+   */
+  public T next() throws IOException {
+    final Future<T> future = pending.poll();
+    if (future == null) {
+      return null;
+    }
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for " + name);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException)e.getCause();
+      }
+      throw new IOException(name + " failed: " + e.getCause(), e.getCause());
+    }
+  }
+
+
+
+
+  /**
+   * Release a result which was never taken because the queue was closed.
+   *
+   * <p>Override this when results hold resources such as temporary files.</p>
+   *
+   * @param result the result to release
+   */
+  protected void discard(final T result) {}
+
+
+
+
+  /**
+   * Stop the threads and cancel the tasks which have not completed. The
+   * results of completed tasks which were not taken are discarded.
+   *
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+    for (final Future<T> future : pending) {
+      if (!future.cancel(true)) {
+        try {
+          discard(future.get());
+        } catch (final Exception ignore) {
+          // failed tasks have nothing to discard
+        }
+      }
+    }
+    pending.clear();
+  }
+
+}
@@ -0,0 +1,288 @@
+package coyote.commons.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import coyote.commons.OrderedWorkQueue;
+
+
+/**
+ * A CSV reader which reads large blocks of characters and parses them with a
+ * CSVScanner instead of reading and parsing line by line.
+ *
+ * <p>Each block is cut at the end of its last complete record (a newline
+ * outside of quotes) and the remainder carried over to the next block, so
+ * every block holds whole records and can be parsed independently. When
+ * created with more than one thread, blocks are parsed on that many threads
+ * while the next blocks are read; records are still returned in the order
+ * they appear in the source.
+ */
+public class CSVBufferReader implements Closeable {
+
+  /** The default number of characters read in each block. */
+  public static final int BLOCK_SIZE = 1024 * 1024;
+
+  private final Reader reader;
+
+  private CSVScanner scanner;
+
+  /** The blocks being parsed, in the order they were read */
+  private final OrderedWorkQueue<List<String[]>> pending;
+
+  private char[] buffer;
+
+  /** The number of characters in the buffer */
+  private int length = 0;
+
+  private boolean eof = false;
+
+  private List<String[]> records = Collections.emptyList();
+
+  private int index = 0;
+
+
+
+
+  /**
+   * Constructs a CSVBufferReader which parses blocks on the reading thread.
+   *
+   * @param reader the reader to an underlying CSV source
+   * @param scanner the scanner used to parse the records
+   */
+  public CSVBufferReader( final Reader reader, final CSVScanner scanner ) {
+    this( reader, scanner, BLOCK_SIZE, 1 );
+  }
+
+
+
+
+  /**
+   * Constructs a CSVBufferReader.
+   *
+   * @param reader the reader to an underlying CSV source
+   * @param scanner the scanner used to parse the records
+   * @param blockSize the number of characters to read in each block
+   * @param threads the number of threads parsing blocks, 1 to parse on the reading thread
+   */
+  public CSVBufferReader( final Reader reader, final CSVScanner scanner, final int blockSize, final int threads ) {
+    this.reader = reader;
+    this.scanner = scanner;
+    this.buffer = new char[Math.max( 1024, blockSize )];
+    this.pending = new OrderedWorkQueue<List<String[]>>( "CSVParser", threads );
+  }
+
+
+
+
+  /**
+   * Reads and parses the first record in the source with the given scanner.
+   *
+   * <p>This is normally used to read a header before the records are parsed
+   * with a scanner which projects only some of the columns. It must be called
+   * before the first call to {@link #readNext()} or {@link #setScanner(CSVScanner)}
+   * will not affect records which have already been parsed.
+   *
+   * @param headerScanner the scanner used to parse the first record
+   *
+   * @return the values of the first record or null if there are no records
+   *
+   * @throws IOException if the source could not be read
+   */
+  public String[] readFirst( final CSVScanner headerScanner ) throws IOException {
+    int start = 0;
+    int end = -1;
+    while ( !eof || length > 0 ) {
+      // skip any leading empty lines
+      while ( start < length && ( buffer[start] == '\n' || buffer[start] == '\r' ) ) {
+        start++;
+      }
+      end = headerScanner.firstRecordEnd( buffer, start, length );
+      if ( end > 0 || eof ) {
+        break;
+      }
+      if ( length == buffer.length ) {
+        grow();
+      }
+      fill();
+    }
+    if ( end < 0 ) {
+      end = length;
+    }
+    final List<String[]> retval = headerScanner.parse( buffer, 0, end );
+    System.arraycopy( buffer, end, buffer, 0, length - end );
+    length -= end;
+    return retval.isEmpty() ? null : retval.get( 0 );
+  }
+
+
+
+
+  /**
+   * @param scanner the scanner to use in parsing the records which follow
+   */
+  public void setScanner( final CSVScanner scanner ) {
+    this.scanner = scanner;
+  }
+
+
+
+
+  /**
+   * Reads the next record from the source.
+   *
+   * @return the values of the next record, or null if there are no more records
+   *
+   * @throws IOException if the source could not be read or parsed
+   */
+  public String[] readNext() throws IOException {
+    while ( index >= records.size() ) {
+      if ( !nextBlock() ) {
+        return null;
+      }
+    }
+    final String[] retval = records.get( index );
+    records.set( index++, null ); // release parsed records as they are read
+    return retval;
+  }
+
+
+
+
+  /**
+   * Move to the records of the next block.
+   *
+   * @return true if there is another block, false if all the records have been read
+   *
+   * @throws IOException if the source could not be read or parsed
+   */
+  private boolean nextBlock() throws IOException {
+    index = 0;
+    records = Collections.emptyList();
+
+    // keep all the threads busy with the blocks which follow
+    while ( !pending.isFull() ) {
+      final Block block = readBlock();
+      if ( block == null ) {
+        break;
+      }
+      final CSVScanner parser = scanner;
+      pending.submit( new Callable<List<String[]>>() {
+        @Override
+        public List<String[]> call() {
+          return parser.parse( block.data, 0, block.end );
+        }
+      } );
+    }
+
+    if ( pending.isEmpty() ) {
+      return false;
+    }
+    records = pending.next();
+    return true;
+  }
+
+
+
+
+  /**
+   * Read the next block of whole records.
+   *
+   * @return the block or null if there is no more data
+   *
+   * @throws IOException if the source could not be read
+   */
+  private Block readBlock() throws IOException {
+    int end = -1;
+    while ( !eof ) {
+      fill();
+      if ( length == buffer.length ) {
+        end = scanner.lastRecordEnd( buffer, 0, length );
+        if ( end > 0 ) {
+          break;
+        }
+        // a record larger than the buffer
+        grow();
+      }
+    }
+    if ( eof ) {
+      if ( length == 0 ) {
+        return null;
+      }
+      end = length;
+    }
+
+    // the block keeps the buffer, the remainder moves to a new buffer
+    final Block retval = new Block( buffer, end );
+    buffer = new char[buffer.length];
+    length -= end;
+    System.arraycopy( retval.data, end, buffer, 0, length );
+    return retval;
+  }
+
+
+
+
+  /**
+   * Read from the source until the buffer is full or there is no more data.
+   *
+   * @throws IOException if the source could not be read
+   */
+  private void fill() throws IOException {
+    while ( length < buffer.length ) {
+      final int count = reader.read( buffer, length, buffer.length - length );
+      if ( count < 0 ) {
+        eof = true;
+        break;
+      }
+      length += count;
+    }
+  }
+
+
+
+
+  /**
+   * Double the size of the buffer to hold a record larger than the buffer.
+   */
+  private void grow() {
+    final char[] larger = new char[buffer.length * 2];
+    System.arraycopy( buffer, 0, larger, 0, length );
+    buffer = larger;
+  }
+
+
+
+
+  /**
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    pending.close();
+    reader.close();
+  }
+
+
+
+
+  /**
+   * Characters of whole records read from the source.
+   */
+  private static class Block {
+    final char[] data;
+    final int end;
+
+
+
+
+    Block( final char[] data, final int end ) {
+      this.data = data;
+      this.end = end;
+    }
+  }
+
+}
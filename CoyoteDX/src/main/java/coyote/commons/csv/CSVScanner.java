@@ -0,0 +1,298 @@
+package coyote.commons.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A CSV parser which scans records directly out of a character buffer.
+ *
+ * <p>Unlike the CSVParser, no intermediate line string is created; unquoted
+ * values are created directly from the buffer and a builder is only used for
+ * quoted values containing escaped characters. Records end at a newline
+ * outside of quotes (a preceding carriage return is removed) so quoted values
+ * may span lines. Empty lines are skipped.
+ *
+ * <p>Columns may be projected so only the values of the selected columns are
+ * created; the values of all other columns are skipped over.
+ *
+ * <p>Scanners hold no state between calls and can be used by multiple
+ * threads to parse different parts of the data at the same time.
+ */
+public class CSVScanner {
+
+  private final char separator;
+
+  private final char quotechar;
+
+  private final char escape;
+
+  /** The output position of each column, -1 if the column is not selected, null for all columns */
+  private final int[] slots;
+
+  /** The number of selected columns */
+  private final int width;
+
+
+
+
+  /**
+   * Constructs a CSVScanner returning all columns.
+   *
+   * @param separator the delimiter to use for separating entries
+   * @param quotechar the character to use for quoted elements
+   * @param escape the character to use for escaping a separator or quote
+   */
+  public CSVScanner( final char separator, final char quotechar, final char escape ) {
+    this( separator, quotechar, escape, null );
+  }
+
+
+
+
+  /**
+   * Constructs a CSVScanner returning only the given columns.
+   *
+   * @param separator the delimiter to use for separating entries
+   * @param quotechar the character to use for quoted elements
+   * @param escape the character to use for escaping a separator or quote
+   * @param columns the (zero-based) indexes of the columns to return in the order they are to be returned, null for all columns
+   */
+  public CSVScanner( final char separator, final char quotechar, final char escape, final int[] columns ) {
+    if ( separator == CSVParser.NULL_CHARACTER ) {
+      throw new UnsupportedOperationException( "The separator character must be defined!" );
+    }
+    if ( separator == quotechar || separator == escape || ( quotechar != CSVParser.NULL_CHARACTER && quotechar == escape ) ) {
+      throw new UnsupportedOperationException( "The separator, quote, and escape characters must be different!" );
+    }
+    this.separator = separator;
+    this.quotechar = quotechar;
+    this.escape = escape;
+
+    if ( columns != null ) {
+      int max = -1;
+      for ( final int column : columns ) {
+        if ( column < 0 ) {
+          throw new IllegalArgumentException( "Column indexes cannot be negative" );
+        }
+        max = Math.max( max, column );
+      }
+      slots = new int[max + 1];
+      Arrays.fill( slots, -1 );
+      for ( int x = 0; x < columns.length; x++ ) {
+        slots[columns[x]] = x;
+      }
+      width = columns.length;
+    } else {
+      slots = null;
+      width = 0;
+    }
+  }
+
+
+
+
+  /**
+   * Parse all the records in the given range of the buffer.
+   *
+   * <p>The range is expected to end at the end of a record.
+   *
+   * @param buffer the characters to parse
+   * @param start the position of the first character of the first record
+   * @param end the position after the last character to parse
+   *
+   * @return the values of each record in the range
+   */
+  public List<String[]> parse( final char[] buffer, final int start, final int end ) {
+    final List<String[]> retval = new ArrayList<String[]>();
+    String[] row = new String[( slots != null ) ? width : 16];
+    final StringBuilder builder = new StringBuilder();
+
+    int pos = start;
+    while ( pos < end ) {
+      // skip empty lines
+      if ( buffer[pos] == '\n' || ( buffer[pos] == '\r' && pos + 1 < end && buffer[pos + 1] == '\n' ) ) {
+        pos += ( buffer[pos] == '\n' ) ? 1 : 2;
+        continue;
+      }
+
+      int column = 0;
+      int count = 0;
+      boolean endOfRecord = false;
+      while ( !endOfRecord ) {
+        final int slot = ( slots == null ) ? column : ( column < slots.length ) ? slots[column] : -1;
+        String value = null;
+
+        // ignore whitespace in front of a quote
+        final int begin = pos;
+        int fieldStart = pos;
+        if ( quotechar != CSVParser.NULL_CHARACTER ) {
+          while ( fieldStart < end && ( buffer[fieldStart] == ' ' || buffer[fieldStart] == '\t' ) ) {
+            fieldStart++;
+          }
+        }
+
+        if ( quotechar != CSVParser.NULL_CHARACTER && fieldStart < end && buffer[fieldStart] == quotechar ) {
+          pos = fieldStart + 1;
+          int segment = pos;
+          builder.setLength( 0 );
+          boolean escaped = false;
+          while ( pos < end ) {
+            final char c = buffer[pos];
+            if ( c == escape && pos + 1 < end && ( buffer[pos + 1] == quotechar || buffer[pos + 1] == escape ) ) {
+              builder.append( buffer, segment, pos - segment ).append( buffer[pos + 1] );
+              pos += 2;
+              segment = pos;
+              escaped = true;
+            } else if ( c == quotechar ) {
+              if ( pos + 1 < end && buffer[pos + 1] == quotechar ) {
+                // a doubled quote is a literal quote
+                builder.append( buffer, segment, pos + 1 - segment );
+                pos += 2;
+                segment = pos;
+                escaped = true;
+              } else {
+                break;
+              }
+            } else {
+              pos++;
+            }
+          }
+          if ( slot >= 0 ) {
+            value = escaped ? builder.append( buffer, segment, pos - segment ).toString() : new String( buffer, segment, pos - segment );
+          }
+          // step over the closing quote and anything between it and the separator
+          pos++;
+          final int trailing = pos;
+          while ( pos < end && buffer[pos] != separator && buffer[pos] != '\n' ) {
+            pos++;
+          }
+          if ( slot >= 0 && pos > trailing ) {
+            final int length = ( buffer[pos - 1] == '\r' && ( pos == end || buffer[pos] == '\n' ) ) ? pos - 1 - trailing : pos - trailing;
+            if ( length > 0 ) {
+              value = value.concat( new String( buffer, trailing, length ) );
+            }
+          }
+        } else {
+          while ( pos < end && buffer[pos] != separator && buffer[pos] != '\n' ) {
+            pos++;
+          }
+          if ( slot >= 0 ) {
+            int last = pos;
+            if ( last > begin && buffer[last - 1] == '\r' && ( last == end || buffer[last] == '\n' ) ) {
+              last--;
+            }
+            value = new String( buffer, begin, last - begin );
+          }
+        }
+
+        if ( slot >= 0 ) {
+          if ( slot >= row.length ) {
+            row = Arrays.copyOf( row, row.length * 2 );
+          }
+          row[slot] = value;
+          count = Math.max( count, slot + 1 );
+        }
+
+        if ( pos < end && buffer[pos] == separator ) {
+          pos++;
+          column++;
+        } else {
+          // a newline or the end of the range
+          pos++;
+          endOfRecord = true;
+        }
+      }
+
+      if ( slots != null ) {
+        retval.add( row );
+        row = new String[width];
+      } else {
+        retval.add( Arrays.copyOf( row, count ) );
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Find the end of the first complete record in the given range of the
+   * buffer.
+   *
+   * <p>The range must start at the beginning of a record.
+   *
+   * @param buffer the characters to scan
+   * @param start the position of the start of a record
+   * @param end the position after the last character to scan
+   *
+   * @return the position after the newline ending the first record, or -1 if the range does not contain a complete record
+   */
+  public int firstRecordEnd( final char[] buffer, final int start, final int end ) {
+    return recordEnd( buffer, start, end, true );
+  }
+
+
+
+
+  /**
+   * Find the end of the last complete record in the given range of the
+   * buffer.
+   *
+   * <p>The range must start at the beginning of a record.
+   *
+   * @param buffer the characters to scan
+   * @param start the position of the start of a record
+   * @param end the position after the last character to scan
+   *
+   * @return the position after the newline ending the last complete record, or -1 if the range does not contain a complete record
+   */
+  public int lastRecordEnd( final char[] buffer, final int start, final int end ) {
+    return recordEnd( buffer, start, end, false );
+  }
+
+
+
+
+  /**
+   * Scan for record boundaries, tracking only enough state to know if a
+   * newline is within a quoted value.
+   */
+  private int recordEnd( final char[] buffer, final int start, final int end, final boolean first ) {
+    int retval = -1;
+    boolean inQuotes = false;
+    boolean fieldStart = true;
+    for ( int pos = start; pos < end; pos++ ) {
+      final char c = buffer[pos];
+      if ( inQuotes ) {
+        if ( c == escape && pos + 1 < end && ( buffer[pos + 1] == quotechar || buffer[pos + 1] == escape ) ) {
+          pos++;
+        } else if ( c == quotechar ) {
+          if ( pos + 1 < end && buffer[pos + 1] == quotechar ) {
+            pos++;
+          } else {
+            inQuotes = false;
+          }
+        }
+      } else if ( c == '\n' ) {
+        retval = pos + 1;
+        if ( first ) {
+          break;
+        }
+        fieldStart = true;
+      } else if ( c == separator ) {
+        fieldStart = true;
+      } else if ( fieldStart && c == quotechar && quotechar != CSVParser.NULL_CHARACTER ) {
+        // as in parsing, only a quote at the start of a value starts a quoted value
+        inQuotes = true;
+        fieldStart = false;
+      } else if ( c != ' ' && c != '\t' ) {
+        fieldStart = false;
+      }
+    }
+    return retval;
+  }
+
+}
@@ -3,9 +3,11 @@ package coyote.commons.eval;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -17,9 +19,10 @@ import java.util.Map;
  * <p>Some standard evaluators are included in the library, you can define your
  * own by subclassing this class.</p>
  *
- * <p>Please note that this class is not thread safe. Under multi-threaded
- * context you may have to instantiate one instance per thread (for instance
- * using java.lang.ThreadLocal).</p>
+ * <p>Expressions are compiled once into a program in reverse polish notation
+ * and cached by their text. Compiled expressions are immutable and may be
+ * shared between threads, but subclasses which resolve values from mutable
+ * state (e.g. a shared context) are only as thread safe as that state.</p>
  *
  * @param <T> The type of values handled by the evaluator
  */
@@ -33,6 +36,22 @@ public abstract class AbstractEvaluator<T> {
   private final Map<String, List<Operator>> operators;
   private final Tokenizer tokenizer;
 
+  /** The maximum number of compiled expressions each evaluator will cache */
+  private static final int CACHE_SIZE = 256;
+
+  /** Compiled expressions keyed by their text, least recently used are discarded first */
+  private final Map<String, Expression> cache = Collections.synchronizedMap(new LinkedHashMap<String, Expression>(16, 0.75F, true) {
+    private static final long serialVersionUID = 1L;
+
+
+
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, Expression> eldest) {
+      return size() > CACHE_SIZE;
+    }
+  });
+
 
 
 
@@ -137,6 +156,10 @@ public abstract class AbstractEvaluator<T> {
    * <p>The context is not limited to variable values but can be used for any
    * dynamic information.</p>
    *
+   * <p>The expression is compiled the first time it is seen and the compiled
+   * form is cached by its text, so repeated evaluations of the same
+   * expression (e.g. once per row) only pay for executing the program.</p>
+   *
    * @param expression The expression to evaluate.
    * @param evaluationContext The context of the evaluation.
    *
@@ -147,7 +170,86 @@ public abstract class AbstractEvaluator<T> {
    * @see VariableSet
    */
   public T evaluate(final String expression, final Object evaluationContext) {
-    final Deque<T> valueStack = new ArrayDeque<T>(); // values stack
+    return evaluate(compile(expression), evaluationContext);
+  }
+
+
+
+
+  /**
+   * Evaluates a compiled expression.
+   *
+   * <p>All constants, variables and literals are resolved at this time using
+   * the given evaluation context. Evaluation does not alter the compiled
+   * expression so this method may be called by multiple threads with the same
+   * expression as long as the subclass' evaluate methods are thread safe.</p>
+   *
+   * @param expression The compiled expression to evaluate.
+   * @param evaluationContext The context of the evaluation.
+   *
+   * @return the result of the evaluation.
+   *
+   * @throws IllegalArgumentException if the expression could not be evaluated.
+   *
+   * @see #compile(String)
+   */
+  public T evaluate(final Expression expression, final Object evaluationContext) {
+    final Deque<T> valueStack = new ArrayDeque<T>(expression.getSteps().size());
+    for (final Expression.Step step : expression.getSteps()) {
+      final Token token = step.getToken();
+      if (token.isMethod()) {
+        valueStack.push(evaluate(token.getMethod(), step.getArguments().iterator(), evaluationContext));
+      } else if (token.isFunction()) {
+        valueStack.push(evaluate(token.getFunction(), getArguments(valueStack, step.getCount()), evaluationContext));
+      } else {
+        output(valueStack, token, evaluationContext);
+      }
+    }
+    return valueStack.pop();
+  }
+
+
+
+
+  /**
+   * Compile the expression into a form which can be evaluated repeatedly.
+   *
+   * <p>Compiled expressions are cached by their text. If the expression was
+   * compiled before, the cached expression is returned.</p>
+   *
+   * @param expression The infix expression to compile.
+   *
+   * @return the compiled expression.
+   *
+   * @throws IllegalArgumentException if the expression is not correct.
+   */
+  public Expression compile(final String expression) {
+    if (expression == null) {
+      return parse(expression);
+    }
+    Expression retval = cache.get(expression);
+    if (retval == null) {
+      retval = parse(expression);
+      cache.put(expression, retval);
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Parse the infix expression into a program in reverse polish notation
+   * using the shunting-yard algorithm.
+   *
+   * @param expression The expression to parse.
+   *
+   * @return the compiled expression
+   *
+   * @throws IllegalArgumentException if the expression is not correct.
+   */
+  Expression parse(final String expression) {
+    final Expression program = new Expression(expression); // output queue
     final Deque<Token> operatorStack = new ArrayDeque<Token>(); // operator stack
     final Deque<Integer> previousValuesSize = functions.isEmpty() ? null : new ArrayDeque<Integer>();
 
@@ -198,7 +300,7 @@ public abstract class AbstractEvaluator<T> {
               throw new IllegalArgumentException("Invalid parenthesis match " + sc.getBrackets().getOpen() + brackets.getClose());
             }
           } else {
-            output(valueStack, sc, evaluationContext);
+            output(program, sc);
           }
         }
         if (!openBracketFound) {
@@ -209,8 +311,8 @@ public abstract class AbstractEvaluator<T> {
         if (!operatorStack.isEmpty() && operatorStack.peek().isFunction()) {
           // If the token at the top of the stack is a function token, pop it
           // onto the output queue.
-          final int argCount = valueStack.size() - previousValuesSize.pop();
-          doFunction(valueStack, operatorStack.pop().getFunction(), argCount, evaluationContext);
+          final int argCount = program.getDepth() - previousValuesSize.pop();
+          program.addFunction(operatorStack.pop().getFunction(), argCount);
         }
 
       } else if (token.isFunctionArgumentSeparator()) {
@@ -231,7 +333,7 @@ public abstract class AbstractEvaluator<T> {
           } else {
             // Until the token at the top of the stack is a left parenthesis,
             // pop operators off the stack onto the output queue.
-            output(valueStack, operatorStack.pop(), evaluationContext);
+            output(program, operatorStack.pop());
           }
         }
         if (!pe) {
@@ -243,7 +345,7 @@ public abstract class AbstractEvaluator<T> {
       } else if (token.isFunction()) {
         // If the token is a function token, then push it onto the stack.
         operatorStack.push(token);
-        previousValuesSize.push(valueStack.size());
+        previousValuesSize.push(program.getDepth());
 
       } else if (token.isMethod()) {
         // here is where we break with convention; we need to consume the next
@@ -272,9 +374,9 @@ public abstract class AbstractEvaluator<T> {
             // If the token is a closed bracket, the arguments are complete
             if (tkn.isCloseBracket()) {
 
-              // call the method with the arguments and place the return value
-              // on the valueStack
-              valueStack.push(evaluate(token.getMethod(), arguments.iterator(), evaluationContext));
+              // the method is called with the arguments when the expression
+              // is evaluated and its return value placed on the value stack
+              program.addMethod(token.getMethod(), arguments);
 
               called = true;
               // return control to the regular mathematics processing
@@ -306,7 +408,7 @@ public abstract class AbstractEvaluator<T> {
           // If 2 operators have equal priority then associativity decides.
           if (sc.isOperator() && ((token.getAssociativity().equals(Operator.Associativity.LEFT) && (token.getPrecedence() <= sc.getPrecedence())) || (token.getPrecedence() < sc.getPrecedence()))) {
             // Pop o2 off the stack, onto the output queue;
-            output(valueStack, operatorStack.pop(), evaluationContext);
+            output(program, operatorStack.pop());
           } else {
             break;
           }
@@ -318,7 +420,7 @@ public abstract class AbstractEvaluator<T> {
         if ((previous != null) && previous.isLiteral()) {
           throw new IllegalArgumentException("A literal can't follow another literal");
         }
-        output(valueStack, token, evaluationContext);
+        output(program, token);
       }
       previous = token;
     }
@@ -329,12 +431,12 @@ public abstract class AbstractEvaluator<T> {
       if (sc.isOpenBracket() || sc.isCloseBracket()) {
         throw new IllegalArgumentException("Parentheses mismatched");
       }
-      output(valueStack, sc, evaluationContext);
+      output(program, sc);
     }
-    if (valueStack.size() != 1) {
+    if (program.getDepth() != 1) {
       throw new IllegalArgumentException();
     }
-    return valueStack.pop();
+    return program;
   }
 
 
@@ -393,16 +495,6 @@ public abstract class AbstractEvaluator<T> {
 
 
 
-  private void doFunction(final Deque<T> values, final Function function, final int argCount, final Object evaluationContext) {
-    if ((function.getMinimumArgumentCount() > argCount) || (function.getMaximumArgumentCount() < argCount)) {
-      throw new IllegalArgumentException("Invalid argument count for " + function.getName() + " function");
-    }
-    values.push(evaluate(function, getArguments(values, argCount), evaluationContext));
-  }
-
-
-
-
   private Iterator<T> getArguments(final Deque<T> values, final int operandCount) {
     // Be aware that arguments are in reverse order on the values stack.
     // Don't forget to reorder them in the original order (the one they appear
@@ -456,6 +548,25 @@ public abstract class AbstractEvaluator<T> {
 
 
 
+  /**
+   * Output a token to the given program.
+   *
+   * @param program the compiled expression to populate
+   * @param token the token to output
+   */
+  private void output(final Expression program, final Token token) {
+    if (token.isLiteral()) {
+      program.addLiteral(token.getLiteral());
+    } else if (token.isOperator()) {
+      program.addOperator(token.getOperator());
+    } else {
+      throw new IllegalArgumentException();
+    }
+  }
+
+
+
+
   /**
    * Create a token from the given string taking into account the previous
    * token processed.
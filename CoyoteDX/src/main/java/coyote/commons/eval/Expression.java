@@ -0,0 +1,201 @@
+package coyote.commons.eval;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A compiled expression.
+ *
+ * <p>An expression is the result of running the shunting-yard algorithm over
+ * the tokens of an infix expression once. It holds the program in reverse
+ * polish notation (RPN) so it can be evaluated over and over without
+ * tokenizing and parsing the expression text again.</p>
+ *
+ * <p>Literals (i.e. constants and variables) are not resolved when the
+ * expression is compiled but each time it is evaluated, so the same compiled
+ * expression can be evaluated against changing data.</p>
+ *
+ * <p>Instances are immutable once compiled and can therefore be shared by
+ * multiple threads.</p>
+ *
+ * @see AbstractEvaluator#compile(String)
+ * @see AbstractEvaluator#evaluate(Expression, Object)
+ */
+public class Expression {
+  private final String text;
+  private final List<Step> steps = new ArrayList<Step>();
+  private int depth = 0;
+
+
+
+
+  /**
+   * @param text the text of the infix expression being compiled
+   */
+  Expression(final String text) {
+    this.text = text;
+  }
+
+
+
+
+  /**
+   * Add a literal to the program.
+   *
+   * @param literal the text of the literal
+   */
+  void addLiteral(final String literal) {
+    steps.add(new Step(Token.buildLiteral(literal), 0, null));
+    depth++;
+  }
+
+
+
+
+  /**
+   * Add an operator to the program.
+   *
+   * @param operator the operator to add
+   *
+   * @throws IllegalArgumentException if there are not enough operands for the operator
+   */
+  void addOperator(final Operator operator) {
+    if (depth < operator.getOperandCount()) {
+      throw new IllegalArgumentException();
+    }
+    steps.add(new Step(Token.buildOperator(operator), operator.getOperandCount(), null));
+    depth = depth - operator.getOperandCount() + 1;
+  }
+
+
+
+
+  /**
+   * Add a function call to the program.
+   *
+   * @param function the function to call
+   * @param argCount the number of arguments passed to the function
+   *
+   * @throws IllegalArgumentException if the function does not accept the number of arguments
+   */
+  void addFunction(final Function function, final int argCount) {
+    if ((function.getMinimumArgumentCount() > argCount) || (function.getMaximumArgumentCount() < argCount)) {
+      throw new IllegalArgumentException("Invalid argument count for " + function.getName() + " function");
+    }
+    if (depth < argCount) {
+      throw new IllegalArgumentException();
+    }
+    steps.add(new Step(Token.buildFunction(function), argCount, null));
+    depth = depth - argCount + 1;
+  }
+
+
+
+
+  /**
+   * Add a method call to the program.
+   *
+   * @param method the method to call
+   * @param arguments the string arguments to the method, in the order the method expects to consume them
+   */
+  void addMethod(final Method method, final List<String> arguments) {
+    steps.add(new Step(Token.buildMethod(method), arguments.size(), Collections.unmodifiableList(new ArrayList<String>(arguments))));
+    depth++;
+  }
+
+
+
+
+  /**
+   * @return the number of values currently on the stack of the program.
+   */
+  int getDepth() {
+    return depth;
+  }
+
+
+
+
+  /**
+   * @return the steps of the program in the order they are to be executed.
+   */
+  List<Step> getSteps() {
+    return steps;
+  }
+
+
+
+
+  /**
+   * @return the text of the infix expression which was compiled
+   */
+  public String getText() {
+    return text;
+  }
+
+
+
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return text;
+  }
+
+
+
+
+  /**
+   * A single instruction in the compiled program.
+   */
+  static class Step {
+    private final Token token;
+    private final int count;
+    private final List<String> arguments;
+
+
+
+
+    Step(final Token token, final int count, final List<String> arguments) {
+      this.token = token;
+      this.count = count;
+      this.arguments = arguments;
+    }
+
+
+
+
+    /**
+     * @return the token to execute
+     */
+    Token getToken() {
+      return token;
+    }
+
+
+
+
+    /**
+     * @return the number of values this step takes from the stack
+     */
+    int getCount() {
+      return count;
+    }
+
+
+
+
+    /**
+     * @return the string arguments of a method call
+     */
+    List<String> getArguments() {
+      return arguments;
+    }
+
+  }
+
+}
@@ -0,0 +1,516 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import coyote.commons.OrderedWorkQueue;
+
+
+/**
+ * Writes a ZIP archive, deflating its entries on several threads.
+ *
+ * <p>The java.util.zip output stream compresses each entry as it is written,
+ * so only one core is ever busy. This writer deflates entries concurrently,
+ * each into memory (small entries) or a temporary file (large entries), and
+ * the thread adding the entries assembles the compressed data into the
+ * archive in the order the entries were added. Only a few entries per thread
+ * are held at any time, so the size of the archive is not limited by the
+ * heap.</p>
+ *
+ * <p>The sizes and CRC of each entry are known before it is written, so the
+ * local headers hold them and no data descriptors are needed. ZIP64 records
+ * are written for entries, offsets and entry counts beyond the limits of the
+ * original format.</p>
+ */
+public class ParallelZipWriter implements Closeable {
+
+  /** Entries of this size or smaller are compressed in memory */
+  private static final long MEMORY_LIMIT = 4 * 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+
+  private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+
+  private static final int FLAG_UTF8 = 0x0800;
+
+  private static final int VERSION = 20;
+
+  private static final int VERSION_ZIP64 = 45;
+
+  private final CountingOutputStream out;
+
+  private final int level;
+
+  /** The entries being compressed, in the order they were added */
+  private final OrderedWorkQueue<Entry> pending;
+
+  /** The entries written so far, for the central directory */
+  private final List<Entry> written = new ArrayList<Entry>();
+
+  /** Each thread reuses its own buffer for reading entries */
+  private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[BUFFER_SIZE];
+    }
+  };
+
+  private boolean closed = false;
+
+
+
+
+  /**
+   * Source of the data of an entry.
+   */
+  public interface EntrySource {
+
+    /**
+     * @return a new stream of the uncompressed data of the entry
+     *
+     * @throws IOException if the data could not be opened
+     */
+    InputStream open() throws IOException;
+  }
+
+
+
+
+  /**
+   * Create a writer using the default compression level.
+   *
+   * @param file the archive file to create
+   * @param threads the number of threads compressing entries
+   *
+   * @throws IOException if the file could not be created
+   */
+  public ParallelZipWriter(final File file, final int threads) throws IOException {
+    this(new FileOutputStream(file), threads, Deflater.DEFAULT_COMPRESSION);
+  }
+
+
+
+
+  /**
+   * Create a writer.
+   *
+   * @param out the stream to which the archive is written, closed when this writer is closed
+   * @param threads the number of threads compressing entries
+   * @param level the compression level (0-9)
+   */
+  public ParallelZipWriter(final OutputStream out, final int threads, final int level) {
+    this.out = new CountingOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+    this.level = level;
+    pending = new OrderedWorkQueue<Entry>("ZipDeflater", threads) {
+      @Override
+      protected void discard(final Entry entry) {
+        entry.discard();
+      }
+    };
+  }
+
+
+
+
+  /**
+   * Add a file to the archive.
+   *
+   * @param name the name of the entry in the archive, with "/" as the path separator
+   * @param file the file to add
+   *
+   * @throws IOException if a previously added entry could not be compressed or written
+   */
+  public void add(final String name, final File file) throws IOException {
+    add(name, file.lastModified(), new EntrySource() {
+      @Override
+      public InputStream open() throws IOException {
+        return new FileInputStream(file);
+      }
+    }, file.length());
+  }
+
+
+
+
+  /**
+   * Add an entry to the archive.
+   *
+   * @param name the name of the entry in the archive, with "/" as the path separator
+   * @param time the modification time of the entry in milliseconds since the epoch
+   * @param source the source of the data of the entry
+   * @param size the expected size of the data, used to determine if it is compressed in memory, -1 if unknown
+   *
+   * @throws IOException if a previously added entry could not be compressed or written
+   */
+  public void add(final String name, final long time, final EntrySource source, final long size) throws IOException {
+    if (closed) {
+      throw new IOException("Archive is closed");
+    }
+
+    // keep the number of compressed entries waiting to be written bounded
+    while (pending.isFull()) {
+      write(pending.next());
+    }
+
+    pending.submit(new Callable<Entry>() {
+      @Override
+      public Entry call() throws IOException {
+        return compress(name, time, source, size);
+      }
+    });
+  }
+
+
+
+
+  /**
+   * Deflate the data of an entry into memory or a temporary file.
+   */
+  private Entry compress(final String name, final long time, final EntrySource source, final long size) throws IOException {
+    final Entry retval = new Entry(name, time);
+    final CRC32 crc = new CRC32();
+    final Deflater deflater = new Deflater(level, true);
+    final OutputStream sink;
+    if (size >= 0 && size <= MEMORY_LIMIT) {
+      sink = retval.data = new ByteArrayOutputStream((int)Math.max(64, size / 2));
+    } else {
+      retval.file = File.createTempFile("ZipEntry", null);
+      sink = new FileOutputStream(retval.file);
+    }
+
+    try {
+      final byte[] buffer = buffers.get();
+      try (InputStream in = source.open(); DeflaterOutputStream deflated = new DeflaterOutputStream(sink, deflater, BUFFER_SIZE)) {
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          crc.update(buffer, 0, read);
+          deflated.write(buffer, 0, read);
+          retval.size += read;
+        }
+      }
+      retval.compressedSize = deflater.getBytesWritten();
+      retval.crc = crc.getValue();
+    } catch (final IOException e) {
+      retval.discard();
+      throw e;
+    }
+    finally {
+      deflater.end();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Write a compressed entry to the archive.
+   */
+  private void write(final Entry entry) throws IOException {
+    try {
+      entry.offset = out.count;
+      final boolean zip64 = entry.isZip64();
+      final byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+      writeInt(0x04034b50);
+      writeShort(zip64 ? VERSION_ZIP64 : VERSION);
+      writeShort(FLAG_UTF8);
+      writeShort(Deflater.DEFLATED);
+      writeInt(entry.getDosTime());
+      writeInt((int)entry.crc);
+      writeInt(zip64 ? (int)ZIP64_LIMIT : (int)entry.compressedSize);
+      writeInt(zip64 ? (int)ZIP64_LIMIT : (int)entry.size);
+      writeShort(name.length);
+      writeShort(zip64 ? 20 : 0);
+      out.write(name);
+      if (zip64) {
+        writeShort(0x0001);
+        writeShort(16);
+        writeLong(entry.size);
+        writeLong(entry.compressedSize);
+      }
+
+      if (entry.data != null) {
+        entry.data.writeTo(out);
+      } else {
+        final byte[] buffer = buffers.get();
+        try (InputStream in = new FileInputStream(entry.file)) {
+          int read;
+          while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+          }
+        }
+      }
+    }
+    finally {
+      entry.discard();
+    }
+    written.add(entry);
+  }
+
+
+
+
+  /**
+   * Write all the remaining entries and the central directory, then close
+   * the archive.
+   *
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      while (!pending.isEmpty()) {
+        write(pending.next());
+      }
+      writeCentralDirectory();
+      out.flush();
+    }
+    finally {
+      // release anything left by a failure
+      pending.close();
+      out.close();
+    }
+  }
+
+
+
+
+  private void writeCentralDirectory() throws IOException {
+    final long start = out.count;
+    for (final Entry entry : written) {
+      final byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+      final boolean bigSize = entry.isZip64();
+      final boolean bigOffset = entry.offset >= ZIP64_LIMIT;
+      final int extra = (bigSize ? 16 : 0) + (bigOffset ? 8 : 0);
+      final int version = (bigSize || bigOffset) ? VERSION_ZIP64 : VERSION;
+
+      writeInt(0x02014b50);
+      writeShort(version);
+      writeShort(version);
+      writeShort(FLAG_UTF8);
+      writeShort(Deflater.DEFLATED);
+      writeInt(entry.getDosTime());
+      writeInt((int)entry.crc);
+      writeInt(bigSize ? (int)ZIP64_LIMIT : (int)entry.compressedSize);
+      writeInt(bigSize ? (int)ZIP64_LIMIT : (int)entry.size);
+      writeShort(name.length);
+      writeShort(extra > 0 ? extra + 4 : 0);
+      writeShort(0); // comment length
+      writeShort(0); // disk number
+      writeShort(0); // internal attributes
+      writeInt(0); // external attributes
+      writeInt(bigOffset ? (int)ZIP64_LIMIT : (int)entry.offset);
+      out.write(name);
+      if (extra > 0) {
+        writeShort(0x0001);
+        writeShort(extra);
+        if (bigSize) {
+          writeLong(entry.size);
+          writeLong(entry.compressedSize);
+        }
+        if (bigOffset) {
+          writeLong(entry.offset);
+        }
+      }
+    }
+    final long size = out.count - start;
+    final int count = written.size();
+
+    if (count >= ZIP64_ENTRY_LIMIT || start >= ZIP64_LIMIT || size >= ZIP64_LIMIT) {
+      final long record = out.count;
+      writeInt(0x06064b50);
+      writeLong(44);
+      writeShort(VERSION_ZIP64);
+      writeShort(VERSION_ZIP64);
+      writeInt(0);
+      writeInt(0);
+      writeLong(count);
+      writeLong(count);
+      writeLong(size);
+      writeLong(start);
+
+      // locator
+      writeInt(0x07064b50);
+      writeInt(0);
+      writeLong(record);
+      writeInt(1);
+    }
+
+    writeInt(0x06054b50);
+    writeShort(0);
+    writeShort(0);
+    writeShort(Math.min(count, ZIP64_ENTRY_LIMIT));
+    writeShort(Math.min(count, ZIP64_ENTRY_LIMIT));
+    writeInt((int)Math.min(size, ZIP64_LIMIT));
+    writeInt((int)Math.min(start, ZIP64_LIMIT));
+    writeShort(0);
+  }
+
+
+
+
+  private void writeShort(final int value) throws IOException {
+    out.write(value & 0xFF);
+    out.write((value >>> 8) & 0xFF);
+  }
+
+
+
+
+  private void writeInt(final int value) throws IOException {
+    writeShort(value & 0xFFFF);
+    writeShort((value >>> 16) & 0xFFFF);
+  }
+
+
+
+
+  private void writeLong(final long value) throws IOException {
+    writeInt((int)value);
+    writeInt((int)(value >>> 32));
+  }
+
+
+
+
+  /**
+   * An entry and its compressed data.
+   */
+  private static class Entry {
+    final String name;
+    final long time;
+    long size = 0;
+    long compressedSize = 0;
+    long crc = 0;
+    long offset = 0;
+    ByteArrayOutputStream data = null;
+    File file = null;
+
+
+
+
+    Entry(final String name, final long time) {
+      this.name = name;
+      this.time = time;
+    }
+
+
+
+
+    boolean isZip64() {
+      return size >= ZIP64_LIMIT || compressedSize >= ZIP64_LIMIT;
+    }
+
+
+
+
+    /**
+     * @return the modification time in MS-DOS format, date in the high word and time in the low word
+     */
+    int getDosTime() {
+      final Calendar cal = Calendar.getInstance();
+      cal.setTimeInMillis(time);
+      final int year = cal.get(Calendar.YEAR);
+      if (year < 1980) {
+        return (1 << 21) | (1 << 16);
+      }
+      return ((year - 1980) << 25) | ((cal.get(Calendar.MONTH) + 1) << 21) | (cal.get(Calendar.DAY_OF_MONTH) << 16) | (cal.get(Calendar.HOUR_OF_DAY) << 11) | (cal.get(Calendar.MINUTE) << 5) | (cal.get(Calendar.SECOND) >> 1);
+    }
+
+
+
+
+    /**
+     * Release the compressed data.
+     */
+    void discard() {
+      data = null;
+      if (file != null) {
+        file.delete();
+        file = null;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Tracks the number of bytes written to the archive for the offsets of
+   * the entries.
+   */
+  private static class CountingOutputStream extends OutputStream {
+    private final OutputStream out;
+    long count = 0;
+
+
+
+
+    CountingOutputStream(final OutputStream out) {
+      this.out = out;
+    }
+
+
+
+
+    @Override
+    public void write(final int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+
+
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+
+
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+
+
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+}
@@ -9,24 +9,30 @@ package coyote.commons.zip;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import coyote.commons.OrderedWorkQueue;
 import coyote.commons.StreamUtil;
 import coyote.commons.UriUtil;
 
@@ -35,9 +41,14 @@ import coyote.commons.UriUtil;
  * Higher-level interface to the native Java ZIP format handling classes.
  * 
  * <p>This allows easy addition and modification of archives without needing to
- * instantiate a local ZipFile. The trade-off is that the entire archive needs
- * to fit in memory, at least temporarily, so this is really suitable only for
- * moderate-sized archives.</p>
+ * instantiate a local ZipFile. Entries added as byte arrays are held in memory
+ * until the next flush, but files added from disk are only referenced and are
+ * streamed into the archive when it is flushed, so archives of any size can
+ * be built from the contents of directories.</p>
+ * 
+ * <p>When more than one thread is set, the entries are compressed on that many
+ * threads when the archive is flushed and entries are extracted concurrently,
+ * which is considerably faster for large archives on multi-core hosts.</p>
  * 
  * <p>Furthermore, it removes a lot of a flexibility of the lower-level 
  * interfaces in exchange for simplicity: reading an entry, dumping the whole 
@@ -50,9 +61,11 @@ import coyote.commons.UriUtil;
  * building a manifest (pre-Java 2) that I'm leaving out for now until 
  * needed.</p>
  */
-public class ZipArchive {
+public class ZipArchive implements Closeable {
   private static IFileFinder fileFinder = new DefaultFileFinder();
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+
 
 
 
@@ -76,6 +89,7 @@ public class ZipArchive {
 
       final BufferedOutputStream bout = new BufferedOutputStream(fout);
       StreamUtil.copy(bin, bout);
+      bout.flush();
     }
     finally {
       try {
@@ -136,8 +150,12 @@ public class ZipArchive {
 
   private Map<String, byte[]> addMap;
 
+  private Map<String, File> fileMap;
+
   private Map<String, Boolean> removeMap;
 
+  private int threads = 1;
+
 
 
 
@@ -196,6 +214,10 @@ public class ZipArchive {
 
     addMap.put(entryName, data);
 
+    if (fileMap != null) {
+      fileMap.remove(entryName);
+    }
+
     // if we were slated to remove the entry earlier, we have to dequeue the
     // entry now, else it will not get flushed later
     if ((removeMap != null) && removeMap.containsKey(entryName)) {
@@ -232,6 +254,35 @@ public class ZipArchive {
 
 
 
+  /**
+   * Adds a file to the archive under the given entry name.
+   * 
+   * <p>Only a reference to the file is kept; its data is streamed into the
+   * archive at the time of the next {@link #flush()} call, so the file must
+   * still exist at that time.</p>
+   *
+   * @param entryName the name of the entry, with "/" as the path separator
+   * @param file the file to add
+   */
+  public void addFile(final String entryName, final File file) {
+    if (fileMap == null) {
+      fileMap = new LinkedHashMap<String, File>();
+    }
+
+    fileMap.put(entryName, file);
+
+    if (addMap != null) {
+      addMap.remove(entryName);
+    }
+
+    if ((removeMap != null) && removeMap.containsKey(entryName)) {
+      removeMap.remove(entryName);
+    }
+  }
+
+
+
+
   /**
    * Adds all files in the given directory. 
    *
@@ -286,12 +337,11 @@ public class ZipArchive {
 
     for (int ii = 0; ii < fileList.size(); ii++) {
       final File addFile = new File(fileList.get(ii).toString());
-      final FileInputStream fis = new FileInputStream(addFile);
 
       if (archiveBasePath != null) {
-        addEntry(archiveBasePath + "/" + getZipName(baseDir, addFile), StreamUtil.loadBytes(fis));
+        addFile(archiveBasePath + "/" + getZipName(baseDir, addFile), addFile);
       } else {
-        addEntry(getZipName(baseDir, addFile), StreamUtil.loadBytes(fis));
+        addFile(getZipName(baseDir, addFile), addFile);
       }
     }
   }
@@ -315,10 +365,9 @@ public class ZipArchive {
     final File tmp = File.createTempFile("cmdjar", null);
     tmp.deleteOnExit();
 
-    final FileOutputStream out = new FileOutputStream(tmp);
-    final InputStream in = archiveURL.openStream();
-    out.write(StreamUtil.loadBytes(in));
-    out.flush();
+    try (InputStream in = archiveURL.openStream(); OutputStream out = new FileOutputStream(tmp)) {
+      copy(in, out, new byte[BUFFER_SIZE]);
+    }
 
     return tmp;
   }
@@ -326,6 +375,24 @@ public class ZipArchive {
 
 
 
+  /**
+   * Closes the underlying archive file.
+   * 
+   * <p>Any changes not yet flushed are discarded.</p>
+   *
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (zipFile != null) {
+      zipFile.close();
+      zipFile = null;
+    }
+  }
+
+
+
+
   /**
    * Gets the names of all entries in the zip file.
    * 
@@ -388,17 +455,75 @@ public class ZipArchive {
    * @throws IOException
    */
   public void extractTo(final File baseDir, final IZipEntryFilter filter) throws IOException {
+    extractTo(baseDir, filter, threads);
+  }
+
+
+
+
+  /**
+   * Unpacks matching entries in this archive to the given root directory
+   * using the given number of threads.
+   * 
+   * <p>Each thread reads its entries through its own stream from the archive
+   * so entries are inflated and written concurrently.</p>
+   *
+   * @param baseDir
+   * @param filter
+   * @param threads the number of threads extracting entries
+   * 
+   * @throws IOException
+   */
+  public void extractTo(final File baseDir, final IZipEntryFilter filter, final int threads) throws IOException {
     flush();
 
     final Enumeration<? extends ZipEntry> entries = zipFile.entries();
 
-    while (entries.hasMoreElements()) {
-      final ZipEntry ze = entries.nextElement();
+    if (threads <= 1) {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      while (entries.hasMoreElements()) {
+        final ZipEntry ze = entries.nextElement();
+
+        if (filter.accept(ze.getName())) {
+          writeEntryTo(baseDir, ze, buffer);
+        }
+      }
+      return;
+    }
+
+    final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+      @Override
+      protected byte[] initialValue() {
+        return new byte[BUFFER_SIZE];
+      }
+    };
+    final OrderedWorkQueue<Void> pending = new OrderedWorkQueue<Void>("ZipInflater", threads);
+    try {
+      while (entries.hasMoreElements()) {
+        final ZipEntry ze = entries.nextElement();
+
+        if (filter.accept(ze.getName())) {
+          // keep the number of queued entries bounded
+          while (pending.isFull()) {
+            pending.next();
+          }
+          pending.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              writeEntryTo(baseDir, ze, buffers.get());
+              return null;
+            }
+          });
+        }
+      }
 
-      if (filter.accept(ze.getName())) {
-        writeEntryTo(baseDir, ze);
+      while (!pending.isEmpty()) {
+        pending.next();
       }
     }
+    finally {
+      pending.close();
+    }
   }
 
 
@@ -414,7 +539,7 @@ public class ZipArchive {
    */
   public void extractTo(final File baseDir, final String entryName) throws IOException {
     flush();
-    writeEntryTo(baseDir, zipFile.getEntry(entryName));
+    writeEntryTo(baseDir, zipFile.getEntry(entryName), new byte[BUFFER_SIZE]);
   }
 
 
@@ -426,7 +551,7 @@ public class ZipArchive {
    * @throws IOException
    */
   public void flush() throws IOException {
-    if ((addMap != null) || (removeMap != null)) {
+    if ((addMap != null) || (fileMap != null) || (removeMap != null)) {
       // so we're not doing these checks again and again inside tight loops
       if (removeMap == null) {
         removeMap = new HashMap<String, Boolean>();
@@ -436,14 +561,92 @@ public class ZipArchive {
         addMap = new HashMap<String, byte[]>();
       }
 
+      if (fileMap == null) {
+        fileMap = new LinkedHashMap<String, File>();
+      }
+
       // to flush, we need to set up a temporary file to write the new zip
-      // file, copy the existing entries in (minus those on our removeMap or
-      // addMap) and then add those stored just in the addMap, and finally
-      // overwrite the old ZipFile with our temporary one
+      // file, copy the existing entries in (minus those on our removeMap,
+      // addMap or fileMap) and then add those stored in the addMap and
+      // fileMap, and finally overwrite the old ZipFile with our temporary one
       final File tmpFile = File.createTempFile("ZipArchive", null);
-      final FileOutputStream fos = new FileOutputStream(tmpFile);
-      final BufferedOutputStream bos = new BufferedOutputStream(fos);
-      final ZipOutputStream zos = new ZipOutputStream(bos);
+      boolean renamed = false;
+      try {
+        if (threads > 1) {
+          writeParallel(tmpFile);
+        } else {
+          writeSerial(tmpFile);
+        }
+
+        // now we can overwrite the old ZipFile and re-open it with the new data
+        // we just added
+        if (zipFile != null) {
+          zipFile.close();
+        }
+
+        if (archiveFile.exists()) {
+          if (archiveFile.canWrite()) {
+            if (!archiveFile.delete()) {
+              //throw new IOException( "unable to delete old ZIP file '" + archiveFile + "'" );
+            }
+          } else {
+            System.out.println("Archive NOT Writable!");
+          }
+        }
+
+        // if rename fails, we have to try copying the file first before we give
+        // up, because renameTo() will not work across different file systems
+        renamed = tmpFile.renameTo(archiveFile);
+        if (!renamed) {
+          try {
+            copyFile(tmpFile, archiveFile);
+          } catch (final IOException e) {
+            throw new IOException("unable to rename temporary ZIP file '" + tmpFile + "' to '" + archiveFile + "'");
+          }
+        }
+      }
+      finally {
+        // a failed write or a copy leaves the temporary file behind
+        if (!renamed) {
+          tmpFile.delete();
+        }
+      }
+
+      zipFile = new ZipFile(archiveFile);
+
+      // destroy the old add/remove maps to free up memory
+      addMap = null;
+      fileMap = null;
+      removeMap = null;
+    }
+  }
+
+
+
+
+  /**
+   * @return true if the entry of the existing archive has not been replaced
+   *         or removed since the last flush
+   */
+  private boolean isRetained(final ZipEntry ze) {
+    final String name = ze.getName();
+    return !removeMap.containsKey(name) && !addMap.containsKey(name) && !fileMap.containsKey(name);
+  }
+
+
+
+
+  /**
+   * Write the archive to the given file through a ZipOutputStream, streaming
+   * each entry through a single buffer.
+   *
+   * @param file the file to which the archive is written
+   * 
+   * @throws IOException
+   */
+  private void writeSerial(final File file) throws IOException {
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
 
       // handle writing the old entries that haven't changed; we don't have to
       // do this for a brand new ZIP
@@ -453,10 +656,16 @@ public class ZipArchive {
         while (entries.hasMoreElements()) {
           final ZipEntry ze = entries.nextElement();
 
-          if (!removeMap.containsKey(ze.getName()) && !addMap.containsKey(ze.getName())) {
-            final byte[] data = StreamUtil.loadBytes(zipFile.getInputStream(ze));
-            zos.putNextEntry(ze);
-            zos.write(data, 0, data.length);
+          if (isRetained(ze)) {
+            // a new entry, as the compressed size of the old one may not
+            // match once the data is deflated again
+            final ZipEntry entry = new ZipEntry(ze.getName());
+            entry.setTime(ze.getTime());
+            entry.setComment(ze.getComment());
+            zos.putNextEntry(entry);
+            try (InputStream in = zipFile.getInputStream(ze)) {
+              copy(in, zos, buffer);
+            }
           }
         }
       }
@@ -469,42 +678,76 @@ public class ZipArchive {
         addEntryToZip(zos, entryName, addMap.get(entryName));
       }
 
+      // stream the files straight from disk
+      for (final Map.Entry<String, File> entry : fileMap.entrySet()) {
+        final ZipEntry ze = new ZipEntry(entry.getKey());
+        ze.setTime(entry.getValue().lastModified());
+        zos.putNextEntry(ze);
+        try (InputStream in = new FileInputStream(entry.getValue())) {
+          copy(in, zos, buffer);
+        }
+      }
+
       zos.finish();
-      zos.close();
-      bos.close();
-      fos.close();
+    }
+  }
+
+
+
 
-      // now we can overwrite the old ZipFile and re-open it with the new data
-      // we just added
+  /**
+   * Write the archive to the given file, compressing entries on several
+   * threads.
+   *
+   * @param file the file to which the archive is written
+   * 
+   * @throws IOException
+   */
+  private void writeParallel(final File file) throws IOException {
+    try (ParallelZipWriter writer = new ParallelZipWriter(file, threads)) {
       if (zipFile != null) {
-        zipFile.close();
-      }
+        final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+        while (entries.hasMoreElements()) {
+          final ZipEntry ze = entries.nextElement();
 
-      if (archiveFile.exists()) {
-        if (archiveFile.canWrite()) {
-          if (!archiveFile.delete()) {
-            //throw new IOException( "unable to delete old ZIP file '" + archiveFile + "'" );
+          if (isRetained(ze)) {
+            writer.add(ze.getName(), ze.getTime(), new ParallelZipWriter.EntrySource() {
+              @Override
+              public InputStream open() throws IOException {
+                return zipFile.getInputStream(ze);
+              }
+            }, ze.getSize());
           }
-        } else {
-          System.out.println("Archive NOT Writable!");
         }
       }
 
-      // if rename fails, we have to try copying the file first before we give
-      // up, because renameTo() will not work across different file systems
-      if (!tmpFile.renameTo(archiveFile)) {
-        try {
-          copyFile(tmpFile, archiveFile);
-        } catch (final IOException e) {
-          throw new IOException("unable to rename temporary ZIP file '" + tmpFile + "' to '" + archiveFile + "'");
-        }
+      for (final Map.Entry<String, byte[]> entry : addMap.entrySet()) {
+        final byte[] data = entry.getValue();
+        writer.add(entry.getKey(), System.currentTimeMillis(), new ParallelZipWriter.EntrySource() {
+          @Override
+          public InputStream open() {
+            return new ByteArrayInputStream(data);
+          }
+        }, data.length);
       }
 
-      zipFile = new ZipFile(archiveFile);
+      for (final Map.Entry<String, File> entry : fileMap.entrySet()) {
+        writer.add(entry.getKey(), entry.getValue());
+      }
+    }
+  }
 
-      // destroy the old add/remove maps to free up memory
-      addMap = null;
-      removeMap = null;
+
+
+
+  /**
+   * Copy the stream to the output through the given buffer.
+   */
+  private static void copy(final InputStream in, final OutputStream out, final byte[] buffer) throws IOException {
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
     }
   }
 
@@ -535,6 +778,10 @@ public class ZipArchive {
     // and if the entry's there
     if ((addMap != null) && (addMap.containsKey(entryName))) {
       return addMap.get(entryName);
+    } else if ((fileMap != null) && (fileMap.containsKey(entryName))) {
+      try (InputStream in = new FileInputStream(fileMap.get(entryName))) {
+        return StreamUtil.loadBytes(in);
+      }
     } else {
       // ...otherwise go read directly from the local ZipFile
       if ((removeMap != null) && removeMap.containsKey(entryName)) {
@@ -591,7 +838,12 @@ public class ZipArchive {
     // "to-remove" list for consultatation on the next flush
     if ((addMap != null) && (addMap.containsKey(entryName))) {
       addMap.remove(entryName);
+    } else if ((fileMap != null) && (fileMap.containsKey(entryName))) {
+      fileMap.remove(entryName);
     } else {
+      if (removeMap == null) {
+        removeMap = new HashMap<String, Boolean>();
+      }
       removeMap.put(entryName, Boolean.TRUE);
     }
 
@@ -611,24 +863,62 @@ public class ZipArchive {
 
 
 
+  /**
+   * @return the number of threads used to compress and extract entries
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+
+
+
+  /**
+   * Set the number of threads used to compress entries when the archive is
+   * flushed and to extract entries.
+   * 
+   * <p>The default of 1 writes the archive through a ZipOutputStream on the
+   * calling thread.</p>
+   *
+   * @param threads the number of threads to use
+   */
+  public void setThreads(final int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+
+
+
   /**
    * Internal helper method that handles the details of file extraction and
    * creation relative to a base directory.
+   * 
+   * <p>Entries which would be written outside of the base directory (e.g.
+   * "../../file") are rejected.</p>
    *
    * @param baseDir
    * @param ze
+   * @param buffer the buffer through which the data is copied
    * 
    * @throws IOException
    */
-  private void writeEntryTo(final File baseDir, final ZipEntry ze) throws IOException {
+  private void writeEntryTo(final File baseDir, final ZipEntry ze, final byte[] buffer) throws IOException {
     final File out = new File(baseDir, getLocalFileName(ze.getName()));
-    out.getParentFile().mkdirs();
+    final String basePath = baseDir.getCanonicalPath() + File.separator;
+    if (!out.getCanonicalPath().startsWith(basePath)) {
+      throw new IOException("zip entry is outside of the target directory: " + ze.getName());
+    }
 
-    if (!ze.isDirectory()) {
-      final FileOutputStream fos = new FileOutputStream(out);
-      final BufferedOutputStream bos = new BufferedOutputStream(fos);
-      StreamUtil.copy(zipFile.getInputStream(ze), fos);
-      bos.close();
+    if (ze.isDirectory()) {
+      out.mkdirs();
+    } else {
+      out.getParentFile().mkdirs();
+      try (InputStream in = zipFile.getInputStream(ze); OutputStream fos = new FileOutputStream(out)) {
+        copy(in, fos, buffer);
+      }
+      if (ze.getTime() > 0) {
+        out.setLastModified(ze.getTime());
+      }
     }
   }
-}
\ No newline at end of file
+}
@@ -7,11 +7,13 @@
  */
 package coyote.dx;
 
+import coyote.commons.DaemonThreadFactory;
 import coyote.commons.ExceptionUtil;
 import coyote.commons.GUID;
 import coyote.commons.StringUtil;
 import coyote.commons.template.SymbolTable;
 import coyote.commons.template.Template;
+import coyote.dataframe.DataField;
 import coyote.dataframe.DataFrame;
 import coyote.dx.context.ContextKey;
 import coyote.dx.context.ContextListener;
@@ -22,6 +24,7 @@ import coyote.dx.mapper.MappingException;
 import coyote.dx.validate.ValidationException;
 import coyote.i13n.AppEvent;
 import coyote.loader.Loader;
+import coyote.loader.cfg.Config;
 import coyote.loader.log.Log;
 import coyote.loader.log.LogMsg;
 
@@ -32,6 +35,17 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
@@ -39,6 +53,14 @@ import java.util.List;
  */
 public abstract class AbstractTransformEngine extends AbstractConfigurableComponent implements TransformEngine, ConfigurableComponent {
     static final String FORMAT_SYMBOL_LOOKUP_TAG = "FormatSymbol";
+    /**
+     * The default number of frames which may be in the pipeline at one time.
+     */
+    static final int DEFAULT_PIPELINE_CAPACITY = 1024;
+    /**
+     * How long (in milliseconds) the pipeline writer waits for a frame before checking for the end of the stream.
+     */
+    private static final long PIPELINE_POLL_INTERVAL = 100;
     /**
      * A symbol table to support basic template functions
      */
@@ -266,64 +288,68 @@ public abstract class AbstractTransformEngine extends AbstractConfigurableCompon
                 // loop through all data read in by the reader until EOF or an error in
                 // the transform context occurs.
                 getContext().setState("Process");
-                while (getContext().isNotInError() && reader != null && !reader.eof()) {
-
-                    // Create a new Transaction context with the list of listeners to react
-                    // to events in the transaction.
-                    TransactionContext txnContext = new TransactionContext(getContext());
-
-                    // place a reference to the transaction in the transform context
-                    getContext().setTransaction(txnContext);
-
-                    // Create a component to place in the Templates to give them access to
-                    // all the data in the contexts and advanced functions
-                    TemplateAccess access = new TemplateAccess(getContext());
-                    Template.putStatic("Context", access);
-
-                    // Start the clock and fire event listeners for the beginning of the
-                    // transaction
-                    txnContext.start();
-                    txnContext.setState("Read");
-
-                    // Read a frame into the given context (source frame)
-                    DataFrame retval = reader.read(txnContext);
-
-                    // Sometimes readers read empty lines and the like, skip null dataframes
-                    if (retval != null) {
-
-                        // Set the returned dataframe into the transaction context
-                        txnContext.setSourceFrame(retval);
-                        getContext().setRow(++currentFrameNumber);
-                        getContext().getSymbols().put(Symbols.CURRENT_FRAME, currentFrameNumber);
-                        getContext().getSymbols().put(Symbols.LAST_FRAME, txnContext.isLastFrame());
-                        txnContext.fireRead(txnContext, reader);
-
-                        filter(txnContext);
-
-                        // If the working frame did not get filtered out...
-                        if (txnContext.getWorkingFrame() != null) {
-                            validate(txnContext);
-                            if (txnContext.isNotInError()) {
-                                transform(txnContext);
-                                map(txnContext);
-                                if (aggregators.size() > 0) {
-                                    aggregateAndwrite(txnContext);
-                                } else {
-                                    write(txnContext);
-                                }
-                            } // passed validators
-                        } // passed filters
-
-                        // Now end the transaction which should fire any context listeners
-                        txnContext.end();
-
-                        if (txnContext.isInError()) {
-                            transactionErrors++;
-                        }
-
-                    } // if something was read in
-
-                } // Reader !eof and context is without error
+                if (isPipelined()) {
+                    transactionErrors = processPipelined();
+                } else {
+                    while (getContext().isNotInError() && reader != null && !reader.eof()) {
+
+                        // Create a new Transaction context with the list of listeners to react
+                        // to events in the transaction.
+                        TransactionContext txnContext = new TransactionContext(getContext());
+
+                        // place a reference to the transaction in the transform context
+                        getContext().setTransaction(txnContext);
+
+                        // Create a component to place in the Templates to give them access to
+                        // all the data in the contexts and advanced functions
+                        TemplateAccess access = new TemplateAccess(getContext());
+                        Template.putStatic("Context", access);
+
+                        // Start the clock and fire event listeners for the beginning of the
+                        // transaction
+                        txnContext.start();
+                        txnContext.setState("Read");
+
+                        // Read a frame into the given context (source frame)
+                        DataFrame retval = reader.read(txnContext);
+
+                        // Sometimes readers read empty lines and the like, skip null dataframes
+                        if (retval != null) {
+
+                            // Set the returned dataframe into the transaction context
+                            txnContext.setSourceFrame(retval);
+                            getContext().setRow(++currentFrameNumber);
+                            getContext().getSymbols().put(Symbols.CURRENT_FRAME, currentFrameNumber);
+                            getContext().getSymbols().put(Symbols.LAST_FRAME, txnContext.isLastFrame());
+                            txnContext.fireRead(txnContext, reader);
+
+                            filter(txnContext);
+
+                            // If the working frame did not get filtered out...
+                            if (txnContext.getWorkingFrame() != null) {
+                                validate(txnContext);
+                                if (txnContext.isNotInError()) {
+                                    transform(txnContext);
+                                    map(txnContext);
+                                    if (aggregators.size() > 0) {
+                                        aggregateAndwrite(txnContext);
+                                    } else {
+                                        write(txnContext);
+                                    }
+                                } // passed validators
+                            } // passed filters
+
+                            // Now end the transaction which should fire any context listeners
+                            txnContext.end();
+
+                            if (txnContext.isInError()) {
+                                transactionErrors++;
+                            }
+
+                        } // if something was read in
+
+                    } // Reader !eof and context is without error
+                }
 
             } // transformContext ! err after pre-processing
 
@@ -402,6 +428,235 @@ public abstract class AbstractTransformEngine extends AbstractConfigurableCompon
         }
     }
 
+    /**
+     * Determine if this engine is to run its frames through a pipeline of
+     * concurrent stages instead of one frame at a time on the engine thread.
+     *
+     * @return true if the engine has a pipeline configuration section
+     */
+    public boolean isPipelined() {
+        return getPipelineConfiguration() != null;
+    }
+
+    /**
+     * @return the pipeline configuration section or null if the engine is not pipelined
+     */
+    protected Config getPipelineConfiguration() {
+        return configuration.getSection(ConfigTag.PIPELINE);
+    }
+
+    /**
+     * Process all the frames from the reader through a pipeline of stages.
+     *
+     * <p>The reader runs on the engine thread and hands each transaction to a
+     * pool of workers which filter, validate, transform and map the frames
+     * concurrently. A single writer thread takes the completed transactions in
+     * the order they were read, passes them to the aggregators and writers and
+     * ends the transaction. A bounded queue connects the stages so a slow
+     * writer blocks the reader instead of filling the heap.</p>
+     *
+     * <p>Read and start events fire on the reader thread. All other listener
+     * events are deferred by the workers and fired by the writer thread so
+     * listeners see the events of each transaction in read order, one
+     * transaction at a time. Each stage binds the transaction it is working on
+     * to its thread so {@code getContext().getTransaction()} returns the
+     * transaction the component is processing.</p>
+     *
+     * <p>Only the filters, validators, transformers and mapper run
+     * concurrently, so they must be stateless if more than one worker is
+     * configured. Jobs with stateful transforms (e.g. counters) should set
+     * {@code Workers} to 1 which still overlaps reading, processing and
+     * writing.</p>
+     *
+     * @return the number of transactions which completed in error
+     */
+    private int processPipelined() {
+        final Config cfg = getPipelineConfiguration();
+        final int workers = Math.max(1, getPipelineSetting(cfg, ConfigTag.WORKERS, Runtime.getRuntime().availableProcessors()));
+        final int capacity = Math.max(1, getPipelineSetting(cfg, ConfigTag.CAPACITY, DEFAULT_PIPELINE_CAPACITY));
+        Log.debug("Engine '" + getName() + "' running pipelined with " + workers + " worker(s) and a capacity of " + capacity + " frames");
+
+        final BlockingQueue<Future<TransactionContext>> completions = new ArrayBlockingQueue<Future<TransactionContext>>(capacity);
+        final AtomicBoolean readComplete = new AtomicBoolean(false);
+        final AtomicInteger errors = new AtomicInteger(0);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(workers, new DaemonThreadFactory(getName() + "-worker"));
+
+        Thread writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!readComplete.get() || !completions.isEmpty()) {
+                        Future<TransactionContext> future = completions.poll(PIPELINE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                        if (future != null) {
+                            try {
+                                TransactionContext txnContext = future.get();
+                                if (completeTransaction(txnContext)) {
+                                    errors.incrementAndGet();
+                                }
+                                // the job symbols reflect the last frame written
+                                getContext().getSymbols().put(Symbols.CURRENT_FRAME, txnContext.getSymbols().get(Symbols.CURRENT_FRAME));
+                                getContext().getSymbols().put(Symbols.LAST_FRAME, txnContext.isLastFrame());
+                            } catch (ExecutionException e) {
+                                Log.error("Engine '" + getName() + "' pipeline error - " + e.getCause().getClass().getSimpleName() + ": " + e.getCause().getMessage());
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    getContext().setError("Pipeline writer interrupted");
+                    drainPipeline(completions, readComplete);
+                } catch (Throwable t) {
+                    Log.error("Engine '" + getName() + "' pipeline writer error - " + t.getClass().getSimpleName() + ": " + t.getMessage() + "\n" + ExceptionUtil.stackTrace(t));
+                    getContext().setError("Pipeline writer failed - " + t.getClass().getSimpleName() + ": " + t.getMessage());
+                    errors.incrementAndGet();
+                    drainPipeline(completions, readComplete);
+                }
+            }
+        }, getName() + "-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        // Components access the current transaction through the template fixture
+        Template.putStatic("Context", new TemplateAccess(getContext()));
+
+        try {
+            while (getContext().isNotInError() && reader != null && !reader.eof()) {
+                final TransactionContext txnContext = new TransactionContext(getContext());
+                getContext().setTransaction(txnContext);
+                getContext().bindTransaction(txnContext);
+                txnContext.start();
+                txnContext.setState("Read");
+
+                DataFrame retval = reader.read(txnContext);
+                if (retval != null) {
+                    txnContext.setSourceFrame(retval);
+                    getContext().setRow(++currentFrameNumber);
+
+                    // workers resolve templates concurrently so each transaction gets its own symbols
+                    SymbolTable symbols = (SymbolTable)getContext().getSymbols().clone();
+                    symbols.put(Symbols.CURRENT_FRAME, currentFrameNumber);
+                    symbols.put(Symbols.LAST_FRAME, txnContext.isLastFrame());
+                    txnContext.setSymbols(symbols);
+                    txnContext.fireRead(txnContext, reader);
+
+                    // hold the rest of the events until the writer stage completes the transaction
+                    txnContext.deferEvents();
+                    completions.put(pool.submit(new Callable<TransactionContext>() {
+                        @Override
+                        public TransactionContext call() {
+                            processTransaction(txnContext);
+                            return txnContext;
+                        }
+                    }));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getContext().setError("Pipeline reader interrupted");
+        } finally {
+            getContext().bindTransaction(null);
+            readComplete.set(true);
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pool.shutdownNow();
+        }
+
+        return errors.get();
+    }
+
+    /**
+     * Cancel the transactions left in the pipeline after the writer stage
+     * failed so the reader is never blocked waiting for room in the queue.
+     *
+     * @param completions  the queue of transactions between the stages
+     * @param readComplete set when the reader has stopped adding transactions
+     */
+    private static void drainPipeline(BlockingQueue<Future<TransactionContext>> completions, AtomicBoolean readComplete) {
+        while (!readComplete.get() || !completions.isEmpty()) {
+            Future<TransactionContext> future = completions.poll();
+            if (future != null) {
+                future.cancel(true);
+            } else {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(PIPELINE_POLL_INTERVAL));
+            }
+        }
+    }
+
+    /**
+     * The middle stage of the pipeline; filter, validate, transform and map
+     * the transaction on a worker thread.
+     *
+     * @param txnContext the transaction to process
+     */
+    private void processTransaction(TransactionContext txnContext) {
+        getContext().bindTransaction(txnContext);
+        try {
+            filter(txnContext);
+            if (txnContext.getWorkingFrame() != null) {
+                validate(txnContext);
+                if (txnContext.isNotInError()) {
+                    transform(txnContext);
+                    map(txnContext);
+                }
+            }
+        } catch (Exception e) {
+            Log.error("Engine '" + getName() + "' pipeline worker error - " + e.getClass().getSimpleName() + ": " + e.getMessage() + "\n" + ExceptionUtil.stackTrace(e));
+            txnContext.setError(e.getMessage());
+        } finally {
+            getContext().bindTransaction(null);
+        }
+    }
+
+    /**
+     * The last stage of the pipeline; fire the deferred events, aggregate and
+     * write the transaction then end it.
+     *
+     * @param txnContext the processed transaction
+     * @return true if the transaction completed in error, false otherwise
+     */
+    private boolean completeTransaction(TransactionContext txnContext) {
+        getContext().bindTransaction(txnContext);
+        try {
+            txnContext.fireDeferredEvents();
+            if (txnContext.getWorkingFrame() != null && txnContext.isNotInError()) {
+                if (aggregators.size() > 0) {
+                    aggregateAndwrite(txnContext);
+                } else {
+                    write(txnContext);
+                }
+            }
+            txnContext.end();
+        } finally {
+            getContext().bindTransaction(null);
+        }
+        return txnContext.isInError();
+    }
+
+    /**
+     * Retrieve an integer setting from the pipeline configuration.
+     *
+     * @param cfg          the pipeline configuration
+     * @param name         the name of the setting (case insensitive)
+     * @param defaultValue the value to return if the setting is missing or invalid
+     * @return the configured value or the default value
+     */
+    private int getPipelineSetting(Config cfg, String name, int defaultValue) {
+        DataField field = cfg.getFieldIgnoreCase(name);
+        if (field != null && !field.isNull()) {
+            try {
+                return Integer.parseInt(field.getStringValue().trim());
+            } catch (NumberFormatException e) {
+                Log.warn("Invalid pipeline " + name + " setting '" + field.getStringValue() + "' using " + defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Read in historic data to prime (preload) components so they can base
      * their calculations based on previous / historic frames.
@@ -14,19 +14,28 @@ public class ConfigTag {
 
   // System Properties
 
+  public static final String BULK = "bulk";
   public static final String CIPHER_NAME = "cipher.name";
   public static final String CIPHER_KEY = "cipher.key";
 
   // General Configuration Tags
 
+  public static final String AGGREGATES = "aggregates";
   public static final String AGGREGATOR = "aggregator";
+  public static final String ALGORITHMS = "Algorithms";
   public static final String ALIGN = "align";
   public static final String AUTO_ADJUST = "autoadjust";
   public static final String AUTO_CREATE = "autocreate";
   public static final String BATCH = "batch";
+  public static final String BUFFER_SIZE = "BufferSize";
+  public static final String CHANNEL = "channel";
+  public static final String CHANNELS = "Channels";
   public static final String CHARACTER = "character";
+  public static final String CHECKPOINT = "Checkpoint";
   public static final String CLASS = "class";
+  public static final String COMMIT_INTERVAL = "CommitInterval";
   public static final String CONDITION = "condition";
+  public static final String CONFIRM = "Confirm";
   public static final String DATA = "data";
   public static final String DATEFORMAT = "dateformat";
   public static final String DEFAULT = "default";
@@ -36,9 +45,14 @@ public class ConfigTag {
   public static final String DRIVER = "driver";
   public static final String ENCODING = "Encoding";
   public static final String EVALUATE = "evaluate";
+  public static final String FETCH_SIZE = "FetchSize";
   public static final String FIELDS = "fields";
+  public static final String FLUSH_INTERVAL = "FlushInterval";
+  public static final String FLUSH_ROWS = "FlushRows";
+  public static final String FOLLOW = "Follow";
   public static final String FOOTER = "footer";
   public static final String FORMAT = "format";
+  public static final String FUNCTION = "function";
   public static final String GROUP = "Group";
   public static final String HEADER = "header";
   public static final String HELP = "help";
@@ -47,20 +61,29 @@ public class ConfigTag {
   public static final String INDENT = "indent";
   public static final String JOB = "Job";
   public static final String KEEPDATE = "keepdate";
+  public static final String KEYS = "keys";
   public static final String LENGTH = "length";
   public static final String LIBRARY = "library";
   public static final String LIMIT = "limit";
   public static final String LINEMAP = "linemap";
   public static final String LISTEN = "Listen";
   public static final String LOGGING = "Logging";
+  public static final String MANIFEST = "Manifest";
+  public static final String MAX_DISTINCT = "maxdistinct";
+  public static final String MAX_GROUPS = "maxgroups";
   public static final String MESSAGE = "Message";
   public static final String MODE = "mode";
   public static final String NAME = "name";
   public static final String OVERWRITE = "overwrite";
+  public static final String PARTITIONS = "Partitions";
+  public static final String PARTITION_COLUMN = "PartitionColumn";
   public static final String PASSWORD = "password";
   public static final String PATH = "path";
   public static final String PATTERN = "pattern";
+  public static final String POLL_INTERVAL = "PollInterval";
+  public static final String POOL = "pool";
   public static final String PREEMTIVE_AUTH = "preemptive_auth";
+  public static final String PREFETCH = "Prefetch";
   public static final String PRELOAD = "preload";
   public static final String PRESERVE = "preserve";
   public static final String PRIVATEKEY = "PrivateKey";
@@ -89,6 +112,7 @@ public class ConfigTag {
   public static final String USERNAME = "username";
   public static final String USE_SSL = "usessl";
   public static final String VALUE = "value";
+  public static final String WINDOW = "Window";
   public static final String WRITE = "write";
   public static final String FLATTEN = "flatten";
   public static final String PROVIDER = "provider";
@@ -131,6 +155,9 @@ public class ConfigTag {
   public static final String CATEGORY = "category";
   public static final String ENABLED = "enabled";
   public static final String VAULT = "vault";
+  public static final String PIPELINE = "Pipeline";
+  public static final String WORKERS = "workers";
+  public static final String CAPACITY = "capacity";
 
   // Tasks
 
@@ -179,5 +206,6 @@ public class ConfigTag {
   public static final String NONE = "None";
   public static final String ASCEND_CI = "AscendNoCase";
   public static final String DESCEND_CI = "DescendNoCase";
+  public static final String MEMORY = "memory";
 
 }
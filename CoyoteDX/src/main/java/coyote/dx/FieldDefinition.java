@@ -56,6 +56,33 @@ public class FieldDefinition {
 
 
 
+  /**
+   * Create a copy of the given definition with its own formatters.
+   *
+   * <p>Date and decimal formats are not thread-safe, so each thread
+   * converting values needs its own copy of the definition.</p>
+   *
+   * @param def the definition to copy
+   */
+  public FieldDefinition(FieldDefinition def) {
+    type = def.type;
+    start = def.start;
+    length = def.length;
+    alignment = def.alignment;
+    name = def.name;
+    trimFlag = def.trimFlag;
+    formatText = def.formatText;
+    if (def.dateFormat != null) {
+      dateFormat = (DateFormat)def.dateFormat.clone();
+    }
+    if (def.decimalFormat != null) {
+      decimalFormat = (DecimalFormat)def.decimalFormat.clone();
+    }
+  }
+
+
+
+
   public FieldDefinition(String name, int start, int length, String type, String format, boolean trim, int align) {
     if (StringUtil.isBlank(name)) {
       throw new IllegalArgumentException("Name is required for field definition");
@@ -7,7 +7,9 @@
  */
 package coyote.dx;
 
+import java.util.Date;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import coyote.dataframe.DataField;
@@ -17,15 +19,33 @@ import coyote.i13n.SimpleMetric;
 /**
  * This class examines the sampled data fields and tracks several metrics.
  *
- * TODO track data based on types...numerics : MinMaxAvgSDev
+ * <p>All the metrics are kept in a fixed amount of memory regardless of how
+ * many values are sampled or how many of them are distinct. Unique values
+ * are counted exactly until {@link #EXACT_UNIQUE_LIMIT} distinct values have
+ * been seen, then estimated with a HyperLogLog sketch. Numeric values have
+ * their minimum, maximum, mean and standard deviation tracked along with a
+ * quantile sketch and all values have their most frequent occurrences
+ * tracked.</p>
  */
 public class FieldMetrics {
+  /** The number of distinct values counted exactly before estimating */
+  public static final int EXACT_UNIQUE_LIMIT = 1000;
   private static final String BYTE_LENGTH = "Byte Length";
   private static final String STRING_LENGTH = "String Length";
   private long fieldLength = -1L;
   private String fieldName = null;
   private String fieldType = null;
-  private final Set<Object> values = new HashSet<Object>();
+  private Set<String> values = new HashSet<String>();
+  private final HyperLogLog distinct = new HyperLogLog();
+  private final FrequentValues frequent = new FrequentValues();
+  private QuantileSketch quantiles = null;
+  private long numericCount = 0;
+  private double numericMean = 0D;
+  private double numericM2 = 0D;
+  private double numericMin = Double.NaN;
+  private double numericMax = Double.NaN;
+  private Date earliest = null;
+  private Date latest = null;
   long blankCount = 0;
   SimpleMetric byteLength = new SimpleMetric(BYTE_LENGTH, "");
   long emptyCount = 0;
@@ -79,7 +99,7 @@ public class FieldMetrics {
 
   public float getCoincidence() {
     if (sampleCount > 0) {
-      return (float)(sampleCount - (values.size() - 1)) / (float)sampleCount;
+      return (float)(sampleCount - (getUniqueValues() - 1)) / (float)sampleCount;
     } else {
       return 1F;
     }
@@ -113,7 +133,7 @@ public class FieldMetrics {
 
 
   public long getMaximumByteLength() {
-    return byteLength.getMinValue();
+    return byteLength.getMaxValue();
   }
 
 
@@ -137,7 +157,7 @@ public class FieldMetrics {
 
 
   public long getMinimumByteLength() {
-    return byteLength.getMaxValue();
+    return byteLength.getMinValue();
   }
 
 
@@ -218,8 +238,126 @@ public class FieldMetrics {
 
 
 
+  /**
+   * @return the number of distinct values observed, exact for small numbers of values and estimated (within a few percent) above {@link #EXACT_UNIQUE_LIMIT}
+   */
   public int getUniqueValues() {
-    return values.size();
+    if (values != null) {
+      return values.size();
+    } else {
+      return (int)Math.min(Integer.MAX_VALUE, Math.max(EXACT_UNIQUE_LIMIT, distinct.cardinality()));
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of numeric values sampled
+   */
+  public long getNumericCount() {
+    return numericCount;
+  }
+
+
+
+
+  /**
+   * @return the smallest numeric value sampled, NaN if no numeric values were sampled
+   */
+  public double getMinimumValue() {
+    return numericMin;
+  }
+
+
+
+
+  /**
+   * @return the largest numeric value sampled, NaN if no numeric values were sampled
+   */
+  public double getMaximumValue() {
+    return numericMax;
+  }
+
+
+
+
+  /**
+   * @return the mean of the numeric values sampled, NaN if no numeric values were sampled
+   */
+  public double getMeanValue() {
+    return (numericCount > 0) ? numericMean : Double.NaN;
+  }
+
+
+
+
+  /**
+   * @return the (population) standard deviation of the numeric values sampled, NaN if no numeric values were sampled
+   */
+  public double getStdDevValue() {
+    return (numericCount > 0) ? Math.sqrt(numericM2 / numericCount) : Double.NaN;
+  }
+
+
+
+
+  /**
+   * Estimate the numeric value at the given quantile.
+   *
+   * @param fraction the quantile between 0.0 and 1.0, (e.g. 0.95 for the 95th percentile)
+   *
+   * @return the estimated value at that quantile, NaN if no numeric values were sampled
+   */
+  public double getQuantile(final double fraction) {
+    return (quantiles != null) ? quantiles.getQuantile(fraction) : Double.NaN;
+  }
+
+
+
+
+  /**
+   * @return the estimated median of the numeric values sampled, NaN if no numeric values were sampled
+   */
+  public double getMedian() {
+    return getQuantile(0.5D);
+  }
+
+
+
+
+  /**
+   * @return the earliest date sampled, null if no dates were sampled
+   */
+  public Date getEarliestDate() {
+    return earliest;
+  }
+
+
+
+
+  /**
+   * @return the latest date sampled, null if no dates were sampled
+   */
+  public Date getLatestDate() {
+    return latest;
+  }
+
+
+
+
+  /**
+   * Return the most frequently observed values.
+   *
+   * <p>Counts are estimates; a value which has not been seen for a while may
+   * have been displaced by newer values and its count is an upper bound.</p>
+   *
+   * @param limit the maximum number of values to return
+   *
+   * @return the values mapped to their counts in descending order of count
+   */
+  public Map<String, Long> getTopValues(final int limit) {
+    return frequent.getTop(limit);
   }
 
 
@@ -238,7 +376,11 @@ public class FieldMetrics {
     // Set metrics based on the value of the field
     final String value = field.getStringValue();
     if (value != null) {
-      values.add(value);
+      distinct.add(value);
+      if (values != null && values.add(value) && values.size() > EXACT_UNIQUE_LIMIT) {
+        values = null;
+      }
+      frequent.add(value);
 
       if (value.length() == 0) {
         emptyCount++;
@@ -247,7 +389,12 @@ public class FieldMetrics {
       }
 
       stringLength.sample(value.length());
-      byteLength.sample(field.getBytes().length);
+      if (field.getType() == DataField.STRING) {
+        byteLength.sample(utf8Length(value));
+      } else {
+        byteLength.sample(field.getBytes().length);
+      }
+      sampleValue(field.getObjectValue());
     } else {
       nullCount++;
     }
@@ -257,6 +404,65 @@ public class FieldMetrics {
 
 
 
+  private void sampleValue(final Object value) {
+    if (value instanceof Number) {
+      final double number = ((Number)value).doubleValue();
+      if (Double.isNaN(number) || Double.isInfinite(number)) {
+        return;
+      }
+      numericCount++;
+      final double delta = number - numericMean;
+      numericMean += delta / numericCount;
+      numericM2 += delta * (number - numericMean);
+      if (numericCount == 1 || number < numericMin) {
+        numericMin = number;
+      }
+      if (numericCount == 1 || number > numericMax) {
+        numericMax = number;
+      }
+      if (quantiles == null) {
+        quantiles = new QuantileSketch();
+      }
+      quantiles.add(number);
+    } else if (value instanceof Date) {
+      final Date date = (Date)value;
+      if (earliest == null || date.before(earliest)) {
+        earliest = date;
+      }
+      if (latest == null || date.after(latest)) {
+        latest = date;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Calculate the number of bytes the string occupies when UTF-8 encoded
+   * without encoding it.
+   */
+  static int utf8Length(final String value) {
+    int retval = 0;
+    for (int i = 0; i < value.length(); i++) {
+      final char ch = value.charAt(i);
+      if (ch < 0x80) {
+        retval++;
+      } else if (ch < 0x800) {
+        retval += 2;
+      } else if (Character.isHighSurrogate(ch) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+        retval += 4;
+        i++;
+      } else {
+        retval += 3;
+      }
+    }
+    return retval;
+  }
+
+
+
+
   /**
    * @param length the length to set
    */
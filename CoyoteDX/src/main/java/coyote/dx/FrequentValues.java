@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Tracks the most frequently observed values in a fixed number of counters.
+ *
+ * <p>This uses the Space-Saving algorithm: when a value without a counter is
+ * observed and all the counters are in use, the counter with the lowest count
+ * is given to the new value and incremented. Any value occurring more than
+ * {@code 1/capacity} of the time is guaranteed to hold a counter and counts
+ * are over-estimated by no more than the smallest count.</p>
+ */
+class FrequentValues {
+  static final int DEFAULT_CAPACITY = 32;
+
+  private final int capacity;
+  private final Map<String, long[]> counters;
+
+
+
+
+  FrequentValues() {
+    this(DEFAULT_CAPACITY);
+  }
+
+
+
+
+  /**
+   * @param capacity the number of counters to maintain
+   */
+  FrequentValues(final int capacity) {
+    this.capacity = capacity;
+    counters = new HashMap<String, long[]>(capacity * 2);
+  }
+
+
+
+
+  /**
+   * Count an occurrence of the given value.
+   *
+   * @param value the observed value
+   */
+  void add(final String value) {
+    final long[] counter = counters.get(value);
+    if (counter != null) {
+      counter[0]++;
+    } else if (counters.size() < capacity) {
+      counters.put(value, new long[]{1});
+    } else {
+      String victim = null;
+      long[] lowest = null;
+      for (final Map.Entry<String, long[]> entry : counters.entrySet()) {
+        if (lowest == null || entry.getValue()[0] < lowest[0]) {
+          victim = entry.getKey();
+          lowest = entry.getValue();
+        }
+      }
+      counters.remove(victim);
+      lowest[0]++;
+      counters.put(value, lowest);
+    }
+  }
+
+
+
+
+  /**
+   * Return the most frequent values in descending order of their (estimated)
+   * counts.
+   *
+   * @param limit the maximum number of values to return
+   *
+   * @return map of values to their counts, ordered by count
+   */
+  Map<String, Long> getTop(final int limit) {
+    final List<Map.Entry<String, long[]>> entries = new ArrayList<Map.Entry<String, long[]>>(counters.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+    final Map<String, Long> retval = new LinkedHashMap<String, Long>();
+    for (int i = 0; i < entries.size() && i < limit; i++) {
+      retval.put(entries.get(i).getKey(), entries.get(i).getValue()[0]);
+    }
+    return retval;
+  }
+
+}
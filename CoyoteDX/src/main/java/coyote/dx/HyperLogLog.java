@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx;
+
+import java.util.Arrays;
+
+
+/**
+ * Estimates the number of distinct values observed in a fixed amount of
+ * memory.
+ *
+ * <p>Each value is hashed to 64 bits; the first {@code precision} bits
+ * select a register and the register retains the longest run of leading
+ * zeros seen in the remaining bits. The harmonic mean of the registers gives
+ * the estimate with a standard error of about {@code 1.04/sqrt(2^precision)}.
+ * Small cardinalities are corrected with linear counting.</p>
+ *
+ * <p>Two estimators of the same precision merge without loss, and the
+ * registers can be saved with {@link #toBytes()} and restored later, so
+ * partial estimates made separately can be combined.</p>
+ */
+public class HyperLogLog {
+  public static final int DEFAULT_PRECISION = 12;
+
+  private final int precision;
+  private final byte[] registers;
+
+
+
+
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+
+
+
+  /**
+   * @param precision the number of bits used to select a register (4-18)
+   */
+  public HyperLogLog(final int precision) {
+    if (precision < 4 || precision > 18) {
+      throw new IllegalArgumentException("Precision must be between 4 and 18");
+    }
+    this.precision = precision;
+    registers = new byte[1 << precision];
+  }
+
+
+
+
+  /**
+   * Restore an estimator from the registers returned by {@link #toBytes()}.
+   *
+   * @param data the registers of the estimator, the length of which
+   *        determines the precision
+   */
+  public HyperLogLog(final byte[] data) {
+    this(Integer.numberOfTrailingZeros(data.length));
+    if (data.length != registers.length) {
+      throw new IllegalArgumentException("Register count must be a power of two");
+    }
+    System.arraycopy(data, 0, registers, 0, data.length);
+  }
+
+
+
+
+  /**
+   * Add the value to the set of observed values.
+   *
+   * @param value the value to add
+   */
+  public void add(final String value) {
+    final long hash = hash(value);
+    final int index = (int)(hash >>> (64 - precision));
+    final long remaining = hash << precision | 1L << (precision - 1);
+    final byte rank = (byte)(Long.numberOfLeadingZeros(remaining) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+  }
+
+
+
+
+  /**
+   * @return the estimated number of distinct values added
+   */
+  public long cardinality() {
+    final int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (int i = 0; i < m; i++) {
+      sum += 1.0D / (1L << registers[i]);
+      if (registers[i] == 0) {
+        zeros++;
+      }
+    }
+
+    final double alpha = 0.7213D / (1.0D + 1.079D / m);
+    double estimate = alpha * m * m / sum;
+    if (estimate <= 2.5D * m && zeros > 0) {
+      estimate = m * Math.log((double)m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+
+
+
+  /**
+   * Add the values observed by another estimator to this one.
+   *
+   * @param other the estimator to merge into this one
+   *
+   * @throws IllegalArgumentException if the estimators are of different precision
+   */
+  public void merge(final HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Can not merge an estimator of precision " + other.precision + " into one of precision " + precision);
+    }
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @return a copy of the registers from which the estimator can be restored
+   */
+  public byte[] toBytes() {
+    return Arrays.copyOf(registers, registers.length);
+  }
+
+
+
+
+  /**
+   * Hash the characters of the value to 64 bits.
+   *
+   * <p>FNV-1a over the characters followed by the MurmurHash3 finalizer to
+   * spread the bits; 32-bit {@code String.hashCode()} would collide too
+   * often at the cardinalities this class is intended for.</p>
+   */
+  static long hash(final String value) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      h ^= value.charAt(i);
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Approximates the quantiles of a stream of numbers in a fixed amount of
+ * memory.
+ *
+ * <p>This is a KLL sketch: a stack of compactors where each level holds
+ * items with twice the weight of the level below it. When a level fills it
+ * is sorted and every other item (randomly the odd or even ones) is promoted
+ * to the next level, the rest discarded. Capacities shrink geometrically
+ * toward the lower levels so the sketch never holds more than about
+ * {@code 3k} values no matter how many are added. The rank error is roughly
+ * {@code 1.7/k}.</p>
+ */
+class QuantileSketch {
+  static final int DEFAULT_K = 200;
+  private static final double C = 2D / 3D;
+
+  private final int k;
+  private final List<double[]> levels = new ArrayList<double[]>();
+  private final List<Integer> sizes = new ArrayList<Integer>();
+  private final Random random = new Random(0x5eed);
+  private int retained = 0;
+  private int maxRetained = 0;
+  private long count = 0;
+
+
+
+
+  QuantileSketch() {
+    this(DEFAULT_K);
+  }
+
+
+
+
+  /**
+   * @param k the accuracy parameter, larger values use more memory and give more accurate results
+   */
+  QuantileSketch(final int k) {
+    if (k < 8) {
+      throw new IllegalArgumentException("K must be at least 8");
+    }
+    this.k = k;
+    grow();
+  }
+
+
+
+
+  /**
+   * Add a value to the sketch.
+   *
+   * @param value the value to add
+   */
+  void add(final double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    append(0, value);
+    retained++;
+    count++;
+    if (retained >= maxRetained) {
+      compress();
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of values added to the sketch
+   */
+  long getCount() {
+    return count;
+  }
+
+
+
+
+  /**
+   * Estimate the value at the given quantile.
+   *
+   * @param fraction the quantile between 0.0 and 1.0 (e.g. 0.5 for the median)
+   *
+   * @return the estimated value or NaN if no values have been added
+   */
+  double getQuantile(final double fraction) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+
+    final double[] values = new double[retained];
+    final long[] weights = new long[retained];
+    int n = 0;
+    long total = 0;
+    for (int h = 0; h < levels.size(); h++) {
+      final double[] level = levels.get(h);
+      final int size = sizes.get(h);
+      final long weight = 1L << h;
+      for (int i = 0; i < size; i++) {
+        values[n] = level[i];
+        weights[n++] = weight;
+        total += weight;
+      }
+    }
+
+    // sort the values carrying their weights along
+    final Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+    final double target = Math.max(0D, Math.min(1D, fraction)) * total;
+    long cumulative = 0;
+    for (int i = 0; i < n; i++) {
+      cumulative += weights[order[i]];
+      if (cumulative >= target) {
+        return values[order[i]];
+      }
+    }
+    return values[order[n - 1]];
+  }
+
+
+
+
+  private void append(final int level, final double value) {
+    double[] items = levels.get(level);
+    final int size = sizes.get(level);
+    if (size == items.length) {
+      items = Arrays.copyOf(items, items.length * 2);
+      levels.set(level, items);
+    }
+    items[size] = value;
+    sizes.set(level, size + 1);
+  }
+
+
+
+
+  private int capacity(final int level) {
+    final int height = levels.size() - level - 1;
+    return (int)Math.ceil(Math.pow(C, height) * k) + 1;
+  }
+
+
+
+
+  private void grow() {
+    levels.add(new double[Math.max(8, k / 4)]);
+    sizes.add(0);
+    maxRetained = 0;
+    for (int h = 0; h < levels.size(); h++) {
+      maxRetained += capacity(h);
+    }
+  }
+
+
+
+
+  private void compress() {
+    for (int h = 0; h < levels.size(); h++) {
+      final int size = sizes.get(h);
+      if (size >= capacity(h)) {
+        if (h + 1 >= levels.size()) {
+          grow();
+        }
+        final double[] items = levels.get(h);
+        Arrays.sort(items, 0, size);
+        final int pairs = size / 2;
+        final int offset = random.nextBoolean() ? 1 : 0;
+        for (int i = 0; i < pairs; i++) {
+          append(h + 1, items[2 * i + offset]);
+        }
+
+        // an odd item out stays at this level
+        if (size % 2 == 1) {
+          items[0] = items[size - 1];
+          sizes.set(h, 1);
+        } else {
+          sizes.set(h, 0);
+        }
+        retained -= pairs;
+        break;
+      }
+    }
+  }
+
+}
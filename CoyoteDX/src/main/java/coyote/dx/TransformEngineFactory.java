@@ -243,6 +243,8 @@ public class TransformEngineFactory {
           } else {
             Log.error("Invalid listener configuration section");
           }
+        } else if (StringUtil.equalsIgnoreCase(ConfigTag.PIPELINE, field.getName())) {
+          configPipeline(field, retval);
         } else if (StringUtil.equalsIgnoreCase(ConfigTag.NAME, field.getName())) {
           if (field.isFrame()) {
             Log.error("Invalid Name value - expecting simple type (string)");
@@ -603,6 +605,27 @@ public class TransformEngineFactory {
   }
 
 
+  /**
+   * Configure the engine to run its frames through a pipeline of concurrent
+   * stages.
+   *
+   * <p>The pipeline section may be a frame with {@code Workers} and
+   * {@code Capacity} settings or simply {@code true} to use the defaults.</p>
+   *
+   * @param field  the pipeline configuration field
+   * @param engine the engine to configure
+   */
+  private static void configPipeline(DataField field, TransformEngine engine) {
+    if (field.isFrame()) {
+      engine.getConfiguration().put(ConfigTag.PIPELINE, new Config((DataFrame) field.getObjectValue()));
+    } else if (StringUtil.equalsIgnoreCase("true", field.getStringValue())) {
+      engine.getConfiguration().put(ConfigTag.PIPELINE, new Config());
+    } else if (!StringUtil.equalsIgnoreCase("false", field.getStringValue())) {
+      Log.error("Invalid pipeline configuration section");
+    }
+  }
+
+
   private static void configWriter(DataFrame cfg, TransformEngine engine) {
     if (cfg != null) {
       // Make sure the class is fully qualified 
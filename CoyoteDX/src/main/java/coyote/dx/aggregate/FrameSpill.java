@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.aggregate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import coyote.dataframe.DataFrame;
+import coyote.loader.log.Log;
+
+
+/**
+ * A temporary file of data frames written when an aggregator exceeds its
+ * memory budget.
+ *
+ * <p>Frames are stored in their binary wire format so they are read back
+ * with the same field types they were written with. Frames are written
+ * sequentially and read back in the same order with as many readers as
+ * needed. The file is deleted when the spill is closed.</p>
+ */
+class FrameSpill implements Closeable {
+  private static final int BUFFER_SIZE = 65536;
+
+  private final File file;
+  private DataOutputStream output;
+  private long count = 0;
+  private long length = 0;
+
+
+
+
+  /**
+   * Create a new spill file in the given directory.
+   *
+   * @param directory the directory in which to create the file, null for the system temporary directory
+   *
+   * @throws IOException if the file could not be created
+   */
+  FrameSpill(final File directory) throws IOException {
+    if (directory != null && !directory.exists()) {
+      directory.mkdirs();
+    }
+    file = File.createTempFile("cdx", ".spill", directory);
+    output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+  }
+
+
+
+
+  /**
+   * Append a frame to the spill file.
+   *
+   * @param frame the frame to write
+   *
+   * @return the number of bytes the frame occupies in the file
+   *
+   * @throws IOException if the frame could not be written
+   */
+  int write(final DataFrame frame) throws IOException {
+    final byte[] data = frame.getBytes();
+    output.writeInt(data.length);
+    output.write(data);
+    count++;
+    length += data.length + 4;
+    return data.length + 4;
+  }
+
+
+
+
+  /**
+   * Complete writing the file; no more frames can be written.
+   *
+   * @throws IOException if the file could not be flushed
+   */
+  void finish() throws IOException {
+    if (output != null) {
+      try {
+        output.close();
+      } finally {
+        output = null;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Open a reader for the frames in this file.
+   *
+   * <p>The file is finished if it is still being written.</p>
+   *
+   * @return a reader positioned at the first frame in the file
+   *
+   * @throws IOException if the file could not be opened
+   */
+  Reader open() throws IOException {
+    finish();
+    return new Reader();
+  }
+
+
+
+
+  /**
+   * @return the number of frames in the file
+   */
+  long size() {
+    return count;
+  }
+
+
+
+
+  /**
+   * @return the number of bytes written to the file
+   */
+  long length() {
+    return length;
+  }
+
+
+
+
+  /**
+   * Finish and delete the file.
+   *
+   * <p>Spill files are not registered for deletion on exit as long-running
+   * services would accumulate an entry for every spill ever written; the
+   * owner of the spill must close it.</p>
+   *
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      finish();
+    } finally {
+      if (file.exists() && !file.delete()) {
+        Log.warn("Could not delete spill file " + file.getAbsolutePath());
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Reads frames from the spill file in the order they were written.
+   */
+  class Reader implements Closeable {
+    private final DataInputStream input;
+    private long remaining = count;
+
+
+
+
+    private Reader() throws IOException {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+    }
+
+
+
+
+    /**
+     * @return the next frame in the file or null if there are no more frames
+     *
+     * @throws IOException if the file could not be read
+     */
+    DataFrame next() throws IOException {
+      DataFrame retval = null;
+      if (remaining > 0) {
+        final byte[] data = new byte[input.readInt()];
+        input.readFully(data);
+        retval = new DataFrame(data);
+        remaining--;
+      }
+      return retval;
+    }
+
+
+
+
+    /**
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+      input.close();
+    }
+  }
+
+}
@@ -7,17 +7,24 @@
  */
 package coyote.dx.aggregate;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import coyote.commons.StringUtil;
+import coyote.dataframe.DataField;
 import coyote.dataframe.DataFrame;
 import coyote.dx.CDX;
 import coyote.dx.ConfigTag;
 import coyote.dx.FrameAggregator;
+import coyote.dx.HyperLogLog;
 import coyote.dx.context.TransactionContext;
 import coyote.dx.context.TransformContext;
 import coyote.loader.log.Log;
@@ -63,15 +70,60 @@ import coyote.loader.log.Log;
  * <p>A sample configuration is as follows:<pre>
  * "Aggregator": { "class": "Grouping", "key":"Symbol", "limit": 288, "sort":"ascend" }</pre>
  * The above configuration groups all 
+ * 
+ * <p>If {@code aggregates} are configured, the frames are not retained. 
+ * Instead, the aggregate functions are computed incrementally for each group 
+ * and a single frame is emitted for each key containing the key field and the 
+ * results of the functions:<pre>
+ * "Aggregator": { "class": "Grouping", "key":"Host", "maxgroups": 50000, "aggregates": [
+ *   { "function": "count", "name": "Requests" },
+ *   { "function": "sum", "field": "Bytes" },
+ *   { "function": "avg", "field": "Elapsed", "name": "AvgElapsed" },
+ *   { "function": "distinct", "field": "Client" } ] }</pre>
+ * The functions are {@code count}, {@code sum}, {@code min}, {@code max}, 
+ * {@code avg}, {@code first}, {@code last} and {@code distinct} (the number 
+ * of distinct values). Numeric functions ignore values which are not 
+ * numbers. The {@code name} of the result field defaults to the function 
+ * and field names (e.g. {@code sum_Bytes}). Groups are emitted in the order 
+ * their keys were first observed unless {@code sort} is specified.
+ * 
+ * <p>When the number of groups in memory exceeds {@code maxgroups} (default 
+ * 100,000), the partial results are hash partitioned by key and spilled to 
+ * files in the work directory. Each partition is merged separately when the 
+ * last frame is received so only one partition of the groups is in memory at 
+ * a time. The merged partitions are sorted and written back to disk, and the 
+ * results are read from them as they are written so the full set of groups 
+ * is never held in memory.
+ * 
+ * <p>The {@code distinct} function keeps the exact set of values for each 
+ * group until it holds {@code maxdistinct} values (default 10,000). Beyond 
+ * that, the set is replaced with a fixed size HyperLogLog sketch and the 
+ * result is an estimate within a few percent of the true number.
  */
 public class Grouping extends AbstractFrameAggregator implements FrameAggregator {
 
   private static final String KEY = "Key";
 
+  /** The number of files groups are partitioned into when spilled. */
+  private static final int PARTITIONS = 16;
+
+  private static final int DEFAULT_MAX_GROUPS = 100000;
+
+  private static final int DEFAULT_MAX_DISTINCT = 10000;
+
   private final List<String> keys = new ArrayList<>();
   private CDX.Sort sort = CDX.Sort.NONE;
   private Map<String, List<DataFrame>> dataMap = new HashMap<>();
 
+  private final List<Aggregate> aggregates = new ArrayList<>();
+  private final Map<String, Group> groups = new HashMap<>();
+  private FrameSpill[] partitions = null;
+  private final List<FrameSpill> runs = new ArrayList<>();
+  private GroupList results = null;
+  private int maxGroups = DEFAULT_MAX_GROUPS;
+  private int maxDistinct = DEFAULT_MAX_DISTINCT;
+  private long sequence = 0;
+
 
 
 
@@ -102,6 +154,46 @@ public class Grouping extends AbstractFrameAggregator implements FrameAggregator
       sort = CDX.Sort.NONE;
     }
 
+    aggregates.clear();
+    DataFrame aggcfg = getFrame(ConfigTag.AGGREGATES);
+    if (aggcfg != null) {
+      for (DataField field : aggcfg.getFields()) {
+        if (field.isFrame()) {
+          try {
+            aggregates.add(new Aggregate((DataFrame)field.getObjectValue()));
+          } catch (IllegalArgumentException e) {
+            Log.error("Invalid aggregate configuration: " + e.getMessage());
+            context.setError("Grouping aggregator has an invalid aggregate: " + e.getMessage());
+          }
+        }
+      }
+    }
+
+    int max = getInteger(ConfigTag.MAX_GROUPS);
+    maxGroups = (max > 0) ? max : DEFAULT_MAX_GROUPS;
+    max = getInteger(ConfigTag.MAX_DISTINCT);
+    maxDistinct = (max > 0) ? max : DEFAULT_MAX_DISTINCT;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.aggregate.AbstractFrameAggregator#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (results != null) {
+      results.release();
+      results = null;
+    }
+    closePartitions();
+    for (FrameSpill run : runs) {
+      closeQuietly(run);
+    }
+    runs.clear();
+    groups.clear();
+    super.close();
   }
 
 
@@ -115,11 +207,15 @@ public class Grouping extends AbstractFrameAggregator implements FrameAggregator
     List<DataFrame> retval = new ArrayList<>();
 
     for (int x = 0; x < frames.size(); x++) {
-      addFrame(frames.get(x));
+      if (aggregates.isEmpty()) {
+        addFrame(frames.get(x));
+      } else {
+        accumulate(frames.get(x));
+      }
     }
 
     if (txnContext.isLastFrame()) {
-      retval = compileFrames();
+      retval = aggregates.isEmpty() ? compileFrames() : compileGroups();
     }
 
     return retval;
@@ -276,4 +372,617 @@ public class Grouping extends AbstractFrameAggregator implements FrameAggregator
     }
   }
 
+
+
+
+
+  /**
+   * Update the aggregates of the group to which the frame belongs.
+   * 
+   * @param frame the frame to accumulate
+   */
+  private void accumulate(DataFrame frame) {
+    if (frame == null) {
+      return;
+    }
+    String key = getKey(frame);
+    Group group = groups.get(key);
+    if (group == null) {
+      if (groups.size() >= maxGroups) {
+        spillGroups();
+      }
+      group = new Group(key, sequence);
+      groups.put(key, group);
+    }
+    group.add(frame, sequence++);
+  }
+
+
+
+
+  /**
+   * Write the groups in memory to their partition files and clear them from 
+   * memory.
+   */
+  private void spillGroups() {
+    try {
+      if (partitions == null) {
+        partitions = new FrameSpill[PARTITIONS];
+        for (int x = 0; x < partitions.length; x++) {
+          partitions[x] = new FrameSpill(getWorkDirectory());
+        }
+      }
+      for (Group group : groups.values()) {
+        partitions[getPartition(group.key)].write(group.toFrame());
+      }
+      Log.debug("Spilled " + groups.size() + " groups to disk");
+      groups.clear();
+    } catch (IOException e) {
+      Log.error("Could not spill groups to disk, continuing in memory: " + e.getMessage());
+      maxGroups = Integer.MAX_VALUE;
+    }
+  }
+
+
+
+
+  /**
+   * @return one frame for each group containing the key and the results of the aggregates
+   */
+  private List<DataFrame> compileGroups() {
+    List<DataFrame> retval;
+    if (partitions == null) {
+      List<Group> list = new ArrayList<>(groups.values());
+      Collections.sort(list, getGroupComparator());
+      retval = new ArrayList<>(list.size());
+      String keyname = getKeyFieldName();
+      for (Group group : list) {
+        retval.add(group.toResult(keyname));
+      }
+    } else {
+      spillGroups();
+      results = new GroupList(sortPartitions());
+      retval = results;
+    }
+    groups.clear();
+    return retval;
+  }
+
+
+
+
+  /**
+   * Merge the groups in each partition and write them back to disk in the 
+   * order they are to be emitted.
+   * 
+   * <p>Only one partition of groups is in memory at a time. Any groups which 
+   * could not be spilled are merged into their partition.
+   * 
+   * @return the number of groups in the sorted runs
+   */
+  private int sortPartitions() {
+    Comparator<Group> comparator = getGroupComparator();
+    int retval = 0;
+    for (int x = 0; x < partitions.length; x++) {
+      Map<String, Group> merged = new HashMap<>();
+      try (FrameSpill.Reader reader = partitions[x].open()) {
+        for (DataFrame frame = reader.next(); frame != null; frame = reader.next()) {
+          mergeGroup(merged, new Group(frame));
+        }
+      } catch (IOException e) {
+        Log.error("Could not read spilled groups: " + e.getMessage());
+        getContext().setError("Grouping could not read spilled groups: " + e.getMessage());
+      }
+      closeQuietly(partitions[x]);
+      partitions[x] = null;
+      for (Group group : groups.values()) {
+        if (getPartition(group.key) == x) {
+          mergeGroup(merged, group);
+        }
+      }
+
+      List<Group> list = new ArrayList<>(merged.values());
+      merged = null;
+      Collections.sort(list, comparator);
+      FrameSpill run = null;
+      try {
+        run = new FrameSpill(getWorkDirectory());
+        for (Group group : list) {
+          run.write(group.toFrame());
+        }
+        run.finish();
+        runs.add(run);
+        retval += list.size();
+      } catch (IOException e) {
+        Log.error("Could not write merged groups: " + e.getMessage());
+        getContext().setError("Grouping could not write merged groups: " + e.getMessage());
+        closeQuietly(run);
+      }
+    }
+    partitions = null;
+    return retval;
+  }
+
+
+
+
+  private static void mergeGroup(Map<String, Group> merged, Group group) {
+    Group existing = merged.get(group.key);
+    if (existing == null) {
+      merged.put(group.key, group);
+    } else {
+      existing.merge(group);
+    }
+  }
+
+
+
+
+  /**
+   * @return a comparator which orders groups by the sort mode or the order their keys were first observed
+   */
+  private Comparator<Group> getGroupComparator() {
+    final Comparator<String> order = (sort == CDX.Sort.ASCEND_CI || sort == CDX.Sort.DESCEND_CI) ? String.CASE_INSENSITIVE_ORDER : Comparator.<String>naturalOrder();
+    final boolean descending = (sort == CDX.Sort.DESCEND || sort == CDX.Sort.DESCEND_CI);
+    return new Comparator<Group>() {
+      @Override
+      public int compare(Group group1, Group group2) {
+        int result = 0;
+        if (sort != CDX.Sort.NONE) {
+          if (group1.key == null) {
+            result = (group2.key == null) ? 0 : -1;
+          } else if (group2.key == null) {
+            result = 1;
+          } else {
+            result = order.compare(group1.key, group2.key);
+          }
+          if (descending) {
+            result = -result;
+          }
+        }
+        return (result != 0) ? result : Long.compare(group1.sequence, group2.sequence);
+      }
+    };
+  }
+
+
+
+
+  private static int getPartition(String key) {
+    return (key == null) ? 0 : (key.hashCode() & Integer.MAX_VALUE) % PARTITIONS;
+  }
+
+
+
+
+  private void closePartitions() {
+    if (partitions != null) {
+      for (FrameSpill partition : partitions) {
+        closeQuietly(partition);
+      }
+      partitions = null;
+    }
+  }
+
+
+
+
+  private static void closeQuietly(FrameSpill spill) {
+    if (spill != null) {
+      try {
+        spill.close();
+      } catch (IOException e) {
+        Log.debug("Could not remove group spill: " + e.getMessage());
+      }
+    }
+  }
+
+
+
+
+  private static Object getValue(DataFrame frame, String name) {
+    DataField field = frame.getField(name);
+    return (field != null) ? field.getObjectValue() : null;
+  }
+
+
+
+
+  private static long getLongValue(DataFrame frame, String name) {
+    Object value = getValue(frame, name);
+    return (value instanceof Number) ? ((Number)value).longValue() : 0;
+  }
+
+
+
+
+  private static double getDoubleValue(DataFrame frame, String name) {
+    Object value = getValue(frame, name);
+    return (value instanceof Number) ? ((Number)value).doubleValue() : 0;
+  }
+
+
+
+
+  /**
+   * The configuration of an aggregate function.
+   */
+  private static class Aggregate {
+    private static final List<String> FUNCTIONS = Arrays.asList("count", "sum", "min", "max", "avg", "first", "last", "distinct");
+    final String function;
+    final String field;
+    final String name;
+
+
+
+
+    Aggregate(DataFrame cfg) {
+      DataField fnc = cfg.getFieldIgnoreCase(ConfigTag.FUNCTION);
+      DataField fld = cfg.getFieldIgnoreCase(ConfigTag.FIELD);
+      DataField nam = cfg.getFieldIgnoreCase(ConfigTag.NAME);
+      function = (fnc != null && fnc.getStringValue() != null) ? fnc.getStringValue().trim().toLowerCase() : null;
+      field = (fld != null && StringUtil.isNotBlank(fld.getStringValue())) ? fld.getStringValue().trim() : null;
+      if (!FUNCTIONS.contains(function)) {
+        throw new IllegalArgumentException("unrecognized function '" + function + "'");
+      }
+      if (field == null && !"count".equals(function)) {
+        throw new IllegalArgumentException("the " + function + " function requires a field");
+      }
+      if (nam != null && StringUtil.isNotBlank(nam.getStringValue())) {
+        name = nam.getStringValue().trim();
+      } else {
+        name = (field != null) ? function + "_" + field : function;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * The running state of one aggregate function for one group.
+   */
+  private static class Value {
+    long count = 0;
+    long numbers = 0;
+    double sum = 0;
+    double min = Double.MAX_VALUE;
+    double max = -Double.MAX_VALUE;
+    Object first = null;
+    long firstSeq = Long.MAX_VALUE;
+    Object last = null;
+    long lastSeq = Long.MIN_VALUE;
+    Set<String> distinct = null;
+    HyperLogLog sketch = null;
+
+
+
+
+    /**
+     * Add a value to the distinct values, replacing the set with a sketch 
+     * when it grows past the limit.
+     */
+    void addDistinct(String element, int limit) {
+      if (sketch != null) {
+        sketch.add(element);
+      } else {
+        distinct.add(element);
+        if (distinct.size() > limit) {
+          toSketch();
+        }
+      }
+    }
+
+
+
+
+    private void toSketch() {
+      sketch = new HyperLogLog();
+      for (String element : distinct) {
+        sketch.add(element);
+      }
+      distinct = null;
+    }
+
+
+
+
+    long getDistinctCount() {
+      return (sketch != null) ? sketch.cardinality() : distinct.size();
+    }
+
+
+
+
+    void merge(Value other, int limit) {
+      count += other.count;
+      numbers += other.numbers;
+      sum += other.sum;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+      if (other.first != null && other.firstSeq < firstSeq) {
+        first = other.first;
+        firstSeq = other.firstSeq;
+      }
+      if (other.last != null && other.lastSeq > lastSeq) {
+        last = other.last;
+        lastSeq = other.lastSeq;
+      }
+      if (other.sketch != null) {
+        if (sketch == null) {
+          toSketch();
+        }
+        sketch.merge(other.sketch);
+      } else if (other.distinct != null) {
+        for (String element : other.distinct) {
+          addDistinct(element, limit);
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * The accumulated state of all the aggregate functions for one key.
+   */
+  private class Group {
+    final String key;
+    long sequence;
+    final Value[] values = new Value[aggregates.size()];
+
+
+
+
+    /**
+     * Create a new group.
+     * 
+     * @param key the key of the group
+     * @param sequence the sequence of the first frame in the group
+     */
+    Group(String key, long sequence) {
+      this.key = key;
+      this.sequence = sequence;
+      for (int x = 0; x < values.length; x++) {
+        values[x] = new Value();
+        if ("distinct".equals(aggregates.get(x).function)) {
+          values[x].distinct = new HashSet<>();
+        }
+      }
+    }
+
+
+
+
+    /**
+     * Restore a group from the frame created by {@link #toFrame()}.
+     * 
+     * @param frame the spilled state of the group
+     */
+    Group(DataFrame frame) {
+      this(frame.getAsString("k"), getLongValue(frame, "q"));
+      for (int x = 0; x < values.length; x++) {
+        Value value = values[x];
+        value.count = getLongValue(frame, "c" + x);
+        value.numbers = getLongValue(frame, "n" + x);
+        value.sum = getDoubleValue(frame, "s" + x);
+        value.min = getDoubleValue(frame, "mn" + x);
+        value.max = getDoubleValue(frame, "mx" + x);
+        value.first = getValue(frame, "f" + x);
+        value.firstSeq = getLongValue(frame, "fq" + x);
+        value.last = getValue(frame, "l" + x);
+        value.lastSeq = getLongValue(frame, "lq" + x);
+        Object set = getValue(frame, "d" + x);
+        if (value.distinct != null) {
+          if (set instanceof byte[]) {
+            value.distinct = null;
+            value.sketch = new HyperLogLog((byte[])set);
+          } else if (set instanceof Object[]) {
+            for (Object element : (Object[])set) {
+              value.distinct.add(String.valueOf(element));
+            }
+          }
+        }
+      }
+    }
+
+
+
+
+    /**
+     * Add the values of the given frame to the aggregates of this group.
+     */
+    void add(DataFrame frame, long seq) {
+      for (int x = 0; x < values.length; x++) {
+        Aggregate aggregate = aggregates.get(x);
+        Value value = values[x];
+        if (aggregate.field == null) {
+          value.count++;
+          continue;
+        }
+        DataField field = frame.getField(aggregate.field);
+        if (field == null || field.isNull()) {
+          continue;
+        }
+        Object obj = field.getObjectValue();
+        value.count++;
+        if (value.first == null) {
+          value.first = obj;
+          value.firstSeq = seq;
+        }
+        value.last = obj;
+        value.lastSeq = seq;
+        Double number = toNumber(obj);
+        if (number != null) {
+          value.numbers++;
+          value.sum += number;
+          value.min = Math.min(value.min, number);
+          value.max = Math.max(value.max, number);
+        }
+        if (value.distinct != null || value.sketch != null) {
+          value.addDistinct(field.getStringValue(), maxDistinct);
+        }
+      }
+    }
+
+
+
+
+    /**
+     * Combine the partial results of another group with the same key.
+     */
+    void merge(Group other) {
+      sequence = Math.min(sequence, other.sequence);
+      for (int x = 0; x < values.length; x++) {
+        values[x].merge(other.values[x], maxDistinct);
+      }
+    }
+
+
+
+
+    /**
+     * @return the state of this group as a frame so it can be spilled to disk
+     */
+    DataFrame toFrame() {
+      DataFrame retval = new DataFrame();
+      if (key != null) {
+        retval.set("k", key);
+      }
+      retval.set("q", sequence);
+      for (int x = 0; x < values.length; x++) {
+        Value value = values[x];
+        retval.set("c" + x, value.count);
+        retval.set("n" + x, value.numbers);
+        retval.set("s" + x, value.sum);
+        retval.set("mn" + x, value.min);
+        retval.set("mx" + x, value.max);
+        if (value.first != null) {
+          retval.set("f" + x, value.first);
+          retval.set("fq" + x, value.firstSeq);
+        }
+        if (value.last != null) {
+          retval.set("l" + x, value.last);
+          retval.set("lq" + x, value.lastSeq);
+        }
+        if (value.sketch != null) {
+          retval.set("d" + x, value.sketch.toBytes());
+        } else if (value.distinct != null) {
+          retval.set("d" + x, value.distinct.toArray());
+        }
+      }
+      return retval;
+    }
+
+
+
+
+    /**
+     * @param keyname the name of the field in which to place the key
+     * 
+     * @return a frame containing the key and the result of each aggregate function
+     */
+    DataFrame toResult(String keyname) {
+      DataFrame retval = new DataFrame();
+      retval.set(keyname, key);
+      for (int x = 0; x < values.length; x++) {
+        Aggregate aggregate = aggregates.get(x);
+        Value value = values[x];
+        Object result = null;
+        switch (aggregate.function) {
+          case "count":
+            result = value.count;
+            break;
+          case "sum":
+            result = (value.numbers > 0) ? value.sum : null;
+            break;
+          case "min":
+            result = (value.numbers > 0) ? value.min : null;
+            break;
+          case "max":
+            result = (value.numbers > 0) ? value.max : null;
+            break;
+          case "avg":
+            result = (value.numbers > 0) ? value.sum / value.numbers : null;
+            break;
+          case "first":
+            result = value.first;
+            break;
+          case "last":
+            result = value.last;
+            break;
+          case "distinct":
+            result = value.getDistinctCount();
+            break;
+          default:
+            break;
+        }
+        retval.set(aggregate.name, result);
+      }
+      return retval;
+    }
+  }
+
+
+
+
+  /**
+   * The results of spilled groups, read from the sorted runs as they are 
+   * iterated so only one group from each run is in memory at a time.
+   */
+  private class GroupList extends MergedList<Group> {
+    private final String keyname = getKeyFieldName();
+
+
+
+
+    GroupList(int size) {
+      super(runs, null, getGroupComparator(), size);
+    }
+
+
+
+
+    @Override
+    protected Group read(DataFrame frame) {
+      return new Group(frame);
+    }
+
+
+
+
+    @Override
+    protected DataFrame toResult(Group group) {
+      return group.toResult(keyname);
+    }
+
+
+
+
+    @Override
+    protected void failed(IOException e) {
+      Log.error("Could not read merged groups: " + e.getMessage());
+      if (getContext() != null) {
+        getContext().setError("Grouping could not read merged groups: " + e.getMessage());
+      }
+    }
+  }
+
+
+
+
+  private static Double toNumber(Object value) {
+    if (value instanceof Number) {
+      return ((Number)value).doubleValue();
+    } else if (value != null) {
+      try {
+        return Double.valueOf(value.toString().trim());
+      } catch (NumberFormatException ignore) {
+        // not a number
+      }
+    }
+    return null;
+  }
+
 }
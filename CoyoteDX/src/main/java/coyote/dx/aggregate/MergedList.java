@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.aggregate;
+
+import java.io.IOException;
+import java.util.AbstractSequentialList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * A read-only list of the sorted runs an aggregator spilled to disk, merged
+ * as it is iterated so only one element from each run is in memory at a
+ * time.
+ *
+ * <p>The runs are merged with (optionally) a sorted in-memory buffer of
+ * elements created after all the runs. Elements which compare equal are
+ * returned in the order of their runs, the buffer last, so the merge is
+ * stable.</p>
+ *
+ * <p>Asking for an iterator at or past the position of the most recent
+ * iterator continues that merge instead of starting over, so reading the
+ * list with ascending calls to {@code get(int)} costs the same as iterating
+ * it. The iterator which is continued is no longer valid.</p>
+ *
+ * <p>The list is only valid until the runs are closed.</p>
+ *
+ * @param <T> the type of element the frames of the runs are read into
+ */
+abstract class MergedList<T> extends AbstractSequentialList<DataFrame> {
+  private final List<FrameSpill> runs;
+  private final List<T> buffer;
+  private final Comparator<T> comparator;
+  private final int size;
+  private MergeIterator last = null;
+
+
+
+
+  /**
+   * @param runs the sorted runs to merge in the order they were created
+   * @param buffer the sorted in-memory elements created after all the runs, may be null
+   * @param comparator the order in which the runs were sorted
+   * @param size the number of elements in the runs and buffer
+   */
+  MergedList(List<FrameSpill> runs, List<T> buffer, Comparator<T> comparator, int size) {
+    this.runs = new ArrayList<>(runs);
+    this.buffer = buffer;
+    this.comparator = comparator;
+    this.size = size;
+  }
+
+
+
+
+  /**
+   * Read an element from a frame of one of the runs.
+   *
+   * @param frame the frame read from a run
+   *
+   * @return the element the frame represents
+   */
+  protected abstract T read(DataFrame frame);
+
+
+
+
+  /**
+   * @param element the next element of the merge
+   *
+   * @return the frame this list returns for the element
+   */
+  protected abstract DataFrame toResult(T element);
+
+
+
+
+  /**
+   * Called when the runs could not be read; the merge ends at the last
+   * element read.
+   *
+   * @param e the reason the runs could not be read
+   */
+  protected abstract void failed(IOException e);
+
+
+
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+
+
+
+  @Override
+  public ListIterator<DataFrame> listIterator(int index) {
+    MergeIterator retval = new MergeIterator();
+    if (last != null && last.position <= index) {
+      retval.continueFrom(last);
+    } else if (last != null) {
+      last.release();
+    }
+    while (retval.position < index) {
+      retval.next();
+    }
+    last = retval;
+    return retval;
+  }
+
+
+
+
+  /**
+   * Close the readers of the most recent iterator so the runs can be removed.
+   */
+  void release() {
+    if (last != null) {
+      last.release();
+      last = null;
+    }
+  }
+
+
+
+
+  /**
+   * Start a merge of the runs and buffer which is independent of the
+   * iterators of this list.
+   *
+   * @return a merge which must be closed when no longer needed
+   *
+   * @throws IOException if the runs could not be opened
+   */
+  Merger merge() throws IOException {
+    return new Merger();
+  }
+
+
+
+
+  /**
+   * The next element from one of the runs being merged.
+   */
+  private class Head {
+    final int run;
+    final T element;
+
+
+
+
+    Head(int run, T element) {
+      this.run = run;
+      this.element = element;
+    }
+  }
+
+
+
+
+  /**
+   * Performs a k-way merge of the runs and buffer.
+   */
+  class Merger {
+    private final List<FrameSpill.Reader> readers = new ArrayList<>();
+    private final Iterator<T> memory;
+    private final PriorityQueue<Head> queue;
+
+
+
+
+    private Merger() throws IOException {
+      queue = new PriorityQueue<>(runs.size() + 1, new Comparator<Head>() {
+        @Override
+        public int compare(Head head1, Head head2) {
+          int result = comparator.compare(head1.element, head2.element);
+          return (result != 0) ? result : Integer.compare(head1.run, head2.run);
+        }
+      });
+      try {
+        for (FrameSpill run : runs) {
+          readers.add(run.open());
+        }
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+      memory = (buffer != null) ? buffer.iterator() : null;
+      for (int x = 0; x <= readers.size(); x++) {
+        advance(x);
+      }
+    }
+
+
+
+
+    /**
+     * @return the next element in sorted order or null if all runs are exhausted
+     *
+     * @throws IOException if the runs could not be read
+     */
+    T next() throws IOException {
+      Head head = queue.poll();
+      if (head == null) {
+        return null;
+      }
+      advance(head.run);
+      return head.element;
+    }
+
+
+
+
+    private void advance(int run) throws IOException {
+      T element = null;
+      if (run < readers.size()) {
+        DataFrame frame = readers.get(run).next();
+        if (frame != null) {
+          element = read(frame);
+        }
+      } else if (memory != null && memory.hasNext()) {
+        element = memory.next();
+      }
+      if (element != null) {
+        queue.add(new Head(run, element));
+      }
+    }
+
+
+
+
+    void close() {
+      for (FrameSpill.Reader reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException ignore) {
+          // only reading
+        }
+      }
+      readers.clear();
+    }
+  }
+
+
+
+
+  /**
+   * A forward-only iterator over the merge.
+   */
+  private class MergeIterator implements ListIterator<DataFrame> {
+    private Merger merger = null;
+    private T nextElement = null;
+    private int position = 0;
+    private boolean done = false;
+    private boolean valid = true;
+
+
+
+
+    /**
+     * Take over the merge of the given iterator, invalidating it.
+     */
+    private void continueFrom(MergeIterator other) {
+      merger = other.merger;
+      nextElement = other.nextElement;
+      position = other.position;
+      done = other.done;
+      other.merger = null;
+      other.valid = false;
+    }
+
+
+
+
+    /**
+     * Close the merge of this iterator if it has not been read to the end.
+     */
+    private void release() {
+      if (merger != null && !done) {
+        merger.close();
+      }
+      merger = null;
+      valid = false;
+    }
+
+
+
+
+    private void fetch() {
+      if (!valid) {
+        throw new ConcurrentModificationException("Iterator was continued by a later iterator");
+      }
+      if (nextElement == null && !done) {
+        try {
+          if (merger == null) {
+            merger = new Merger();
+          }
+          nextElement = merger.next();
+        } catch (IOException e) {
+          failed(e);
+          nextElement = null;
+        }
+        if (nextElement == null) {
+          done = true;
+          if (merger != null) {
+            merger.close();
+          }
+        }
+      }
+    }
+
+
+
+
+    @Override
+    public boolean hasNext() {
+      fetch();
+      return nextElement != null;
+    }
+
+
+
+
+    @Override
+    public DataFrame next() {
+      fetch();
+      if (nextElement == null) {
+        throw new NoSuchElementException();
+      }
+      T retval = nextElement;
+      nextElement = null;
+      position++;
+      return toResult(retval);
+    }
+
+
+
+
+    @Override
+    public int nextIndex() {
+      return position;
+    }
+
+
+
+
+    @Override
+    public boolean hasPrevious() {
+      return false;
+    }
+
+
+
+
+    @Override
+    public DataFrame previous() {
+      throw new UnsupportedOperationException("Merged results can only be iterated forward");
+    }
+
+
+
+
+    @Override
+    public int previousIndex() {
+      return position - 1;
+    }
+
+
+
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Merged results are read-only");
+    }
+
+
+
+
+    @Override
+    public void set(DataFrame frame) {
+      throw new UnsupportedOperationException("Merged results are read-only");
+    }
+
+
+
+
+    @Override
+    public void add(DataFrame frame) {
+      throw new UnsupportedOperationException("Merged results are read-only");
+    }
+  }
+
+}
@@ -1,19 +1,23 @@
 /*
  * Copyright (c) 2018 Stephan D. Cote' - All rights reserved.
- * 
- * This program and the accompanying materials are made available under the 
- * terms of the MIT License which accompanies this distribution, and is 
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
  * available at http://creativecommons.org/licenses/MIT/
  */
 package coyote.dx.aggregate;
 
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
-import java.util.Set;
 
 import coyote.commons.StringUtil;
+import coyote.dataframe.DataField;
 import coyote.dataframe.DataFrame;
 import coyote.dx.CDX;
 import coyote.dx.ConfigTag;
@@ -24,21 +28,56 @@ import coyote.loader.log.Log;
 
 
 /**
- * Simple aggregator to emit frames in a sorted order.
- * 
- * <p>This is a naive approach and results in consuming twice the about of 
- * memory it should. The original list of frames are buffered and upon 
- * completion, will create a duplicate list in sorted order. This is not 
- * optimal and a more memory efficient approach should be developed. 
- * 
+ * Aggregator to emit frames in a sorted order.
+ *
+ * <p>Frames are buffered in memory until the last frame is received and
+ * then sorted. If the buffered frames exceed the memory budget, they are
+ * sorted and written to a temporary file (a run) in the work directory and
+ * the buffer is cleared. When the last frame is received, the runs are
+ * merged and the frames are emitted as they are merged so the sorted result
+ * is never held in memory.</p>
+ *
+ * <p>The sort is stable; frames with equal keys are emitted in the order
+ * they were received.</p>
+ *
  * <p>A sample configuration is as follows:<pre>
- * "Aggregator": { "class": "Sort", "field":"Price", "sort":"decend" }</pre>
+ * "Aggregator": { "class": "Sort", "field":"Price", "mode":"descend" }</pre>
  * The above configuration sort all the frames in descending order by price.
+ *
+ * <p>Multiple, typed keys may be specified with the {@code fields}
+ * attribute:<pre>
+ * "Aggregator": { "class": "Sort", "memory": 256, "fields": [
+ *   { "field": "State", "mode": "AscendNoCase" },
+ *   { "field": "Price", "type": "number", "mode": "Descend" },
+ *   { "field": "Listed", "type": "date", "format": "yyyy-MM-dd" } ] }</pre>
+ * Key types are {@code string} (the default), {@code number} and
+ * {@code date}. Values which are missing or can not be converted to the
+ * type sort before all others in ascending order. The {@code memory}
+ * attribute is the approximate number of megabytes of frames to hold in
+ * memory before spilling to disk; it defaults to 64.
  */
 public class Sort extends AbstractFrameAggregator implements FrameAggregator {
 
+  /** Default memory budget in megabytes. */
+  private static final long DEFAULT_MEMORY = 64;
+
+  /** The maximum number of runs merged at once. */
+  private static final int MERGE_FACTOR = 64;
+
+  /** How often (in frames) the size of a frame is sampled. */
+  private static final int SAMPLE_INTERVAL = 256;
+
+  private static final String NUMBER = "number";
+  private static final String DATE = "date";
+
   private CDX.Sort sort = CDX.Sort.NONE;
-  private List<DataFrame> frameList = new ArrayList<>();
+  private final List<SortKey> keys = new ArrayList<>();
+  private List<Entry> frameList = new ArrayList<>();
+  private final List<FrameSpill> runs = new ArrayList<>();
+  private SortedList results = null;
+  private long memoryBudget = DEFAULT_MEMORY * 1024 * 1024;
+  private long frameSize = 0;
+  private long received = 0;
 
 
 
@@ -50,26 +89,36 @@ public class Sort extends AbstractFrameAggregator implements FrameAggregator {
   public void open(TransformContext context) {
     super.open(context);
 
-    String sortMode = getString(ConfigTag.MODE);
-    if (StringUtil.isNotBlank(sortMode)) {
-      if (ConfigTag.ASCEND.equalsIgnoreCase(sortMode)) {
-        sort = CDX.Sort.ASCEND;
-      } else if (ConfigTag.DESCEND.equalsIgnoreCase(sortMode)) {
-        sort = CDX.Sort.DESCEND;
-      } else if (ConfigTag.ASCEND_CI.equalsIgnoreCase(sortMode)) {
-        sort = CDX.Sort.ASCEND_CI;
-      } else if (ConfigTag.DESCEND_CI.equalsIgnoreCase(sortMode)) {
-        sort = CDX.Sort.DESCEND_CI;
-      } else if (ConfigTag.NONE.equalsIgnoreCase(sortMode)) {
-        sort = CDX.Sort.NONE;
-      } else {
-        Log.warn("Unrecognized sourt parameter '" + sortMode + "' - no sorting will occur");
-        sort = CDX.Sort.NONE;
+    sort = getSortMode(getString(ConfigTag.MODE));
+
+    keys.clear();
+    String fieldName = getString(ConfigTag.FIELD);
+    if (StringUtil.isNotBlank(fieldName) && sort != CDX.Sort.NONE) {
+      keys.add(new SortKey(fieldName, sort, getString(ConfigTag.TYPE), getString(ConfigTag.FORMAT)));
+    }
+
+    DataFrame fields = getFrame(ConfigTag.FIELDS);
+    if (fields != null) {
+      for (DataField field : fields.getFields()) {
+        if (field.isFrame()) {
+          DataFrame keycfg = (DataFrame)field.getObjectValue();
+          String name = getValue(keycfg, ConfigTag.FIELD);
+          if (StringUtil.isNotBlank(name)) {
+            String mode = getValue(keycfg, ConfigTag.MODE);
+            CDX.Sort keySort = StringUtil.isNotBlank(mode) ? getSortMode(mode) : CDX.Sort.ASCEND;
+            if (keySort != CDX.Sort.NONE) {
+              keys.add(new SortKey(name, keySort, getValue(keycfg, ConfigTag.TYPE), getValue(keycfg, ConfigTag.FORMAT)));
+            }
+          } else {
+            Log.warn("Sort key does not contain a '" + ConfigTag.FIELD + "' attribute - ignored");
+          }
+        }
       }
-    } else {
-      sort = CDX.Sort.NONE;
     }
 
+    long memory = getLong(ConfigTag.MEMORY);
+    memoryBudget = ((memory > 0) ? memory : DEFAULT_MEMORY) * 1024 * 1024;
+    Log.debug("Sorting on " + keys.size() + " keys with a memory budget of " + memoryBudget + " bytes");
   }
 
 
@@ -82,8 +131,8 @@ public class Sort extends AbstractFrameAggregator implements FrameAggregator {
   protected List<DataFrame> aggregate(List<DataFrame> frames, TransactionContext txnContext) {
     List<DataFrame> retval = new ArrayList<>();
 
-    for (int x = 0; x < frames.size(); x++) {
-      frameList.add(frames.get(x));
+    for (DataFrame frame : frames) {
+      add(frame);
     }
 
     if (txnContext.isLastFrame()) {
@@ -97,46 +146,384 @@ public class Sort extends AbstractFrameAggregator implements FrameAggregator {
 
 
   /**
-   * @return
+   * @see coyote.dx.aggregate.AbstractFrameAggregator#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (results != null) {
+      results.release();
+      results = null;
+    }
+    for (FrameSpill run : runs) {
+      try {
+        run.close();
+      } catch (IOException e) {
+        Log.debug("Could not remove sort run: " + e.getMessage());
+      }
+    }
+    runs.clear();
+    frameList.clear();
+    super.close();
+  }
+
+
+
+
+  /**
+   * Buffer the frame, spilling the buffer to disk if the memory budget is
+   * exceeded.
+   *
+   * @param frame the frame to add
+   */
+  private void add(DataFrame frame) {
+    if (frame == null) {
+      return;
+    }
+    frameList.add(new Entry(frame, getKeys(frame)));
+
+    // periodically sample the size of the frames to estimate memory use
+    if (received++ % SAMPLE_INTERVAL == 0) {
+      long size = frame.getBytes().length;
+      frameSize = (frameSize == 0) ? size : (frameSize * 7 + size) / 8;
+    }
+
+    if (!keys.isEmpty() && frameList.size() * frameSize > memoryBudget) {
+      spill();
+    }
+  }
+
+
+
+
+  /**
+   * Sort the buffered frames and write them to a new run on disk.
+   */
+  private void spill() {
+    Collections.sort(frameList, new EntryComparator());
+    FrameSpill run = null;
+    try {
+      run = new FrameSpill(getWorkDirectory());
+      for (Entry entry : frameList) {
+        run.write(entry.frame);
+      }
+      run.finish();
+      runs.add(run);
+      Log.debug("Sorted " + run.size() + " frames into run " + runs.size() + " (" + run.length() + " bytes)");
+      frameList = new ArrayList<>();
+    } catch (IOException e) {
+      Log.error("Could not spill sorted frames to disk, continuing in memory: " + e.getMessage());
+      closeQuietly(run);
+      memoryBudget = Long.MAX_VALUE;
+    }
+  }
+
+
+
+
+  /**
+   * @return the list of all frames in sorted order
    */
   private List<DataFrame> compileFrames() {
-    List<DataFrame> retval = frameList;
+    List<DataFrame> retval;
 
-    String fieldName = getString(ConfigTag.FIELD);
-    if (StringUtil.isNotBlank(fieldName) && sort != CDX.Sort.NONE) {
-      retval = new ArrayList<>();
-      // iterate through all the frames in the list and place their keys in a hash set
-      Set<String> keys = new HashSet<>();
-      for (int x = 0; x < frameList.size(); x++) {
-        keys.add(frameList.get(x).getAsString(fieldName));
+    if (keys.isEmpty()) {
+      retval = new ArrayList<>(frameList.size());
+      for (Entry entry : frameList) {
+        retval.add(entry.frame);
       }
+    } else if (runs.isEmpty()) {
+      Collections.sort(frameList, new EntryComparator());
+      retval = new ArrayList<>(frameList.size());
+      for (Entry entry : frameList) {
+        retval.add(entry.frame);
+      }
+    } else {
+      Collections.sort(frameList, new EntryComparator());
+      reduceRuns();
+      results = new SortedList(runs, frameList);
+      retval = results;
+    }
+
+    return retval;
+  }
 
-      // Extract all the keys from the set into a list
-      List<String> list = new ArrayList<String>(keys);
 
-      // sort the list
-      if (sort != CDX.Sort.NONE) {
-        if (sort == CDX.Sort.ASCEND || sort == CDX.Sort.DESCEND) {
-          Collections.sort(list);
-        } else {
-          Collections.sort(list, String.CASE_INSENSITIVE_ORDER);
+
+
+  /**
+   * Merge runs into larger runs until there are few enough to merge at once.
+   */
+  private void reduceRuns() {
+    while (runs.size() > MERGE_FACTOR) {
+      List<FrameSpill> group = new ArrayList<>(runs.subList(0, MERGE_FACTOR));
+      FrameSpill merged = null;
+      MergedList<Entry>.Merger merger = null;
+      try {
+        merged = new FrameSpill(getWorkDirectory());
+        merger = new SortedList(group, null).merge();
+        for (Entry entry = merger.next(); entry != null; entry = merger.next()) {
+          merged.write(entry.frame);
         }
-        if (sort == CDX.Sort.DESCEND || sort == CDX.Sort.DESCEND_CI) {
-          Collections.reverse(list);
+        merged.finish();
+      } catch (IOException e) {
+        Log.error("Could not merge sort runs: " + e.getMessage());
+        closeQuietly(merged);
+        return; // merge what we have
+      } finally {
+        if (merger != null) {
+          merger.close();
         }
       }
+      for (FrameSpill run : group) {
+        closeQuietly(run);
+      }
+      // keep the merged run in place of the group to preserve the stability of the sort
+      runs.subList(0, MERGE_FACTOR).clear();
+      runs.add(0, merged);
+    }
+  }
 
-      for (int x = 0; x < list.size(); x++) {
-        String value = list.get(x);
-        for (int y = 0; y < frameList.size(); y++) {
-          // if the frame has a field value which matches the current key, remove it from the list and add it to the return value
-          if (value.equals(frameList.get(y).getAsString(fieldName))) {
-            retval.add(frameList.get(y));
-          }
-        } // for each frame in the list
-      } // for each key
+
+
+
+  /**
+   * Calculate the sort keys for the given frame.
+   *
+   * @param frame the frame from which to extract the key values
+   *
+   * @return the key values in the order of the sort keys
+   */
+  private Object[] getKeys(DataFrame frame) {
+    Object[] retval = new Object[keys.size()];
+    for (int x = 0; x < retval.length; x++) {
+      retval[x] = keys.get(x).extract(frame);
     }
     return retval;
   }
 
+
+
+
+  /**
+   * Compare two sets of key values.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private int compareKeys(Object[] keys1, Object[] keys2) {
+    for (int x = 0; x < keys1.length; x++) {
+      Object value1 = keys1[x];
+      Object value2 = keys2[x];
+      int result;
+      if (value1 == null) {
+        result = (value2 == null) ? 0 : -1;
+      } else if (value2 == null) {
+        result = 1;
+      } else if (keys.get(x).caseInsensitive) {
+        result = String.CASE_INSENSITIVE_ORDER.compare((String)value1, (String)value2);
+      } else {
+        result = ((Comparable)value1).compareTo(value2);
+      }
+      if (result != 0) {
+        return keys.get(x).descending ? -result : result;
+      }
+    }
+    return 0;
+  }
+
+
+
+
+  private static CDX.Sort getSortMode(String sortMode) {
+    CDX.Sort retval = CDX.Sort.NONE;
+    if (StringUtil.isNotBlank(sortMode)) {
+      if (ConfigTag.ASCEND.equalsIgnoreCase(sortMode)) {
+        retval = CDX.Sort.ASCEND;
+      } else if (ConfigTag.DESCEND.equalsIgnoreCase(sortMode)) {
+        retval = CDX.Sort.DESCEND;
+      } else if (ConfigTag.ASCEND_CI.equalsIgnoreCase(sortMode)) {
+        retval = CDX.Sort.ASCEND_CI;
+      } else if (ConfigTag.DESCEND_CI.equalsIgnoreCase(sortMode)) {
+        retval = CDX.Sort.DESCEND_CI;
+      } else if (ConfigTag.NONE.equalsIgnoreCase(sortMode)) {
+        retval = CDX.Sort.NONE;
+      } else {
+        Log.warn("Unrecognized sourt parameter '" + sortMode + "' - no sorting will occur");
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  private static String getValue(DataFrame frame, String name) {
+    DataField field = frame.getFieldIgnoreCase(name);
+    return (field != null) ? field.getStringValue() : null;
+  }
+
+
+
+
+  /**
+   * @return the number of frames in the runs and buffer, limited to the size of a list
+   */
+  private static int count(List<FrameSpill> spills, List<Entry> buffer) {
+    long total = (buffer != null) ? buffer.size() : 0;
+    for (FrameSpill spill : spills) {
+      total += spill.size();
+    }
+    return (int)Math.min(total, Integer.MAX_VALUE);
+  }
+
+
+
+
+  private static void closeQuietly(FrameSpill spill) {
+    if (spill != null) {
+      try {
+        spill.close();
+      } catch (IOException ignore) {
+        // best effort
+      }
+    }
+  }
+
+
+
+
+  /**
+   * A field on which the frames are sorted.
+   */
+  private static class SortKey {
+    final String name;
+    final boolean descending;
+    final boolean caseInsensitive;
+    final String type;
+    final SimpleDateFormat format;
+
+
+
+
+    SortKey(String name, CDX.Sort mode, String type, String format) {
+      this.name = name;
+      this.descending = (mode == CDX.Sort.DESCEND || mode == CDX.Sort.DESCEND_CI);
+      this.caseInsensitive = (mode == CDX.Sort.ASCEND_CI || mode == CDX.Sort.DESCEND_CI);
+      this.type = StringUtil.isNotBlank(type) ? type.trim().toLowerCase() : null;
+      this.format = StringUtil.isNotBlank(format) ? new SimpleDateFormat(format) : null;
+      if (this.type != null && !NUMBER.equals(this.type) && !DATE.equals(this.type)) {
+        Log.warn("Unrecognized sort key type '" + type + "' for field '" + name + "' - sorting as string");
+      }
+    }
+
+
+
+
+    /**
+     * @return the value of this key in the given frame, or null if not present or not convertible
+     */
+    Object extract(DataFrame frame) {
+      DataField field = frame.getField(name);
+      if (field == null || field.isNull()) {
+        return null;
+      }
+      Object value = field.getObjectValue();
+      if (NUMBER.equals(type)) {
+        if (value instanceof Number) {
+          return ((Number)value).doubleValue();
+        }
+        try {
+          return Double.valueOf(field.getStringValue().trim());
+        } catch (NumberFormatException e) {
+          return null;
+        }
+      } else if (DATE.equals(type)) {
+        if (value instanceof Date) {
+          return ((Date)value).getTime();
+        }
+        if (format != null) {
+          try {
+            return format.parse(field.getStringValue().trim()).getTime();
+          } catch (ParseException e) {
+            return null;
+          }
+        }
+        return null;
+      } else {
+        return field.getStringValue();
+      }
+    }
+  }
+
+
+
+
+  /**
+   * A buffered frame and its sort key values.
+   */
+  private static class Entry {
+    final DataFrame frame;
+    final Object[] keys;
+
+
+
+
+    Entry(DataFrame frame, Object[] keys) {
+      this.frame = frame;
+      this.keys = keys;
+    }
+  }
+
+
+
+
+  private class EntryComparator implements Comparator<Entry> {
+    @Override
+    public int compare(Entry entry1, Entry entry2) {
+      return compareKeys(entry1.keys, entry2.keys);
+    }
+  }
+
+
+
+
+  /**
+   * The sorted runs and buffer, merged as they are read.
+   */
+  private class SortedList extends MergedList<Entry> {
+
+    /**
+     * @param spills the runs to merge in the order they were created
+     * @param buffer the sorted in-memory frames created after all the runs, may be null
+     */
+    SortedList(List<FrameSpill> spills, List<Entry> buffer) {
+      super(spills, buffer, new EntryComparator(), count(spills, buffer));
+    }
+
+
+
+
+    @Override
+    protected Entry read(DataFrame frame) {
+      return new Entry(frame, getKeys(frame));
+    }
+
+
+
+
+    @Override
+    protected DataFrame toResult(Entry entry) {
+      return entry.frame;
+    }
+
+
+
+
+    @Override
+    protected void failed(IOException e) {
+      Log.error("Could not read sorted frames: " + e.getMessage());
+      if (getContext() != null) {
+        getContext().setError("Sort could not read sorted frames: " + e.getMessage());
+      }
+    }
+  }
+
 }
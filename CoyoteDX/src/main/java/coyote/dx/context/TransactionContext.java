@@ -7,6 +7,9 @@
  */
 package coyote.dx.context;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import coyote.dataframe.DataFrame;
 
 
@@ -24,6 +27,12 @@ public class TransactionContext extends OperationalContext {
 
   private boolean lastFrame = false;
 
+  /** Listener events held back until the transaction is completed in order; null means events fire immediately */
+  private List<Runnable> deferredEvents = null;
+
+  /** Actions to run after the transaction has ended; null if there are none */
+  private List<Runnable> completionActions = null;
+
 
 
 
@@ -121,5 +130,100 @@ public class TransactionContext extends OperationalContext {
 
 
 
+  /**
+   * Hold all listener events for this transaction until {@link
+   * #fireDeferredEvents()} is called.
+   *
+   * <p>This is used by the pipelined engine so frames processed concurrently
+   * by worker threads still generate their listener events in the order the
+   * frames were read.</p>
+   */
+  public void deferEvents() {
+    if (deferredEvents == null) {
+      deferredEvents = new ArrayList<Runnable>();
+    }
+  }
+
+
+
+
+  /**
+   * Queue the given event if this transaction is deferring events.
+   *
+   * @param event the event to fire later
+   *
+   * @return true if the event was deferred, false if the caller should fire
+   *         the event immediately.
+   */
+  boolean defer(Runnable event) {
+    if (deferredEvents != null) {
+      deferredEvents.add(event);
+      return true;
+    }
+    return false;
+  }
+
+
+
+
+  /**
+   * Fire all the deferred events in the order they were generated and
+   * return to firing events immediately.
+   */
+  public void fireDeferredEvents() {
+    if (deferredEvents != null) {
+      List<Runnable> events = deferredEvents;
+      deferredEvents = null;
+      for (Runnable event : events) {
+        event.run();
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Register an action to run once this transaction has ended.
+   *
+   * <p>The engine ends a transaction after its frame has been written (or
+   * filtered out), which in pipelined mode may be well after the reader has
+   * moved on to later frames. Readers use this to release their source
+   * records, for example acknowledging a message, only when it is safe to do
+   * so.</p>
+   *
+   * @param action the action to run when the transaction ends
+   */
+  public void whenEnded(Runnable action) {
+    if (completionActions == null) {
+      completionActions = new ArrayList<Runnable>();
+    }
+    completionActions.add(action);
+  }
+
+
+
+
+  /**
+   * End the transaction, then run any actions registered to run when it 
+   * ended.
+   * 
+   * @see coyote.dx.context.OperationalContext#end()
+   */
+  @Override
+  public void end() {
+    super.end();
+    if (completionActions != null) {
+      List<Runnable> actions = completionActions;
+      completionActions = null;
+      for (Runnable action : actions) {
+        action.run();
+      }
+    }
+  }
+
+
+
+
 
 }
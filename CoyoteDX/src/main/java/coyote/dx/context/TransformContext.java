@@ -12,9 +12,11 @@ import java.util.List;
 import java.util.Map;
 
 import coyote.commons.StringUtil;
+import coyote.commons.template.SymbolTable;
 import coyote.commons.template.Template;
 import coyote.dataframe.DataField;
 import coyote.dataframe.DataFrame;
+import coyote.dx.FrameValidator;
 import coyote.dx.Symbols;
 import coyote.dx.TransformEngine;
 import coyote.loader.cfg.Config;
@@ -37,6 +39,7 @@ public class TransformContext extends OperationalContext {
   private static final String TRANSFORM = "Transform.";
   private static final String WORKING = "Working.";
   private volatile TransactionContext transactionContext = null;
+  private final ThreadLocal<TransactionContext> boundTransaction = new ThreadLocal<TransactionContext>();
   protected Config configuration = new Config();
   protected TransformEngine engine = null;
   protected volatile long openCount = 0;
@@ -79,25 +82,26 @@ public class TransformContext extends OperationalContext {
 
   public boolean containsField(final String token) {
     Boolean retval = false;
+    final TransactionContext txn = getTransaction();
     if (token.startsWith(WORKING)) {
       final String name = token.substring(WORKING.length());
-      if ((transactionContext != null) && (transactionContext.getWorkingFrame() != null)) {
-        retval = transactionContext.getWorkingFrame().contains(name);
+      if ((txn != null) && (txn.getWorkingFrame() != null)) {
+        retval = txn.getWorkingFrame().contains(name);
       }
     } else if (token.startsWith(SOURCE)) {
       final String name = token.substring(SOURCE.length());
-      if ((transactionContext != null) && (transactionContext.getSourceFrame() != null)) {
-        retval = transactionContext.getSourceFrame().contains(name);
+      if ((txn != null) && (txn.getSourceFrame() != null)) {
+        retval = txn.getSourceFrame().contains(name);
       }
     } else if (token.startsWith(TARGET)) {
       final String name = token.substring(TARGET.length());
-      if ((transactionContext != null) && (transactionContext.getTargetFrame() != null)) {
-        retval = transactionContext.getTargetFrame().contains(name);
+      if ((txn != null) && (txn.getTargetFrame() != null)) {
+        retval = txn.getTargetFrame().contains(name);
       }
     } else {
       // assume a working frame field
-      if ((transactionContext != null) && (transactionContext.getWorkingFrame() != null)) {
-        retval = transactionContext.getWorkingFrame().contains(token);
+      if ((txn != null) && (txn.getWorkingFrame() != null)) {
+        retval = txn.getWorkingFrame().contains(token);
       }
     }
     return retval;
@@ -114,10 +118,60 @@ public class TransformContext extends OperationalContext {
 
 
   /**
-  * @return the current transaction context
-  */
+   * Return the current transaction context.
+   *
+   * <p>If a transaction has been bound to the calling thread, that
+   * transaction is returned, otherwise the transaction most recently set in
+   * this context is returned.</p>
+   *
+   * @return the current transaction context
+   */
   public TransactionContext getTransaction() {
-    return transactionContext;
+    final TransactionContext retval = boundTransaction.get();
+    return (retval != null) ? retval : transactionContext;
+  }
+
+
+
+
+  /**
+   * Return the symbols for the calling thread.
+   *
+   * <p>If a transaction with its own symbols is bound to the calling thread,
+   * its symbols are returned so concurrent transactions each see their own
+   * frame number and last frame flag. Otherwise the symbols of the job are
+   * returned.</p>
+   *
+   * @see coyote.dx.context.OperationalContext#getSymbols()
+   */
+  @Override
+  public SymbolTable getSymbols() {
+    final TransactionContext txn = boundTransaction.get();
+    if ((txn != null) && (txn.getSymbols() != null)) {
+      return txn.getSymbols();
+    }
+    return symbols;
+  }
+
+
+
+
+  /**
+   * Bind the given transaction to the calling thread.
+   *
+   * <p>When frames are processed concurrently (i.e. a pipelined engine) each
+   * thread works on its own transaction. Binding the transaction to the
+   * thread allows components to use {@link #getTransaction()} as they
+   * normally would and see the transaction they are processing.</p>
+   *
+   * @param context the transaction to bind, null to remove the binding
+   */
+  public void bindTransaction(final TransactionContext context) {
+    if (context != null) {
+      boundTransaction.set(context);
+    } else {
+      boundTransaction.remove();
+    }
   }
 
 
@@ -232,25 +286,26 @@ public class TransformContext extends OperationalContext {
    */
   public String resolveField(final String token) {
     String retval = null;
+    final TransactionContext txn = getTransaction();
     if (token.startsWith(WORKING)) {
       final String name = token.substring(WORKING.length());
-      if ((transactionContext != null) && (transactionContext.getWorkingFrame() != null)) {
-        retval = transactionContext.getWorkingFrame().getAsString(name);
+      if ((txn != null) && (txn.getWorkingFrame() != null)) {
+        retval = txn.getWorkingFrame().getAsString(name);
       }
     } else if (token.startsWith(SOURCE)) {
       final String name = token.substring(SOURCE.length());
-      if ((transactionContext != null) && (transactionContext.getSourceFrame() != null)) {
-        retval = transactionContext.getSourceFrame().getAsString(name);
+      if ((txn != null) && (txn.getSourceFrame() != null)) {
+        retval = txn.getSourceFrame().getAsString(name);
       }
     } else if (token.startsWith(TARGET)) {
       final String name = token.substring(TARGET.length());
-      if ((transactionContext != null) && (transactionContext.getTargetFrame() != null)) {
-        retval = transactionContext.getTargetFrame().getAsString(name);
+      if ((txn != null) && (txn.getTargetFrame() != null)) {
+        retval = txn.getTargetFrame().getAsString(name);
       }
     } else if (token.startsWith(CONTEXT)) {
       final String name = token.substring(CONTEXT.length());
-      if (transactionContext != null) {
-        retval = transactionContext.getAsString(name);
+      if (txn != null) {
+        retval = txn.getAsString(name);
       }
     } else if (token.startsWith(TRANSFORM)) {
       final String name = token.substring(TRANSFORM.length());
@@ -284,25 +339,26 @@ public class TransformContext extends OperationalContext {
    */
   public Object resolveFieldValue(final String token) {
     Object retval = null;
+    final TransactionContext txn = getTransaction();
     if (token.startsWith(WORKING)) {
       final String name = token.substring(WORKING.length());
-      if ((transactionContext != null) && (transactionContext.getWorkingFrame() != null)) {
-        retval = transactionContext.getWorkingFrame().getObject(name);
+      if ((txn != null) && (txn.getWorkingFrame() != null)) {
+        retval = txn.getWorkingFrame().getObject(name);
       }
     } else if (token.startsWith(SOURCE)) {
       final String name = token.substring(SOURCE.length());
-      if ((transactionContext != null) && (transactionContext.getSourceFrame() != null)) {
-        retval = transactionContext.getSourceFrame().getObject(name);
+      if ((txn != null) && (txn.getSourceFrame() != null)) {
+        retval = txn.getSourceFrame().getObject(name);
       }
     } else if (token.startsWith(TARGET)) {
       final String name = token.substring(TARGET.length());
-      if ((transactionContext != null) && (transactionContext.getTargetFrame() != null)) {
-        retval = transactionContext.getTargetFrame().getObject(name);
+      if ((txn != null) && (txn.getTargetFrame() != null)) {
+        retval = txn.getTargetFrame().getObject(name);
       }
     } else if (token.startsWith(CONTEXT)) {
       final String name = token.substring(CONTEXT.length());
-      if (transactionContext != null) {
-        retval = transactionContext.get(name);
+      if (txn != null) {
+        retval = txn.get(name);
       }
     } else if (token.startsWith(TRANSFORM)) {
       final String name = token.substring(TRANSFORM.length());
@@ -392,8 +448,9 @@ public class TransformContext extends OperationalContext {
         if (obj != null) {
           retval = obj;
         } else {
-          if (symbols != null && symbols.containsKey(token)) {
-            retval = symbols.get(token);
+          final SymbolTable table = getSymbols();
+          if (table != null && table.containsKey(token)) {
+            retval = table.get(token);
           }
         }
       }
@@ -524,6 +581,61 @@ public class TransformContext extends OperationalContext {
 
 
 
+  /**
+   * @see coyote.dx.context.OperationalContext#fireMap(coyote.dx.context.TransactionContext)
+   */
+  @Override
+  public void fireMap(final TransactionContext txnContext) {
+    if (!defer(() -> super.fireMap(txnContext))) {
+      super.fireMap(txnContext);
+    }
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.context.OperationalContext#fireValidationFailed(coyote.dx.FrameValidator, java.lang.String)
+   */
+  @Override
+  public void fireValidationFailed(final FrameValidator validator, final String msg) {
+    if (!defer(() -> super.fireValidationFailed(validator, msg))) {
+      super.fireValidationFailed(validator, msg);
+    }
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.context.OperationalContext#fireFrameValidationFailed(coyote.dx.context.TransactionContext)
+   */
+  @Override
+  public void fireFrameValidationFailed(final TransactionContext txnContext) {
+    if (!defer(() -> super.fireFrameValidationFailed(txnContext))) {
+      super.fireFrameValidationFailed(txnContext);
+    }
+  }
+
+
+
+
+  /**
+   * Hold the event in the transaction bound to the calling thread if that
+   * transaction is deferring its events.
+   *
+   * @param event the event to defer
+   *
+   * @return true if the event was deferred, false if it should be fired now
+   */
+  private boolean defer(final Runnable event) {
+    final TransactionContext txn = boundTransaction.get();
+    return (txn != null) && txn.defer(event);
+  }
+
+
+
+
   public void setConfiguration(final Config config) {
     configuration = config;
   }
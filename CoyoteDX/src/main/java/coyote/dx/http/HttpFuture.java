@@ -86,15 +86,26 @@ public class HttpFuture {
 
 
 
+  /**
+   * Wait for the response to be set.
+   * 
+   * <p>The calling thread is woken as soon as the response is set.
+   * 
+   * @param timeout the number of milliseconds to wait for the response
+   * 
+   * @return the response or null if none was set within the timeout period
+   */
   public Response getResponse(final long timeout) {
     synchronized (mutex) {
       final long expiry = System.currentTimeMillis() + timeout;
-      while (response == null && System.currentTimeMillis() < expiry) {
+      long remaining = timeout;
+      while (response == null && remaining > 0) {
         try {
-          mutex.wait(10);
+          mutex.wait(remaining);
         } catch (final InterruptedException ignore) {
           // don't care, simply time-out
         }
+        remaining = expiry - System.currentTimeMillis();
       }
       if(response == null) timedOut= true;
       return response;
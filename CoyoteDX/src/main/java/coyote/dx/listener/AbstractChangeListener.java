@@ -7,9 +7,7 @@
  */
 package coyote.dx.listener;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import coyote.commons.Decimal;
@@ -60,6 +58,14 @@ import coyote.loader.log.LogMsg;
  * indicate {@code UP}. Values of 'down', 'downwards', 'negative' or 
  * 'negatively' indicate {@code DOWN}. The default setting is {@code BOTH} and 
  * can be configured with 'both' or 'either'. 
+ * 
+ * <p>Samples are kept in a ring buffer with running aggregates so the total,
+ * average, minimum, maximum and exponential average are available in 
+ * constant time regardless of the size of the window. Samples and statistics 
+ * are kept as decimals by default. Setting the {@code Fast} configuration 
+ * parameter to true keeps them as primitive doubles instead which is 
+ * considerably faster and smaller for large windows and many groups at the 
+ * cost of decimal precision.
  */
 public abstract class AbstractChangeListener extends AbstractMonitoringListener implements ContextListener {
 
@@ -68,9 +74,11 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
   private int maxSampleSize = Integer.MAX_VALUE;
   private String fieldName = null;
   private String groupingFieldName = null;
-  private final Map<String, List<Decimal>> sampleMap = new HashMap<>();
+  private final Map<String, SampleWindow> sampleMap = new HashMap<>();
+  private boolean fast = false;
 
   protected String DIRECTION_TAG = "Direction";
+  protected String FAST_TAG = "Fast";
   protected Direction direction = Direction.BOTH;
 
   protected enum Direction {
@@ -128,6 +136,10 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
       }
     }
 
+    if (getConfiguration().containsIgnoreCase(FAST_TAG)) {
+      fast = getBoolean(FAST_TAG);
+    }
+
     String dir = getConfiguration().getString(DIRECTION_TAG);
     if (StringUtil.isNotBlank(dir)) {
       String ldir = dir.toLowerCase();
@@ -182,11 +194,7 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
   private Decimal add(final Decimal value, final String group) {
     Decimal retval = null;
     if (value != null) {
-      final List<Decimal> samples = getOrCreateSampleList(group);
-      samples.add(value);
-      while (samples.size() > maxSampleSize) {
-        retval = samples.remove(0);
-      }
+      retval = getOrCreateSampleList(group).add(value);
     }
     return retval;
   }
@@ -194,6 +202,13 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
 
 
 
+  private Decimal add(final double value, final String group) {
+    return getOrCreateSampleList(group).add(value);
+  }
+
+
+
+
   /**
    * Retrieve the average of the samples decaying the significance of each
    * older sample by the given factor.
@@ -241,18 +256,7 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
    *         each. The decay factor will never reach 1.
    */
   protected Decimal getExponentialAverage(final Decimal decayFactor, final String group) {
-    Decimal retval = null;
-    final List<Decimal> samples = getOrCreateSampleList(group);
-    for (int x = samples.size() - 1; x >= 0; x--) {
-      final Decimal value = samples.get(x);
-      if (retval == null) {
-        retval = value;
-        continue;
-      } else {
-        retval = retval.plus(decayFactor.multipliedBy(value.minus(retval)));
-      }
-    }
-    return retval;
+    return getOrCreateSampleList(group).getExponentialAverage(decayFactor);
   }
 
 
@@ -289,17 +293,16 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
 
 
   /**
-   * @param groupName
-   * @return
+   * @param groupName the name of the group, null or empty for the default group
+   * 
+   * @return the window of samples for the group, never null
    */
-  private List<Decimal> getOrCreateSampleList(final String groupName) {
-    List<Decimal> retval = null;
-    if (StringUtil.isNotEmpty(groupName)) {
-      retval = sampleMap.get(groupName);
-      if (retval == null) {
-        retval = new ArrayList<Decimal>();
-        sampleMap.put(groupName, retval);
-      }
+  private SampleWindow getOrCreateSampleList(final String groupName) {
+    final String name = StringUtil.isNotEmpty(groupName) ? groupName : DEFAULT_GROUP;
+    SampleWindow retval = sampleMap.get(name);
+    if (retval == null) {
+      retval = SampleWindow.create(maxSampleSize, fast);
+      sampleMap.put(name, retval);
     }
     return retval;
   }
@@ -308,12 +311,7 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
 
 
   protected Decimal getSample(final int index, final String group) {
-    Decimal retval = null;
-    final List<Decimal> samples = getOrCreateSampleList(group);
-    if (index < samples.size()) {
-      retval = samples.get(index);
-    }
-    return retval;
+    return getOrCreateSampleList(group).get(index);
   }
 
 
@@ -323,7 +321,7 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
    * @return the current size of the sample array
    */
   public int getSampleSize(final String group) {
-    final List<Decimal> samples = getOrCreateSampleList(group);
+    final SampleWindow samples = sampleMap.get(StringUtil.isNotEmpty(group) ? group : DEFAULT_GROUP);
     if (samples != null) {
       return samples.size();
     } else {
@@ -342,16 +340,7 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
 
 
   protected Decimal getSimpleAverage(final String group) {
-    Decimal retval = Decimal.ZERO;
-    final List<Decimal> samples = getOrCreateSampleList(group);
-    if (samples.size() > 0) {
-      Decimal sum = Decimal.ZERO;
-      for (final Decimal value : samples) {
-        sum = sum.plus(value);
-      }
-      retval = sum.dividedBy(Decimal.valueOf(samples.size()));
-    }
-    return retval;
+    return getOrCreateSampleList(group).getAverage();
   }
 
 
@@ -365,18 +354,7 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
 
 
   protected Decimal getMinimum(final String group) {
-    Decimal retval = Decimal.NaN;
-    final List<Decimal> samples = getOrCreateSampleList(group);
-    if (samples.size() > 0) {
-      Decimal min = Decimal.NaN;
-      for (final Decimal value : samples) {
-        if (min.isNaN() || value.isLessThan(min)) {
-          min = value;
-        }
-      }
-      retval = min;
-    }
-    return retval;
+    return getOrCreateSampleList(group).getMinimum();
   }
 
 
@@ -390,18 +368,7 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
 
 
   protected Decimal getMaximum(final String group) {
-    Decimal retval = Decimal.NaN;
-    final List<Decimal> samples = getOrCreateSampleList(group);
-    if (samples.size() > 0) {
-      Decimal max = Decimal.NaN;
-      for (final Decimal value : samples) {
-        if (max.isNaN() || value.isGreaterThan(max)) {
-          max = value;
-        }
-      }
-      retval = max;
-    }
-    return retval;
+    return getOrCreateSampleList(group).getMaximum();
   }
 
 
@@ -415,16 +382,7 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
 
 
   protected Decimal getTotal(final String group) {
-    Decimal retval = Decimal.ZERO;
-    final List<Decimal> samples = getOrCreateSampleList(group);
-    if (samples.size() > 0) {
-      Decimal sum = Decimal.ZERO;
-      for (final Decimal value : samples) {
-        sum = sum.plus(value);
-      }
-      retval = sum;
-    }
-    return retval;
+    return getOrCreateSampleList(group).getTotal();
   }
 
 
@@ -540,14 +498,14 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
    *          not been reached or the value eas null.
    */
   protected Decimal sample(final double value) {
-    return add(Decimal.valueOf(value), DEFAULT_GROUP);
+    return fast ? add(value, DEFAULT_GROUP) : add(Decimal.valueOf(value), DEFAULT_GROUP);
   }
 
 
 
 
   protected Decimal sample(final double value, final String group) {
-    return add(Decimal.valueOf(value), group);
+    return fast ? add(value, group) : add(Decimal.valueOf(value), group);
   }
 
 
@@ -561,14 +519,14 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
    *          not been reached or the value eas null.
    */
   protected Decimal sample(final int value) {
-    return add(Decimal.valueOf(value), DEFAULT_GROUP);
+    return fast ? add((double)value, DEFAULT_GROUP) : add(Decimal.valueOf(value), DEFAULT_GROUP);
   }
 
 
 
 
   protected Decimal sample(final int value, final String group) {
-    return add(Decimal.valueOf(value), group);
+    return fast ? add((double)value, group) : add(Decimal.valueOf(value), group);
   }
 
 
@@ -582,14 +540,14 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
    *          not been reached or the value eas null.
    */
   protected Decimal sample(final long value) {
-    return add(Decimal.valueOf(value), DEFAULT_GROUP);
+    return fast ? add((double)value, DEFAULT_GROUP) : add(Decimal.valueOf(value), DEFAULT_GROUP);
   }
 
 
 
 
   protected Decimal sample(final long value, final String group) {
-    return add(Decimal.valueOf(value), group);
+    return fast ? add((double)value, group) : add(Decimal.valueOf(value), group);
   }
 
 
@@ -617,8 +575,8 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
     if (StringUtil.isNotBlank(value)) {
       String str = value.replace(",", "");
       str = str.replace(" ", "");
-      if (StringUtil.isEmpty(group)) {
-        retval = add(Decimal.valueOf(str), DEFAULT_GROUP);
+      if (fast) {
+        retval = add(Double.parseDouble(str), group);
       } else {
         retval = add(Decimal.valueOf(str), group);
       }
@@ -679,12 +637,9 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
    * @return
    */
   protected Decimal getLastSample(String group) {
-    Decimal retval = Decimal.NaN;
-    final List<Decimal> samples = getOrCreateSampleList(group);
-    if (samples.size() > 0) {
-      retval = samples.get(samples.size() - 1);
-    }
-    return retval;
+    final SampleWindow samples = getOrCreateSampleList(group);
+    final Decimal retval = samples.get(samples.size() - 1);
+    return (retval != null) ? retval : Decimal.NaN;
   }
 
 
@@ -720,12 +675,8 @@ public abstract class AbstractChangeListener extends AbstractMonitoringListener
    * @return the oldest sample in the cache for the given group.
    */
   protected Decimal getFirstSample(String group) {
-    Decimal retval = Decimal.NaN;
-    final List<Decimal> samples = getOrCreateSampleList(group);
-    if (samples.size() > 0) {
-      retval = samples.get(0);
-    }
-    return retval;
+    final Decimal retval = getOrCreateSampleList(group).get(0);
+    return (retval != null) ? retval : Decimal.NaN;
   }
 
 
@@ -10,6 +10,7 @@ package coyote.dx.listener;
 import java.text.DecimalFormat;
 import java.text.FieldPosition;
 import java.util.Date;
+import java.util.Map;
 
 import coyote.commons.StringUtil;
 import coyote.commons.template.SymbolTable;
@@ -84,7 +85,9 @@ public class DataProfiler extends AbstractFileRecorder implements ContextListene
       elapsed = context.getElapsed();
       writePerformanceSummary();
       writeInputSummary();
+      writeValueSummary("Input Value Profile:", inputSchema);
       writeOutputSummary();
+      writeValueSummary("Output Value Profile:", outputSchema);
     }
   }
 
@@ -421,6 +424,80 @@ public class DataProfiler extends AbstractFileRecorder implements ContextListene
 
 
 
+  /**
+   * Write the distribution of the numeric values and the most frequent values
+   * observed in each field of the given schema.
+   *
+   * @param title the title of the summary
+   * @param schema the metrics to summarize
+   */
+  protected void writeValueSummary(String title, DataSetMetrics schema) {
+    if (schema.getSampleCount() == 0) {
+      return;
+    }
+
+    StringBuffer b = new StringBuffer(title);
+    b.append(StringUtil.LINE_FEED);
+    int nameSize = 5;
+    for (FieldMetrics metric : schema.getMetrics()) {
+      if (metric.getName().length() > nameSize) {
+        nameSize = metric.getName().length();
+      }
+    }
+
+    b.append(StringUtil.fixedLength("Field", nameSize + 1, StringUtil.LEFT_ALIGNMENT));
+    b.append(StringUtil.fixedLength("Minimum", 17, StringUtil.LEFT_ALIGNMENT));
+    b.append(StringUtil.fixedLength("Maximum", 17, StringUtil.LEFT_ALIGNMENT));
+    b.append(StringUtil.fixedLength("Mean", 17, StringUtil.LEFT_ALIGNMENT));
+    b.append(StringUtil.fixedLength("SDev", 17, StringUtil.LEFT_ALIGNMENT));
+    b.append(StringUtil.fixedLength("Median", 17, StringUtil.LEFT_ALIGNMENT));
+    b.append(StringUtil.fixedLength("95th", 17, StringUtil.LEFT_ALIGNMENT));
+    b.append("Top Values");
+    b.append(StringUtil.LINE_FEED);
+    write(b.toString());
+
+    for (FieldMetrics metric : schema.getMetrics()) {
+      b.delete(0, b.length());
+      b.append(StringUtil.fixedLength(metric.getName(), nameSize + 1, StringUtil.LEFT_ALIGNMENT));
+      if (metric.getNumericCount() > 0) {
+        b.append(StringUtil.fixedLength(DECIMAL_FORMAT.format(metric.getMinimumValue()), 16, StringUtil.LEFT_ALIGNMENT));
+        b.append(" ");
+        b.append(StringUtil.fixedLength(DECIMAL_FORMAT.format(metric.getMaximumValue()), 16, StringUtil.LEFT_ALIGNMENT));
+        b.append(" ");
+        b.append(StringUtil.fixedLength(DECIMAL_FORMAT.format(metric.getMeanValue()), 16, StringUtil.LEFT_ALIGNMENT));
+        b.append(" ");
+        b.append(StringUtil.fixedLength(DECIMAL_FORMAT.format(metric.getStdDevValue()), 16, StringUtil.LEFT_ALIGNMENT));
+        b.append(" ");
+        b.append(StringUtil.fixedLength(DECIMAL_FORMAT.format(metric.getMedian()), 16, StringUtil.LEFT_ALIGNMENT));
+        b.append(" ");
+        b.append(StringUtil.fixedLength(DECIMAL_FORMAT.format(metric.getQuantile(0.95D)), 16, StringUtil.LEFT_ALIGNMENT));
+        b.append(" ");
+      } else {
+        b.append(StringUtil.fixedLength("", 102, StringUtil.LEFT_ALIGNMENT));
+      }
+      int count = 0;
+      for (Map.Entry<String, Long> entry : metric.getTopValues(3).entrySet()) {
+        if (count++ > 0) {
+          b.append(", ");
+        }
+        b.append('"');
+        b.append(entry.getKey().length() > 20 ? entry.getKey().substring(0, 20) + "..." : entry.getKey());
+        b.append("\"(");
+        b.append(entry.getValue());
+        b.append(")");
+      }
+      b.append(StringUtil.LINE_FEED);
+      write(b.toString());
+    }
+
+    b.delete(0, b.length());
+    b.append(StringUtil.LINE_FEED);
+    write(b.toString());
+  }
+
+
+
+
   /**
    * Get a formatted string representing the difference between the two times.
    * 
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.listener;
+
+import coyote.commons.Decimal;
+
+
+/**
+ * A sample window which keeps its samples and statistics as decimals so the
+ * results are exactly those of decimal arithmetic.
+ */
+class DecimalWindow extends SampleWindow {
+  private Decimal[] values;
+  private Decimal[] frontSum;
+  private Decimal[] frontMin;
+  private Decimal[] frontMax;
+  private Decimal[] frontEma;
+  private Decimal[] frontPow;
+  private Decimal backSum = Decimal.ZERO;
+  private Decimal backMin = null;
+  private Decimal backMax = null;
+  private Decimal backEma = Decimal.ZERO;
+  private Decimal backPow = Decimal.ONE;
+  private Decimal factor = null;
+  private Decimal ratio = null;
+
+
+
+
+  DecimalWindow(final int limit) {
+    super(limit);
+    allocate(initialCapacity());
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#add(coyote.commons.Decimal)
+   */
+  @Override
+  Decimal add(final Decimal value) {
+    final Decimal retval = makeRoom();
+    values[position(size)] = value;
+    size++;
+    backSum = backSum.plus(value);
+    backMin = (backMin == null || value.isLessThan(backMin)) ? value : backMin;
+    backMax = (backMax == null || value.isGreaterThan(backMax)) ? value : backMax;
+    if (ratio != null) {
+      backEma = backEma.plus(backPow.multipliedBy(value));
+      backPow = backPow.multipliedBy(ratio);
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#add(double)
+   */
+  @Override
+  Decimal add(final double value) {
+    return add(Decimal.valueOf(value));
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#get(int)
+   */
+  @Override
+  Decimal get(final int index) {
+    return (index >= 0 && index < size) ? values[position(index)] : null;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getTotal()
+   */
+  @Override
+  Decimal getTotal() {
+    return (frontSize > 0) ? frontSum[head].plus(backSum) : backSum;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getAverage()
+   */
+  @Override
+  Decimal getAverage() {
+    return (size > 0) ? getTotal().dividedBy(Decimal.valueOf(size)) : Decimal.ZERO;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getMinimum()
+   */
+  @Override
+  Decimal getMinimum() {
+    Decimal retval = backMin;
+    if (frontSize > 0 && (retval == null || frontMin[head].isLessThan(retval))) {
+      retval = frontMin[head];
+    }
+    return (retval != null) ? retval : Decimal.NaN;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getMaximum()
+   */
+  @Override
+  Decimal getMaximum() {
+    Decimal retval = backMax;
+    if (frontSize > 0 && (retval == null || frontMax[head].isGreaterThan(retval))) {
+      retval = frontMax[head];
+    }
+    return (retval != null) ? retval : Decimal.NaN;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getExponentialAverage(coyote.commons.Decimal)
+   */
+  @Override
+  Decimal getExponentialAverage(final Decimal decayFactor) {
+    if (size == 0) {
+      return null;
+    }
+    if (factor == null || !factor.equals(decayFactor)) {
+      factor = decayFactor;
+      ratio = Decimal.ONE.minus(decayFactor);
+      aggregate();
+    }
+
+    // weighted sum of all samples, oldest weighted 1, each newer by another ratio
+    Decimal total = backEma;
+    Decimal pow = backPow;
+    if (frontSize > 0) {
+      total = frontEma[head].plus(frontPow[head].multipliedBy(backEma));
+      pow = frontPow[head].multipliedBy(backPow);
+    }
+    return factor.multipliedBy(total).plus(pow.multipliedBy(values[position(size - 1)]));
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#capacity()
+   */
+  @Override
+  protected int capacity() {
+    return values.length;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#clear(int)
+   */
+  @Override
+  protected void clear(final int position) {
+    values[position] = null;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#resize(int)
+   */
+  @Override
+  protected void resize(final int capacity) {
+    final Decimal[] oldValues = values;
+    final Decimal[] oldSum = frontSum;
+    final Decimal[] oldMin = frontMin;
+    final Decimal[] oldMax = frontMax;
+    final Decimal[] oldEma = frontEma;
+    final Decimal[] oldPow = frontPow;
+    allocate(capacity);
+    for (int x = 0; x < size; x++) {
+      final int from = (head + x) % oldValues.length;
+      values[x] = oldValues[from];
+      frontSum[x] = oldSum[from];
+      frontMin[x] = oldMin[from];
+      frontMax[x] = oldMax[from];
+      frontEma[x] = oldEma[from];
+      frontPow[x] = oldPow[from];
+    }
+    head = 0;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#aggregate()
+   */
+  @Override
+  protected void aggregate() {
+    for (int x = size - 1; x >= 0; x--) {
+      final int pos = position(x);
+      final Decimal value = values[pos];
+      if (x == size - 1) {
+        frontSum[pos] = value;
+        frontMin[pos] = value;
+        frontMax[pos] = value;
+        if (ratio != null) {
+          frontEma[pos] = value;
+          frontPow[pos] = ratio;
+        }
+      } else {
+        final int next = position(x + 1);
+        frontSum[pos] = value.plus(frontSum[next]);
+        frontMin[pos] = value.isLessThan(frontMin[next]) ? value : frontMin[next];
+        frontMax[pos] = value.isGreaterThan(frontMax[next]) ? value : frontMax[next];
+        if (ratio != null) {
+          frontEma[pos] = value.plus(ratio.multipliedBy(frontEma[next]));
+          frontPow[pos] = ratio.multipliedBy(frontPow[next]);
+        }
+      }
+    }
+    frontSize = size;
+    backSum = Decimal.ZERO;
+    backMin = null;
+    backMax = null;
+    backEma = Decimal.ZERO;
+    backPow = Decimal.ONE;
+  }
+
+
+
+
+  private void allocate(final int capacity) {
+    values = new Decimal[capacity];
+    frontSum = new Decimal[capacity];
+    frontMin = new Decimal[capacity];
+    frontMax = new Decimal[capacity];
+    frontEma = new Decimal[capacity];
+    frontPow = new Decimal[capacity];
+  }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.listener;
+
+import coyote.commons.Decimal;
+
+
+/**
+ * A sample window which keeps its samples and statistics as primitive
+ * doubles, trading decimal precision for speed and memory.
+ */
+class DoubleWindow extends SampleWindow {
+  private double[] values;
+  private double[] frontSum;
+  private double[] frontMin;
+  private double[] frontMax;
+  private double[] frontEma;
+  private double[] frontPow;
+  private double backSum = 0D;
+  private double backMin = Double.POSITIVE_INFINITY;
+  private double backMax = Double.NEGATIVE_INFINITY;
+  private double backEma = 0D;
+  private double backPow = 1D;
+  private double factor = Double.NaN;
+  private double ratio = Double.NaN;
+
+
+
+
+  DoubleWindow(final int limit) {
+    super(limit);
+    allocate(initialCapacity());
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#add(coyote.commons.Decimal)
+   */
+  @Override
+  Decimal add(final Decimal value) {
+    return add(value.toDouble());
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#add(double)
+   */
+  @Override
+  Decimal add(final double value) {
+    final Decimal retval = makeRoom();
+    values[position(size)] = value;
+    size++;
+    backSum += value;
+    backMin = Math.min(backMin, value);
+    backMax = Math.max(backMax, value);
+    if (!Double.isNaN(ratio)) {
+      backEma += backPow * value;
+      backPow *= ratio;
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#get(int)
+   */
+  @Override
+  Decimal get(final int index) {
+    return (index >= 0 && index < size) ? Decimal.valueOf(values[position(index)]) : null;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getTotal()
+   */
+  @Override
+  Decimal getTotal() {
+    return Decimal.valueOf(total());
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getAverage()
+   */
+  @Override
+  Decimal getAverage() {
+    return (size > 0) ? Decimal.valueOf(total() / size) : Decimal.ZERO;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getMinimum()
+   */
+  @Override
+  Decimal getMinimum() {
+    if (size == 0) {
+      return Decimal.NaN;
+    }
+    return Decimal.valueOf((frontSize > 0) ? Math.min(frontMin[head], backMin) : backMin);
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getMaximum()
+   */
+  @Override
+  Decimal getMaximum() {
+    if (size == 0) {
+      return Decimal.NaN;
+    }
+    return Decimal.valueOf((frontSize > 0) ? Math.max(frontMax[head], backMax) : backMax);
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#getExponentialAverage(coyote.commons.Decimal)
+   */
+  @Override
+  Decimal getExponentialAverage(final Decimal decayFactor) {
+    if (size == 0) {
+      return null;
+    }
+    final double requested = decayFactor.toDouble();
+    if (Double.compare(factor, requested) != 0) {
+      factor = requested;
+      ratio = 1D - requested;
+      aggregate();
+    }
+
+    // weighted sum of all samples, oldest weighted 1, each newer by another ratio
+    double total = backEma;
+    double pow = backPow;
+    if (frontSize > 0) {
+      total = frontEma[head] + frontPow[head] * backEma;
+      pow = frontPow[head] * backPow;
+    }
+    return Decimal.valueOf(factor * total + pow * values[position(size - 1)]);
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#capacity()
+   */
+  @Override
+  protected int capacity() {
+    return values.length;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#clear(int)
+   */
+  @Override
+  protected void clear(final int position) {
+    // nothing to release
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#resize(int)
+   */
+  @Override
+  protected void resize(final int capacity) {
+    final double[] oldValues = values;
+    final double[] oldSum = frontSum;
+    final double[] oldMin = frontMin;
+    final double[] oldMax = frontMax;
+    final double[] oldEma = frontEma;
+    final double[] oldPow = frontPow;
+    allocate(capacity);
+    for (int x = 0; x < size; x++) {
+      final int from = (head + x) % oldValues.length;
+      values[x] = oldValues[from];
+      frontSum[x] = oldSum[from];
+      frontMin[x] = oldMin[from];
+      frontMax[x] = oldMax[from];
+      frontEma[x] = oldEma[from];
+      frontPow[x] = oldPow[from];
+    }
+    head = 0;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.listener.SampleWindow#aggregate()
+   */
+  @Override
+  protected void aggregate() {
+    final boolean decaying = !Double.isNaN(ratio);
+    for (int x = size - 1; x >= 0; x--) {
+      final int pos = position(x);
+      final double value = values[pos];
+      if (x == size - 1) {
+        frontSum[pos] = value;
+        frontMin[pos] = value;
+        frontMax[pos] = value;
+        if (decaying) {
+          frontEma[pos] = value;
+          frontPow[pos] = ratio;
+        }
+      } else {
+        final int next = position(x + 1);
+        frontSum[pos] = value + frontSum[next];
+        frontMin[pos] = Math.min(value, frontMin[next]);
+        frontMax[pos] = Math.max(value, frontMax[next]);
+        if (decaying) {
+          frontEma[pos] = value + ratio * frontEma[next];
+          frontPow[pos] = ratio * frontPow[next];
+        }
+      }
+    }
+    frontSize = size;
+    backSum = 0D;
+    backMin = Double.POSITIVE_INFINITY;
+    backMax = Double.NEGATIVE_INFINITY;
+    backEma = 0D;
+    backPow = 1D;
+  }
+
+
+
+
+  private double total() {
+    return (frontSize > 0) ? frontSum[head] + backSum : backSum;
+  }
+
+
+
+
+  private void allocate(final int capacity) {
+    values = new double[capacity];
+    frontSum = new double[capacity];
+    frontMin = new double[capacity];
+    frontMax = new double[capacity];
+    frontEma = new double[capacity];
+    frontPow = new double[capacity];
+  }
+
+}
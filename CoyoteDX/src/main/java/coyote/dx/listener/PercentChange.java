@@ -78,6 +78,8 @@ public class PercentChange extends AbstractChangeListener implements ContextList
   private static final String PERCENT = "Percent";
   private static final String ABSOLUTE_PERCENT = "AbsolutePercent";
   private Decimal sentinel = null;
+  private Decimal decay = null;
+  private boolean averaging = false;
 
 
 
@@ -99,6 +101,18 @@ public class PercentChange extends AbstractChangeListener implements ContextList
     } else {
       throw new ConfigurationException(getClass().getSimpleName() + " requires the '" + EXCEEDS_TAG + "' configuration parameter");
     }
+
+    if (getConfiguration().containsIgnoreCase(DECAY_TAG)) {
+      try {
+        decay = Decimal.valueOf(getString(DECAY_TAG));
+      } catch (Exception e) {
+        throw new ConfigurationException(getClass().getSimpleName() + ": The '" + DECAY_TAG + "' configuration parameter must be a numeric value");
+      }
+    }
+
+    if (getConfiguration().containsIgnoreCase(AVERAGE_TAG)) {
+      averaging = getBoolean(AVERAGE_TAG);
+    }
   }
 
 
@@ -197,25 +211,17 @@ public class PercentChange extends AbstractChangeListener implements ContextList
 
 
   /**
-   * @return
+   * @return the decay factor for exponential averaging, null to use simple averaging
    */
   private Decimal getDecay() {
-    Decimal retval = null;
-    if (getConfiguration().containsIgnoreCase(DECAY_TAG)) {
-      retval = Decimal.valueOf(getString(DECAY_TAG));
-    }
-    return retval;
+    return decay;
   }
 
 
 
 
   private boolean isAveraging() {
-    boolean retval = false;
-    if (getConfiguration().containsIgnoreCase(AVERAGE_TAG)) {
-      retval = getBoolean(AVERAGE_TAG);
-    }
-    return retval;
+    return averaging;
   }
 
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.listener;
+
+import coyote.commons.Decimal;
+
+
+/**
+ * A window of the most recent numeric samples with constant time statistics.
+ *
+ * <p>Samples are held in a ring buffer so adding a sample and evicting the
+ * oldest never shifts the other samples. The total, minimum, maximum and
+ * exponential average are maintained with the "two stacks" technique: the
+ * oldest samples (the front) carry pre-computed aggregates from each sample
+ * to the end of the front and the newer samples (the back) are folded into a
+ * single running aggregate as they arrive. A query combines the aggregate at
+ * the head of the front with the running back aggregate. When the front is
+ * exhausted, all the samples are re-aggregated into a new front, which
+ * happens at most once for every sample in the window so each sample costs
+ * amortized constant time. Nothing is ever subtracted from an aggregate so
+ * there is no accumulation of rounding errors over long runs.</p>
+ *
+ * <p>The exponential average is the one documented in
+ * {@link AbstractChangeListener#getExponentialAverage(Decimal, String)}. Its
+ * aggregates depend on the decay factor so they are maintained for the last
+ * factor requested; requesting a different factor re-aggregates the window
+ * once.</p>
+ */
+abstract class SampleWindow {
+
+  /** The maximum number of samples retained */
+  protected final int limit;
+
+  /** Position of the oldest sample in the ring */
+  protected int head = 0;
+
+  /** Number of samples in the window */
+  protected int size = 0;
+
+  /** Number of (oldest) samples which carry front aggregates */
+  protected int frontSize = 0;
+
+
+
+
+  /**
+   * Create a window of the given size.
+   *
+   * @param limit the maximum number of samples to retain
+   * @param fast true to use primitive doubles instead of decimals for the samples and statistics
+   *
+   * @return a new, empty sample window
+   */
+  static SampleWindow create(final int limit, final boolean fast) {
+    if (fast) {
+      return new DoubleWindow(limit);
+    } else {
+      return new DecimalWindow(limit);
+    }
+  }
+
+
+
+
+  protected SampleWindow(final int limit) {
+    this.limit = (limit > 0) ? limit : 1;
+  }
+
+
+
+
+  /**
+   * @return the number of samples currently in the window
+   */
+  int size() {
+    return size;
+  }
+
+
+
+
+  /**
+   * @param index the index of the sample where 0 is the oldest sample
+   *
+   * @return the position of that sample in the ring buffer
+   */
+  protected int position(final int index) {
+    return (head + index) % capacity();
+  }
+
+
+
+
+  /**
+   * @return the initial capacity for the ring buffer
+   */
+  protected int initialCapacity() {
+    return Math.min(limit, 16);
+  }
+
+
+
+
+  /**
+   * Make room for one more sample, growing the ring or evicting the oldest
+   * sample.
+   *
+   * @return the evicted sample or null if nothing was evicted
+   */
+  protected Decimal makeRoom() {
+    Decimal retval = null;
+    if (size >= limit) {
+      if (frontSize == 0) {
+        aggregate();
+      }
+      retval = get(0);
+      clear(head);
+      head = (head + 1) % capacity();
+      size--;
+      frontSize--;
+    } else if (size == capacity()) {
+      resize((int)Math.min(limit, capacity() * 2L));
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Add a sample to the window evicting the oldest sample if the window is
+   * full.
+   *
+   * @param value the value to add
+   *
+   * @return the sample evicted or null if the window was not full
+   */
+  abstract Decimal add(Decimal value);
+
+
+
+
+  /**
+   * Add a sample to the window evicting the oldest sample if the window is
+   * full.
+   *
+   * @param value the value to add
+   *
+   * @return the sample evicted or null if the window was not full
+   */
+  abstract Decimal add(double value);
+
+
+
+
+  /**
+   * @param index the index of the sample where 0 is the oldest
+   *
+   * @return the sample at that index or null if there is no such sample
+   */
+  abstract Decimal get(int index);
+
+
+
+
+  /**
+   * @return the sum of all the samples, zero if there are no samples
+   */
+  abstract Decimal getTotal();
+
+
+
+
+  /**
+   * @return the mean of all the samples, zero if there are no samples
+   */
+  abstract Decimal getAverage();
+
+
+
+
+  /**
+   * @return the smallest sample, NaN if there are no samples
+   */
+  abstract Decimal getMinimum();
+
+
+
+
+  /**
+   * @return the largest sample, NaN if there are no samples
+   */
+  abstract Decimal getMaximum();
+
+
+
+
+  /**
+   * @param factor the decay factor
+   *
+   * @return the exponential average of the samples, null if there are no samples
+   */
+  abstract Decimal getExponentialAverage(Decimal factor);
+
+
+
+
+  /**
+   * @return the capacity of the ring buffer
+   */
+  protected abstract int capacity();
+
+
+
+
+  /**
+   * Release the sample at the given ring position.
+   */
+  protected abstract void clear(int position);
+
+
+
+
+  /**
+   * Copy the samples and front aggregates into a ring of the given capacity
+   * with the oldest sample at position zero.
+   */
+  protected abstract void resize(int capacity);
+
+
+
+
+  /**
+   * Compute the front aggregates for every sample in the window, resetting
+   * the back aggregate.
+   */
+  protected abstract void aggregate();
+
+}
@@ -30,6 +30,7 @@ import java.util.Scanner;
  */
 public abstract class AbstractFrameStreamFileReader extends AbstractFrameReader implements FrameReader, ConfigurableComponent {
 protected BufferedReader reader = null;
+protected File sourceFile = null;
 
 
     /**
@@ -44,7 +45,6 @@ protected BufferedReader reader = null;
         Log.debug(LogMsg.createMsg(CDX.MSG, "Reader.using_source_uri", source));
 
         if (StringUtil.isNotBlank(source)) {
-            File sourceFile = null;
             URI uri = UriUtil.parse(source);
             if (uri != null) {
                 sourceFile = UriUtil.getFile(uri);
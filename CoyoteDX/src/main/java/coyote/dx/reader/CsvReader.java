@@ -8,14 +8,21 @@
 package coyote.dx.reader;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.text.ParseException;
+import java.util.Arrays;
 
 import coyote.commons.StringUtil;
 import coyote.commons.UriUtil;
+import coyote.commons.csv.CSVBufferReader;
+import coyote.commons.csv.CSVParser;
 import coyote.commons.csv.CSVReader;
+import coyote.commons.csv.CSVScanner;
 import coyote.dataframe.DataFrame;
 import coyote.dataframe.DataFrameException;
 import coyote.dx.CDX;
@@ -33,6 +40,15 @@ import coyote.loader.log.LogMsg;
 /**
  * Character Separated Value Reader
  * 
+ * <p>Files are read in large blocks which are parsed without creating a 
+ * string for each line. The {@code fields} attribute limits the columns 
+ * returned to a comma separated list of column names (from the header) or 
+ * zero-based column positions, in which case the values of other columns are 
+ * never created. Setting {@code workers} to more than one parses blocks on 
+ * that many threads while the file is read; frames are still returned in file 
+ * order. {@code BufferSize} sets the number of characters in each block and 
+ * {@code Encoding} the character set of the file.
+ * 
  * TODO: Support preload
  */
 public class CsvReader extends AbstractFrameReader implements FrameReader, ConfigurableComponent {
@@ -40,6 +56,15 @@ public class CsvReader extends AbstractFrameReader implements FrameReader, Confi
   /** The component responsible for reading CSV files into frames */
   private CSVReader reader = null;
 
+  /** The component reading CSV files in blocks */
+  private CSVBufferReader bufferReader = null;
+
+  /** The names of the columns in each record */
+  private String[] columnNames = new String[0];
+
+  /** True if only some of the columns are read */
+  private boolean projected = false;
+
   /** Flag indicating all data should be loaded into and read from memory. */
   private boolean preload = false;
 
@@ -108,8 +133,11 @@ public class CsvReader extends AbstractFrameReader implements FrameReader, Confi
     String[] data = nextLine;
     if (data != null) {
       retval = new DataFrame();
+      if (!projected && data.length > columnNames.length) {
+        nameColumns(data.length);
+      }
       for (int x = 0; x < data.length; x++) {
-        retval.add(x < header.length ? header[x] : new String("COL" + x), data[x]);
+        retval.add(columnNames[x], data[x]);
       }
       // read the next line of data (if it exists)
       readNext();
@@ -145,6 +173,9 @@ public class CsvReader extends AbstractFrameReader implements FrameReader, Confi
     if (reader != null) {
       reader.close();
     }
+    if (bufferReader != null) {
+      bufferReader.close();
+    }
   }
 
 
@@ -194,7 +225,12 @@ public class CsvReader extends AbstractFrameReader implements FrameReader, Confi
       // Basic checks
       if (sourceFile.exists() && sourceFile.canRead()) {
         try {
-          setReader(new CSVReader(new FileReader(sourceFile), SEPARATOR));
+          String encoding = getString(ConfigTag.ENCODING);
+          Charset charset = StringUtil.isNotBlank(encoding) ? Charset.forName(encoding.trim()) : Charset.defaultCharset();
+          int blockSize = containsIgnoreCase(ConfigTag.BUFFER_SIZE) ? getInteger(ConfigTag.BUFFER_SIZE) : CSVBufferReader.BLOCK_SIZE;
+          int workers = Math.max(1, getInteger(ConfigTag.WORKERS));
+          Reader in = new InputStreamReader(new FileInputStream(sourceFile), charset);
+          setReader(new CSVBufferReader(in, new CSVScanner(SEPARATOR, CSVParser.QUOTE_CHARACTER, CSVParser.ESCAPE_CHARACTER), blockSize, workers));
         } catch (Exception e) {
           Log.error("Could not create reader: " + e.getMessage());
           context.setError(e.getMessage());
@@ -224,24 +260,110 @@ public class CsvReader extends AbstractFrameReader implements FrameReader, Confi
     reader = csvReader;
     if (hasHeader) {
       header = reader.readNext();
+      if (header == null) {
+        header = new String[0];
+      }
     }
+    nameColumns(header.length);
     readNext();
   }
 
 
 
 
+  /**
+   * Use the given block reader, reading the header and setting the columns 
+   * to be read.
+   * 
+   * @param csvReader the reader to set
+   * 
+   * @throws IOException if there is problems with the streams
+   * @throws ParseException if the configured fields are not valid
+   */
+  protected void setReader(CSVBufferReader csvReader) throws IOException, ParseException {
+    bufferReader = csvReader;
+    CSVScanner scanner = new CSVScanner(SEPARATOR, CSVParser.QUOTE_CHARACTER, CSVParser.ESCAPE_CHARACTER);
+    if (hasHeader) {
+      header = bufferReader.readFirst(scanner);
+      if (header == null) {
+        header = new String[0];
+      }
+    }
+    nameColumns(header.length);
+
+    String fields = getString(ConfigTag.FIELDS);
+    if (StringUtil.isNotBlank(fields)) {
+      String[] tokens = fields.split(",");
+      int[] columns = new int[tokens.length];
+      String[] names = new String[tokens.length];
+      for (int x = 0; x < tokens.length; x++) {
+        String token = tokens[x].trim();
+        columns[x] = -1;
+        for (int y = 0; y < header.length; y++) {
+          if (token.equals(header[y])) {
+            columns[x] = y;
+            break;
+          }
+        }
+        if (columns[x] < 0) {
+          try {
+            columns[x] = Integer.parseInt(token);
+          } catch (NumberFormatException e) {
+            // not a position
+          }
+        }
+        if (columns[x] < 0) {
+          throw new ParseException("The field '" + token + "' is not a column name or position", x);
+        }
+        nameColumns(columns[x] + 1);
+        names[x] = columnNames[columns[x]];
+      }
+      columnNames = names;
+      projected = true;
+      bufferReader.setScanner(new CSVScanner(SEPARATOR, CSVParser.QUOTE_CHARACTER, CSVParser.ESCAPE_CHARACTER, columns));
+      Log.debug("Reading columns " + Arrays.toString(columnNames));
+    }
+    readNext();
+  }
+
+
+
+
+  /**
+   * Make sure there is a name for the given number of columns; columns 
+   * without a header name are named by their position.
+   * 
+   * @param count the number of columns to name
+   */
+  private void nameColumns(int count) {
+    if (count > columnNames.length) {
+      String[] names = Arrays.copyOf(columnNames, count);
+      for (int x = columnNames.length; x < count; x++) {
+        names[x] = (x < header.length) ? header[x] : "COL" + x;
+      }
+      columnNames = names;
+    }
+  }
+
+
+
+
   /**
    * This reads the next line of data, skipping any empty rows.
    */
   private void readNext() {
     nextLine = null;
     try {
-      while (nextLine == null) {
-        nextLine = reader.readNext();
-        reader.consumeEmptyLines();
-        if (reader.eof()) {
-          break;
+      if (bufferReader != null) {
+        // empty lines are skipped by the scanner
+        nextLine = bufferReader.readNext();
+      } else {
+        while (nextLine == null) {
+          nextLine = reader.readNext();
+          reader.consumeEmptyLines();
+          if (reader.eof()) {
+            break;
+          }
         }
       }
       if (nextLine != null) {
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import coyote.dataframe.DataFrame;
+import coyote.dx.FieldDefinition;
+
+
+/**
+ * Parses fixed-width records directly out of a byte buffer.
+ *
+ * <p>This only works with character sets which encode every character in a
+ * single byte, so field positions are byte positions and values can be sliced
+ * out of the bytes of the line without decoding the whole line. Trimmed
+ * values are trimmed before their string is created.</p>
+ *
+ * <p>When there are several record formats, the format of each line is found
+ * by walking the bytes of its key through an index built from the format
+ * names, so no key string is created unless the key is not recognized.</p>
+ *
+ * <p>Field definitions hold date and decimal formatters which are not
+ * thread-safe; use {@link #copy()} to create a parser for each thread.</p>
+ */
+class FixedWidthParser {
+
+  private final Charset charset;
+
+  /** The format of every line when there is only one format */
+  private final List<FieldDefinition> defaultFormat;
+
+  /** The first character of the key field. Negative values start from the end of the line. */
+  private final int keyStart;
+
+  /** How long the key is */
+  private final int keyLength;
+
+  /** Line formats by key, kept to create copies of this parser */
+  private final Map<String, List<FieldDefinition>> formats;
+
+  /** The root of the index of formats by the bytes of their keys */
+  private final KeyNode index = new KeyNode();
+
+  /** Holds the bytes of the line being parsed */
+  private byte[] line = new byte[1024];
+
+
+
+
+  /**
+   * Create a parser which uses the same format for every line.
+   *
+   * @param format the definitions of the fields in each line
+   * @param charset the single-byte character set of the data
+   */
+  FixedWidthParser(List<FieldDefinition> format, Charset charset) {
+    this(format, 0, 0, null, charset);
+  }
+
+
+
+
+  /**
+   * Create a parser which selects the format of each line by the key at the
+   * given position in the line.
+   *
+   * @param keyStart the position of the key, negative values are positions from the end of the line
+   * @param keyLength the number of characters in the key
+   * @param formats the field definitions for each line type, by key
+   * @param charset the single-byte character set of the data
+   */
+  FixedWidthParser(int keyStart, int keyLength, Map<String, List<FieldDefinition>> formats, Charset charset) {
+    this(null, keyStart, keyLength, formats, charset);
+  }
+
+
+
+
+  private FixedWidthParser(List<FieldDefinition> format, int keyStart, int keyLength, Map<String, List<FieldDefinition>> formats, Charset charset) {
+    this.defaultFormat = format;
+    this.keyStart = keyStart;
+    this.keyLength = keyLength;
+    this.formats = formats;
+    this.charset = charset;
+
+    if (formats != null) {
+      for (Map.Entry<String, List<FieldDefinition>> entry : formats.entrySet()) {
+        byte[] key = entry.getKey().getBytes(charset);
+        // keys of any other length can never match
+        if (key.length == keyLength) {
+          KeyNode node = index;
+          for (byte b : key) {
+            int slot = b & 0xFF;
+            if (node.next[slot] == null) {
+              node.next[slot] = new KeyNode();
+            }
+            node = node.next[slot];
+          }
+          node.format = entry.getValue();
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @return a parser with its own copies of the field definitions, for use on another thread
+   */
+  FixedWidthParser copy() {
+    if (formats == null) {
+      return new FixedWidthParser(copy(defaultFormat), charset);
+    }
+    Map<String, List<FieldDefinition>> copies = new LinkedHashMap<String, List<FieldDefinition>>();
+    for (Map.Entry<String, List<FieldDefinition>> entry : formats.entrySet()) {
+      copies.put(entry.getKey(), copy(entry.getValue()));
+    }
+    return new FixedWidthParser(keyStart, keyLength, copies, charset);
+  }
+
+
+
+
+  private static List<FieldDefinition> copy(List<FieldDefinition> format) {
+    List<FieldDefinition> retval = new ArrayList<FieldDefinition>(format.size());
+    for (FieldDefinition def : format) {
+      retval.add(new FieldDefinition(def));
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Determine if data in the given character set can be parsed by byte
+   * position.
+   *
+   * @param charset the character set to check
+   *
+   * @return true if every character is a single byte and lines end with a newline byte
+   */
+  static boolean supports(Charset charset) {
+    try {
+      return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0F && Arrays.equals(new byte[]{'\n'}, "\n".getBytes(charset));
+    } catch (UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+
+
+
+  /**
+   * Parse all the lines in the given range of the buffer.
+   *
+   * <p>Blank lines are skipped. Fields past the end of a short line are
+   * empty. A line whose key does not match any format is returned as a null
+   * frame and its key added to the unknown keys of the records.</p>
+   *
+   * @param buffer the bytes to parse
+   * @param start the position of the first byte of the first line
+   * @param end the position after the last byte to parse
+   *
+   * @return the records in the range
+   */
+  Records parse(ByteBuffer buffer, int start, int end) {
+    Records retval = new Records();
+    int pos = start;
+    while (pos < end) {
+      int eol = pos;
+      while (eol < end && buffer.get(eol) != '\n') {
+        eol++;
+      }
+      int length = eol - pos;
+      if (length > 0 && buffer.get(eol - 1) == '\r') {
+        length--;
+      }
+      if (length > line.length) {
+        line = new byte[Math.max(length, line.length * 2)];
+      }
+      buffer.position(pos);
+      buffer.get(line, 0, length);
+      pos = eol + 1;
+
+      if (!isBlank(length)) {
+        List<FieldDefinition> format = getFormat(length);
+        if (format != null) {
+          retval.frames.add(parse(format, length));
+        } else {
+          retval.frames.add(null);
+          retval.unknownKeys.add(getKey(length));
+        }
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  private boolean isBlank(int length) {
+    for (int x = 0; x < length; x++) {
+      if (line[x] > ' ' || line[x] < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * @return the format of the current line or null if its key does not match a format
+   */
+  private List<FieldDefinition> getFormat(int length) {
+    if (defaultFormat != null) {
+      return defaultFormat;
+    }
+    int start = (keyStart >= 0) ? keyStart : length + keyStart;
+    if (start < 0 || start + keyLength > length) {
+      return null;
+    }
+    KeyNode node = index;
+    for (int x = start; x < start + keyLength && node != null; x++) {
+      node = node.next[line[x] & 0xFF];
+    }
+    return (node != null) ? node.format : null;
+  }
+
+
+
+
+  /**
+   * @return the key of the current line, for reporting an unrecognized key
+   */
+  private String getKey(int length) {
+    int start = Math.max(0, Math.min(length, (keyStart >= 0) ? keyStart : length + keyStart));
+    int end = Math.min(length, start + keyLength);
+    return new String(line, start, end - start, charset);
+  }
+
+
+
+
+  private DataFrame parse(List<FieldDefinition> format, int length) {
+    DataFrame retval = new DataFrame();
+    for (FieldDefinition def : format) {
+      int start = Math.min(def.getStart(), length);
+      int end = Math.min(def.getEnd(), length);
+      if (def.isTrimming()) {
+        while (start < end && line[start] <= ' ' && line[start] >= 0) {
+          start++;
+        }
+        while (end > start && line[end - 1] <= ' ' && line[end - 1] >= 0) {
+          end--;
+        }
+      }
+      String value = (end > start) ? new String(line, start, end - start, charset) : "";
+      retval.add(def.getName(), def.convert(value));
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * The frames parsed from a range of lines.
+   */
+  static class Records {
+
+    /** The frame of each line in order, null where the key of the line was not recognized */
+    final List<DataFrame> frames = new ArrayList<DataFrame>();
+
+    /** The unrecognized keys in the order they were found */
+    final Deque<String> unknownKeys = new ArrayDeque<String>();
+  }
+
+
+
+
+  /**
+   * A node in the index of formats, with the next node for each possible
+   * value of the next byte of the key.
+   */
+  private static class KeyNode {
+    final KeyNode[] next = new KeyNode[256];
+    List<FieldDefinition> format = null;
+  }
+
+}
@@ -8,7 +8,9 @@
 package coyote.dx.reader;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -39,10 +41,18 @@ import coyote.loader.log.LogMsg;
  * each of those POs. In such cases, it is expected that the transforms will
  * be able to handle the different file formats read, or that filters will be 
  * in place to eliminate the unwanted record types from the transform.</p>
+ * 
+ * <p>When the {@code Encoding} of the file (the platform default if not set) 
+ * is a single-byte character set such as ISO-8859-1 or US-ASCII, the file is 
+ * memory-mapped and fields are sliced directly from the bytes of each line. 
+ * The {@code BufferSize} sets the size of each mapped region (8MB by default) 
+ * and setting {@code workers} to more than one parses that many regions in 
+ * parallel. Other character sets are read line by line.</p>
  */
 public class FlatFileReader extends AbstractFrameReader implements FrameReader, ConfigurableComponent {
 
   LineIterator lines = null;
+  MappedRecordReader records = null;
   Parser lineParser = new Parser();
 
 
@@ -55,8 +65,8 @@ public class FlatFileReader extends AbstractFrameReader implements FrameReader,
     String source = getString(ConfigTag.SOURCE);
     Log.debug(LogMsg.createMsg(CDX.MSG, "Reader.using_source_uri", source));
 
+    File sourceFile = null;
     if (StringUtil.isNotBlank(source)) {
-      File sourceFile = null;
       URI uri = UriUtil.parse(source);
       if (uri != null) {
         sourceFile = UriUtil.getFile(uri);
@@ -84,12 +94,11 @@ public class FlatFileReader extends AbstractFrameReader implements FrameReader,
         sourceFile = CDX.resolveFile(sourceFile, getContext());
       }
 
-      if (sourceFile.exists() && sourceFile.canRead()) {
-        lines = FileUtil.lineIterator(sourceFile);
-      } else {
+      if (!sourceFile.exists() || !sourceFile.canRead()) {
         String msg = LogMsg.createMsg(CDX.MSG, "Reader.could_not_read_from_source", getClass().getName(), sourceFile.getAbsolutePath()).toString();
         Log.error(msg);
         context.setError(msg);
+        return;
       }
     } else {
       String msg = LogMsg.createMsg(CDX.MSG, "Reader.no_source_specified", getClass().getName()).toString();
@@ -147,6 +156,24 @@ public class FlatFileReader extends AbstractFrameReader implements FrameReader,
       }
     }
 
+    if (sourceFile != null && context.isNotInError()) {
+      try {
+        String encoding = getString(ConfigTag.ENCODING);
+        Charset charset = StringUtil.isNotBlank(encoding) ? Charset.forName(encoding.trim()) : Charset.defaultCharset();
+        if (FixedWidthParser.supports(charset)) {
+          int regionSize = containsIgnoreCase(ConfigTag.BUFFER_SIZE) ? getInteger(ConfigTag.BUFFER_SIZE) : MappedRecordReader.REGION_SIZE;
+          int workers = Math.max(1, getInteger(ConfigTag.WORKERS));
+          records = new MappedRecordReader(sourceFile, lineParser.getByteParser(charset), regionSize, workers);
+        } else {
+          lines = FileUtil.lineIterator(sourceFile);
+        }
+      } catch (Exception e) {
+        String msg = "Could not open " + sourceFile.getAbsolutePath() + ": " + e.getMessage();
+        Log.error(msg);
+        context.setError(msg);
+      }
+    }
+
   }
 
 
@@ -159,6 +186,10 @@ public class FlatFileReader extends AbstractFrameReader implements FrameReader,
   public DataFrame read(TransactionContext context) {
     DataFrame retval = null;
 
+    if (records != null) {
+      return readRecord(context);
+    }
+
     try {
 
       // sometimes there are blank lines in data, keep reading until data is 
@@ -191,6 +222,30 @@ public class FlatFileReader extends AbstractFrameReader implements FrameReader,
 
 
 
+  /**
+   * Read the next record from the memory-mapped file.
+   */
+  private DataFrame readRecord(TransactionContext context) {
+    DataFrame retval = null;
+    try {
+      while (retval == null && records.hasNext()) {
+        retval = records.next();
+        if (retval == null) {
+          Log.warn(LogMsg.createMsg(CDX.MSG, "Reader.could_not_find_format_for_key", records.getUnknownKey(), getContext().getRow() + 1, lineParser.keyStart, lineParser.keyLength));
+        }
+      }
+      if (!records.hasNext()) {
+        context.setLastFrame(true);
+      }
+    } catch (IOException e) {
+      context.setError(e.getMessage());
+    }
+    return retval;
+  }
+
+
+
+
   //  private DataFrame parseXXX( String line ) {
   //    DataFrame retval = new DataFrame();
   //    for ( FieldDefinition def : fields ) {
@@ -201,7 +256,33 @@ public class FlatFileReader extends AbstractFrameReader implements FrameReader,
 
   @Override
   public boolean eof() {
-    return !lines.hasNext();
+    if (records != null) {
+      try {
+        return !records.hasNext();
+      } catch (IOException e) {
+        return true;
+      }
+    }
+    return lines == null || !lines.hasNext();
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.reader.AbstractFrameReader#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (records != null) {
+      records.close();
+      records = null;
+    }
+    if (lines != null) {
+      lines.close();
+      lines = null;
+    }
+    super.close();
   }
 
   //
@@ -315,6 +396,22 @@ public class FlatFileReader extends AbstractFrameReader implements FrameReader,
 
 
 
+    /**
+     * @param charset the single-byte character set of the data
+     * 
+     * @return a parser of the same line formats which works directly on the bytes of each line
+     */
+    FixedWidthParser getByteParser(Charset charset) {
+      if (DEFAULT != null) {
+        return new FixedWidthParser(DEFAULT, charset);
+      } else {
+        return new FixedWidthParser(keyStart, keyLength, formats, charset);
+      }
+    }
+
+
+
+
     public DataFrame parse(String line) {
       DataFrame retval = new DataFrame();
 
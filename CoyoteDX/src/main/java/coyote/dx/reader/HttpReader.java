@@ -42,7 +42,9 @@ import coyote.loader.log.Log;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -70,7 +72,18 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * <p>This will start a new thread acting as a listener and a thread for each 
  * request that comes in. Each request thread simply converts the retrieved 
  * data into a DataFrame and places it in the Queue for the reader to return 
- * when requested.
+ * when requested. The reader blocks on the queue so a request is handed to 
+ * the engine as soon as it arrives.
+ * 
+ * <p>The queue is bounded by the {@code capacity} argument (default 1000). 
+ * When the engine falls behind and the queue is full, requests are rejected 
+ * immediately with a 503 (Service Unavailable) instead of piling up threads
+ * waiting to time out.
+ * 
+ * <p>Setting {@code bulk} to true accepts many records in one request. The 
+ * body may be a JSON array or newline delimited JSON (NDJSON) objects and 
+ * each record becomes a separate frame. The response summarizes how many 
+ * records were received and completed.
  * 
  * <p>This reader never returns EOF. This means the job will run indefinitely 
  * until the JRE is shut down.
@@ -80,6 +93,8 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  *   "class" : "HttpReader",
  *   "port" : 80, 
  *   "timeout" : 5000, 
+ *   "capacity" : 500, 
+ *   "bulk" : false, 
  *   "endpoint" : "/coyote/:id" 
  * }</pre>
  * 
@@ -115,7 +130,9 @@ public class HttpReader extends AbstractFrameReader implements FrameReader {
   public static final String MESSAGE = "Message";
   private static final int DEFAULT_PORT = 80;
   protected static final int DEFAULT_TIMEOUT = 10000;
-  private ConcurrentLinkedQueue<HttpFuture> queue = new ConcurrentLinkedQueue<HttpFuture>();
+  private static final int DEFAULT_CAPACITY = 1000;
+  private static final long POLL_INTERVAL = 250;
+  private BlockingQueue<HttpFuture> queue = null;
   private HttpListener listener = null;
 
 
@@ -141,6 +158,18 @@ public class HttpReader extends AbstractFrameReader implements FrameReader {
         throw new ConfigurationException(this.getClass().getName() + " configuration contains an invalid timeout specification of '" + getConfiguration().getString(ConfigTag.TIMEOUT) + "'");
       }
     }
+
+    if (getConfiguration().containsIgnoreCase(ConfigTag.CAPACITY) && !Template.appearsToBeATemplate(getString(ConfigTag.CAPACITY))) {
+      int capacity;
+      try {
+        capacity = getConfiguration().getInt(ConfigTag.CAPACITY);
+      } catch (Exception ignore) {
+        capacity = 0;
+      }
+      if (capacity < 1) {
+        throw new ConfigurationException(this.getClass().getName() + " configuration contains an invalid capacity specification of '" + getConfiguration().getString(ConfigTag.CAPACITY) + "'");
+      }
+    }
   }
 
 
@@ -151,7 +180,16 @@ public class HttpReader extends AbstractFrameReader implements FrameReader {
    */
   @Override
   public void close() throws IOException {
-    listener.stop();
+    if (queue != null) {
+      // release any clients still waiting on the engine
+      for (HttpFuture future = queue.poll(); future != null; future = queue.poll()) {
+        MimeType type = future.determineResponseType();
+        future.setResponse(Response.createFixedLengthResponse(Status.UNAVAILABLE, type.getType(), getErrorText("Service is shutting down", type)));
+      }
+    }
+    if (listener != null) {
+      listener.stop();
+    }
     super.close();
   }
 
@@ -205,6 +243,8 @@ public class HttpReader extends AbstractFrameReader implements FrameReader {
     }
 
     int timeout = getTimeout();
+    boolean bulk = isBulk();
+    queue = new ArrayBlockingQueue<HttpFuture>(getCapacity());
 
     String endpoint = getEndpoint();
     String[] values = endpoint.split("[,\\s]+");
@@ -213,7 +253,7 @@ public class HttpReader extends AbstractFrameReader implements FrameReader {
       for (int x = 0; x < values.length; x++) {
         if (StringUtil.isNotBlank(values[x])) {
           synchronized (listener) {
-            listener.addRoute(values[x], HttpReaderHandler.class, queue, timeout);
+            listener.addRoute(values[x], HttpReaderHandler.class, queue, timeout, bulk);
           }
           Log.debug("Servicing endpoint '" + values[x] + "'");
 
@@ -224,7 +264,7 @@ public class HttpReader extends AbstractFrameReader implements FrameReader {
               if (root.endsWith("/")) {
                 root = root.substring(0, root.length() - 1);
               }
-              listener.addRoute(root, HttpReaderHandler.class, queue, timeout);
+              listener.addRoute(root, HttpReaderHandler.class, queue, timeout, bulk);
               Log.debug("Also servicing root endpoint '" + root + "'");
             }
           } // contains params
@@ -304,6 +344,40 @@ public class HttpReader extends AbstractFrameReader implements FrameReader {
 
 
 
+  /**
+   * @return the maximum number of requests waiting for the engine before 
+   *         new requests are rejected.
+   */
+  private int getCapacity() {
+    int retval = DEFAULT_CAPACITY;
+    if (getConfiguration().containsIgnoreCase(ConfigTag.CAPACITY)) {
+      String value = getString(ConfigTag.CAPACITY);
+      try {
+        retval = Integer.parseInt(value);
+      } catch (Exception ignore) {
+        Log.error("Configuration contains an invalid '" + ConfigTag.CAPACITY + "' value of '" + value + "', using value of " + DEFAULT_CAPACITY);
+      }
+      if (retval < 1) {
+        retval = DEFAULT_CAPACITY;
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @return true if request bodies may contain many records, each of which 
+   *         is to be processed as a separate frame.
+   */
+  private boolean isBulk() {
+    return getConfiguration().containsIgnoreCase(ConfigTag.BULK) && getBoolean(ConfigTag.BULK);
+  }
+
+
+
+
   /**
    * @return the endpoint this listener is to use. Defaults to "/api"
    */
@@ -323,21 +397,23 @@ public class HttpReader extends AbstractFrameReader implements FrameReader {
   /**
    * Retrieve the next future from our queue and return the data frame it contains.
    * 
-   * <p>If there is no future, this method pauses for a short time to keep the 
-   * engine thread from constantly cycling when there is nothing to do.
+   * <p>This blocks until a future arrives, returning it immediately, or until 
+   * a short interval passes without a request in which case null is returned 
+   * so the engine can check whether it should continue to run.
    * 
    * @see coyote.dx.FrameReader#read(coyote.dx.context.TransactionContext)
    */
   @Override
   public DataFrame read(TransactionContext context) {
-    HttpFuture future = queue.poll();
+    HttpFuture future = null;
     DataFrame retval = null;
 
-    if (future == null) {
-      // wait a short time before returning a null frame to keep the job from running hot
+    if (queue != null) {
       try {
-        Thread.sleep(250);
-      } catch (InterruptedException ignore) {}
+        future = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
 
     if (future != null) {
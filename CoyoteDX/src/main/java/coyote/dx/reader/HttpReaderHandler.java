@@ -21,10 +21,12 @@ import coyote.dx.http.responder.AbstractCoyoteResponder;
 import coyote.loader.log.Log;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
 
 
 /**
@@ -44,9 +46,23 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * the results of the engine processing the data frame inside the future. The 
  * result is many threads blocking while the engine thread processes each data 
  * frame in the order it was received. 
+ * 
+ * <p>The queue is bounded. If it is full, the engine is falling behind and the 
+ * request is rejected immediately with a 503 (Service Unavailable) so clients
+ * can back off and retry rather than waiting for a time-out.
+ * 
+ * <p>In bulk mode the body may contain a JSON array or newline delimited 
+ * JSON objects and each record is queued as a separate future. The records 
+ * of a request are queued all together or not at all. A request with more 
+ * records than the queue can ever hold is rejected with a 400 (Bad Request) 
+ * explaining the limit, as retrying it would never succeed. The response is a 
+ * summary of how many records were received and completed.
  */
 public class HttpReaderHandler extends AbstractCoyoteResponder implements Responder {
   private static final int TWO_MINUTES = 120000;
+  private static final String RECEIVED = "Received";
+  private static final String QUEUED = "Queued";
+  private static final String COMPLETED = "Completed";
 
 
 
@@ -56,10 +72,7 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
    */
   @Override
   public Response delete(final Resource resource, final Map<String, String> urlParams, final HTTPSession session) {
-    @SuppressWarnings("unchecked")
-    final ConcurrentLinkedQueue<HttpFuture> queue = resource.initParameter(0, ConcurrentLinkedQueue.class);
-    final int timeout = resource.initParameter(1, Integer.class);
-    return handleRequest(HTTP.METHOD_DELETE, determineEndpoint(resource.getUri()), session, urlParams, queue, timeout);
+    return handleRequest(HTTP.METHOD_DELETE, resource, session, urlParams);
   }
 
 
@@ -70,10 +83,7 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
    */
   @Override
   public Response get(final Resource resource, final Map<String, String> urlParams, final HTTPSession session) {
-    @SuppressWarnings("unchecked")
-    final ConcurrentLinkedQueue<HttpFuture> queue = resource.initParameter(0, ConcurrentLinkedQueue.class);
-    final int timeout = resource.initParameter(1, Integer.class);
-    return handleRequest(HTTP.METHOD_GET, determineEndpoint(resource.getUri()), session, urlParams, queue, timeout);
+    return handleRequest(HTTP.METHOD_GET, resource, session, urlParams);
   }
 
 
@@ -84,10 +94,7 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
    */
   @Override
   public Response other(final String method, final Resource resource, final Map<String, String> urlParams, final HTTPSession session) {
-    @SuppressWarnings("unchecked")
-    final ConcurrentLinkedQueue<HttpFuture> queue = resource.initParameter(0, ConcurrentLinkedQueue.class);
-    final int timeout = resource.initParameter(1, Integer.class);
-    return handleRequest(method.toUpperCase(), determineEndpoint(resource.getUri()), session, urlParams, queue, timeout);
+    return handleRequest(method.toUpperCase(), resource, session, urlParams);
   }
 
 
@@ -98,10 +105,7 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
    */
   @Override
   public Response post(final Resource resource, final Map<String, String> urlParams, final HTTPSession session) {
-    @SuppressWarnings("unchecked")
-    final ConcurrentLinkedQueue<HttpFuture> queue = resource.initParameter(0, ConcurrentLinkedQueue.class);
-    final int timeout = resource.initParameter(1, Integer.class);
-    return handleRequest(HTTP.METHOD_POST, determineEndpoint(resource.getUri()), session, urlParams, queue, timeout);
+    return handleRequest(HTTP.METHOD_POST, resource, session, urlParams);
   }
 
 
@@ -112,10 +116,7 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
    */
   @Override
   public Response put(final Resource resource, final Map<String, String> urlParams, final HTTPSession session) {
-    @SuppressWarnings("unchecked")
-    final ConcurrentLinkedQueue<HttpFuture> queue = resource.initParameter(0, ConcurrentLinkedQueue.class);
-    final int timeout = resource.initParameter(1, Integer.class);
-    return handleRequest(HTTP.METHOD_PUT, determineEndpoint(resource.getUri()), session, urlParams, queue, timeout);
+    return handleRequest(HTTP.METHOD_PUT, resource, session, urlParams);
   }
 
 
@@ -155,17 +156,22 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
    * process the data in that future.
    *
    * <p>This method will then block for for a timeout period waiting for the
-   * results.
+   * results. If the queue is full, the request is rejected immediately.
    *
    * @param method HTTP method (GET, POST, PUT, etc.) called
-   * @param resource the name of the resource requested
+   * @param resource the resource representing the route requested
    * @param session the session representing the HTTP request
-   * @param timeout how long to wait for the completion of the future
+   * @param urlParams the parameters parsed from the URL
    *
    * @return the HTTP response with the results of processing.
    */
-  private Response handleRequest(final String method, final String resource, final HTTPSession session, final Map<String, String> urlParams, final ConcurrentLinkedQueue<HttpFuture> queue, final int timeout) {
-    int millis = timeout;
+  private Response handleRequest(final String method, final Resource resource, final HTTPSession session, final Map<String, String> urlParams) {
+    @SuppressWarnings("unchecked")
+    final BlockingQueue<HttpFuture> queue = resource.initParameter(0, BlockingQueue.class);
+    int millis = resource.initParameter(1, Integer.class);
+    final Boolean bulkParam = resource.initParameter(2, Boolean.class);
+    final boolean bulk = bulkParam != null && bulkParam;
+    final String endpoint = determineEndpoint(resource.getUri());
 
     // prevent infinite and excessive blocking
     if (millis < 1 || millis > TWO_MINUTES) {
@@ -173,25 +179,16 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
     }
 
     Response retval = null;
-    final HttpFuture future = new HttpFuture();
-    future.setMethod(method);
-    future.setAcceptType(getAcceptType(session));
-    future.setContentType(getContentType(session));
-    future.setRequestUri(session.getUri());
-    future.setResource(resource);
+    final HttpFuture future = createFuture(method, endpoint, session);
 
     // set our mimetype based on the future object
     setMimetype(future.determineResponseType());
 
-    DataFrame dframe = null;
+    List<DataFrame> frames = null;
 
     // Start with the body
     try {
-      dframe = populateBody(session);
-      if (dframe == null) {
-        setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, "Could not parse request body into valid data frame"));
-        retval = Response.createFixedLengthResponse(Status.BAD_REQUEST, getMimeType(), getText());
-      }
+      frames = populateBody(session, bulk);
     } catch (IllegalArgumentException e) {
       setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, e.getMessage()));
       retval = Response.createFixedLengthResponse(Status.BAD_REQUEST, getMimeType(), getText());
@@ -199,32 +196,44 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
 
     // no retval (response) means no error
     if (retval == null) {
-      // next, use request parameters overriding what may be in the body
-      dframe = populateRequestParameters(dframe, session);
+      for (int x = 0; x < frames.size(); x++) {
+        // next, use request parameters overriding what may be in the body
+        DataFrame dframe = populateRequestParameters(frames.get(x), session);
 
-      // finally, URL parameters override the body and the request params
-      dframe = populateUrlParameters(dframe, urlParams);
-
-      future.setFrame(dframe);
-
-      if (future.getFrame().getFieldCount() > 0) {
-        queue.add(future);
+        // finally, URL parameters override the body and the request params
+        frames.set(x, populateUrlParameters(dframe, urlParams));
+      }
 
-        // wait for a response, but only for the timeout period
-        retval = future.getResponse(millis);
+      if (bulk) {
+        retval = handleBulk(method, endpoint, session, frames, queue, millis);
+      } else {
+        future.setFrame(frames.get(0));
 
-        if (retval == null) {
-          if( future.isTimedOut()){
-            setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, "Transform did not return a result within the time-out period"));
-            retval = Response.createFixedLengthResponse(Status.UNAVAILABLE, getMimeType(), getText());
+        if (future.getFrame().getFieldCount() > 0) {
+          final boolean queued;
+          synchronized (queue) {
+            queued = queue.offer(future);
+          }
+          if (queued) {
+            // wait for a response, but only for the timeout period
+            retval = future.getResponse(millis);
+
+            if (retval == null) {
+              if (future.isTimedOut()) {
+                setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, "Transform did not return a result within the time-out period"));
+                retval = Response.createFixedLengthResponse(Status.UNAVAILABLE, getMimeType(), getText());
+              } else {
+                setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.PROCESSED));
+                retval = Response.createFixedLengthResponse(Status.NO_CONTENT, getMimeType(), getText());
+              }
+            }
           } else {
-            setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.PROCESSED));
-            retval = Response.createFixedLengthResponse(Status.NO_CONTENT, getMimeType(), getText());
+            retval = createBusyResponse();
           }
+        } else {
+          setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, "No data to process"));
+          retval = Response.createFixedLengthResponse(Status.BAD_REQUEST, getMimeType(), getText());
         }
-      } else {
-        setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, "No data to process"));
-        retval = Response.createFixedLengthResponse(Status.BAD_REQUEST, getMimeType(), getText());
       }
     }
     return retval;
@@ -233,6 +242,95 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
 
 
 
+  /**
+   * Queue a future for each of the frames and wait for all of them to 
+   * complete.
+   * 
+   * <p>If the queue does not have room for all the frames, none of them are 
+   * queued and the request is rejected. Requests are queued while holding the 
+   * lock of the queue so the room checked for is not taken by another request
+   * before all the frames are queued; the engine only removes futures so the 
+   * room can only grow.
+   * 
+   * @return a response summarizing the processing of the frames
+   */
+  private Response handleBulk(final String method, final String resource, final HTTPSession session, final List<DataFrame> frames, final BlockingQueue<HttpFuture> queue, final int timeout) {
+    final List<HttpFuture> futures = new ArrayList<HttpFuture>(frames.size());
+    for (final DataFrame frame : frames) {
+      if (frame.getFieldCount() > 0) {
+        final HttpFuture future = createFuture(method, resource, session);
+        future.setFrame(frame);
+        futures.add(future);
+      }
+    }
+
+    if (futures.size() == 0) {
+      setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, "No data to process"));
+      return Response.createFixedLengthResponse(Status.BAD_REQUEST, getMimeType(), getText());
+    }
+
+    final int capacity = queue.size() + queue.remainingCapacity();
+    if (futures.size() > capacity) {
+      setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, "Request contains " + futures.size() + " records, at most " + capacity + " can be accepted at once").set(RECEIVED, futures.size()));
+      return Response.createFixedLengthResponse(Status.BAD_REQUEST, getMimeType(), getText());
+    }
+
+    synchronized (queue) {
+      if (queue.remainingCapacity() < futures.size()) {
+        return createBusyResponse();
+      }
+      for (final HttpFuture future : futures) {
+        queue.offer(future);
+      }
+    }
+
+    int completed = 0;
+    final long expiry = System.currentTimeMillis() + timeout;
+    for (int x = 0; x < futures.size(); x++) {
+      if (futures.get(x).getResponse(Math.max(0, expiry - System.currentTimeMillis())) != null) {
+        completed++;
+      }
+    }
+
+    final boolean success = completed == futures.size();
+    final DataFrame results = new DataFrame().set(HttpReader.STATUS, success ? HttpReader.PROCESSED : HttpReader.ERROR);
+    results.set(RECEIVED, futures.size());
+    results.set(QUEUED, futures.size());
+    results.set(COMPLETED, completed);
+    if (!success) {
+      results.set(HttpReader.MESSAGE, "Transform did not complete " + (futures.size() - completed) + " records within the time-out period");
+    }
+    setResults(results);
+    return Response.createFixedLengthResponse(success ? Status.OK : Status.UNAVAILABLE, getMimeType(), getText());
+  }
+
+
+
+
+  /**
+   * @return a response indicating the engine can not accept more requests at this time
+   */
+  private Response createBusyResponse() {
+    setResults(new DataFrame().set(HttpReader.STATUS, HttpReader.ERROR).set(HttpReader.MESSAGE, "Service is busy, try again later"));
+    return Response.createFixedLengthResponse(Status.UNAVAILABLE, getMimeType(), getText());
+  }
+
+
+
+
+  private HttpFuture createFuture(final String method, final String resource, final HTTPSession session) {
+    final HttpFuture retval = new HttpFuture();
+    retval.setMethod(method);
+    retval.setAcceptType(getAcceptType(session));
+    retval.setContentType(getContentType(session));
+    retval.setRequestUri(session.getUri());
+    retval.setResource(resource);
+    return retval;
+  }
+
+
+
+
   private static String determineEndpoint(String entryUri) {
     String retval = entryUri;
 
@@ -252,17 +350,18 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
 
 
   /**
-   * Create a dataframe out of the body of the request in the given session.
+   * Create data frames out of the body of the request in the given session.
    * 
    * @param session the session containing the request.
+   * @param bulk true to return all the records in the body, false for just the first
    * 
-   * @return a data frame populated with the data in the body or an empty data 
-   *         frame if no body was in the session.
+   * @return a list of data frames populated with the data in the body or a 
+   *         list containing one empty data frame if no body was in the session.
    *
    * @throws IllegalArgumentException if there were problems parsing the body
    */
-  private DataFrame populateBody(HTTPSession session) throws IllegalArgumentException {
-    DataFrame retval = null;
+  private List<DataFrame> populateBody(HTTPSession session, boolean bulk) throws IllegalArgumentException {
+    List<DataFrame> retval = null;
     Body body = null;
     try {
       body = session.parseBody();
@@ -273,15 +372,16 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
 
     if (body != null && body.size() > 0) {
       try {
-        retval = parseBody(body, session);
-        if (Log.isLogging(Log.DEBUG)) Log.debug("Parsed into a frame:\r\n" + JSONMarshaler.toFormattedString(retval));
+        retval = parseBody(body, session, bulk);
+        if (Log.isLogging(Log.DEBUG) && retval != null) Log.debug("Parsed into " + retval.size() + " frame(s), the first:\r\n" + JSONMarshaler.toFormattedString(retval.get(0)));
       } catch (final Exception e) {
         throw new IllegalArgumentException("Problems parsing body data: " + e.getMessage());
       }
     }
 
-    if (retval == null) {
-      retval = new DataFrame();
+    if (retval == null || retval.size() == 0) {
+      retval = new ArrayList<DataFrame>();
+      retval.add(new DataFrame());
     }
 
     return retval;
@@ -339,17 +439,19 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
 
 
   /**
-   * Retrieve the first data frame from the body of the request.
+   * Retrieve the data frames from the body of the request.
    * 
    * @param body the request body
    * @param session the session request
+   * @param bulk true to return every record in the body, false for only the first
    * 
-   * @return the first dataframe parsed from the body
+   * @return the dataframes parsed from the body
    * 
    * @throws MarshalException if the JSON or XML data could not be parsed
+   * @throws IOException if the bulk records could not be scanned
    */
-  private DataFrame parseBody(Body body, HTTPSession session) throws MarshalException {
-    DataFrame retval = null;
+  private List<DataFrame> parseBody(Body body, HTTPSession session, boolean bulk) throws MarshalException, IOException {
+    List<DataFrame> retval = null;
     for (final String key : body.keySet()) {
       final Object obj = body.get(key);
 
@@ -374,12 +476,19 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
           if (frames == null || frames.size() == 0) {
             throw new MarshalException("No valid XML data found");
           }
+        } else if (bulk) {
+          frames = scanRecords(data);
         } else {
           frames = JSONMarshaler.marshal(data);
         }
         if (frames != null && frames.size() > 0) {
-          retval = frames.get(0);
-          break; // only get the first dataframe
+          if (bulk) {
+            retval = frames;
+          } else {
+            retval = new ArrayList<DataFrame>();
+            retval.add(frames.get(0)); // only get the first dataframe
+          }
+          break;
         } else {
           Log.warn("No dataframe list to process");
         }
@@ -388,4 +497,29 @@ public class HttpReaderHandler extends AbstractCoyoteResponder implements Respon
     return retval;
   }
 
-}
\ No newline at end of file
+
+
+  /**
+   * Split JSON data into records, one for each element of a top-level array 
+   * or each object in newline delimited JSON.
+   * 
+   * @param data the JSON text
+   * 
+   * @return a frame for each record found
+   * 
+   * @throws IOException if the text could not be scanned
+   */
+  private static List<DataFrame> scanRecords(String data) throws IOException {
+    List<DataFrame> retval = new ArrayList<DataFrame>();
+    try (JsonRecordScanner scanner = new JsonRecordScanner(new StringReader(data), null)) {
+      for (String record = scanner.next(); record != null; record = scanner.next()) {
+        List<DataFrame> frames = JSONMarshaler.marshal(record);
+        if (frames != null) {
+          retval.addAll(frames);
+        }
+      }
+    }
+    return retval;
+  }
+
+}
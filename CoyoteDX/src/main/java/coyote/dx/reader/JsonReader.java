@@ -22,6 +22,9 @@ import coyote.dx.FrameReader;
  * <pre>"Reader": { "class": "JsonReader", "source": "requestmetric.json" },</pre>
  * <p>This reader support the ability to flatten hierarchical records (complex objects) into a single flat (single level)
  * record format. This is turned on by default. This capability is provided by the MarshalingFrameReader super class.
+ * <p>Large files can be streamed a record at a time by setting {@code preload} to false:
+ * <pre>"Reader": { "class": "JsonReader", "source": "export.json", "preload": false, "selector": "results.*" },</pre>
+ * <p>Without a selector, each element of a top-level array or each object of a newline delimited JSON file is a record.
  */
 public class JsonReader extends MarshalingFrameReader implements FrameReader, ConfigurableComponent {
 
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+
+/**
+ * Scans a JSON stream for records without parsing the entire document.
+ *
+ * <p>Object members are matched by name and array elements by their index.
+ * If no pattern is given, a stream starting with an array returns each of
+ * its elements and a stream starting with an object returns each object at
+ * the root of the stream. The latter supports newline delimited JSON.</p>
+ *
+ * <p>Only objects and arrays are returned as records; scalar values matching
+ * the pattern are skipped.</p>
+ */
+public class JsonRecordScanner extends RecordScanner {
+  private static final int NONE = -2;
+
+  private final Reader reader;
+  private final LinkedList<Container> stack = new LinkedList<Container>();
+  private final List<String> path = new ArrayList<String>();
+  private int pushback = NONE;
+
+
+
+
+  /**
+   * @param reader the source of the JSON data; should be buffered
+   * @param pattern the path to the records to return, null to use the default
+   */
+  public JsonRecordScanner(final Reader reader, final List<String> pattern) {
+    super(pattern);
+    this.reader = reader;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.reader.RecordScanner#next()
+   */
+  @Override
+  public String next() throws IOException {
+    while (true) {
+      int ch = skipWhitespace();
+      if (ch == -1) {
+        if (!stack.isEmpty()) {
+          throw new IOException("Unexpected end of JSON data");
+        }
+        return null;
+      }
+
+      if (ch == ',') {
+        continue;
+      }
+
+      final Container parent = stack.peek();
+      if (parent != null) {
+        if (ch == '}' || ch == ']') {
+          stack.pop();
+          if (parent.named) {
+            path.remove(path.size() - 1);
+          }
+          continue;
+        }
+        if (parent.array) {
+          path.add(Integer.toString(parent.index++));
+        } else {
+          if (ch != '"') {
+            throw new IOException("Expected member name but found '" + (char)ch + "'");
+          }
+          path.add(readName());
+          if (skipWhitespace() != ':') {
+            throw new IOException("Expected ':' after member name");
+          }
+          ch = skipWhitespace();
+        }
+      } else if (ch == '}' || ch == ']') {
+        throw new IOException("Unexpected '" + (char)ch + "' in JSON data");
+      } else if (pattern == null) {
+        pattern = new ArrayList<String>();
+        if (ch == '[') {
+          pattern.add(WILDCARD);
+        }
+      }
+
+      // ch is the first character of a value at the current path
+      final boolean composite = (ch == '{' || ch == '[');
+      if (composite && matches(path)) {
+        final StringBuilder record = new StringBuilder();
+        readValue(ch, record);
+        pop(parent);
+        return record.toString();
+      } else if (composite && leadsTo(path)) {
+        stack.push(new Container(ch == '[', parent != null));
+      } else {
+        readValue(ch, null);
+        pop(parent);
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+
+
+
+  private void pop(final Container parent) {
+    if (parent != null) {
+      path.remove(path.size() - 1);
+    }
+  }
+
+
+
+
+  /**
+   * Read a complete value, optionally appending its text to the given buffer.
+   *
+   * @param first the first character of the value which has already been read
+   * @param buffer where the text of the value is placed, null to skip the value
+   */
+  private void readValue(final int first, final StringBuilder buffer) throws IOException {
+    int depth = 0;
+    int ch = first;
+    while (true) {
+      if (ch == -1) {
+        if (depth > 0) {
+          throw new IOException("Unexpected end of JSON data");
+        }
+        return;
+      }
+      if (ch == '"') {
+        append(buffer, ch);
+        readString(buffer);
+      } else if (ch == '{' || ch == '[') {
+        append(buffer, ch);
+        depth++;
+      } else if (ch == '}' || ch == ']') {
+        if (depth == 0) {
+          pushback = ch; // end of the enclosing container
+          return;
+        }
+        append(buffer, ch);
+        depth--;
+      } else if (ch == ',' && depth == 0) {
+        pushback = ch;
+        return;
+      } else if (depth == 0 && Character.isWhitespace(ch)) {
+        return;
+      } else {
+        append(buffer, ch);
+      }
+      if (depth == 0 && (ch == '}' || ch == ']' || ch == '"')) {
+        return;
+      }
+      ch = read();
+    }
+  }
+
+
+
+
+  /**
+   * Read the rest of a string after its opening quote.
+   */
+  private void readString(final StringBuilder buffer) throws IOException {
+    int ch;
+    while ((ch = read()) != '"') {
+      if (ch == -1) {
+        throw new IOException("Unterminated JSON string");
+      }
+      append(buffer, ch);
+      if (ch == '\\') {
+        ch = read();
+        if (ch == -1) {
+          throw new IOException("Unterminated JSON string");
+        }
+        append(buffer, ch);
+      }
+    }
+    append(buffer, ch);
+  }
+
+
+
+
+  /**
+   * Read the rest of a member name after its opening quote, decoding escapes.
+   */
+  private String readName() throws IOException {
+    final StringBuilder retval = new StringBuilder();
+    int ch;
+    while ((ch = read()) != '"') {
+      if (ch == -1) {
+        throw new IOException("Unterminated JSON string");
+      }
+      if (ch == '\\') {
+        ch = read();
+        switch (ch) {
+          case 'b':
+            retval.append('\b');
+            break;
+          case 'f':
+            retval.append('\f');
+            break;
+          case 'n':
+            retval.append('\n');
+            break;
+          case 'r':
+            retval.append('\r');
+            break;
+          case 't':
+            retval.append('\t');
+            break;
+          case 'u':
+            final char[] hex = new char[4];
+            for (int x = 0; x < hex.length; x++) {
+              hex[x] = (char)read();
+            }
+            try {
+              retval.append((char)Integer.parseInt(new String(hex), 16));
+            } catch (final NumberFormatException e) {
+              throw new IOException("Invalid unicode escape in JSON string");
+            }
+            break;
+          case -1:
+            throw new IOException("Unterminated JSON string");
+          default:
+            retval.append((char)ch);
+        }
+      } else {
+        retval.append((char)ch);
+      }
+    }
+    return retval.toString();
+  }
+
+
+
+
+  private static void append(final StringBuilder buffer, final int ch) {
+    if (buffer != null) {
+      buffer.append((char)ch);
+    }
+  }
+
+
+
+
+  private int skipWhitespace() throws IOException {
+    int ch = read();
+    while (ch != -1 && Character.isWhitespace(ch)) {
+      ch = read();
+    }
+    return ch;
+  }
+
+
+
+
+  private int read() throws IOException {
+    if (pushback != NONE) {
+      final int retval = pushback;
+      pushback = NONE;
+      return retval;
+    }
+    return reader.read();
+  }
+
+
+
+
+  /**
+   * An object or array being scanned for records.
+   */
+  private static class Container {
+    final boolean array;
+    final boolean named;
+    int index = 0;
+
+
+
+
+    Container(final boolean array, final boolean named) {
+      this.array = array;
+      this.named = named;
+    }
+  }
+
+}
@@ -21,13 +21,41 @@ import coyote.loader.cfg.ConfigurationException;
 import coyote.loader.log.Log;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 
 /**
  * Text reader that parses each line into tokens and maps those tokens to fields based on the format and parsing mode.
+ *
+ * <p>Lines are read in large blocks. With {@code Follow} set, the reader tails
+ * the file, waiting {@code PollInterval} milliseconds (default 1000) for new
+ * lines when it reaches the end of the file until no lines have been written
+ * for {@code timeout} milliseconds (0, the default, follows the file until the
+ * job is stopped). A rotated log file is detected by a change in the identity
+ * of the file at the source path and a truncated file by it becoming shorter
+ * than the current offset; either way, reading starts again at the beginning
+ * of the file.
+ *
+ * <p>With {@code Checkpoint} set to a name, the byte offset and identity of
+ * the file are kept in the context as {@code <name>.offset} and
+ * {@code <name>.file} so a job using a persistent context resumes reading
+ * where the previous run stopped:<pre>
+ * "Reader": { "class": "LogFileReader", "source": "app.log", "mode": "...", "format": "...", "Follow": true, "timeout": 60000, "Checkpoint": "AppLog" }
+ * </pre>
  */
 public class LogFileReader extends AbstractFrameStreamFileReader implements FrameReader, ConfigurableComponent {
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  private static final long DEFAULT_POLL_INTERVAL = 1000;
+
   private LogEntryMapper mapper = null;
+  private LogTailer tailer = null;
+  private boolean follow = false;
+  private String checkpoint = null;
+  private long pollInterval = DEFAULT_POLL_INTERVAL;
+  private long timeout = 0;
+  private long lastData = 0;
+  private volatile boolean stopped = false;
 
 
   /**
@@ -68,11 +96,16 @@ public class LogFileReader extends AbstractFrameStreamFileReader implements Fram
   public DataFrame read(TransactionContext context) {
     DataFrame retval = null;
 
+    // the line returned by the last read has been processed
+    saveCheckpoint();
+
     String logLine = null;
     try {
-      logLine = reader.readLine();
+      logLine = nextLine();
     } catch (IOException e) {
-      e.printStackTrace();
+      String msg = "Could not read from " + sourceFile + ": " + e.getMessage();
+      Log.error(msg);
+      getContext().setError(msg);
     }
 
     if (StringUtil.isNotBlank(logLine)) {
@@ -84,14 +117,103 @@ public class LogFileReader extends AbstractFrameStreamFileReader implements Fram
   }
 
 
+  /**
+   * Return the next line, waiting for one to be written when following the
+   * file.
+   *
+   * @return the next line or null if there is no line available at this time
+   */
+  private String nextLine() throws IOException {
+    if (tailer == null) {
+      return null;
+    }
+
+    String retval = tailer.nextLine(follow);
+    if (retval == null && follow) {
+      if (!tailer.checkRotation()) {
+        if (timeout > 0 && System.currentTimeMillis() - lastData >= timeout) {
+          Log.debug("No lines written to " + sourceFile + " in " + timeout + "ms, done following file");
+          stopped = true;
+          return null;
+        }
+        try {
+          Thread.sleep(pollInterval);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          stopped = true;
+          return null;
+        }
+      }
+      retval = tailer.nextLine(follow);
+    }
+
+    if (retval != null) {
+      lastData = System.currentTimeMillis();
+    }
+    return retval;
+  }
+
+
+  /**
+   * Place the offset of the next line and the identity of the file in the
+   * context, if check-pointing is enabled.
+   */
+  private void saveCheckpoint() {
+    if (checkpoint != null && tailer != null && getContext() != null) {
+      getContext().set(checkpoint + ".offset", tailer.getOffset());
+      getContext().set(checkpoint + ".file", tailer.getIdentity());
+    }
+  }
+
+
+  /**
+   * @return the checkpoint offset in the context or 0 if there is none
+   */
+  private long getCheckpointOffset() {
+    Object value = getContext().get(checkpoint + ".offset");
+    if (value instanceof Number) {
+      return ((Number)value).longValue();
+    } else if (value != null) {
+      try {
+        return Long.parseLong(value.toString().trim());
+      } catch (NumberFormatException e) {
+        Log.warn("Invalid checkpoint offset of '" + value + "', reading from the start of the file");
+      }
+    }
+    return 0;
+  }
+
+
+  /**
+   * @return true if the entire file has been read or the reader is no longer following the file
+   */
+  @Override
+  public boolean eof() {
+    if (follow) {
+      return stopped;
+    }
+    try {
+      return tailer == null || tailer.isAtEnd();
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+
   /**
    * @see java.io.Closeable#close()
    */
   @Override
   public void close() throws IOException {
+    stopped = true;
     if (reader != null) {
       reader.close();
     }
+    if (tailer != null) {
+      saveCheckpoint();
+      tailer.close();
+      tailer = null;
+    }
   }
 
 
@@ -107,6 +229,45 @@ public class LogFileReader extends AbstractFrameStreamFileReader implements Fram
       e.printStackTrace();
     }
 
+    if (reader != null) {
+      // lines are read through the tailer rather than the reader opened for us
+      try {
+        reader.close();
+      } catch (IOException ignore) {
+        // we don't use it anyway
+      }
+      reader = null;
+
+      follow = getBoolean(ConfigTag.FOLLOW);
+      if (contains(ConfigTag.POLL_INTERVAL)) {
+        pollInterval = Math.max(10, getLong(ConfigTag.POLL_INTERVAL));
+      }
+      timeout = Math.max(0, getLong(ConfigTag.TIMEOUT));
+      checkpoint = StringUtil.isNotBlank(getString(ConfigTag.CHECKPOINT)) ? getString(ConfigTag.CHECKPOINT) : null;
+      int bufferSize = contains(ConfigTag.BUFFER_SIZE) ? getInteger(ConfigTag.BUFFER_SIZE) : DEFAULT_BUFFER_SIZE;
+
+      long offset = 0;
+      String identity = null;
+      if (checkpoint != null) {
+        offset = getCheckpointOffset();
+        Object file = context.get(checkpoint + ".file");
+        identity = (file != null) ? file.toString() : null;
+      }
+
+      try {
+        Charset charset = StringUtil.isNotBlank(getString(ConfigTag.ENCODING)) ? Charset.forName(getString(ConfigTag.ENCODING)) : StandardCharsets.UTF_8;
+        tailer = new LogTailer(sourceFile, offset, identity, charset, bufferSize);
+        if (tailer.getOffset() > 0) {
+          Log.debug("Resuming " + sourceFile + " at offset " + tailer.getOffset());
+        }
+        stopped = false;
+        lastData = System.currentTimeMillis();
+      } catch (IOException | IllegalArgumentException e) {
+        String msg = "Could not open " + sourceFile + ": " + e.getMessage();
+        Log.error(msg);
+        context.setError(msg);
+      }
+    }
 
   }
 
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+
+/**
+ * Reads lines from a file which may still be growing, tracking the byte
+ * offset of the next line so reading can resume from that point later.
+ *
+ * <p>Lines are split out of large blocks read from the file rather than read
+ * one at a time. A line is only returned once its newline has been written;
+ * a partial line at the end of the file is held until the rest of it
+ * arrives, or returned as the last line when the file is read to its end
+ * without following it.
+ *
+ * <p>The file is identified by its file key (the inode on most systems) or
+ * its creation time when the file system has no file keys. A file at the
+ * same path with a different identity is a new file after rotation, and a
+ * file which is now shorter than the offset has been truncated; either way
+ * reading starts again from the beginning of the file.
+ *
+ * <p>Newlines are found by their byte value, so the character set must
+ * encode the newline as a single byte (e.g. UTF-8 or ISO-8859-1).
+ */
+class LogTailer implements Closeable {
+  private final File file;
+  private final Charset charset;
+  private FileChannel channel = null;
+  private String identity = null;
+  private ByteBuffer buffer;
+
+  /** the file offset of the first byte in the buffer */
+  private long base = 0;
+
+
+
+
+  /**
+   * Open the file and position it at the given offset.
+   *
+   * <p>If the identity of the file is not the given identity, or the file is
+   * shorter than the offset, the file is read from the beginning.
+   *
+   * @param file the file to read
+   * @param offset the byte offset from which to start reading
+   * @param identity the identity of the file the offset applies to, null if the offset applies to the current file
+   * @param charset the character set of the file
+   * @param bufferSize the number of bytes read at a time
+   *
+   * @throws IOException if the file could not be opened
+   */
+  LogTailer(final File file, final long offset, final String identity, final Charset charset, final int bufferSize) throws IOException {
+    this.file = file;
+    this.charset = charset;
+    buffer = ByteBuffer.allocate(Math.max(1024, bufferSize));
+    buffer.flip();
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.identity = getIdentity(file);
+    if (offset > 0 && (identity == null || identity.equals(this.identity)) && offset <= channel.size()) {
+      base = offset;
+      channel.position(offset);
+    }
+  }
+
+
+
+
+  /**
+   * Return the next line in the file.
+   *
+   * @param follow true to hold a partial last line until its newline is written
+   *
+   * @return the next line without its line terminator, or null if there are no complete lines available
+   *
+   * @throws IOException if the file could not be read
+   */
+  String nextLine(final boolean follow) throws IOException {
+    while (true) {
+      for (int pos = buffer.position(); pos < buffer.limit(); pos++) {
+        if (buffer.get(pos) == '\n') {
+          return take(pos, pos + 1);
+        }
+      }
+
+      // move the partial line to the front and read more
+      base += buffer.position();
+      buffer.compact();
+      if (!buffer.hasRemaining()) {
+        // a line longer than the buffer
+        final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+      final int count = channel.read(buffer);
+      buffer.flip();
+      if (count <= 0) {
+        if (!follow && buffer.hasRemaining()) {
+          return take(buffer.limit(), buffer.limit());
+        }
+        return null;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Return the characters in the buffer up to the given end of the line and
+   * move to the start of the next line.
+   */
+  private String take(final int end, final int next) {
+    int last = end;
+    if (last > buffer.position() && buffer.get(last - 1) == '\r') {
+      last--;
+    }
+    final String retval = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), last - buffer.position(), charset);
+    buffer.position(next);
+    return retval;
+  }
+
+
+
+
+  /**
+   * @return true if all the data currently in the file has been returned
+   *
+   * @throws IOException if the size of the file could not be determined
+   */
+  boolean isAtEnd() throws IOException {
+    return !buffer.hasRemaining() && channel.position() >= channel.size();
+  }
+
+
+
+
+  /**
+   * Check if the file has been rotated or truncated, and if it has, start
+   * reading the new file or the truncated file from the beginning.
+   *
+   * <p>This should only be called when there are no more lines available, so
+   * that any lines written to a rotated file before it was rotated are read
+   * first.
+   *
+   * @return true if reading has started again from the beginning of a file
+   *
+   * @throws IOException if the new file could not be opened
+   */
+  boolean checkRotation() throws IOException {
+    if (channel.position() < channel.size()) {
+      // there is still data to read
+      return false;
+    }
+
+    final String current = file.exists() ? getIdentity(file) : null;
+    if (current != null && !current.equals(identity)) {
+      channel.close();
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      identity = current;
+      reset();
+      return true;
+    } else if (channel.size() < getOffset()) {
+      channel.position(0);
+      reset();
+      return true;
+    }
+    return false;
+  }
+
+
+
+
+  private void reset() {
+    base = 0;
+    buffer.clear();
+    buffer.flip();
+  }
+
+
+
+
+  /**
+   * @return the byte offset of the start of the next line
+   */
+  long getOffset() {
+    return base + buffer.position();
+  }
+
+
+
+
+  /**
+   * @return the identity of the file being read
+   */
+  String getIdentity() {
+    return identity;
+  }
+
+
+
+
+  /**
+   * @param file the file to identify
+   *
+   * @return the file key of the file or its creation time if the file system does not provide file keys
+   *
+   * @throws IOException if the attributes of the file could not be read
+   */
+  static String getIdentity(final File file) throws IOException {
+    final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    final Object key = attributes.fileKey();
+    return (key != null) ? key.toString() : Long.toString(attributes.creationTime().toMillis());
+  }
+
+
+
+
+  /**
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+
+import coyote.commons.OrderedWorkQueue;
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * Reads fixed-width records from a memory-mapped file.
+ *
+ * <p>The file is mapped one region at a time. Each region ends at the last
+ * newline within it so every region holds whole lines and can be parsed
+ * independently; the rest of the region is mapped again as the start of the
+ * next region. With more than one thread, regions are parsed on that many
+ * threads while the following regions are mapped, and records are still
+ * returned in the order they appear in the file.</p>
+ */
+class MappedRecordReader implements Closeable {
+
+  /** The default number of bytes mapped in each region. */
+  static final int REGION_SIZE = 8 * 1024 * 1024;
+
+  private final FileChannel channel;
+  private final long size;
+  private final FixedWidthParser parser;
+  private final int regionSize;
+
+  /** Each parsing thread needs its own copy of the field definitions */
+  private final ThreadLocal<FixedWidthParser> parsers;
+
+  /** The regions being parsed, in the order they appear in the file */
+  private final OrderedWorkQueue<FixedWidthParser.Records> pending;
+
+  /** The file position of the next region */
+  private long position = 0;
+
+  private FixedWidthParser.Records records = null;
+  private int index = 0;
+  private String unknownKey = null;
+
+
+
+
+  /**
+   * @param file the file to read
+   * @param parser the parser to use
+   * @param regionSize the number of bytes to map in each region
+   * @param threads the number of threads parsing regions, 1 to parse on the reading thread
+   *
+   * @throws IOException if the file could not be opened
+   */
+  MappedRecordReader(File file, FixedWidthParser parser, int regionSize, int threads) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.size = channel.size();
+    this.parser = parser;
+    this.regionSize = Math.max(4096, regionSize);
+    this.pending = new OrderedWorkQueue<FixedWidthParser.Records>("FlatFileParser", threads);
+    if (threads > 1) {
+      parsers = new ThreadLocal<FixedWidthParser>() {
+        @Override
+        protected FixedWidthParser initialValue() {
+          return parser.copy();
+        }
+      };
+    } else {
+      parsers = null;
+    }
+  }
+
+
+
+
+  /**
+   * @return true if there is another record, false if all the records have been read
+   *
+   * @throws IOException if the file could not be read or parsed
+   */
+  boolean hasNext() throws IOException {
+    while (records == null || index >= records.frames.size()) {
+      if (!nextRegion()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * Return the next record.
+   *
+   * @return the frame of the next record or null if the key of the record did not match any format
+   *
+   * @throws IOException if the file could not be read or parsed
+   */
+  DataFrame next() throws IOException {
+    if (!hasNext()) {
+      return null;
+    }
+    DataFrame retval = records.frames.get(index);
+    records.frames.set(index++, null); // release frames as they are read
+    unknownKey = (retval == null) ? records.unknownKeys.poll() : null;
+    return retval;
+  }
+
+
+
+
+  /**
+   * @return the key of the last record returned if it did not match a format, null otherwise
+   */
+  String getUnknownKey() {
+    return unknownKey;
+  }
+
+
+
+
+  /**
+   * Move to the records of the next region.
+   *
+   * @return true if there is another region, false if the end of the file has been reached
+   */
+  private boolean nextRegion() throws IOException {
+    index = 0;
+    records = null;
+
+    // keep all the threads busy with the regions which follow
+    while (!pending.isFull()) {
+      final MappedByteBuffer region = mapRegion();
+      if (region == null) {
+        break;
+      }
+      pending.submit(new Callable<FixedWidthParser.Records>() {
+        @Override
+        public FixedWidthParser.Records call() {
+          return ((parsers != null) ? parsers.get() : parser).parse(region, 0, region.limit());
+        }
+      });
+    }
+
+    if (pending.isEmpty()) {
+      return false;
+    }
+    records = pending.next();
+    return true;
+  }
+
+
+
+
+  /**
+   * Map the next region of whole lines.
+   *
+   * @return the region with its limit at the end of its last line, or null at the end of the file
+   */
+  private MappedByteBuffer mapRegion() throws IOException {
+    if (position >= size) {
+      return null;
+    }
+    long length = Math.min(regionSize, size - position);
+    while (true) {
+      MappedByteBuffer retval = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      if (position + length == size) {
+        position = size;
+        return retval;
+      }
+      for (int x = (int)length - 1; x >= 0; x--) {
+        if (retval.get(x) == '\n') {
+          retval.limit(x + 1);
+          position += x + 1;
+          return retval;
+        }
+      }
+      // a line longer than the region
+      if (length == Integer.MAX_VALUE) {
+        throw new IOException("Line at offset " + position + " is too long to map");
+      }
+      length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - position);
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    pending.close();
+    records = null;
+    channel.close();
+  }
+
+}
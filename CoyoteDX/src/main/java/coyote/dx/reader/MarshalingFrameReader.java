@@ -23,14 +23,34 @@ import coyote.dx.context.TransformContext;
 import coyote.loader.log.Log;
 import coyote.loader.log.LogMsg;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 
 /**
- * TODO: Make into a streaming reader with preload optional.
+ * Base class for readers which marshal structured text (e.g. JSON) into 
+ * data frames.
+ * 
+ * <p>By default, the entire source is read into memory, marshaled and the 
+ * selector applied to the resulting document before the first frame is 
+ * returned. Setting {@code preload} to false streams the source instead; 
+ * records are scanned from the source and marshaled one at a time so memory 
+ * use remains constant regardless of the size of the source.</p>
+ * 
+ * <p>When streaming, the selector is split at its first wildcard. The first 
+ * part locates the records in the source (e.g. {@code CVE_Items.*}) and the 
+ * remainder, if any, is applied to each record (e.g. {@code cve}). Without a 
+ * selector, each element of a top-level array or each top-level object (as 
+ * in newline delimited JSON) is a record.</p>
  */
 public abstract class MarshalingFrameReader extends AbstractFrameReader implements FrameReader, ConfigurableComponent {
 
@@ -39,7 +59,16 @@ public abstract class MarshalingFrameReader extends AbstractFrameReader implemen
   private volatile DataFrame nextFrame = null;
 
   /** Flag indicating all data should be loaded into and read from memory. */
-  private final boolean preload = true; // we only support buffered reads
+  private boolean preload = true;
+
+  /** Scanner returning the text of each record when streaming. */
+  private RecordScanner scanner = null;
+
+  /** The part of the selector applied to each record when streaming. */
+  private FrameSelector recordSelector = null;
+
+  /** Frames marshaled from the current record but not yet read. */
+  private final LinkedList<DataFrame> pending = new LinkedList<DataFrame>();
 
   /** Flag indicating the frame should be be flattened to a single level of fields. */
   private boolean flatten = true;
@@ -68,7 +97,7 @@ public abstract class MarshalingFrameReader extends AbstractFrameReader implemen
         nextFrame = null;
       }
     } else {
-      Log.warn("Whoa! We don't support streaming yet");
+      nextFrame = fetch();
     }
 
     // Support the concept of last frame    
@@ -100,12 +129,18 @@ public abstract class MarshalingFrameReader extends AbstractFrameReader implemen
   public void open(TransformContext context) {
     setContext(context);
     buffer.clear();
+    pending.clear();
     currentFrame = 0;
 
     if(getConfiguration().containsIgnoreCase(ConfigTag.FLATTEN)){
       flatten = getBoolean(ConfigTag.FLATTEN);
     }
 
+    if (getConfiguration().containsIgnoreCase(ConfigTag.PRELOAD)) {
+      preload = getBoolean(ConfigTag.PRELOAD);
+    }
+    Log.debug(LogMsg.createMsg(CDX.MSG, "Reader.preload_is", preload));
+
     // check for a source in our configuration, if not there use the transform 
     // context as it may have been set by a previous operation
     String source = getString(ConfigTag.SOURCE);
@@ -142,7 +177,9 @@ public abstract class MarshalingFrameReader extends AbstractFrameReader implemen
       Log.debug("Using an absolute source file of " + sourceFile.getPath()+" - ("+sourceFile.getAbsolutePath()+")");
 
       // Basic checks
-      if (sourceFile.exists() && sourceFile.canRead()) {
+      if (sourceFile.exists() && sourceFile.canRead() && !preload) {
+        openStream(sourceFile);
+      } else if (sourceFile.exists() && sourceFile.canRead()) {
         String data = FileUtil.fileToString(sourceFile);
         Log.debug("Read in " + data.length() + " characters of data");
 
@@ -176,6 +213,103 @@ public abstract class MarshalingFrameReader extends AbstractFrameReader implemen
 
 
 
+  /**
+   * Open the source file for streaming and read ahead to the first frame.
+   * 
+   * @param sourceFile the file to stream
+   */
+  private void openStream(File sourceFile) {
+    String pattern = getString(ConfigTag.SELECTOR);
+    List<String> recordPath = null;
+    recordSelector = null;
+    if (StringUtil.isNotBlank(pattern)) {
+      String[] parts = RecordScanner.splitSelector(pattern.trim());
+      recordPath = RecordScanner.parsePath(parts[0]);
+      if (StringUtil.isNotBlank(parts[1])) {
+        recordSelector = new FrameSelector(parts[1], CDX.DEFAULT_FRAMEPATH_NAME);
+      }
+      Log.debug("Streaming records at '" + parts[0] + "' selecting '" + parts[1] + "'");
+    }
+
+    String encoding = getString(ConfigTag.ENCODING);
+    try {
+      Charset charset = StringUtil.isNotBlank(encoding) ? Charset.forName(encoding.trim()) : Charset.defaultCharset();
+      Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(sourceFile), charset));
+      scanner = getScanner(reader, recordPath);
+      nextFrame = fetch();
+      Log.info("Streaming frames from " + sourceFile.getAbsolutePath());
+    } catch (Exception e) {
+      Log.error("Could not stream " + sourceFile.getAbsolutePath() + ": " + e.getMessage());
+      getContext().setError(getClass().getSimpleName() + " could not stream from source: " + e.getMessage());
+    }
+  }
+
+
+
+
+  /**
+   * Retrieve the next frame from the stream.
+   * 
+   * <p>Each record scanned from the source may result in zero or more frames 
+   * depending on the marshaler and the record selector.</p>
+   * 
+   * @return the next frame or null if there are no more frames in the stream
+   */
+  private DataFrame fetch() {
+    try {
+      while (pending.isEmpty() && scanner != null) {
+        String record = scanner.next();
+        if (record == null) {
+          closeScanner();
+        } else {
+          for (DataFrame frame : getFrames(record)) {
+            if (recordSelector != null) {
+              pending.addAll(recordSelector.select(frame));
+            } else {
+              pending.add(frame);
+            }
+          }
+        }
+      }
+    } catch (Exception e) {
+      Log.error("Could not read record: " + e.getMessage());
+      getContext().setError(getClass().getSimpleName() + " could not read record: " + e.getMessage());
+      closeScanner();
+    }
+    return pending.poll();
+  }
+
+
+
+
+  private void closeScanner() {
+    if (scanner != null) {
+      try {
+        scanner.close();
+      } catch (IOException e) {
+        Log.debug("Exception closing scanner: " + e.getMessage());
+      } finally {
+        scanner = null;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.reader.AbstractFrameReader#close()
+   */
+  @Override
+  public void close() throws IOException {
+    closeScanner();
+    pending.clear();
+    super.close();
+  }
+
+
+
+
   /**
    * @param data
    * @return
@@ -184,4 +318,25 @@ public abstract class MarshalingFrameReader extends AbstractFrameReader implemen
     return JSONMarshaler.marshal(data);
   }
 
+
+
+
+  /**
+   * Create the scanner used to locate records when streaming the source.
+   * 
+   * <p>The text of each record the scanner returns is passed to 
+   * {@link #getFrames(String)}, so subclasses overriding that method should 
+   * also return a scanner for the same format.</p>
+   * 
+   * @param reader the source of the data
+   * @param recordPath the path to the records, null to use the format default
+   * 
+   * @return the scanner for the format this reader marshals
+   * 
+   * @throws IOException if the scanner could not be created
+   */
+  protected RecordScanner getScanner(Reader reader, List<String> recordPath) throws IOException {
+    return new JsonRecordScanner(reader, recordPath);
+  }
+
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Scans a character stream for records and returns the text of each record
+ * one at a time so it can be marshaled into a data frame.
+ *
+ * <p>Records are located by a path of names from the root of the document.
+ * A name of {@code *} matches any name (or array index) at that level. An
+ * empty path matches each value at the root of the stream.</p>
+ *
+ * <p>Only the record currently being scanned is held in memory, so the size
+ * of the stream is not limited by the size of the heap.</p>
+ */
+public abstract class RecordScanner implements Closeable {
+
+  /** Segment of the path which matches any name. */
+  public static final String WILDCARD = "*";
+
+  /** The path of the records to return, null to use the default of the format. */
+  protected List<String> pattern;
+
+
+
+
+  /**
+   * @param pattern the path to the records to return, null to use the scanner default
+   */
+  protected RecordScanner(final List<String> pattern) {
+    this.pattern = pattern;
+  }
+
+
+
+
+  /**
+   * Return the text of the next record in the stream.
+   *
+   * @return the complete text of the next record or null if there are no more records.
+   *
+   * @throws IOException if there were problems reading the stream or it is not well-formed
+   */
+  public abstract String next() throws IOException;
+
+
+
+
+  /**
+   * Split a selector pattern into the part used to locate records in the
+   * stream and the remainder to be applied to each record.
+   *
+   * <p>The record path ends with the first wildcard segment. For example, a
+   * selector of {@code CVE_Items.*.cve} scans for each element of the
+   * {@code CVE_Items} array and leaves {@code cve} to be selected from each
+   * of them.</p>
+   *
+   * @param selector the selector pattern (e.g. {@code records.*})
+   *
+   * @return two element array of the record path and the remainder (which may be null)
+   */
+  public static String[] splitSelector(final String selector) {
+    final String[] retval = new String[2];
+    final int wildcard = ("." + selector + ".").indexOf("." + WILDCARD + ".");
+    if (wildcard < 0) {
+      retval[0] = selector;
+    } else {
+      final int end = wildcard + WILDCARD.length();
+      retval[0] = selector.substring(0, end);
+      if (end + 1 < selector.length()) {
+        retval[1] = selector.substring(end + 1);
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Parse a dotted record path into its segments.
+   *
+   * @param path the record path (e.g. {@code data.records.*})
+   *
+   * @return the list of path segments, null if the path is null
+   */
+  public static List<String> parsePath(final String path) {
+    List<String> retval = null;
+    if (path != null) {
+      retval = new ArrayList<String>();
+      for (final String segment : path.split("\\.")) {
+        if (segment.trim().length() > 0) {
+          retval.add(segment.trim());
+        }
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @param path the path of the current value
+   *
+   * @return true if the path matches the record pattern exactly
+   */
+  protected boolean matches(final List<String> path) {
+    return path.size() == pattern.size() && isPrefix(path);
+  }
+
+
+
+
+  /**
+   * @param path the path of the current value
+   *
+   * @return true if a record may be found below the given path
+   */
+  protected boolean leadsTo(final List<String> path) {
+    return path.size() < pattern.size() && isPrefix(path);
+  }
+
+
+
+
+  private boolean isPrefix(final List<String> path) {
+    for (int x = 0; x < path.size(); x++) {
+      final String segment = pattern.get(x);
+      if (!WILDCARD.equals(segment) && !segment.equals(path.get(x))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
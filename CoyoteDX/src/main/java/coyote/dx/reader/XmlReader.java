@@ -7,6 +7,8 @@
  */
 package coyote.dx.reader;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 
 import coyote.dataframe.DataFrame;
@@ -20,6 +22,10 @@ import coyote.dx.FrameReader;
  *
  * Ths reader support the ability to flatten hierarchical records (complex objects) into a single flat (single level)
  * record format. This is turned on by default. This capability is provided by the MarshalingFrameReader super class.
+ *
+ * <p>Setting {@code preload} to false streams the XML one record element at a time. Without a selector, each child
+ * of the root element is a record; {@code "Selector": "feed.entry"} would return each {@code entry} element of the
+ * {@code feed} root element.
  */
 
 public class XmlReader extends MarshalingFrameReader implements FrameReader, ConfigurableComponent {
@@ -32,4 +38,15 @@ public class XmlReader extends MarshalingFrameReader implements FrameReader, Con
     return XMLMarshaler.marshal(data);
   }
 
+
+
+
+  /**
+   * @see coyote.dx.reader.MarshalingFrameReader#getScanner(java.io.Reader, java.util.List)
+   */
+  @Override
+  protected RecordScanner getScanner(Reader reader, List<String> recordPath) throws IOException {
+    return new XmlRecordScanner(reader, recordPath);
+  }
+
 }
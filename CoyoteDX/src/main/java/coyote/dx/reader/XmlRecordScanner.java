@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+
+/**
+ * Scans an XML stream for record elements without building a document of
+ * the entire stream.
+ *
+ * <p>Elements are matched by their name, the first segment of the pattern
+ * being the name of the root element. If no pattern is given, each child of
+ * the root element is returned as a record.</p>
+ *
+ * <p>The text of each record is the markup of the matching element and all
+ * its content. DTDs and external entities are not processed.</p>
+ */
+public class XmlRecordScanner extends RecordScanner {
+  private final Reader reader;
+  private final XMLStreamReader parser;
+  private final List<String> path = new ArrayList<String>();
+
+
+
+
+  /**
+   * @param reader the source of the XML data
+   * @param pattern the path to the records to return, null to use the default
+   *
+   * @throws IOException if the XML parser could not be created
+   */
+  public XmlRecordScanner(final Reader reader, final List<String> pattern) throws IOException {
+    super(pattern);
+    this.reader = reader;
+    if (this.pattern == null) {
+      this.pattern = new ArrayList<String>();
+      this.pattern.add(WILDCARD);
+      this.pattern.add(WILDCARD);
+    }
+    final XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    try {
+      parser = factory.createXMLStreamReader(reader);
+    } catch (final XMLStreamException e) {
+      throw new IOException("Could not create XML parser: " + e.getMessage(), e);
+    }
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.reader.RecordScanner#next()
+   */
+  @Override
+  public String next() throws IOException {
+    try {
+      while (parser.hasNext()) {
+        final int event = parser.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          path.add(parser.getLocalName());
+          if (matches(path)) {
+            final StringBuilder record = new StringBuilder();
+            readElement(record);
+            path.remove(path.size() - 1);
+            return record.toString();
+          } else if (!leadsTo(path)) {
+            skipElement();
+            path.remove(path.size() - 1);
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          path.remove(path.size() - 1);
+        }
+      }
+    } catch (final XMLStreamException e) {
+      throw new IOException("Could not parse XML data: " + e.getMessage(), e);
+    }
+    return null;
+  }
+
+
+
+
+  /**
+   * @see java.io.Closeable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      parser.close();
+    } catch (final XMLStreamException ignore) {
+      // the underlying reader is closed below
+    } finally {
+      reader.close();
+    }
+  }
+
+
+
+
+  /**
+   * Write the current element and its content to the buffer.
+   */
+  private void readElement(final StringBuilder buffer) throws XMLStreamException {
+    int depth = 0;
+    int event = XMLStreamConstants.START_ELEMENT;
+    while (true) {
+      switch (event) {
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          buffer.append('<').append(getName());
+          for (int x = 0; x < parser.getNamespaceCount(); x++) {
+            final String prefix = parser.getNamespacePrefix(x);
+            buffer.append(" xmlns");
+            if (prefix != null && prefix.length() > 0) {
+              buffer.append(':').append(prefix);
+            }
+            buffer.append("=\"");
+            escape(parser.getNamespaceURI(x), buffer, true);
+            buffer.append('"');
+          }
+          for (int x = 0; x < parser.getAttributeCount(); x++) {
+            final String prefix = parser.getAttributePrefix(x);
+            buffer.append(' ');
+            if (prefix != null && prefix.length() > 0) {
+              buffer.append(prefix).append(':');
+            }
+            buffer.append(parser.getAttributeLocalName(x)).append("=\"");
+            escape(parser.getAttributeValue(x), buffer, true);
+            buffer.append('"');
+          }
+          buffer.append('>');
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          buffer.append("</").append(getName()).append('>');
+          if (--depth == 0) {
+            return;
+          }
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          escape(parser.getText(), buffer, false);
+          break;
+        default:
+          // comments and processing instructions are not part of the record
+          break;
+      }
+      event = parser.next();
+    }
+  }
+
+
+
+
+  /**
+   * Skip over the current element and all its content.
+   */
+  private void skipElement() throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      final int event = parser.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+
+
+
+  private String getName() {
+    final String prefix = parser.getPrefix();
+    if (prefix != null && prefix.length() > 0) {
+      return prefix + ":" + parser.getLocalName();
+    }
+    return parser.getLocalName();
+  }
+
+
+
+
+  private static void escape(final String text, final StringBuilder buffer, final boolean attribute) {
+    if (text == null) {
+      return;
+    }
+    for (int x = 0; x < text.length(); x++) {
+      final char ch = text.charAt(x);
+      switch (ch) {
+        case '<':
+          buffer.append("&lt;");
+          break;
+        case '>':
+          buffer.append("&gt;");
+          break;
+        case '&':
+          buffer.append("&amp;");
+          break;
+        case '"':
+          if (attribute) {
+            buffer.append("&quot;");
+          } else {
+            buffer.append(ch);
+          }
+          break;
+        default:
+          buffer.append(ch);
+      }
+    }
+  }
+
+}
@@ -8,12 +8,9 @@
 package coyote.dx.task;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.zip.Adler32;
 import java.util.zip.CRC32;
-import java.util.zip.CheckedInputStream;
 import java.util.zip.Checksum;
 
 import coyote.commons.FileUtil;
@@ -28,7 +25,7 @@ import coyote.loader.log.LogMsg;
 /**
  * Methods common to multiple checksum tasks
  */
-public abstract class AbstractChecksumTask extends AbstractFileTask {
+public abstract class AbstractChecksumTask extends AbstractHashTask {
 
   protected String CHECKSUM_EXTENSION;
   protected String ALGORITHM;
@@ -67,13 +64,7 @@ public abstract class AbstractChecksumTask extends AbstractFileTask {
 
 
   private static String getChecksum(final File file, final Checksum algorithm) throws IOException {
-    long checksum = 0;
-    try (InputStream fis = new FileInputStream(file); CheckedInputStream cis = new CheckedInputStream(fis, algorithm)) {
-      final byte[] buffer = new byte[STREAM_BUFFER_LENGTH];
-      while (cis.read(buffer) >= 0) {}
-      checksum = cis.getChecksum().getValue();
-    }
-    return Long.toHexString(checksum);
+    return FileHasher.checksum(file, algorithm);
   }
 
 
@@ -106,6 +97,11 @@ public abstract class AbstractChecksumTask extends AbstractFileTask {
    */
   @Override
   protected void performTask() throws TaskException {
+    if (StringUtil.isNotBlank(getString(ConfigTag.FROMDIR))) {
+      checkFileSet();
+      return;
+    }
+
     final String source = getSourceOrFile();
     String expectedChecksum = null;
 
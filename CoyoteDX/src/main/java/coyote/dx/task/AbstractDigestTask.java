@@ -8,12 +8,9 @@
 package coyote.dx.task;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.MessageDigest;
 
-import coyote.commons.ByteUtil;
 import coyote.commons.FileUtil;
 import coyote.commons.StringUtil;
 import coyote.dx.CDX;
@@ -26,7 +23,7 @@ import coyote.loader.log.LogMsg;
 /**
  * Methods common to multiple checksum tasks
  */
-public abstract class AbstractDigestTask extends AbstractFileTask {
+public abstract class AbstractDigestTask extends AbstractHashTask {
   protected String CHECKSUM_EXTENSION;
   protected String ALGORITHM;
 
@@ -68,6 +65,11 @@ public abstract class AbstractDigestTask extends AbstractFileTask {
    */
   @Override
   protected void performTask() throws TaskException {
+    if (StringUtil.isNotBlank(getString(ConfigTag.FROMDIR))) {
+      checkFileSet();
+      return;
+    }
+
     final String source = getSourceOrFile();
     String expectedDigest = null;
 
@@ -203,15 +205,7 @@ public abstract class AbstractDigestTask extends AbstractFileTask {
    * @throws IOException if there were problems reading the given file
    */
   protected static String digest(final File file, final MessageDigest md) throws IOException {
-    try (InputStream fis = new FileInputStream(file)) {
-      final byte[] buffer = new byte[STREAM_BUFFER_LENGTH];
-      int read = fis.read(buffer, 0, STREAM_BUFFER_LENGTH);
-      while (read > -1) {
-        md.update(buffer, 0, read);
-        read = fis.read(buffer, 0, STREAM_BUFFER_LENGTH);
-      }
-      return ByteUtil.bytesToHex(md.digest(), "").toLowerCase();
-    }
+    return FileHasher.digest(file, md);
   }
 
 }
@@ -0,0 +1,558 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.task;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import coyote.commons.OrderedWorkQueue;
+import coyote.commons.StringUtil;
+import coyote.dx.CDX;
+import coyote.dx.ConfigTag;
+import coyote.dx.TaskException;
+import coyote.loader.log.Log;
+import coyote.loader.log.LogMsg;
+
+
+/**
+ * Checks sets of files for the checksum and digest tasks.
+ *
+ * <p>When the task has a {@code fromdir} attribute, every file in that
+ * directory matching the regular expression in {@code pattern} (all files if
+ * not set) is checked, including those in subdirectories if {@code recurse}
+ * is true. Files are hashed concurrently on a pool of {@code workers} threads
+ * (the number of processors by default).</p>
+ *
+ * <p>With a {@code Manifest} attribute, the files are checked against the
+ * named manifest file. If the manifest does not exist, it is written with
+ * the values of each file for all the {@code Algorithms} (a comma-separated
+ * list, only the algorithm of the task by default), each calculated from a
+ * single read of the file. Manifests list one value per line in the tagged
+ * format of the common command line tools:<pre>
+ * SHA256 (data/orders.csv) = 5891b5b522d5df086d0ff0b110fbd9d21bb4fc7163af34d08286a2e846f6be03</pre>
+ * <p>and lines in the untagged format ({@code <value>  <file>}) are read as
+ * values of the algorithm of the task. Paths are relative to the
+ * {@code fromdir} directory.</p>
+ *
+ * <p>Without a manifest, each file is checked against the file with the same
+ * name and the extension of the task as a single file is.</p>
+ *
+ * <p>The value of each verified or recorded file is posted in the context
+ * with the name of the file and the extension of its algorithm.</p>
+ *
+ * <p>Configure thusly:<pre>
+ * "CheckSHA256": {"fromdir": "inbound", "pattern": ".*\\.dat", "Manifest": "inbound/MANIFEST", "Algorithms": "SHA-256,MD5", "workers": 8}</pre>
+ */
+public abstract class AbstractHashTask extends AbstractFileTask {
+
+  /** Matches a line in the tagged manifest format */
+  private static final Pattern TAGGED_LINE = Pattern.compile("^(\\S+) \\((.*)\\) = ([0-9A-Fa-f]+)$");
+
+  /** Matches a line in the untagged manifest format */
+  private static final Pattern UNTAGGED_LINE = Pattern.compile("^([0-9A-Fa-f]+) [ *](.+)$");
+
+
+
+
+  /**
+   * @return the name of the algorithm used
+   */
+  public abstract String getAlgorithm();
+
+
+
+
+  /**
+   * @return the file extension used for the checksum file
+   */
+  public abstract String getFileExtension();
+
+
+
+
+  /**
+   * Check all the files in the set configured in the task.
+   *
+   * @throws TaskException if the files could not be checked or failed verification and errors halt the job
+   */
+  protected void checkFileSet() throws TaskException {
+    final File directory = getAbsoluteFile(getString(ConfigTag.FROMDIR));
+    if (!directory.isDirectory()) {
+      error(LogMsg.createMsg(CDX.MSG, "Hash.directory_not_found", getAlgorithm(), directory.getAbsolutePath()).toString());
+      return;
+    }
+
+    // determine the algorithms to calculate
+    final String[] algorithms;
+    if (StringUtil.isNotBlank(getString(ConfigTag.ALGORITHMS))) {
+      algorithms = getString(ConfigTag.ALGORITHMS).split(",");
+    } else {
+      algorithms = new String[]{getAlgorithm()};
+    }
+    for (final String algorithm : algorithms) {
+      if (!FileHasher.isSupported(algorithm)) {
+        error(LogMsg.createMsg(CDX.MSG, "Hash.unsupported_algorithm", algorithm).toString());
+        return;
+      }
+    }
+
+    final File manifest = StringUtil.isNotBlank(getString(ConfigTag.MANIFEST)) ? getAbsoluteFile(getString(ConfigTag.MANIFEST)) : null;
+
+    Pattern pattern = null;
+    if (StringUtil.isNotBlank(getString(ConfigTag.PATTERN))) {
+      try {
+        pattern = Pattern.compile(getString(ConfigTag.PATTERN));
+      } catch (final PatternSyntaxException e) {
+        error(LogMsg.createMsg(CDX.MSG, "Hash.invalid_pattern", getString(ConfigTag.PATTERN), e.getMessage()).toString());
+        return;
+      }
+    }
+
+    final Map<String, File> files = new TreeMap<String, File>();
+    listFiles(directory, directory, pattern, getBoolean(ConfigTag.RECURSE), manifest, files);
+
+    if (manifest != null && manifest.exists()) {
+      verifyManifest(directory, manifest, files);
+    } else if (manifest != null) {
+      writeManifest(manifest, files, algorithms);
+    } else {
+      verifyFiles(files, algorithms);
+    }
+  }
+
+
+
+
+  /**
+   * Place all the files in the directory which match the pattern in the map
+   * by their path relative to the base directory.
+   */
+  private void listFiles(final File base, final File directory, final Pattern pattern, final boolean recurse, final File manifest, final Map<String, File> files) {
+    final File[] list = directory.listFiles();
+    if (list == null) {
+      return;
+    }
+    for (final File file : list) {
+      if (file.isDirectory()) {
+        if (recurse) {
+          listFiles(base, file, pattern, recurse, manifest, files);
+        }
+      } else if (!file.equals(manifest) && !file.getName().endsWith(getFileExtension()) && (pattern == null || pattern.matcher(file.getName()).matches())) {
+        files.put(getRelativePath(base, file), file);
+      }
+    }
+  }
+
+
+
+
+  private static String getRelativePath(final File base, final File file) {
+    return base.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+  }
+
+
+
+
+  /**
+   * Manifests come from outside the job, so their paths (e.g. "../secret")
+   * must not be allowed to reach files outside the directory being checked.
+   *
+   * @return true if the canonical path of the file is below the directory
+   */
+  private static boolean isWithin(final File directory, final File file) {
+    try {
+      final String base = directory.getCanonicalPath();
+      return file.getCanonicalPath().startsWith(base.endsWith(File.separator) ? base : base + File.separator);
+    } catch (final IOException e) {
+      return false;
+    }
+  }
+
+
+
+
+  /**
+   * Check each file listed in the manifest with all the algorithms listed
+   * for that file.
+   */
+  private void verifyManifest(final File directory, final File manifest, final Map<String, File> files) throws TaskException {
+    final Map<String, Map<String, String>> expected;
+    try {
+      expected = readManifest(manifest);
+    } catch (final IOException e) {
+      error(LogMsg.createMsg(CDX.MSG, "Hash.manifest_error", manifest.getAbsolutePath(), e.getMessage()).toString());
+      return;
+    }
+
+    final List<String> failures = new ArrayList<String>();
+    final Map<String, String[]> tasks = new LinkedHashMap<String, String[]>();
+    for (final Map.Entry<String, Map<String, String>> entry : expected.entrySet()) {
+      final File file = new File(directory, entry.getKey());
+      if (!isWithin(directory, file)) {
+        failures.add(LogMsg.createMsg(CDX.MSG, "Hash.invalid_path", entry.getKey(), manifest.getAbsolutePath()).toString());
+      } else if (file.isFile()) {
+        files.put(entry.getKey(), file);
+        tasks.put(entry.getKey(), entry.getValue().keySet().toArray(new String[0]));
+      } else {
+        failures.add(LogMsg.createMsg(CDX.MSG, "Hash.missing_file", entry.getKey(), manifest.getAbsolutePath()).toString());
+      }
+    }
+    for (final String path : files.keySet()) {
+      if (!expected.containsKey(path)) {
+        Log.warn(LogMsg.createMsg(CDX.MSG, "Hash.not_in_manifest", path, manifest.getAbsolutePath()));
+      }
+    }
+
+    final Map<String, String[]> results = hash(files, tasks, failures);
+    for (final Map.Entry<String, String[]> entry : results.entrySet()) {
+      final File file = files.get(entry.getKey());
+      final String[] algorithms = tasks.get(entry.getKey());
+      boolean verified = true;
+      for (int x = 0; x < algorithms.length; x++) {
+        if (!matches(entry.getValue()[x], expected.get(entry.getKey()).get(algorithms[x]))) {
+          failures.add(LogMsg.createMsg(CDX.MSG, "Hash.verification_failed", algorithms[x], file.getAbsolutePath()).toString());
+          verified = false;
+        }
+      }
+      if (verified) {
+        Log.debug(LogMsg.createMsg(CDX.MSG, "Hash.verified", file.getAbsolutePath(), join(algorithms)));
+        post(file, algorithms, entry.getValue());
+      }
+    }
+
+    complete(failures, results.size());
+    if (failures.isEmpty()) {
+      Log.info(LogMsg.createMsg(CDX.MSG, "Hash.manifest_verified", results.size(), manifest.getAbsolutePath()));
+    }
+  }
+
+
+
+
+  /**
+   * Calculate all the algorithms for each file and write them to a new
+   * manifest.
+   */
+  private void writeManifest(final File manifest, final Map<String, File> files, final String[] algorithms) throws TaskException {
+    final Map<String, String[]> tasks = new LinkedHashMap<String, String[]>();
+    for (final String path : files.keySet()) {
+      tasks.put(path, algorithms);
+    }
+
+    final List<String> failures = new ArrayList<String>();
+    final Map<String, String[]> results = hash(files, tasks, failures);
+    if (failures.isEmpty()) {
+      if (manifest.getParentFile() != null) {
+        manifest.getParentFile().mkdirs();
+      }
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(manifest), StandardCharsets.UTF_8)) {
+        for (final Map.Entry<String, String[]> entry : results.entrySet()) {
+          for (int x = 0; x < algorithms.length; x++) {
+            writer.write(FileHasher.getTag(algorithms[x]) + " (" + entry.getKey() + ") = " + entry.getValue()[x] + "\n");
+          }
+          post(files.get(entry.getKey()), algorithms, entry.getValue());
+        }
+      } catch (final IOException e) {
+        failures.add(LogMsg.createMsg(CDX.MSG, "Hash.manifest_error", manifest.getAbsolutePath(), e.getMessage()).toString());
+      }
+    }
+
+    complete(failures, results.size());
+    if (failures.isEmpty()) {
+      Log.info(LogMsg.createMsg(CDX.MSG, "Hash.manifest_written", join(algorithms), results.size(), manifest.getAbsolutePath()));
+    }
+  }
+
+
+
+
+  /**
+   * Check each file against the file with the same name and the extension
+   * of the algorithm of this task.
+   */
+  private void verifyFiles(final Map<String, File> files, final String[] algorithms) throws TaskException {
+    final String tag = FileHasher.getTag(getAlgorithm());
+    final String[] checked = merge(getAlgorithm(), algorithms);
+    final Map<String, String[]> tasks = new LinkedHashMap<String, String[]>();
+    for (final String path : files.keySet()) {
+      tasks.put(path, checked);
+    }
+
+    final List<String> failures = new ArrayList<String>();
+    final Map<String, String[]> results = hash(files, tasks, failures);
+    for (final Map.Entry<String, String[]> entry : results.entrySet()) {
+      final File file = files.get(entry.getKey());
+      final File hashFile = new File(file.getAbsolutePath() + getFileExtension());
+      if (hashFile.isFile()) {
+        String expected = null;
+        try {
+          expected = readHashFile(hashFile);
+        } catch (final IOException e) {
+          failures.add(LogMsg.createMsg(CDX.MSG, "Hash.manifest_error", hashFile.getAbsolutePath(), e.getMessage()).toString());
+          continue;
+        }
+        if (matches(entry.getValue()[0], expected)) {
+          Log.debug(LogMsg.createMsg(CDX.MSG, "Hash.verified", file.getAbsolutePath(), tag));
+          post(file, checked, entry.getValue());
+        } else {
+          failures.add(LogMsg.createMsg(CDX.MSG, "Hash.verification_failed", getAlgorithm(), file.getAbsolutePath()).toString());
+        }
+      } else {
+        Log.warn(LogMsg.createMsg(CDX.MSG, "Hash.no_digest_data", getAlgorithm(), file.getAbsolutePath()));
+      }
+    }
+    complete(failures, results.size());
+  }
+
+
+
+
+  /**
+   * Calculate the values of the algorithms for each file concurrently.
+   *
+   * @param files the files by their relative path
+   * @param tasks the algorithms to calculate for each file by its relative path
+   * @param failures the list to which the reason for any failures are added
+   *
+   * @return the values of each file by its relative path, in the order of the algorithms
+   */
+  private Map<String, String[]> hash(final Map<String, File> files, final Map<String, String[]> tasks, final List<String> failures) {
+    final Map<String, String[]> retval = new LinkedHashMap<String, String[]>();
+    if (tasks.isEmpty()) {
+      return retval;
+    }
+
+    final int workers = Math.min(tasks.size(), (getInteger(ConfigTag.WORKERS) > 0) ? getInteger(ConfigTag.WORKERS) : Runtime.getRuntime().availableProcessors());
+    final OrderedWorkQueue<String[]> queue = new OrderedWorkQueue<String[]>(getClass().getSimpleName(), workers, tasks.size());
+    final Deque<String> names = new ArrayDeque<String>();
+    final Iterator<Map.Entry<String, String[]>> iterator = tasks.entrySet().iterator();
+    try {
+      while (iterator.hasNext() || !names.isEmpty()) {
+        if (iterator.hasNext() && !queue.isFull()) {
+          final Map.Entry<String, String[]> entry = iterator.next();
+          final File file = files.get(entry.getKey());
+          final String[] algorithms = entry.getValue();
+          queue.submit(new Callable<String[]>() {
+            @Override
+            public String[] call() throws IOException {
+              return FileHasher.hash(file, algorithms);
+            }
+          });
+          names.add(entry.getKey());
+          continue;
+        }
+
+        final String name = names.poll();
+        final File file = files.get(name);
+        try {
+          final String[] values = queue.next();
+          retval.put(name, values);
+          if (Log.isLogging(Log.DEBUG_EVENTS)) {
+            Log.debug(LogMsg.createMsg(CDX.MSG, "Hash.results", file.getAbsolutePath(), join(tasks.get(name)), join(values)));
+          }
+        } catch (final IOException e) {
+          failures.add(LogMsg.createMsg(CDX.MSG, "Hash.calculation_error", file.getAbsolutePath(), e.getMessage()).toString());
+          if (Thread.currentThread().isInterrupted()) {
+            break;
+          }
+        }
+      }
+    } finally {
+      queue.close();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Read the expected values from the manifest.
+   *
+   * @return the expected value of each algorithm by the relative path of each file
+   */
+  private Map<String, Map<String, String>> readManifest(final File manifest) throws IOException {
+    final Map<String, Map<String, String>> retval = new TreeMap<String, Map<String, String>>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#")) {
+          continue;
+        }
+        String algorithm;
+        String path;
+        String value;
+        Matcher matcher = TAGGED_LINE.matcher(line);
+        if (matcher.matches()) {
+          algorithm = matcher.group(1);
+          path = matcher.group(2);
+          value = matcher.group(3);
+        } else {
+          matcher = UNTAGGED_LINE.matcher(line);
+          if (matcher.matches()) {
+            algorithm = getAlgorithm();
+            path = matcher.group(2).trim();
+            value = matcher.group(1);
+          } else {
+            throw new IOException("Invalid manifest entry '" + line + "'");
+          }
+        }
+        if (!FileHasher.isSupported(algorithm)) {
+          throw new IOException("Unsupported algorithm '" + algorithm + "'");
+        }
+        path = path.replace('\\', '/');
+        if (path.startsWith("./")) {
+          path = path.substring(2);
+        }
+        Map<String, String> values = retval.get(path);
+        if (values == null) {
+          values = new LinkedHashMap<String, String>();
+          retval.put(path, values);
+        }
+        values.put(FileHasher.getTag(algorithm), value);
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @return the value in a file holding the value of a single file
+   */
+  private static String readHashFile(final File file) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+      final String line = reader.readLine();
+      if (line == null) {
+        return null;
+      }
+      // the value may be followed by the name of the file
+      final String[] tokens = line.trim().split("\\s+");
+      return tokens[0];
+    }
+  }
+
+
+
+
+  /**
+   * Compare values ignoring case and leading zeros, which are not written in
+   * checksum values.
+   */
+  private static boolean matches(final String value, final String expected) {
+    if (value == null || StringUtil.isBlank(expected)) {
+      return false;
+    }
+    return StringUtil.equalsIgnoreCase(stripZeros(value), stripZeros(expected.trim()));
+  }
+
+
+
+
+  private static String stripZeros(final String value) {
+    int start = 0;
+    while (start < value.length() - 1 && value.charAt(start) == '0') {
+      start++;
+    }
+    return value.substring(start);
+  }
+
+
+
+
+  /**
+   * Place the values of the file in the context by the name of the file and
+   * the extension of each algorithm.
+   */
+  private void post(final File file, final String[] algorithms, final String[] values) {
+    for (int x = 0; x < algorithms.length; x++) {
+      getContext().set(file.getAbsolutePath() + "." + FileHasher.getTag(algorithms[x]).toLowerCase(), values[x]);
+    }
+  }
+
+
+
+
+  /**
+   * Report any failures, throwing an exception if errors halt the job.
+   */
+  private void complete(final List<String> failures, final int count) throws TaskException {
+    if (!failures.isEmpty()) {
+      for (final String failure : failures) {
+        Log.error(failure);
+      }
+      if (haltOnError) {
+        throw new TaskException(LogMsg.createMsg(CDX.MSG, "Hash.files_failed", failures.size(), count, failures.get(0)).toString());
+      }
+    }
+  }
+
+
+
+
+  private void error(final String msg) throws TaskException {
+    if (haltOnError) {
+      throw new TaskException(msg);
+    } else {
+      Log.error(msg);
+    }
+  }
+
+
+
+
+  /**
+   * @return the tags of the given algorithms without duplicates, starting with the first algorithm
+   */
+  private static String[] merge(final String first, final String[] rest) {
+    final Set<String> retval = new LinkedHashSet<String>();
+    retval.add(FileHasher.getTag(first));
+    for (final String algorithm : rest) {
+      retval.add(FileHasher.getTag(algorithm));
+    }
+    return retval.toArray(new String[0]);
+  }
+
+
+
+
+  private static String join(final String[] values) {
+    final StringBuilder b = new StringBuilder();
+    for (final String value : values) {
+      if (b.length() > 0) {
+        b.append(", ");
+      }
+      b.append(value.trim());
+    }
+    return b.toString();
+  }
+
+}
@@ -12,6 +12,7 @@ import java.io.IOException;
 
 import coyote.commons.StringUtil;
 import coyote.commons.ZipUtil;
+import coyote.commons.zip.ZipArchive;
 import coyote.dx.ConfigTag;
 import coyote.dx.TaskException;
 import coyote.loader.log.Log;
@@ -35,6 +36,9 @@ import coyote.loader.log.Log;
  * Add a directory to an existing zip
  * Add a file to an existing zip
  * 
+ * <p>Setting "workers" to more than 1 compresses the entries of the archive
+ * on that many threads. The files are streamed from disk, so this is the
+ * preferred way to archive large job directories.</p>
  */
 public class Archive extends AbstractFileTask {
 
@@ -68,7 +72,12 @@ public class Archive extends AbstractFileTask {
 
         Log.debug("Archiving " + sourceFile.getAbsolutePath() + " to " + targetFile.getAbsolutePath());
         try {
-          ZipUtil.zip(sourceFile, targetFile);
+          final int workers = getInteger(ConfigTag.WORKERS);
+          if (workers > 1) {
+            archive(sourceFile, targetFile, workers);
+          } else {
+            ZipUtil.zip(sourceFile, targetFile);
+          }
         } catch (IOException e) {
           throw new TaskException("Could not archive file: " + e.getMessage(), e);
         }
@@ -79,4 +88,33 @@ public class Archive extends AbstractFileTask {
       throw new TaskException("No soure specified");
     }
   }
+
+
+
+
+  /**
+   * Archive the source to a new target file, compressing entries on several
+   * threads.
+   *
+   * @param source the file or directory to archive
+   * @param target the archive to create
+   * @param workers the number of threads compressing entries
+   *
+   * @throws IOException if the archive could not be created
+   */
+  private void archive(final File source, final File target, final int workers) throws IOException {
+    if (target.exists() && !target.delete()) {
+      throw new IOException("Could not replace existing archive " + target.getAbsolutePath());
+    }
+    try (ZipArchive archive = new ZipArchive(target)) {
+      archive.setThreads(workers);
+      if (source.isDirectory()) {
+        archive.addFiles(source, source.getName(), null);
+      } else {
+        archive.addFile(source.getName(), source);
+      }
+      archive.flush();
+    }
+  }
+
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import coyote.commons.ByteUtil;
+
+
+/**
+ * Calculates checksums and digests of files through a file channel.
+ *
+ * <p>Large files are memory-mapped a region at a time and smaller files are
+ * read into a direct buffer, so the data is never copied into the heap
+ * just to be hashed. Any number of algorithms can be calculated from a
+ * single read of the file.</p>
+ *
+ * <p>Algorithms are named as they are in the tasks and manifests: MD5, SHA-1
+ * (or SHA1), SHA-256 (or SHA256), the other SHA-2 variants, SHA3-256 (or
+ * SHA3256) and the other SHA-3 variants, CRC32 and Adler32. Checksums are returned as hexadecimal values without leading
+ * zeros and digests as lower case hexadecimal strings, as the check tasks
+ * have always written them.</p>
+ */
+final class FileHasher {
+
+  /** Files at least this large are memory-mapped */
+  static final long MAP_THRESHOLD = 1024 * 1024;
+
+  /** The largest region of a file mapped at one time */
+  private static final int MAP_SIZE = 64 * 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Each thread reuses its own direct buffer for smaller files */
+  private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  };
+
+
+
+
+  private FileHasher() {}
+
+
+
+
+  /**
+   * Calculate the values of several algorithms with one read of the file.
+   *
+   * @param file the file to read
+   * @param algorithms the names of the algorithms to calculate
+   *
+   * @return the values of each of the algorithms in the order requested
+   *
+   * @throws IOException if the file could not be read
+   * @throws IllegalArgumentException if an algorithm is not supported
+   */
+  static String[] hash(File file, String... algorithms) throws IOException {
+    Hash[] hashes = new Hash[algorithms.length];
+    for (int x = 0; x < algorithms.length; x++) {
+      hashes[x] = getHash(algorithms[x]);
+    }
+    read(file, hashes);
+    String[] retval = new String[hashes.length];
+    for (int x = 0; x < hashes.length; x++) {
+      retval[x] = hashes[x].getValue();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @param file the file to read
+   * @param md the message digest to update with the contents of the file
+   *
+   * @return the digest of the file as a lower case hexadecimal string
+   *
+   * @throws IOException if the file could not be read
+   */
+  static String digest(File file, MessageDigest md) throws IOException {
+    Hash hash = new DigestHash(md);
+    read(file, new Hash[]{hash});
+    return hash.getValue();
+  }
+
+
+
+
+  /**
+   * @param file the file to read
+   * @param checksum the checksum to update with the contents of the file
+   *
+   * @return the checksum of the file as a hexadecimal value
+   *
+   * @throws IOException if the file could not be read
+   */
+  static String checksum(File file, Checksum checksum) throws IOException {
+    Hash hash = new ChecksumHash(checksum);
+    read(file, new Hash[]{hash});
+    return hash.getValue();
+  }
+
+
+
+
+  /**
+   * Return the name of the algorithm as it appears in manifests; upper case
+   * without any dashes (e.g. SHA256).
+   *
+   * @param algorithm the name of the algorithm
+   *
+   * @return the tag for the algorithm
+   */
+  static String getTag(String algorithm) {
+    return algorithm.trim().replace("-", "").toUpperCase(Locale.ROOT);
+  }
+
+
+
+
+  /**
+   * @param algorithm the name of the algorithm
+   *
+   * @return true if the algorithm is supported, false otherwise
+   */
+  static boolean isSupported(String algorithm) {
+    try {
+      getHash(algorithm);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+
+
+
+  private static Hash getHash(String algorithm) {
+    String tag = getTag(algorithm);
+    if ("CRC32".equals(tag)) {
+      return new ChecksumHash(new CRC32());
+    } else if ("ADLER32".equals(tag)) {
+      return new ChecksumHash(new Adler32());
+    }
+    try {
+      if (tag.startsWith("SHA3") && tag.length() > 4) {
+        return new DigestHash(MessageDigest.getInstance("SHA3-" + tag.substring(4)));
+      } else if (tag.startsWith("SHA") && tag.length() > 3) {
+        return new DigestHash(MessageDigest.getInstance("SHA-" + tag.substring(3)));
+      }
+      return new DigestHash(MessageDigest.getInstance(algorithm.trim()));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalArgumentException("Unsupported algorithm '" + algorithm + "'");
+    }
+  }
+
+
+
+
+  private static void read(File file, Hash[] hashes) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size >= MAP_THRESHOLD) {
+        for (long position = 0; position < size; position += MAP_SIZE) {
+          update(hashes, channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position)));
+        }
+      } else {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+          buffer.flip();
+          update(hashes, buffer);
+          buffer.clear();
+        }
+      }
+    }
+  }
+
+
+
+
+  private static void update(Hash[] hashes, ByteBuffer buffer) {
+    for (Hash hash : hashes) {
+      hash.update(buffer.duplicate());
+    }
+  }
+
+
+
+
+  /**
+   * A checksum or message digest.
+   */
+  private abstract static class Hash {
+    abstract void update(ByteBuffer buffer);
+
+
+
+
+    abstract String getValue();
+  }
+
+
+
+
+  private static class DigestHash extends Hash {
+    private final MessageDigest digest;
+
+
+
+
+    DigestHash(MessageDigest digest) {
+      this.digest = digest;
+    }
+
+
+
+
+    @Override
+    void update(ByteBuffer buffer) {
+      digest.update(buffer);
+    }
+
+
+
+
+    @Override
+    String getValue() {
+      return ByteUtil.bytesToHex(digest.digest(), "").toLowerCase();
+    }
+  }
+
+
+
+
+  private static class ChecksumHash extends Hash {
+    private final Checksum checksum;
+    private byte[] array = null;
+
+
+
+
+    ChecksumHash(Checksum checksum) {
+      this.checksum = checksum;
+    }
+
+
+
+
+    @Override
+    void update(ByteBuffer buffer) {
+      if (checksum instanceof CRC32) {
+        ((CRC32)checksum).update(buffer);
+      } else if (checksum instanceof Adler32) {
+        ((Adler32)checksum).update(buffer);
+      } else {
+        if (array == null) {
+          array = new byte[BUFFER_SIZE];
+        }
+        while (buffer.hasRemaining()) {
+          int length = Math.min(array.length, buffer.remaining());
+          buffer.get(array, 0, length);
+          checksum.update(array, 0, length);
+        }
+      }
+    }
+
+
+
+
+    @Override
+    String getValue() {
+      return Long.toHexString(checksum.getValue());
+    }
+  }
+
+}
@@ -12,6 +12,8 @@ import java.io.IOException;
 
 import coyote.commons.StringUtil;
 import coyote.commons.ZipUtil;
+import coyote.commons.zip.AllZipEntryFilter;
+import coyote.commons.zip.ZipArchive;
 import coyote.dx.CDX;
 import coyote.dx.ConfigTag;
 import coyote.dx.TaskException;
@@ -21,6 +23,9 @@ import coyote.loader.log.LogMsg;
 
 /**
  * Unzip the given file.
+ * 
+ * <p>Setting "workers" to more than 1 extracts the entries of the archive on
+ * that many threads.</p>
  */
 public class Unzip extends AbstractFileTask {
 
@@ -39,7 +44,14 @@ public class Unzip extends AbstractFileTask {
         if (file.canRead()) {
           if (file.length() > 0) {
             try {
-              ZipUtil.unzip(file, getDirectory());
+              final int workers = getInteger(ConfigTag.WORKERS);
+              if (workers > 1) {
+                try (ZipArchive archive = new ZipArchive(file)) {
+                  archive.extractTo(getDirectory(), new AllZipEntryFilter(), workers);
+                }
+              } else {
+                ZipUtil.unzip(file, getDirectory());
+              }
             } catch (IOException e) {
               throw new TaskException("Could not unzip file: " + e.getMessage(), e);
             }
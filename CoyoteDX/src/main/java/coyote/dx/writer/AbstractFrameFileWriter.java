@@ -7,12 +7,18 @@
  */
 package coyote.dx.writer;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
 
 import coyote.commons.StringUtil;
 import coyote.commons.UriUtil;
@@ -29,17 +35,41 @@ import coyote.loader.log.LogMsg;
 
 /**
  * Base class for all frame writers writing frames to files
+ * 
+ * <p>Output to files is buffered and, by default, only flushed when the 
+ * buffer fills or the writer is closed. The following optional configuration 
+ * attributes control this behavior:<ul>
+ * <li>{@code BufferSize} - the size of the output buffer in characters 
+ * (default 65536)</li>
+ * <li>{@code FlushRows} - flush the output every N rows (default 0, never; 
+ * the console defaults to 1)</li>
+ * <li>{@code FlushInterval} - flush the output if at least this many 
+ * milliseconds have passed since the last flush (default 0, never)</li>
+ * <li>{@code Encoding} - the character set used to encode the output 
+ * (default is the platform encoding)</li>
+ * <li>{@code channel} - write the file through a {@code FileChannel} with a 
+ * direct byte buffer (default false)</li></ul>
+ * 
+ * <p>Subclasses should call {@link #checkFlush()} after each row is written 
+ * instead of flushing the print writer directly.</p>
  */
 public abstract class AbstractFrameFileWriter extends AbstractFrameWriter implements FrameWriter {
 
   protected static final String STDOUT = "STDOUT";
   protected static final String STDERR = "STDERR";
+  protected static final int DEFAULT_BUFFER_SIZE = 65536;
   protected int rowNumber = 0;
   protected PrintWriter printwriter = null;
 
   //size of the target file when this component was opened
   private long targetSize = -1;
 
+  // flush policy
+  private int flushRows = 0;
+  private long flushInterval = 0;
+  private int unflushedRows = 0;
+  private long lastFlush = 0;
+
 
 
 
@@ -118,6 +148,10 @@ public abstract class AbstractFrameFileWriter extends AbstractFrameWriter implem
 
           File targetFile = null;
 
+          // the console flushes every row unless told otherwise
+          final boolean console = StringUtil.equalsIgnoreCase(STDOUT, target) || StringUtil.equalsIgnoreCase(STDERR, target);
+          configureFlushPolicy(console ? 1 : 0);
+
           // Check to see if it is STDOUT or STDERR
           if (StringUtil.equalsIgnoreCase(STDOUT, target)) {
               printwriter = new PrintWriter(System.out);
@@ -153,8 +187,7 @@ public abstract class AbstractFrameFileWriter extends AbstractFrameWriter implem
               }
 
               try {
-                  final Writer fwriter = new FileWriter(targetFile, isAppending());
-                  printwriter = new PrintWriter(fwriter, isAppending());
+                  printwriter = new PrintWriter(createFileWriter(targetFile), false);
               } catch (final Exception e) {
                   Log.error("Could not create writer: " + e.getMessage());
                   context.setError(e.getMessage());
@@ -168,6 +201,92 @@ public abstract class AbstractFrameFileWriter extends AbstractFrameWriter implem
 
 
 
+  /**
+   * Read the flush policy from the configuration.
+   * 
+   * @param defaultRows the number of rows between flushes if not configured
+   */
+  private void configureFlushPolicy(final int defaultRows) {
+    flushRows = containsIgnoreCase(ConfigTag.FLUSH_ROWS) ? getInteger(ConfigTag.FLUSH_ROWS) : defaultRows;
+    flushInterval = getLong(ConfigTag.FLUSH_INTERVAL);
+    unflushedRows = 0;
+    lastFlush = System.currentTimeMillis();
+    Log.debug("Flush policy: rows=" + flushRows + " interval=" + flushInterval + "ms");
+  }
+
+
+
+
+  /**
+   * Create a buffered writer for the given file based on the current 
+   * configuration.
+   * 
+   * @param file the file to which data is to be written
+   * 
+   * @return a buffered writer for the file
+   * 
+   * @throws IOException if the file could not be opened
+   * @throws IllegalArgumentException if the configured encoding is not valid
+   */
+  protected Writer createFileWriter(final File file) throws IOException {
+    int bufferSize = getInteger(ConfigTag.BUFFER_SIZE);
+    if (bufferSize <= 0) {
+      bufferSize = DEFAULT_BUFFER_SIZE;
+    }
+
+    final String encoding = getString(ConfigTag.ENCODING);
+    final Charset charset = StringUtil.isNotBlank(encoding) ? Charset.forName(encoding.trim()) : Charset.defaultCharset();
+
+    if (getBoolean(ConfigTag.CHANNEL)) {
+      final OpenOption mode = isAppending() ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+      final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+      return new FileChannelWriter(channel, charset, bufferSize);
+    } else {
+      return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, isAppending()), charset), bufferSize);
+    }
+  }
+
+
+
+
+  /**
+   * Called by subclasses after each row is written to flush the output if 
+   * the configured flush policy requires it.
+   * 
+   * <p>If neither a row count nor an interval is configured, data is only 
+   * written when the buffer fills or when the writer is closed.</p>
+   */
+  protected void checkFlush() {
+    unflushedRows++;
+    if (printwriter != null) {
+      if (flushRows > 0 && unflushedRows >= flushRows) {
+        flush();
+      } else if (flushInterval > 0) {
+        final long now = System.currentTimeMillis();
+        if (now - lastFlush >= flushInterval) {
+          flush();
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Flush any buffered output to the target.
+   */
+  protected void flush() {
+    if (printwriter != null) {
+      printwriter.flush();
+    }
+    unflushedRows = 0;
+    lastFlush = System.currentTimeMillis();
+  }
+
+
+
+
   /**
    * Set the length of the target content when the target was open.
    * 
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.writer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * A character writer which encodes its data into a direct byte buffer and
+ * writes it to a file channel.
+ *
+ * <p>Characters are collected in a buffer and encoded with an explicit
+ * character set only when the buffer fills or the writer is flushed, so the
+ * number of system calls is a function of the buffer size and not the number
+ * of writes.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public class FileChannelWriter extends Writer {
+
+  /** The smallest character buffer used, so a surrogate pair always fits with room to spare. */
+  static final int MIN_BUFFER_SIZE = 1024;
+
+  private final FileChannel channel;
+  private final CharsetEncoder encoder;
+  private final CharBuffer chars;
+  private final ByteBuffer bytes;
+  private boolean closed = false;
+
+
+
+
+  /**
+   * Create a writer for the given channel.
+   *
+   * @param channel the channel to which the encoded data is written
+   * @param charset the character set used to encode the characters
+   * @param bufferSize the number of characters to buffer, raised to
+   *        {@value #MIN_BUFFER_SIZE} if smaller
+   */
+  public FileChannelWriter(final FileChannel channel, final Charset charset, final int bufferSize) {
+    this.channel = channel;
+    encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // a smaller buffer could fill with the unencodable half of a surrogate pair and never drain
+    final int size = Math.max(bufferSize, MIN_BUFFER_SIZE);
+    chars = CharBuffer.allocate(size);
+    bytes = ByteBuffer.allocateDirect((int)Math.ceil(size * encoder.maxBytesPerChar()));
+  }
+
+
+
+
+  /**
+   * @see java.io.Writer#write(char[], int, int)
+   */
+  @Override
+  public void write(final char[] cbuf, int off, int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      final int count = Math.min(len, chars.remaining());
+      chars.put(cbuf, off, count);
+      off += count;
+      len -= count;
+      if (!chars.hasRemaining()) {
+        encode(false);
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.Writer#write(java.lang.String, int, int)
+   */
+  @Override
+  public void write(final String str, int off, int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      final int count = Math.min(len, chars.remaining());
+      chars.put(str, off, off + count);
+      off += count;
+      len -= count;
+      if (!chars.hasRemaining()) {
+        encode(false);
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @see java.io.Writer#write(int)
+   */
+  @Override
+  public void write(final int c) throws IOException {
+    ensureOpen();
+    chars.put((char)c);
+    if (!chars.hasRemaining()) {
+      encode(false);
+    }
+  }
+
+
+
+
+  /**
+   * Encode all the buffered characters and write them to the channel.
+   *
+   * <p>This does not force the data to the storage device.</p>
+   *
+   * @see java.io.Writer#flush()
+   */
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    encode(false);
+    drain();
+  }
+
+
+
+
+  /**
+   * @see java.io.Writer#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      try {
+        encode(true);
+        while (encoder.flush(bytes).isOverflow()) {
+          drain();
+        }
+        drain();
+      } finally {
+        closed = true;
+        channel.close();
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Encode the buffered characters into the byte buffer, writing to the
+   * channel whenever the byte buffer fills.
+   *
+   * <p>Any characters which could not be encoded (i.e. the first half of a
+   * surrogate pair) remain in the character buffer for the next call.</p>
+   *
+   * @param endOfInput true if no more characters will be written
+   */
+  private void encode(final boolean endOfInput) throws IOException {
+    chars.flip();
+    while (true) {
+      final CoderResult result = encoder.encode(chars, bytes, endOfInput);
+      if (result.isOverflow()) {
+        drain();
+      } else if (result.isError()) {
+        result.throwException();
+      } else {
+        break;
+      }
+    }
+    chars.compact();
+  }
+
+
+
+
+  /**
+   * Write the contents of the byte buffer to the channel.
+   */
+  private void drain() throws IOException {
+    bytes.flip();
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    bytes.clear();
+  }
+
+
+
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Writer closed");
+    }
+  }
+
+}
@@ -64,7 +64,7 @@ public class JsonWriter extends AbstractFrameFileWriter implements FrameWriter,
     } else {
       printwriter.write(',');
     }
-    printwriter.flush();
+    checkFlush();
     rowNumber++;
   }
 
@@ -196,7 +196,6 @@ public class XmlWriter extends AbstractFrameFileWriter implements FrameWriter, C
     b.append(">");
     printwriter.write(b.toString());
     printwriter.write(StringUtil.LINE_FEED);
-    printwriter.flush();
 
   }
 
@@ -345,7 +344,7 @@ public class XmlWriter extends AbstractFrameFileWriter implements FrameWriter, C
 
     printwriter.write(b.toString());
     printwriter.write(StringUtil.LINE_FEED);
-    printwriter.flush();
+    checkFlush();
 
     // Increment the row number
     rowNumber++;
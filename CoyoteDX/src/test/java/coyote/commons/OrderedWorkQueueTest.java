@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+
+public class OrderedWorkQueueTest {
+
+  private static Callable<Integer> task(final int value) {
+    return new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+        return value;
+      }
+    };
+  }
+
+
+
+
+  @Test
+  public void order() throws Exception {
+    final List<Integer> results = new ArrayList<Integer>();
+    try (OrderedWorkQueue<Integer> queue = new OrderedWorkQueue<Integer>("Test", 4)) {
+      for (int x = 0; x < 100; x++) {
+        while (queue.isFull()) {
+          results.add(queue.next());
+        }
+        queue.submit(task(x));
+      }
+      while (!queue.isEmpty()) {
+        results.add(queue.next());
+      }
+      assertNull(queue.next());
+    }
+    assertEquals(100, results.size());
+    for (int x = 0; x < results.size(); x++) {
+      assertEquals(x, results.get(x).intValue());
+    }
+  }
+
+
+
+
+  @Test
+  public void callingThread() throws Exception {
+    final Thread caller = Thread.currentThread();
+    try (OrderedWorkQueue<Boolean> queue = new OrderedWorkQueue<Boolean>("Test", 1)) {
+      queue.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return Thread.currentThread() == caller;
+        }
+      });
+      assertTrue(queue.isFull());
+      assertTrue(queue.next());
+    }
+  }
+
+
+
+
+  @Test
+  public void daemonThreads() throws Exception {
+    try (OrderedWorkQueue<String> queue = new OrderedWorkQueue<String>("Test", 2)) {
+      queue.submit(new Callable<String>() {
+        @Override
+        public String call() {
+          return Thread.currentThread().isDaemon() + " " + Thread.currentThread().getName();
+        }
+      });
+      assertEquals("true Test-1", queue.next());
+    }
+  }
+
+
+
+
+  @Test
+  public void failure() throws Exception {
+    try (OrderedWorkQueue<Integer> queue = new OrderedWorkQueue<Integer>("Test", 2)) {
+      queue.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws IOException {
+          throw new IOException("unreadable");
+        }
+      });
+      queue.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          throw new IllegalStateException("unparsable");
+        }
+      });
+      queue.submit(task(3));
+      try {
+        queue.next();
+        fail("the exception of the task should be thrown");
+      } catch (final IOException e) {
+        assertEquals("unreadable", e.getMessage());
+      }
+      try {
+        queue.next();
+        fail("the exception of the task should be thrown");
+      } catch (final IOException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+      assertEquals(3, queue.next().intValue());
+    }
+  }
+
+
+
+
+  @Test
+  public void discard() throws Exception {
+    final List<Integer> discarded = new ArrayList<Integer>();
+    final CountDownLatch done = new CountDownLatch(1);
+    final OrderedWorkQueue<Integer> queue = new OrderedWorkQueue<Integer>("Test", 2) {
+      @Override
+      protected void discard(final Integer result) {
+        discarded.add(result);
+      }
+    };
+    queue.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        done.countDown();
+        return 1;
+      }
+    });
+    done.await();
+    Thread.sleep(50);
+    queue.close();
+    assertEquals(1, discarded.size());
+    assertTrue(queue.isEmpty());
+    assertFalse(queue.isFull());
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons.csv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class CSVScannerTest {
+
+  private static final String DATA = "id,name,note\r\n" + //
+      "1,Alice,\"likes \"\"quotes\"\"\"\r\n" + //
+      "\r\n" + //
+      "2,  Bob ,\"spans\nlines, with commas\"\n" + //
+      "3,\"Carol\",\"escaped \\\" quote\"\n" + //
+      "4,Dave,";
+
+
+
+
+  private static List<String[]> parse(CSVScanner scanner, String data) {
+    char[] buffer = data.toCharArray();
+    return scanner.parse(buffer, 0, buffer.length);
+  }
+
+
+
+
+  @Test
+  public void allColumns() {
+    List<String[]> rows = parse(new CSVScanner(',', '"', '\\'), DATA);
+    assertEquals(5, rows.size());
+    assertArrayEquals(new String[] { "id", "name", "note" }, rows.get(0));
+    assertArrayEquals(new String[] { "1", "Alice", "likes \"quotes\"" }, rows.get(1));
+    assertArrayEquals(new String[] { "2", "  Bob ", "spans\nlines, with commas" }, rows.get(2));
+    assertArrayEquals(new String[] { "3", "Carol", "escaped \" quote" }, rows.get(3));
+    assertArrayEquals(new String[] { "4", "Dave", "" }, rows.get(4));
+  }
+
+
+
+
+  @Test
+  public void projection() {
+    List<String[]> rows = parse(new CSVScanner(',', '"', '\\', new int[] { 2, 0 }), DATA);
+    assertEquals(5, rows.size());
+    assertArrayEquals(new String[] { "spans\nlines, with commas", "2" }, rows.get(2));
+
+    // missing columns are null
+    rows = parse(new CSVScanner(',', '"', '\\', new int[] { 0, 5 }), "a,b\n");
+    assertArrayEquals(new String[] { "a", null }, rows.get(0));
+  }
+
+
+
+
+  @Test
+  public void recordBoundaries() {
+    CSVScanner scanner = new CSVScanner(',', '"', '\\');
+    char[] buffer = "a,\"b\nc\"\nd,e\nf,\"g".toCharArray();
+    assertEquals(8, scanner.firstRecordEnd(buffer, 0, buffer.length));
+    assertEquals(12, scanner.lastRecordEnd(buffer, 0, buffer.length));
+    assertEquals(-1, scanner.lastRecordEnd(buffer, 0, 6));
+
+    // a quote within an unquoted value does not start a quoted value
+    buffer = "5\" disk,x\ny\n".toCharArray();
+    assertEquals(10, scanner.firstRecordEnd(buffer, 0, buffer.length));
+  }
+
+
+
+
+  @Test
+  public void bufferReader() throws IOException {
+    StringBuilder b = new StringBuilder("id,value\n");
+    for (int x = 0; x < 20000; x++) {
+      b.append(x).append(",\"value\n").append(x).append("\"\n");
+    }
+
+    for (int threads = 1; threads <= 4; threads += 3) {
+      try (CSVBufferReader reader = new CSVBufferReader(new StringReader(b.toString()), new CSVScanner(',', '"', '\\'), 1024, threads)) {
+        assertArrayEquals(new String[] { "id", "value" }, reader.readFirst(new CSVScanner(',', '"', '\\')));
+        reader.setScanner(new CSVScanner(',', '"', '\\', new int[] { 1 }));
+        for (int x = 0; x < 20000; x++) {
+          assertArrayEquals(new String[] { "value\n" + x }, reader.readNext());
+        }
+        assertNull(reader.readNext());
+      }
+    }
+  }
+
+}
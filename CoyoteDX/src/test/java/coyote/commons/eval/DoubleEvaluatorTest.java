@@ -1,6 +1,7 @@
 package coyote.commons.eval;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
@@ -81,6 +82,44 @@ public class DoubleEvaluatorTest {
 
 
 
+  @Test
+  public void testCompiledExpression() throws Exception {
+    final Expression expression = evaluator.compile( "min(x,3)*2+-round(x)" );
+    assertSame( expression, evaluator.compile( "min(x,3)*2+-round(x)" ) );
+
+    // the same compiled expression evaluated concurrently with different variables
+    Thread[] threads = new Thread[4];
+    final Throwable[] errors = new Throwable[threads.length];
+    for ( int t = 0; t < threads.length; t++ ) {
+      final int id = t;
+      threads[t] = new Thread( new Runnable() {
+        @Override
+        public void run() {
+          try {
+            StaticVariableSet<Double> variables = new StaticVariableSet<Double>();
+            for ( int x = 0; x < 1000; x++ ) {
+              double value = id * 1000 + x;
+              variables.set( "x", value );
+              assertEquals( Math.min( value, 3 ) * 2 - Math.round( value ), evaluator.evaluate( expression, variables ), 0.001 );
+            }
+          } catch ( Throwable e ) {
+            errors[id] = e;
+          }
+        }
+      } );
+      threads[t].start();
+    }
+    for ( int t = 0; t < threads.length; t++ ) {
+      threads[t].join();
+      if ( errors[t] != null ) {
+        throw new AssertionError( errors[t] );
+      }
+    }
+  }
+
+
+
+
   @Test(expected = IllegalArgumentException.class)
   public void test2ValuesFollowing() {
     evaluator.evaluate( "10 5 +" );
@@ -0,0 +1,60 @@
+package coyote.commons.eval;
+
+/**
+ * A simple benchmark comparing the per-row cost of parsing an expression on
+ * every evaluation against evaluating the cached, compiled expression.
+ *
+ * <p>This is not a unit test; run it from the command line or IDE:<pre>
+ * java coyote.commons.eval.ExpressionBenchmark [rows]</pre>
+ *
+ * <p>The default of 1,000,000 rows simulates a filter or writer condition
+ * evaluated once for every frame of a large job.</p>
+ */
+public class ExpressionBenchmark {
+
+  private static final String NUMERIC = "min(x,100)*2+-round(x/3)^2";
+
+
+
+
+  public static void main(final String[] args) {
+    final int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    final DoubleEvaluator evaluator = new DoubleEvaluator();
+    final StaticVariableSet<Double> variables = new StaticVariableSet<Double>();
+
+    // warm up both paths so the JIT has a chance to compile them
+    run(evaluator, variables, rows / 10, false);
+    run(evaluator, variables, rows / 10, true);
+
+    final long parsed = run(evaluator, variables, rows, false);
+    final long compiled = run(evaluator, variables, rows, true);
+
+    System.out.println("Expression: " + NUMERIC);
+    System.out.println("Rows: " + rows);
+    System.out.println(String.format("Parse every row: %8d ms %8.1f ns/row", parsed / 1000000, (double)parsed / rows));
+    System.out.println(String.format("Cached compile:  %8d ms %8.1f ns/row", compiled / 1000000, (double)compiled / rows));
+    System.out.println(String.format("Speed-up: %.1fx", (double)parsed / compiled));
+  }
+
+
+
+
+  private static long run(final DoubleEvaluator evaluator, final StaticVariableSet<Double> variables, final int rows, final boolean cached) {
+    double sink = 0;
+    final long start = System.nanoTime();
+    for (int row = 0; row < rows; row++) {
+      variables.set("x", (double)row);
+      if (cached) {
+        sink += evaluator.evaluate(NUMERIC, variables);
+      } else {
+        sink += evaluator.evaluate(evaluator.parse(NUMERIC), variables);
+      }
+    }
+    final long elapsed = System.nanoTime() - start;
+    if (sink == Double.MIN_VALUE) {
+      System.out.println(sink); // keep the JIT from eliminating the loop
+    }
+    return elapsed;
+  }
+
+}
@@ -1,13 +1,25 @@
 package coyote.commons.zip;
 
 //import static org.junit.Assert.*;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.AfterClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import coyote.commons.FileUtil;
 
@@ -16,6 +28,12 @@ import coyote.commons.FileUtil;
  * Some simple tests.
  */
 public class ZipArchiveTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+
   /**
    * @throws java.lang.Exception
    */
@@ -118,4 +136,93 @@ public class ZipArchiveTest {
     FileUtil.deleteFile( tstFile );
 
   }
-}
\ No newline at end of file
+
+
+
+
+  private static void write( File file, byte[] data ) throws IOException {
+    file.getParentFile().mkdirs();
+    try (FileOutputStream out = new FileOutputStream( file )) {
+      out.write( data );
+    }
+  }
+
+
+
+
+  /**
+   * Entries compressed on several threads should be readable by the standard
+   * ZIP classes and extract to the same data.
+   */
+  @Test
+  public void testParallelArchive() throws Exception {
+    File source = folder.newFolder( "source" );
+    Random random = new Random( 42 );
+    byte[][] data = new byte[20][];
+    for ( int x = 0; x < data.length; x++ ) {
+      // mix of compressible and random data, some compressed to temp files
+      data[x] = new byte[x == 7 ? 5 * 1024 * 1024 : random.nextInt( 100000 )];
+      if ( x % 2 == 0 ) {
+        random.nextBytes( data[x] );
+      }
+      write( new File( source, "dir" + ( x % 3 ) + File.separator + "file" + x + ".dat" ), data[x] );
+    }
+    write( new File( source, "empty.txt" ), new byte[0] );
+
+    File zip = new File( folder.getRoot(), "parallel.zip" );
+    ZipArchive archive = new ZipArchive( zip );
+    archive.setThreads( 4 );
+    archive.addFiles( source, "work", null );
+    archive.addEntry( "notes.txt", "Hello".getBytes( "UTF-8" ) );
+    archive.flush();
+
+    try (ZipFile zipFile = new ZipFile( zip )) {
+      assertEquals( data.length + 2, zipFile.size() );
+      ZipEntry entry = zipFile.getEntry( "work/dir1/file7.dat" );
+      assertNotNull( entry );
+      assertEquals( data[7].length, entry.getSize() );
+    }
+
+    // replace one entry and remove another, keeping the rest
+    archive = new ZipArchive( zip );
+    archive.setThreads( 3 );
+    archive.addEntry( "work/dir0/file0.dat", "replaced".getBytes( "UTF-8" ) );
+    archive.removeEntry( "notes.txt" );
+    archive.flush();
+
+    File target = folder.newFolder( "target" );
+    archive.extractTo( target, new AllZipEntryFilter(), 3 );
+    assertEquals( "replaced", new String( Files.readAllBytes( new File( target, "work/dir0/file0.dat".replace( '/', File.separatorChar ) ).toPath() ), "UTF-8" ) );
+    for ( int x = 1; x < data.length; x++ ) {
+      File file = new File( target, "work" + File.separator + "dir" + ( x % 3 ) + File.separator + "file" + x + ".dat" );
+      assertArrayEquals( data[x], Files.readAllBytes( file.toPath() ) );
+    }
+    assertTrue( new File( target, "work" + File.separator + "empty.txt" ).exists() );
+    assertTrue( !new File( target, "notes.txt" ).exists() );
+  }
+
+
+
+
+  /**
+   * Entries may not be extracted outside of the target directory.
+   */
+  @Test
+  public void testExtractOutsideTarget() throws Exception {
+    File zip = new File( folder.getRoot(), "slip.zip" );
+    try (ZipOutputStream out = new ZipOutputStream( new FileOutputStream( zip ) )) {
+      out.putNextEntry( new ZipEntry( "../outside.txt" ) );
+      out.write( 1 );
+    }
+
+    File target = folder.newFolder( "target" );
+    try {
+      new ZipArchive( zip ).extractTo( target );
+      fail( "Extracted an entry outside of the target directory" );
+    } catch ( IOException e ) {
+      // expected
+    }
+    assertTrue( !new File( folder.getRoot(), "outside.txt" ).exists() );
+  }
+
+}
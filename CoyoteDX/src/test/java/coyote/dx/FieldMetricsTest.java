@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import coyote.dataframe.DataField;
+
+
+/**
+ *
+ */
+public class FieldMetricsTest {
+
+  @Test
+  public void exactUniqueValues() {
+    FieldMetrics metrics = new FieldMetrics("test");
+    for (int i = 0; i < 500; i++) {
+      metrics.sample(new DataField("test", "value" + (i % 100)));
+    }
+    assertEquals(100, metrics.getUniqueValues());
+    assertEquals(500, metrics.sampleCount);
+  }
+
+
+
+
+  @Test
+  public void estimatedUniqueValues() {
+    FieldMetrics metrics = new FieldMetrics("test");
+    for (int i = 0; i < 200000; i++) {
+      metrics.sample(new DataField("test", "value" + i));
+    }
+    int unique = metrics.getUniqueValues();
+    assertTrue("Estimate " + unique + " not within 5%", Math.abs(unique - 200000) < 10000);
+  }
+
+
+
+
+  @Test
+  public void numericValues() {
+    FieldMetrics metrics = new FieldMetrics("test");
+    for (int i = 1; i <= 10000; i++) {
+      metrics.sample(new DataField("test", i));
+    }
+    assertEquals(10000, metrics.getNumericCount());
+    assertEquals(1D, metrics.getMinimumValue(), 0D);
+    assertEquals(10000D, metrics.getMaximumValue(), 0D);
+    assertEquals(5000.5D, metrics.getMeanValue(), 0.0001D);
+    assertEquals(2886.75D, metrics.getStdDevValue(), 0.01D);
+    assertEquals(5000D, metrics.getMedian(), 200D);
+    assertEquals(9500D, metrics.getQuantile(0.95D), 200D);
+  }
+
+
+
+
+  @Test
+  public void nonNumericValues() {
+    FieldMetrics metrics = new FieldMetrics("test");
+    metrics.sample(new DataField("test", "abc"));
+    assertEquals(0, metrics.getNumericCount());
+    assertTrue(Double.isNaN(metrics.getMedian()));
+    assertTrue(Double.isNaN(metrics.getMeanValue()));
+    assertNull(metrics.getEarliestDate());
+  }
+
+
+
+
+  @Test
+  public void dateValues() {
+    FieldMetrics metrics = new FieldMetrics("test");
+    Date first = new Date(1000000L);
+    Date last = new Date(3000000L);
+    metrics.sample(new DataField("test", new Date(2000000L)));
+    metrics.sample(new DataField("test", last));
+    metrics.sample(new DataField("test", first));
+    assertEquals(first, metrics.getEarliestDate());
+    assertEquals(last, metrics.getLatestDate());
+  }
+
+
+
+
+  @Test
+  public void topValues() {
+    FieldMetrics metrics = new FieldMetrics("test");
+    for (int i = 0; i < 100000; i++) {
+      String value;
+      if (i % 10 == 0) {
+        value = "red";
+      } else if (i % 10 == 1) {
+        value = "green";
+      } else {
+        value = "other" + i;
+      }
+      metrics.sample(new DataField("test", value));
+    }
+    Map<String, Long> top = metrics.getTopValues(2);
+    assertEquals(2, top.size());
+    Iterator<String> keys = top.keySet().iterator();
+    String first = keys.next();
+    String second = keys.next();
+    assertTrue(("red".equals(first) && "green".equals(second)) || ("green".equals(first) && "red".equals(second)));
+    assertTrue(top.get("red") >= 10000);
+  }
+
+
+
+
+  @Test
+  public void byteLength() {
+    FieldMetrics metrics = new FieldMetrics("test");
+    metrics.sample(new DataField("test", "a"));
+    metrics.sample(new DataField("test", "\u00e9t\u00e9"));
+    metrics.sample(new DataField("test", "\u20ac"));
+    assertEquals(1, metrics.getMinimumByteLength());
+    assertEquals(5, metrics.getMaximumByteLength());
+    assertEquals("\u00e9t\u00e9".getBytes(StandardCharsets.UTF_8).length, FieldMetrics.utf8Length("\u00e9t\u00e9"));
+    assertEquals(4, FieldMetrics.utf8Length("\ud83d\ude00"));
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class HyperLogLogTest {
+
+  @Test
+  public void mergeOverlapping() {
+    HyperLogLog first = new HyperLogLog();
+    HyperLogLog second = new HyperLogLog();
+    for (int i = 0; i < 50000; i++) {
+      first.add("value" + i);
+    }
+    for (int i = 25000; i < 75000; i++) {
+      second.add("value" + i);
+    }
+    first.merge(second);
+    long estimate = first.cardinality();
+    assertTrue("Estimate " + estimate + " not within 5%", Math.abs(estimate - 75000) < 3750);
+  }
+
+
+
+
+  @Test
+  public void restore() {
+    HyperLogLog original = new HyperLogLog(10);
+    for (int i = 0; i < 5000; i++) {
+      original.add("value" + i);
+    }
+    byte[] data = original.toBytes();
+    assertEquals(1024, data.length);
+
+    HyperLogLog restored = new HyperLogLog(data);
+    assertEquals(original.cardinality(), restored.cardinality());
+
+    // the saved registers are a copy
+    long estimate = original.cardinality();
+    Arrays.fill(data, (byte)0);
+    assertEquals(estimate, original.cardinality());
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mergeDifferentPrecision() {
+    new HyperLogLog(10).merge(new HyperLogLog(12));
+  }
+
+
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void restoreInvalidLength() {
+    new HyperLogLog(new byte[1000]);
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+
+import coyote.dataframe.DataFrame;
+import coyote.dx.context.TransactionContext;
+import coyote.dx.listener.AbstractListener;
+import coyote.dx.reader.AbstractFrameReader;
+import coyote.dx.transform.AbstractFrameTransform;
+import coyote.dx.writer.AbstractFrameWriter;
+import coyote.loader.cfg.Config;
+
+
+/**
+ * Tests for the pipelined execution mode of the transform engine.
+ */
+public class PipelineTest extends AbstractTest {
+  private static final int FRAME_COUNT = 500;
+
+
+
+
+  @Test
+  public void preservesOrder() {
+    DefaultTransformEngine engine = new DefaultTransformEngine();
+    engine.setName("PipelineTest");
+
+    Config pipeline = new Config();
+    pipeline.put(ConfigTag.WORKERS, 4);
+    pipeline.put(ConfigTag.CAPACITY, 16);
+    engine.getConfiguration().put(ConfigTag.PIPELINE, pipeline);
+    assertTrue(engine.isPipelined());
+
+    final List<Long> written = Collections.synchronizedList(new ArrayList<Long>());
+    final List<Boolean> lastFlags = Collections.synchronizedList(new ArrayList<Boolean>());
+    final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+
+    engine.setReader(new AbstractFrameReader() {
+      private long count = 0;
+
+
+
+
+      @Override
+      public DataFrame read(TransactionContext context) {
+        count++;
+        context.setLastFrame(count >= FRAME_COUNT);
+        return new DataFrame().set("seq", count);
+      }
+
+
+
+
+      @Override
+      public boolean eof() {
+        return count >= FRAME_COUNT;
+      }
+    });
+
+    engine.addTransformer(new AbstractFrameTransform() {
+      @Override
+      public DataFrame process(DataFrame frame) throws TransformException {
+        threads.add(Thread.currentThread().getName());
+        try {
+          Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+        } catch (InterruptedException ignore) {}
+        frame.put("worked", true);
+        return frame;
+      }
+    });
+
+    engine.addWriter(new AbstractFrameWriter() {
+      @Override
+      public void write(DataFrame frame) {
+        written.add(frame.getAsLong("seq"));
+        lastFlags.add(getContext().getTransaction().isLastFrame());
+      }
+    });
+
+    turnOver(engine);
+
+    assertFalse(engine.getContext().isInError());
+    assertEquals(FRAME_COUNT, written.size());
+    for (int x = 0; x < written.size(); x++) {
+      assertEquals(x + 1, written.get(x).longValue());
+      assertEquals(x + 1 == FRAME_COUNT, lastFlags.get(x));
+    }
+    for (String name : threads) {
+      assertTrue(name.startsWith("PipelineTest-worker-"));
+    }
+  }
+
+
+
+
+  private static DefaultTransformEngine pipelinedEngine() {
+    DefaultTransformEngine engine = new DefaultTransformEngine();
+    engine.setName("PipelineTest");
+    Config pipeline = new Config();
+    pipeline.put(ConfigTag.WORKERS, 4);
+    pipeline.put(ConfigTag.CAPACITY, 4);
+    engine.getConfiguration().put(ConfigTag.PIPELINE, pipeline);
+    return engine;
+  }
+
+
+
+
+  private static AbstractFrameReader countingReader(final int frames) {
+    return new AbstractFrameReader() {
+      private long count = 0;
+
+
+
+
+      @Override
+      public DataFrame read(TransactionContext context) {
+        count++;
+        context.setLastFrame(count >= frames);
+        return new DataFrame().set("seq", count);
+      }
+
+
+
+
+      @Override
+      public boolean eof() {
+        return count >= frames;
+      }
+    };
+  }
+
+
+
+
+  @Test
+  public void symbolsPerTransaction() {
+    DefaultTransformEngine engine = pipelinedEngine();
+    final List<String> mismatches = Collections.synchronizedList(new ArrayList<String>());
+    engine.setReader(countingReader(FRAME_COUNT));
+    engine.addTransformer(new AbstractFrameTransform() {
+      @Override
+      public DataFrame process(DataFrame frame) throws TransformException {
+        try {
+          Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+        } catch (InterruptedException ignore) {}
+        Object current = getContext().getSymbols().get(Symbols.CURRENT_FRAME);
+        if (!String.valueOf(frame.getAsLong("seq")).equals(String.valueOf(current))) {
+          mismatches.add(frame.getAsLong("seq") + "!=" + current);
+        }
+        return frame;
+      }
+    });
+
+    turnOver(engine);
+
+    assertFalse(engine.getContext().isInError());
+    assertTrue(mismatches.toString(), mismatches.isEmpty());
+    assertEquals(String.valueOf(FRAME_COUNT), String.valueOf(engine.getSymbolTable().get(Symbols.CURRENT_FRAME)));
+  }
+
+
+
+
+  @Test
+  public void writerFailure() {
+    DefaultTransformEngine engine = pipelinedEngine();
+    engine.setReader(countingReader(FRAME_COUNT));
+    engine.addListener(new AbstractListener() {
+      @Override
+      public void onMap(TransactionContext context) {
+        // deferred events fire on the writer thread outside of the writers
+        if (context.getSourceFrame().getAsLong("seq") == 10) {
+          throw new IllegalStateException("listener failure");
+        }
+      }
+    });
+
+    // must not hang with the reader blocked on a full queue
+    turnOver(engine);
+
+    assertTrue(engine.getContext().isInError());
+  }
+
+
+
+
+  @Test
+  public void noReader() {
+    DefaultTransformEngine engine = pipelinedEngine();
+    turnOver(engine);
+    assertFalse(engine.getContext().isInError());
+  }
+
+}
@@ -19,6 +19,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import coyote.dataframe.DataFrame;
+import coyote.dataframe.DataFrameException;
 import coyote.dx.AbstractTest;
 import coyote.dx.context.TransactionContext;
 import coyote.loader.cfg.Config;
@@ -234,4 +235,128 @@ public class GroupingTest extends AbstractTest {
     }
   }
 
+
+
+
+  @Test
+  public void aggregates() throws ConfigurationException, IOException, DataFrameException {
+    String cfgData = "{ \"key\": \"city\", \"aggregates\": [ { \"function\": \"count\" }, { \"function\": \"sum\", \"field\": \"price\" }, { \"function\": \"avg\", \"field\": \"price\", \"name\": \"average\" }, { \"function\": \"last\", \"field\": \"order\" }, { \"function\": \"distinct\", \"field\": \"order\" } ] }";
+    Config configuration = parseConfiguration(cfgData);
+
+    List<DataFrame> frames = new ArrayList<>();
+    frames.add(new DataFrame().set("city", "CMH").set("order", "A").set("price", 1));
+    frames.add(new DataFrame().set("city", "CLE").set("order", "A").set("price", 2));
+    frames.add(new DataFrame().set("city", "CMH").set("order", "B").set("price", 3));
+    frames.add(new DataFrame().set("city", "CMH").set("order", "B").set("price", 5));
+
+    try (Grouping aggregator = new Grouping()) {
+      aggregator.setConfiguration(configuration);
+      aggregator.open(getTransformContext());
+      List<DataFrame> result = group(aggregator, frames);
+
+      assertEquals(2, result.size());
+      DataFrame frame = result.get(0);
+      assertEquals("CMH", frame.getAsString("city"));
+      assertEquals(3, frame.getAsLong("count"));
+      assertEquals(9, frame.getAsDouble("sum_price"), 0.0001);
+      assertEquals(3, frame.getAsDouble("average"), 0.0001);
+      assertEquals("B", frame.getAsString("last_order"));
+      assertEquals(2, frame.getAsInt("distinct_order"));
+      frame = result.get(1);
+      assertEquals("CLE", frame.getAsString("city"));
+      assertEquals(1, frame.getAsLong("count"));
+    }
+  }
+
+
+
+
+  /**
+   * Limit the groups in memory so partial results are spilled and merged.
+   */
+  @Test
+  public void spill() throws ConfigurationException, IOException, DataFrameException {
+    String cfgData = "{ \"key\": \"id\", \"maxgroups\": 10, \"aggregates\": [ { \"function\": \"count\" }, { \"function\": \"min\", \"field\": \"value\" }, { \"function\": \"max\", \"field\": \"value\" }, { \"function\": \"first\", \"field\": \"value\" } ] }";
+    Config configuration = parseConfiguration(cfgData);
+
+    List<DataFrame> frames = new ArrayList<>();
+    for (int x = 0; x < 1000; x++) {
+      frames.add(new DataFrame().set("id", "K" + (x % 100)).set("value", x));
+    }
+
+    try (Grouping aggregator = new Grouping()) {
+      aggregator.setConfiguration(configuration);
+      aggregator.open(getTransformContext());
+      List<DataFrame> result = group(aggregator, frames);
+
+      assertEquals(100, result.size());
+      for (int x = 0; x < result.size(); x++) {
+        DataFrame frame = result.get(x);
+        assertEquals("K" + x, frame.getAsString("id")); // order of first observation
+        assertEquals(10, frame.getAsLong("count"));
+        assertEquals(x, frame.getAsDouble("min_value"), 0.0001);
+        assertEquals(900 + x, frame.getAsDouble("max_value"), 0.0001);
+        assertEquals(x, frame.getAsInt("first_value"));
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Distinct values survive being spilled and merged, and large sets are 
+   * replaced with an estimate.
+   */
+  @Test
+  public void spillDistinct() throws ConfigurationException, IOException, DataFrameException {
+    String cfgData = "{ \"key\": \"id\", \"maxgroups\": 3, \"maxdistinct\": 100, \"sort\": \"descend\", \"aggregates\": [ { \"function\": \"distinct\", \"field\": \"value\" } ] }";
+    Config configuration = parseConfiguration(cfgData);
+
+    List<DataFrame> frames = new ArrayList<>();
+    for (int x = 0; x < 20000; x++) {
+      int id = x % 10;
+      // the first five groups see 20 values, the rest see 2000
+      frames.add(new DataFrame().set("id", "K" + id).set("value", (id < 5) ? x % 20 : x));
+    }
+
+    try (Grouping aggregator = new Grouping()) {
+      aggregator.setConfiguration(configuration);
+      aggregator.open(getTransformContext());
+      List<DataFrame> result = group(aggregator, frames);
+
+      assertEquals(10, result.size());
+      int index = 9;
+      for (DataFrame frame : result) {
+        assertEquals("K" + index, frame.getAsString("id"));
+        long distinct = frame.getAsLong("distinct_value");
+        if (index < 5) {
+          assertEquals(2, distinct); // x % 20 for a fixed x % 10
+        } else {
+          assertTrue(Long.toString(distinct), Math.abs(distinct - 2000) < 100);
+        }
+        index--;
+      }
+      assertEquals(-1, index);
+    }
+  }
+
+
+
+
+  private List<DataFrame> group(Grouping aggregator, List<DataFrame> frames) {
+    List<DataFrame> result = null;
+    List<DataFrame> framelist = new ArrayList<>();
+    framelist.add(new DataFrame()); // prime the array
+    TransactionContext context = createTransactionContext();
+    for (int x = 0; x < frames.size(); x++) {
+      framelist.set(0, frames.get(x));
+      if (x + 1 == frames.size()) {
+        context.setLastFrame(true);
+      }
+      result = aggregator.aggregate(framelist, context);
+    }
+    return result;
+  }
+
 }
@@ -19,6 +19,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import coyote.dataframe.DataFrame;
+import coyote.dataframe.DataFrameException;
 import coyote.dx.AbstractTest;
 import coyote.dx.context.TransactionContext;
 import coyote.loader.cfg.Config;
@@ -378,4 +379,97 @@ public class SortTest extends AbstractTest {
     }
   }
 
+
+
+
+  @Test
+  public void multipleTypedKeys() throws ConfigurationException, IOException {
+    String cfgData = "{ \"fields\": [ { \"field\": \"city\", \"mode\": \"AscendNoCase\" }, { \"field\": \"price\", \"type\": \"number\", \"mode\": \"Descend\" } ] }";
+    Config configuration = parseConfiguration(cfgData);
+
+    List<DataFrame> frames = new ArrayList<>();
+    frames.add(new DataFrame().set("city", "CMH").set("price", "9"));
+    frames.add(new DataFrame().set("city", "cle").set("price", "10"));
+    frames.add(new DataFrame().set("city", "CMH").set("price", "100"));
+    frames.add(new DataFrame().set("city", "CLE").set("price", "9.5"));
+    frames.add(new DataFrame().set("city", "cmh").set("price", "-1"));
+
+    try (Sort aggregator = new Sort()) {
+      aggregator.setConfiguration(configuration);
+      aggregator.open(getTransformContext());
+      List<DataFrame> result = sort(aggregator, frames);
+
+      assertEquals(5, result.size());
+      assertEquals("10", result.get(0).getAsString("price"));
+      assertEquals("9.5", result.get(1).getAsString("price"));
+      assertEquals("100", result.get(2).getAsString("price"));
+      assertEquals("9", result.get(3).getAsString("price"));
+      assertEquals("-1", result.get(4).getAsString("price"));
+    }
+  }
+
+
+
+
+  /**
+   * Exceed a 1MB memory budget so sorted runs are spilled to disk and merged.
+   */
+  @Test
+  public void spill() throws ConfigurationException, IOException, DataFrameException {
+    DataFrame cfg = new DataFrame().set("field", "key").set("type", "number").set("mode", "Ascend").set("memory", 1);
+    Config configuration = new Config(cfg);
+
+    int count = 60000;
+    List<DataFrame> frames = new ArrayList<>();
+    for (int x = 0; x < count; x++) {
+      frames.add(new DataFrame().set("key", (x * 7919) % 1000).set("order", x).set("padding", "abcdefghijklmnopqrstuvwxyz"));
+    }
+
+    try (Sort aggregator = new Sort()) {
+      aggregator.setConfiguration(configuration);
+      aggregator.open(getTransformContext());
+      List<DataFrame> result = sort(aggregator, frames);
+
+      assertEquals(count, result.size());
+      int size = 0;
+      DataFrame previous = null;
+      for (DataFrame frame : result) {
+        if (previous != null) {
+          int lastKey = previous.getAsInt("key");
+          assertTrue(lastKey <= frame.getAsInt("key"));
+          if (lastKey == frame.getAsInt("key")) {
+            assertTrue(previous.getAsInt("order") < frame.getAsInt("order")); // stable
+          }
+        }
+        previous = frame;
+        size++;
+      }
+      assertEquals(count, size);
+
+      // indexed access in order continues the merge rather than restarting it
+      for (int x = 0; x < count; x++) {
+        assertNotNull(result.get(x));
+      }
+      assertEquals(result.get(0).getAsInt("key"), result.iterator().next().getAsInt("key"));
+    }
+  }
+
+
+
+
+  private List<DataFrame> sort(Sort aggregator, List<DataFrame> frames) {
+    List<DataFrame> result = null;
+    List<DataFrame> framelist = new ArrayList<>();
+    framelist.add(new DataFrame()); // prime the array
+    TransactionContext context = createTransactionContext();
+    for (int x = 0; x < frames.size(); x++) {
+      framelist.set(0, frames.get(x));
+      if (x + 1 == frames.size()) {
+        context.setLastFrame(true);
+      }
+      result = aggregator.aggregate(framelist, context);
+    }
+    return result;
+  }
+
 }
@@ -38,6 +38,19 @@ public class HttpFutureTest {
 
 
 
+  @Test
+  public void promptCompletion() {
+    HttpFuture future = new HttpFuture();
+    new Thread(new Completer(future, 20)).start();
+    long start = System.currentTimeMillis();
+    assertNotNull(future.getResponse(5000));
+    assertTrue("Waiter should wake as soon as the response is set", System.currentTimeMillis() - start < 1000);
+    assertFalse(future.isTimedOut());
+  }
+
+
+
+
   /**
    * Somthing which runs in a different thread and completes the HttpFuture
    */
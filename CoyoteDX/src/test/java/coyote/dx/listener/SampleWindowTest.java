@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import coyote.commons.Decimal;
+
+
+/**
+ * Compare the incremental window statistics against a full scan of the
+ * samples.
+ */
+public class SampleWindowTest {
+  private static final Decimal FACTOR = Decimal.valueOf("0.25");
+
+
+
+
+  @Test
+  public void empty() {
+    SampleWindow window = SampleWindow.create(10, false);
+    assertEquals(0, window.size());
+    assertTrue(window.getTotal().isZero());
+    assertTrue(window.getAverage().isZero());
+    assertTrue(window.getMinimum().isNaN());
+    assertTrue(window.getMaximum().isNaN());
+    assertNull(window.getExponentialAverage(FACTOR));
+    assertNull(window.get(0));
+  }
+
+
+
+
+  @Test
+  public void limitedDecimal() {
+    verify(SampleWindow.create(25, false), 25, 1000, 0.000000001D);
+  }
+
+
+
+
+  @Test
+  public void unlimitedDecimal() {
+    verify(SampleWindow.create(Integer.MAX_VALUE, false), Integer.MAX_VALUE, 300, 0.000000001D);
+  }
+
+
+
+
+  @Test
+  public void limitedDouble() {
+    verify(SampleWindow.create(25, true), 25, 1000, 0.0000001D);
+  }
+
+
+
+
+  @Test
+  public void singleSample() {
+    SampleWindow window = SampleWindow.create(1, false);
+    assertNull(window.add(Decimal.valueOf(1)));
+    assertEquals(Decimal.valueOf(1), window.add(Decimal.valueOf(2)));
+    assertEquals(Decimal.valueOf(2), window.getExponentialAverage(FACTOR));
+    assertEquals(Decimal.valueOf(2), window.getTotal());
+  }
+
+
+
+
+  private void verify(SampleWindow window, int limit, int count, double tolerance) {
+    Random random = new Random(42);
+    List<Decimal> samples = new ArrayList<>();
+    for (int x = 0; x < count; x++) {
+      Decimal value = Decimal.valueOf((random.nextInt(20000) - 10000) / 100D);
+      Decimal evicted = window.add(value);
+      samples.add(value);
+      if (samples.size() > limit) {
+        assertEquals(samples.remove(0).toDouble(), evicted.toDouble(), tolerance);
+      } else {
+        assertNull(evicted);
+      }
+
+      Decimal total = Decimal.ZERO;
+      Decimal min = samples.get(0);
+      Decimal max = samples.get(0);
+      for (Decimal sample : samples) {
+        total = total.plus(sample);
+        min = min.min(sample);
+        max = max.max(sample);
+      }
+      assertEquals(samples.size(), window.size());
+      assertEquals(total.toDouble(), window.getTotal().toDouble(), tolerance);
+      assertEquals(min.toDouble(), window.getMinimum().toDouble(), tolerance);
+      assertEquals(max.toDouble(), window.getMaximum().toDouble(), tolerance);
+      assertEquals(samples.get(0).toDouble(), window.get(0).toDouble(), tolerance);
+
+      // exercise a change of factor now and then
+      Decimal factor = (x % 50 == 49) ? Decimal.valueOf("0.5") : FACTOR;
+      Decimal expected = null;
+      for (int y = samples.size() - 1; y >= 0; y--) {
+        if (expected == null) {
+          expected = samples.get(y);
+        } else {
+          expected = expected.plus(factor.multipliedBy(samples.get(y).minus(expected)));
+        }
+      }
+      assertEquals(expected.toDouble(), window.getExponentialAverage(factor).toDouble(), tolerance);
+    }
+  }
+
+}
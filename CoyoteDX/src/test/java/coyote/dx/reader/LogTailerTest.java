@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ *
+ */
+public class LogTailerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+
+
+  private static void append(File file, String text) throws IOException {
+    try (FileOutputStream out = new FileOutputStream(file, true)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+
+
+
+  @Test
+  public void readToEnd() throws IOException {
+    File file = folder.newFile("app.log");
+    append(file, "one\r\ntwo\nthree");
+    try (LogTailer tailer = new LogTailer(file, 0, null, StandardCharsets.UTF_8, 1024)) {
+      assertEquals("one", tailer.nextLine(false));
+      assertEquals("two", tailer.nextLine(false));
+      assertFalse(tailer.isAtEnd());
+      assertEquals("three", tailer.nextLine(false));
+      assertNull(tailer.nextLine(false));
+      assertTrue(tailer.isAtEnd());
+    }
+  }
+
+
+
+
+  @Test
+  public void followAndResume() throws IOException {
+    File file = folder.newFile("app.log");
+    append(file, "one\ntw");
+    long offset;
+    String identity;
+    try (LogTailer tailer = new LogTailer(file, 0, null, StandardCharsets.UTF_8, 1024)) {
+      assertEquals("one", tailer.nextLine(true));
+      // the partial line is held until it is complete
+      assertNull(tailer.nextLine(true));
+      assertEquals(4, tailer.getOffset());
+      append(file, "o\nthree\n");
+      assertEquals("two", tailer.nextLine(true));
+      offset = tailer.getOffset();
+      identity = tailer.getIdentity();
+    }
+
+    // resume where the last reader stopped
+    try (LogTailer tailer = new LogTailer(file, offset, identity, StandardCharsets.UTF_8, 1024)) {
+      assertEquals("three", tailer.nextLine(true));
+      assertNull(tailer.nextLine(true));
+    }
+  }
+
+
+
+
+  @Test
+  public void longLines() throws IOException {
+    File file = folder.newFile("app.log");
+    StringBuilder b = new StringBuilder();
+    for (int x = 0; x < 5000; x++) {
+      b.append((char)('a' + (x % 26)));
+    }
+    append(file, b + "\nshort\n");
+    try (LogTailer tailer = new LogTailer(file, 0, null, StandardCharsets.UTF_8, 1024)) {
+      assertEquals(b.toString(), tailer.nextLine(true));
+      assertEquals("short", tailer.nextLine(true));
+      assertEquals(5007, tailer.getOffset());
+    }
+  }
+
+
+
+
+  @Test
+  public void truncation() throws IOException {
+    File file = folder.newFile("app.log");
+    append(file, "one\ntwo\n");
+    try (LogTailer tailer = new LogTailer(file, 0, null, StandardCharsets.UTF_8, 1024)) {
+      assertEquals("one", tailer.nextLine(true));
+      assertEquals("two", tailer.nextLine(true));
+      assertNull(tailer.nextLine(true));
+      assertFalse(tailer.checkRotation());
+
+      new FileOutputStream(file).close();
+      append(file, "new\n");
+      assertTrue(tailer.checkRotation());
+      assertEquals("new", tailer.nextLine(true));
+    }
+
+    // an offset past the end of the file starts at the beginning
+    try (LogTailer tailer = new LogTailer(file, 100, null, StandardCharsets.UTF_8, 1024)) {
+      assertEquals("new", tailer.nextLine(true));
+    }
+  }
+
+
+
+
+  @Test
+  public void rotation() throws IOException {
+    File file = folder.newFile("app.log");
+    append(file, "old\n");
+    try (LogTailer tailer = new LogTailer(file, 0, null, StandardCharsets.UTF_8, 1024)) {
+      String identity = tailer.getIdentity();
+      assertEquals("old", tailer.nextLine(true));
+
+      // lines written before the rotation are still read
+      append(file, "last\n");
+      assertTrue(file.renameTo(new File(folder.getRoot(), "app.log.1")));
+      append(file, "first\n");
+      assertFalse(tailer.checkRotation());
+      assertEquals("last", tailer.nextLine(true));
+      assertNull(tailer.nextLine(true));
+
+      if (!identity.equals(LogTailer.getIdentity(file))) {
+        assertTrue(tailer.checkRotation());
+        assertEquals("first", tailer.nextLine(true));
+      }
+    }
+  }
+
+}
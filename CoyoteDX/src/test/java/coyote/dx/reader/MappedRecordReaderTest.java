@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import coyote.dataframe.DataFrame;
+import coyote.dx.FieldDefinition;
+
+
+/**
+ *
+ */
+public class MappedRecordReaderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+
+
+  private File write(String text) throws IOException {
+    File file = folder.newFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+    return file;
+  }
+
+
+
+
+  @Test
+  public void singleFormat() throws IOException {
+    List<FieldDefinition> format = new ArrayList<FieldDefinition>();
+    format.add(new FieldDefinition("Id", 0, 4, "INT", null, true));
+    format.add(new FieldDefinition("Name", 4, 8, "STR", null, true));
+    format.add(new FieldDefinition("Note", 12, 6, "STR", null, false));
+    File file = write("0001Alice   note1 \r\n\n   \n0002 Bob\n");
+
+    try (MappedRecordReader reader = new MappedRecordReader(file, new FixedWidthParser(format, StandardCharsets.ISO_8859_1), 4096, 1)) {
+      DataFrame frame = reader.next();
+      assertEquals(1, frame.getObject("Id"));
+      assertEquals("Alice", frame.getObject("Name"));
+      assertEquals("note1 ", frame.getObject("Note"));
+
+      // fields past the end of a short line are empty
+      frame = reader.next();
+      assertEquals(2, frame.getObject("Id"));
+      assertEquals("Bob", frame.getObject("Name"));
+      assertEquals("", frame.getObject("Note"));
+      assertFalse(reader.hasNext());
+    }
+  }
+
+
+
+
+  @Test
+  public void keyedFormats() throws IOException {
+    Map<String, List<FieldDefinition>> formats = new HashMap<String, List<FieldDefinition>>();
+    List<FieldDefinition> header = new ArrayList<FieldDefinition>();
+    header.add(new FieldDefinition("Order", 2, 6, "STR", null, true));
+    formats.put("PO", header);
+    List<FieldDefinition> item = new ArrayList<FieldDefinition>();
+    item.add(new FieldDefinition("Item", 2, 4, "STR", null, true));
+    item.add(new FieldDefinition("Quantity", 6, 3, "INT", null, true));
+    formats.put("LI", item);
+
+    StringBuilder b = new StringBuilder();
+    for (int x = 0; x < 5000; x++) {
+      b.append(String.format("PO%06d\n", x));
+      b.append(String.format("LI%04d%3d\n", x % 10000, x % 1000));
+      if (x % 1000 == 0) {
+        b.append("XXunknown\n");
+      }
+    }
+    File file = write(b.toString());
+
+    for (int threads = 1; threads <= 3; threads += 2) {
+      try (MappedRecordReader reader = new MappedRecordReader(file, new FixedWidthParser(0, 2, formats, StandardCharsets.ISO_8859_1), 4096, threads)) {
+        for (int x = 0; x < 5000; x++) {
+          assertEquals(String.format("%06d", x), reader.next().getObject("Order"));
+          DataFrame frame = reader.next();
+          assertEquals(String.format("%04d", x), frame.getObject("Item"));
+          assertEquals(x % 1000, frame.getObject("Quantity"));
+          assertNull(reader.getUnknownKey());
+          if (x % 1000 == 0) {
+            assertNull(reader.next());
+            assertEquals("XX", reader.getUnknownKey());
+          }
+        }
+        assertFalse(reader.hasNext());
+      }
+    }
+  }
+
+
+
+
+  @Test
+  public void keyFromEnd() throws IOException {
+    Map<String, List<FieldDefinition>> formats = new HashMap<String, List<FieldDefinition>>();
+    List<FieldDefinition> format = new ArrayList<FieldDefinition>();
+    format.add(new FieldDefinition("Value", 0, 3, "STR", null, true));
+    formats.put("Z", format);
+    File file = write("abcZ\nabcdY\nxyZ");
+
+    try (MappedRecordReader reader = new MappedRecordReader(file, new FixedWidthParser(-1, 1, formats, StandardCharsets.ISO_8859_1), 4096, 1)) {
+      assertEquals("abc", reader.next().getObject("Value"));
+      assertNull(reader.next());
+      assertEquals("Y", reader.getUnknownKey());
+      DataFrame frame = reader.next();
+      assertNotNull(frame);
+      assertEquals("xyZ", frame.getObject("Value"));
+      assertFalse(reader.hasNext());
+    }
+  }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class RecordScannerTest {
+
+  @Test
+  public void splitSelector() {
+    String[] parts = RecordScanner.splitSelector("CVE_Items.*.cve");
+    assertEquals("CVE_Items.*", parts[0]);
+    assertEquals("cve", parts[1]);
+
+    parts = RecordScanner.splitSelector("*");
+    assertEquals("*", parts[0]);
+    assertNull(parts[1]);
+
+    parts = RecordScanner.splitSelector("data.records");
+    assertEquals("data.records", parts[0]);
+    assertNull(parts[1]);
+  }
+
+
+
+
+  @Test
+  public void jsonArray() throws IOException {
+    List<String> records = scanJson("[ {\"a\":1}, {\"a\":\"x]}\\\"\"}, [1,2], 3 ]", null);
+    assertEquals(3, records.size());
+    assertEquals("{\"a\":1}", records.get(0));
+    assertEquals("{\"a\":\"x]}\\\"\"}", records.get(1));
+    assertEquals("[1,2]", records.get(2));
+  }
+
+
+
+
+  @Test
+  public void jsonLines() throws IOException {
+    List<String> records = scanJson("{\"a\":1}\n{\"a\":2}\r\n\n{\"b\":{\"c\":3}}\n", null);
+    assertEquals(3, records.size());
+    assertEquals("{\"b\":{\"c\":3}}", records.get(2));
+  }
+
+
+
+
+  @Test
+  public void jsonSelector() throws IOException {
+    String json = "{\"count\":2,\"meta\":{\"results\":[0]},\"results\":[{\"id\":1},{\"id\":2,\"tags\":[\"a\"]}],\"after\":{}}";
+    List<String> records = scanJson(json, "results.*");
+    assertEquals(2, records.size());
+    assertEquals("{\"id\":1}", records.get(0));
+    assertEquals("{\"id\":2,\"tags\":[\"a\"]}", records.get(1));
+
+    records = scanJson(json, "*.results");
+    assertEquals(1, records.size());
+    assertEquals("[0]", records.get(0));
+  }
+
+
+
+
+  @Test(expected = IOException.class)
+  public void jsonTruncated() throws IOException {
+    scanJson("[{\"a\":1},{\"a\":", null);
+  }
+
+
+
+
+  @Test
+  public void xml() throws IOException {
+    String xml = "<?xml version=\"1.0\"?><feed><title>t</title><entry id=\"1\"><name>a &amp; b</name></entry><!-- c --><entry id=\"2\"/></feed>";
+    List<String> records = scanXml(xml, null);
+    assertEquals(3, records.size());
+    assertEquals("<title>t</title>", records.get(0));
+    assertEquals("<entry id=\"1\"><name>a &amp; b</name></entry>", records.get(1));
+
+    records = scanXml(xml, "feed.entry");
+    assertEquals(2, records.size());
+    assertEquals("<entry id=\"2\"></entry>", records.get(1));
+  }
+
+
+
+
+  private List<String> scanJson(String json, String selector) throws IOException {
+    return scan(new JsonRecordScanner(new StringReader(json), RecordScanner.parsePath(selector)));
+  }
+
+
+
+
+  private List<String> scanXml(String xml, String selector) throws IOException {
+    return scan(new XmlRecordScanner(new StringReader(xml), RecordScanner.parsePath(selector)));
+  }
+
+
+
+
+  private List<String> scan(RecordScanner scanner) throws IOException {
+    List<String> retval = new ArrayList<String>();
+    try {
+      for (String record = scanner.next(); record != null; record = scanner.next()) {
+        retval.add(record);
+      }
+    } finally {
+      scanner.close();
+    }
+    return retval;
+  }
+
+}
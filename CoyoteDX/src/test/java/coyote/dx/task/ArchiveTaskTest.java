@@ -7,15 +7,20 @@
  */
 package coyote.dx.task;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import coyote.commons.FileUtil;
 import coyote.dx.AbstractTest;
@@ -36,6 +41,9 @@ public class ArchiveTaskTest extends AbstractTest {
   private static File testDir = null;
   private static final String DIRECTORY_NAME = "testworkdir";
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
 
 
 
@@ -159,4 +167,50 @@ public class ArchiveTaskTest extends AbstractTest {
     target.delete();
   }
 
+
+
+
+  @Test
+  public void parallelRoundTrip() throws Exception {
+    File source = folder.newFolder("parallel");
+    byte[][] contents = new byte[20][];
+    Random random = new Random(42);
+    for (int x = 0; x < contents.length; x++) {
+      contents[x] = new byte[random.nextInt(200000)];
+      random.nextBytes(contents[x]);
+      File file = new File(source, "dir" + (x % 3) + "/file" + x + ".dat");
+      file.getParentFile().mkdirs();
+      Files.write(file.toPath(), contents[x]);
+    }
+    File target = new File(folder.getRoot(), "parallel.zip");
+
+    Config cfg = new Config();
+    cfg.put(ConfigTag.SOURCE, source.getAbsolutePath());
+    cfg.put(ConfigTag.TARGET, target.getAbsolutePath());
+    cfg.put(ConfigTag.WORKERS, 4);
+    try (Archive task = new Archive()) {
+      task.setConfiguration(cfg);
+      task.open(context);
+      task.execute();
+    }
+    assertTrue(target.exists());
+
+    File output = folder.newFolder("output");
+    cfg = new Config();
+    cfg.put(ConfigTag.SOURCE, target.getAbsolutePath());
+    cfg.put(ConfigTag.DIRECTORY, output.getAbsolutePath());
+    cfg.put(ConfigTag.WORKERS, 4);
+    try (Unzip task = new Unzip()) {
+      task.setConfiguration(cfg);
+      task.open(context);
+      task.execute();
+    }
+
+    for (int x = 0; x < contents.length; x++) {
+      File file = new File(output, "parallel/dir" + (x % 3) + "/file" + x + ".dat");
+      assertTrue(file.getPath(), file.exists());
+      assertArrayEquals(contents[x], Files.readAllBytes(file.toPath()));
+    }
+  }
+
 }
@@ -10,12 +10,19 @@ package coyote.dx.task;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import coyote.commons.FileUtil;
 import coyote.dx.ConfigTag;
@@ -33,6 +40,9 @@ import coyote.loader.log.Log;
 public class CheckSHA256Test {
   private static final TransformContext context = new TransformContext();
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
 
 
 
@@ -77,4 +87,84 @@ public class CheckSHA256Test {
 
   }
 
+
+
+
+  @Test
+  public void manifest() throws ConfigurationException, TaskException, IOException {
+    File directory = folder.newFolder("inbound");
+    File image = new File(FileUtil.getCurrentWorkingDirectory(), "src/test/resources/coyote.jpg");
+    Files.copy(image.toPath(), new File(directory, "coyote.jpg").toPath());
+    new File(directory, "sub").mkdirs();
+    Files.copy(image.toPath(), new File(directory, "sub/coyote2.jpg").toPath());
+    File manifest = new File(folder.getRoot(), "inbound.manifest");
+
+    Config cfg = new Config();
+    cfg.put(ConfigTag.FROMDIR, directory.getAbsolutePath());
+    cfg.put(ConfigTag.RECURSE, true);
+    cfg.put(ConfigTag.MANIFEST, manifest.getAbsolutePath());
+    cfg.put(ConfigTag.ALGORITHMS, "SHA-256,MD5");
+
+    // the first run writes the manifest
+    try (CheckSHA256 task = new CheckSHA256()) {
+      task.setConfiguration(cfg);
+      task.open(context);
+      task.execute();
+    }
+    assertTrue(manifest.exists());
+    String text = FileUtil.fileToString(manifest);
+    assertTrue(text.contains("SHA256 (sub/coyote2.jpg) = 744ceb14ce533326ec88eb28554f36f9d21cd04e362c7658b4ec5fae56f7fce1"));
+    assertTrue(text.contains("MD5 (coyote.jpg) = 60db9367c3bd6fa5222f602698bfce34"));
+
+    // the next run verifies the files against it
+    try (CheckSHA256 task = new CheckSHA256()) {
+      task.setConfiguration(cfg);
+      task.open(context);
+      task.execute();
+    }
+    assertEquals("60db9367c3bd6fa5222f602698bfce34", context.get(new File(directory, "coyote.jpg").getAbsolutePath() + ".md5"));
+
+    try (FileOutputStream out = new FileOutputStream(new File(directory, "sub/coyote2.jpg"), true)) {
+      out.write(0);
+    }
+    try (CheckSHA256 task = new CheckSHA256()) {
+      task.setConfiguration(cfg);
+      task.open(context);
+      task.execute();
+      fail("Modified file should fail verification");
+    } catch (TaskException e) {
+      // expected
+    }
+  }
+
+
+
+
+  @Test
+  public void manifestOutsideDirectory() throws ConfigurationException, IOException {
+    File directory = folder.newFolder("checked");
+    File image = new File(FileUtil.getCurrentWorkingDirectory(), "src/test/resources/coyote.jpg");
+    Files.copy(image.toPath(), new File(directory, "coyote.jpg").toPath());
+    File outside = new File(folder.getRoot(), "outside.jpg");
+    Files.copy(image.toPath(), outside.toPath());
+    File manifest = new File(folder.getRoot(), "checked.manifest");
+    try (FileOutputStream out = new FileOutputStream(manifest)) {
+      out.write(("SHA256 (coyote.jpg) = 744ceb14ce533326ec88eb28554f36f9d21cd04e362c7658b4ec5fae56f7fce1\n" +
+              "SHA256 (../outside.jpg) = 744ceb14ce533326ec88eb28554f36f9d21cd04e362c7658b4ec5fae56f7fce1\n").getBytes("UTF-8"));
+    }
+
+    Config cfg = new Config();
+    cfg.put(ConfigTag.FROMDIR, directory.getAbsolutePath());
+    cfg.put(ConfigTag.MANIFEST, manifest.getAbsolutePath());
+    try (CheckSHA256 task = new CheckSHA256()) {
+      task.setConfiguration(cfg);
+      task.open(context);
+      task.execute();
+      fail("Manifest entries outside of the directory should fail verification");
+    } catch (TaskException e) {
+      // expected
+    }
+    assertNull(context.get(outside.getAbsolutePath() + ".sha256"));
+  }
+
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.task;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ *
+ */
+public class FileHasherTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+
+
+  @Test
+  public void severalAlgorithms() throws IOException {
+    File file = new File("src/test/resources/coyote.jpg");
+    String[] values = FileHasher.hash(file, "MD5", "SHA256", "CRC32", "SHA-256");
+    assertArrayEquals(new String[]{"60db9367c3bd6fa5222f602698bfce34", "744ceb14ce533326ec88eb28554f36f9d21cd04e362c7658b4ec5fae56f7fce1", "329be8b9", "744ceb14ce533326ec88eb28554f36f9d21cd04e362c7658b4ec5fae56f7fce1"}, values);
+  }
+
+
+
+
+  @Test
+  public void mappedFile() throws Exception {
+    // large enough to be memory-mapped
+    byte[] data = new byte[(int)FileHasher.MAP_THRESHOLD * 3 + 12345];
+    new Random(42).nextBytes(data);
+    File file = folder.newFile("large.dat");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(data);
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    Adler32 adler = new Adler32();
+    adler.update(data);
+    MessageDigest md = MessageDigest.getInstance("SHA-1");
+    StringBuilder sha1 = new StringBuilder();
+    for (byte b : md.digest(data)) {
+      sha1.append(String.format("%02x", b));
+    }
+
+    String[] values = FileHasher.hash(file, "SHA1", "Adler32", "CRC32");
+    assertEquals(sha1.toString(), values[0]);
+    assertEquals(Long.toHexString(adler.getValue()), values[1]);
+    assertEquals(Long.toHexString(crc.getValue()), values[2]);
+  }
+
+
+
+
+  @Test
+  public void algorithms() {
+    assertEquals("SHA256", FileHasher.getTag("sha-256"));
+    assertEquals("ADLER32", FileHasher.getTag("Adler32"));
+    assertTrue(FileHasher.isSupported("SHA-512"));
+    assertTrue(FileHasher.isSupported("sha1"));
+    assertFalse(FileHasher.isSupported("CRC64"));
+    assertEquals("SHA3256", FileHasher.getTag("SHA3-256"));
+  }
+
+
+
+
+  @Test
+  public void sha3() throws Exception {
+    // SHA-3 digests are only provided by Java 9 and later
+    assumeTrue(Security.getAlgorithms("MessageDigest").contains("SHA3-256"));
+    assertTrue(FileHasher.isSupported("SHA3-256"));
+    assertTrue(FileHasher.isSupported("sha3512"));
+
+    File file = new File("src/test/resources/coyote.jpg");
+    MessageDigest md = MessageDigest.getInstance("SHA3-256");
+    StringBuilder expected = new StringBuilder();
+    for (byte b : md.digest(Files.readAllBytes(file.toPath()))) {
+      expected.append(String.format("%02x", b));
+    }
+    // the tag written to manifests must resolve to the same algorithm
+    String[] values = FileHasher.hash(file, "SHA3-256", FileHasher.getTag("SHA3-256"));
+    assertEquals(expected.toString(), values[0]);
+    assertEquals(expected.toString(), values[1]);
+  }
+
+}
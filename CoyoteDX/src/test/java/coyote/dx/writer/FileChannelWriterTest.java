@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.writer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class FileChannelWriterTest {
+
+  @Test
+  public void encoding() throws IOException {
+    // the first surrogate pair spans the boundary of the character buffer
+    final StringBuilder b = new StringBuilder();
+    for (int x = 1; x < FileChannelWriter.MIN_BUFFER_SIZE; x++) {
+      b.append('x');
+    }
+    b.append("\ud83d\ude00\n");
+    for (int x = 0; x < 100; x++) {
+      b.append("row ").append(x).append(" café 😀 日本\n");
+    }
+    final String data = b.toString();
+
+    assertEquals(data, writeAndRead(data, StandardCharsets.UTF_8, 0));
+    assertEquals(data, writeAndRead(data, StandardCharsets.UTF_16LE, 3));
+  }
+
+
+
+
+  @Test
+  public void smallBuffer() throws IOException {
+    final File file = File.createTempFile("channel", ".txt");
+    try {
+      final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      try (FileChannelWriter writer = new FileChannelWriter(channel, StandardCharsets.UTF_8, 1)) {
+        // a lone high surrogate must not fill the buffer
+        writer.write("\ud83d");
+        writer.write('\ude00');
+        writer.write('!');
+      }
+      assertEquals("\ud83d\ude00!", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    } finally {
+      file.delete();
+    }
+  }
+
+
+
+
+  private String writeAndRead(final String data, final Charset charset, final int bufferSize) throws IOException {
+    final File file = File.createTempFile("channel", ".txt");
+    try {
+      final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      try (FileChannelWriter writer = new FileChannelWriter(channel, charset, bufferSize)) {
+        int pos = 0;
+        while (pos < data.length()) {
+          final int end = Math.min(pos + 5, data.length());
+          writer.write(data, pos, end - pos);
+          pos = end;
+        }
+        writer.flush();
+      }
+      return new String(Files.readAllBytes(file.toPath()), charset);
+    } finally {
+      file.delete();
+    }
+  }
+
+}
@@ -55,6 +55,7 @@ public class RemoteSite extends DataFrame {
   public static final String PROXY_USER_FIELD = "proxyUser";
   public static final String USER_FIELD = "username";
   public static final String PROXY_PASS_FIELD = "proxyPassword";
+  public static final String SESSIONS_FIELD = "sessions";
 
   private volatile boolean opened = false;
 
@@ -246,6 +247,30 @@ public class RemoteSite extends DataFrame {
 
 
 
+  /**
+   * @return the number of sessions used to transfer sets of files in parallel, at least 1
+   */
+  public int getSessions() {
+    try {
+      return contains(SESSIONS_FIELD) ? Math.max(1, getAsInt(SESSIONS_FIELD)) : 1;
+    } catch (DataFrameException e) {
+      return 1;
+    }
+  }
+
+
+
+
+  /**
+   * @param value the number of sessions used to transfer sets of files in parallel
+   */
+  public void setSessions(int value) {
+    super.put(SESSIONS_FIELD, value);
+  }
+
+
+
+
   public String getProxyPassword() {
     return getAsString(PROXY_PASS_FIELD);
   }
@@ -530,12 +555,59 @@ public class RemoteSite extends DataFrame {
    * @return true if the directory is transferred, false if it did not.
    */
   public boolean retrieveDirectory(String remote, String local, String pattern, boolean recurse, boolean preserve, boolean delete) {
+    return retrieveDirectory(remote, local, pattern, recurse, preserve, delete, null);
+  }
+
+
+
+
+  /**
+   * This retrieves a directory from this remote site to a local directory 
+   * using as many sessions as this site is configured to use.
+   * 
+   * @param remote the path to the remote directory to retrieve
+   * @param local path to the local directory
+   * @param pattern RegEx to be used in selecting files (null results in everything)
+   * @param recurse flag indicating sub directories are to be included
+   * @param preserve flag indicating the hierarchy of the recursed directories should be preserved
+   * @param delete flag indicating sucessfully retried files should be deleted from the server
+   * @param manifest record of previously retrieved files used to skip unchanged files, may be null
+   * 
+   * @return true if the directory is transferred, false if it did not.
+   */
+  public boolean retrieveDirectory(String remote, String local, String pattern, boolean recurse, boolean preserve, boolean delete, TransferManifest manifest) {
+    if (!opened)
+      open();
+    if (FTP.equalsIgnoreCase(getProtocol())) {
+      return FTPUtil.retrieveDirectory(this, remote, local, pattern, recurse, preserve, delete, manifest);
+    } else if (SFTP.equalsIgnoreCase(getProtocol())) {
+      return SFTPUtil.retrieveDirectory(this, remote, local, pattern, recurse, preserve, delete, manifest);
+    }
+    return false;
+  }
+
+
+
+
+  /**
+   * Publish the files in a local directory to a directory on this site using 
+   * as many sessions as this site is configured to use.
+   * 
+   * @param local path to the local directory
+   * @param remote the path to the remote directory
+   * @param pattern RegEx matching the absolute path of files to publish (null results in everything)
+   * @param recurse flag indicating sub directories are to be included
+   * @param manifest record of previously published files used to skip unchanged files, may be null
+   * 
+   * @return true if all the files were published, false otherwise.
+   */
+  public boolean publishDirectory(String local, String remote, String pattern, boolean recurse, TransferManifest manifest) {
     if (!opened)
       open();
     if (FTP.equalsIgnoreCase(getProtocol())) {
-      return FTPUtil.retrieveDirectory(this, remote, local, pattern, recurse, preserve, delete);
+      return FTPUtil.publishDirectory(this, local, remote, pattern, recurse, manifest);
     } else if (SFTP.equalsIgnoreCase(getProtocol())) {
-      return SFTPUtil.retrieveDirectory(this, remote, local, pattern, recurse, preserve, delete);
+      return SFTPUtil.publishDirectory(this, local, remote, pattern, recurse, manifest);
     }
     return false;
   }
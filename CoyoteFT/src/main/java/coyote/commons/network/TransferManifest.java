@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons.network;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+
+/**
+ * A local record of the files transferred to or from a remote site.
+ *
+ * <p>Each file is recorded with its size and modification time when its
+ * transfer completes. Subsequent transfers consult the manifest to skip files
+ * which have not changed since they were last transferred, so a batch
+ * interrupted by a dropped connection only transfers what remains when it is
+ * run again.</p>
+ *
+ * <p>The manifest is a properties file keyed by the path of the file (remote
+ * path for retrievals, local path for publishing) with a value of
+ * "size,mtime". It is safe to use from several transfer threads.</p>
+ *
+ * <p>The manifest also records the size and modification time of the source
+ * of each transfer which failed part way, so the partial file it left is only
+ * resumed if the source has not changed since. These entries are keyed by
+ * the path with a "partial:" prefix.</p>
+ */
+public class TransferManifest {
+
+  private static final String PARTIAL = "partial:";
+
+  private final File file;
+
+  private final Properties entries = new Properties();
+
+  private boolean changed = false;
+
+
+
+
+  /**
+   * Create a manifest backed by the given file, loading it if it exists.
+   *
+   * @param file the file in which the manifest is stored
+   *
+   * @throws IOException if the existing manifest could not be read
+   */
+  public TransferManifest( final File file ) throws IOException {
+    this.file = file;
+    if ( file.exists() ) {
+      try (InputStream in = new FileInputStream( file )) {
+        entries.load( in );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @param path the path of the file
+   * @param size the current size of the file
+   * @param mtime the current modification time of the file in seconds
+   *
+   * @return true if the file was recorded with the same size and modification time
+   */
+  public synchronized boolean isUnchanged( final String path, final long size, final long mtime ) {
+    return ( size + "," + mtime ).equals( entries.getProperty( path ) );
+  }
+
+
+
+
+  /**
+   * Record the completed transfer of a file.
+   *
+   * @param path the path of the file
+   * @param size the size of the file
+   * @param mtime the modification time of the file in seconds
+   */
+  public synchronized void update( final String path, final long size, final long mtime ) {
+    entries.setProperty( path, size + "," + mtime );
+    entries.remove( PARTIAL + path );
+    changed = true;
+  }
+
+
+
+
+  /**
+   * @param path the path of the source file
+   * @param size the current size of the source file
+   * @param mtime the current modification time of the source file in seconds
+   *
+   * @return true if a partial transfer was recorded from a source of the same size and modification time
+   */
+  public synchronized boolean isPartialOf( final String path, final long size, final long mtime ) {
+    return ( size + "," + mtime ).equals( entries.getProperty( PARTIAL + path ) );
+  }
+
+
+
+
+  /**
+   * Record the source of a transfer which left a partial file behind.
+   *
+   * @param path the path of the source file
+   * @param size the size of the source file
+   * @param mtime the modification time of the source file in seconds
+   */
+  public synchronized void updatePartial( final String path, final long size, final long mtime ) {
+    entries.setProperty( PARTIAL + path, size + "," + mtime );
+    changed = true;
+  }
+
+
+
+
+  /**
+   * Remove a file from the manifest.
+   *
+   * @param path the path of the file
+   */
+  public synchronized void remove( final String path ) {
+    if ( entries.remove( path ) != null | entries.remove( PARTIAL + path ) != null ) {
+      changed = true;
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of files in the manifest
+   */
+  public synchronized int size() {
+    int retval = 0;
+    for ( final Object key : entries.keySet() ) {
+      if ( !key.toString().startsWith( PARTIAL ) ) {
+        retval++;
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Write the manifest to its file if it has changed.
+   *
+   * @throws IOException if the manifest could not be written
+   */
+  public synchronized void save() throws IOException {
+    if ( changed ) {
+      final File parent = file.getAbsoluteFile().getParentFile();
+      if ( parent != null ) {
+        parent.mkdirs();
+      }
+      try (OutputStream out = new FileOutputStream( file )) {
+        entries.store( out, "Transfer manifest" );
+      }
+      changed = false;
+    }
+  }
+
+
+
+
+  /**
+   * @return the file in which the manifest is stored
+   */
+  public File getFile() {
+    return file;
+  }
+
+}
@@ -1,17 +1,28 @@
 package coyote.commons.network.ftp;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
 
 import coyote.commons.network.FileAttributes;
 import coyote.commons.network.FileTransferException;
 import coyote.commons.network.RemoteFile;
 import coyote.commons.network.RemoteSite;
+import coyote.commons.network.TransferManifest;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
@@ -19,8 +30,11 @@ import org.apache.commons.net.ftp.FTPHTTPClient;
 import org.apache.commons.net.ftp.FTPReply;
 
 import coyote.commons.Assert;
+import coyote.commons.FileUtil;
 import coyote.commons.StringUtil;
+import coyote.dx.CFT;
 import coyote.loader.log.Log;
+import coyote.loader.log.LogMsg;
 
 
 public class FTPUtil {
@@ -28,6 +42,9 @@ public class FTPUtil {
   // Cached connections
   private static final Map<String, FTPClient> clientCache = new HashMap<String, FTPClient>();
 
+  // Idle clients for parallel transfers
+  private static final Map<String, Deque<FTPClient>> clientPool = new HashMap<String, Deque<FTPClient>>();
+
   public static final int DEFAULT_PORT = 21;
 
 
@@ -178,7 +195,91 @@ public class FTPUtil {
 
 
 
+  /**
+   * Take an idle client logged in to the given site from the pool or open a 
+   * new one.
+   * 
+   * @param site the remote site to which the client connects
+   * 
+   * @return a connected client for the exclusive use of the caller
+   * 
+   * @throws FileTransferException if a connection could not be made
+   */
+  static FTPClient acquireClient( final RemoteSite site ) throws FileTransferException {
+    final String key = ( "user:" + site.getUsername() + "_host:" + site.getHost() + "_port:" + site.getPort() );
+    synchronized( clientPool ) {
+      final Deque<FTPClient> idle = clientPool.get( key );
+      while ( idle != null && !idle.isEmpty() ) {
+        final FTPClient ftp = idle.poll();
+        if ( ftp.isConnected() ) {
+          return ftp;
+        }
+        disconnect( ftp );
+      }
+    }
+    final FTPClient retval = openNewClient( site.getHost(), site.getPort(), site.getUsername(), site.getPassword() );
+    if ( retval == null || !retval.isConnected() ) {
+      throw new FileTransferException( "Could not connect to " + site.getHost() );
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Return a client to the pool for the given site, disconnecting and 
+   * dropping it if its connection has been lost.
+   * 
+   * @param site the remote site to which the client connects
+   * @param ftp the client to return
+   */
+  static void releaseClient( final RemoteSite site, final FTPClient ftp ) {
+    if ( !ftp.isConnected() ) {
+      disconnect( ftp );
+    } else {
+      final String key = ( "user:" + site.getUsername() + "_host:" + site.getHost() + "_port:" + site.getPort() );
+      synchronized( clientPool ) {
+        Deque<FTPClient> idle = clientPool.get( key );
+        if ( idle == null ) {
+          idle = new ArrayDeque<FTPClient>();
+          clientPool.put( key, idle );
+        }
+        idle.add( ftp );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Close the connection of a client, releasing its socket even if the 
+   * connection has already been lost.
+   */
+  private static void disconnect( final FTPClient ftp ) {
+    try {
+      ftp.disconnect();
+    } catch ( final IOException ignore ) {}
+  }
+
+
+
+
   public static void close( RemoteSite cfg ) {
+    final Deque<FTPClient> idle;
+    synchronized( clientPool ) {
+      idle = clientPool.remove( "user:" + cfg.getUsername() + "_host:" + cfg.getHost() + "_port:" + cfg.getPort() );
+    }
+    if ( idle != null ) {
+      for ( final FTPClient ftp : idle ) {
+        try {
+          ftp.logout();
+          ftp.disconnect();
+        } catch ( IOException ignore ) {}
+      }
+    }
+
     FTPClient client;
     try {
       client = FTPUtil.getClient( cfg.getUsername(), cfg.getPassword(), cfg.getPort(), cfg.getHost() );
@@ -245,9 +346,313 @@ public class FTPUtil {
 
 
 
+  /**
+   * Publish the files in a local directory to a directory on the remote site.
+   * 
+   * <p>Files are sent over as many clients as the site has sessions 
+   * configured. Each file is written to a partial file on the remote site, 
+   * appended to from its current length if the connection is lost, and 
+   * renamed once complete. If a manifest is given, files which have not 
+   * changed since they were last published are skipped.</p>
+   * 
+   * @param site the remote site to which the files are sent
+   * @param localDir path to the local directory
+   * @param remoteDir the path to the remote directory to create
+   * @param pattern RegEx matching the absolute path of files to publish (null results in everything)
+   * @param recurse flag indicating subdirectories are to be included, preserving their hierarchy
+   * @param manifest record of previously published files, may be null
+   * 
+   * @return true if all the files were published, false otherwise
+   */
+  public static boolean publishDirectory( final RemoteSite site, final String localDir, final String remoteDir, final String pattern, final boolean recurse, final TransferManifest manifest ) {
+    Assert.notNull( site );
+    Assert.notNull( localDir );
+    Assert.notNull( remoteDir );
+
+    final File directory = new File( localDir );
+    final String base = remoteDir.replace( '\\', '/' );
+    final List<File> files = new ArrayList<File>();
+    ParallelTransfer.listLocalFiles( directory, StringUtil.isNotBlank( pattern ) ? Pattern.compile( pattern ) : null, recurse, files );
+
+    // create the remote directories before the files are sent in parallel
+    final TreeSet<String> directories = new TreeSet<String>();
+    final List<Callable<Boolean>> transfers = new ArrayList<Callable<Boolean>>();
+    for ( final File file : files ) {
+      final String relative = file.getAbsolutePath().substring( directory.getAbsolutePath().length() + 1 ).replace( File.separatorChar, '/' );
+      final String remote = base + "/" + relative;
+      for ( int index = relative.indexOf( '/' ); index > 0; index = relative.indexOf( '/', index + 1 ) ) {
+        directories.add( base + "/" + relative.substring( 0, index ) );
+      }
+      transfers.add( new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return ParallelTransfer.publish( file, remote, manifest, new ParallelTransfer.Sender() {
+            @Override
+            public void send( final File local, final String target, final boolean resume ) throws FileTransferException {
+              transferToRemote( site, local, target, resume );
+            }
+          } );
+        }
+      } );
+    }
+
+    boolean retval = false;
+    try {
+      // the client is returned to the pool for the transfers to use
+      final FTPClient ftp = acquireClient( site );
+      try {
+        ftp.makeDirectory( base );
+        for ( final String remote : directories ) {
+          if ( !ftp.makeDirectory( remote ) ) {
+            Log.debug( "Could not create directory: " + remote + " - " + ftp.getReplyString() + " (maybe it already exists)" );
+          }
+        }
+      } catch ( final IOException e ) {
+        disconnect( ftp );
+        throw new FileTransferException( "Error creating remote directories in " + base + " - " + e.getMessage(), e );
+      }
+      finally {
+        releaseClient( site, ftp );
+      }
+      retval = ParallelTransfer.run( transfers, site.getSessions() );
+    } catch ( final FileTransferException e ) {
+      Log.error( e.getMessage() );
+    }
+    finally {
+      if ( manifest != null ) {
+        try {
+          manifest.save();
+        } catch ( IOException e ) {
+          Log.error( LogMsg.createMsg( CFT.MSG, "Transfer.could_not_save_manifest", manifest.getFile(), e.getMessage() ) );
+        }
+      }
+    }
+    return retval;
+  }
+
+
+
+
   public static boolean retrieveDirectory( RemoteSite remoteSite, String remote, String local, String pattern, boolean recurse, boolean preserve, boolean delete ) {
-    // TODO Auto-generated method stub
-    return false;
+    return retrieveDirectory( remoteSite, remote, local, pattern, recurse, preserve, delete, null );
+  }
+
+
+
+
+  /**
+   * This retrieves a directory from the given remote site to a local directory.
+   * 
+   * <p>Files are retrieved over as many clients as the site has sessions 
+   * configured. Each file is first written to a partial file which is resumed 
+   * from its current length (using REST) if the connection is lost. If a 
+   * manifest is given, files which have not changed since they were last 
+   * retrieved are skipped.</p>
+   * 
+   * @param site the remote sire to query
+   * @param remoteDir the path to the remote directory to retrieve
+   * @param localDir path to the local directory
+   * @param pattern RegEx to be used in selecting files (null results in everything)
+   * @param recurse flag indicating subdirectories are to be included
+   * @param preserve flag indicating the hierarchy of the recursed directories should be preserved
+   * @param delete flag indicating successfully retrieved files should be deleted from the server
+   * @param manifest record of previously retrieved files, may be null
+   * 
+   * @return true if the directory is transferred, false if it did not.
+   */
+  public static boolean retrieveDirectory( final RemoteSite site, final String remoteDir, final String localDir, final String pattern, final boolean recurse, final boolean preserve, final boolean delete, final TransferManifest manifest ) {
+    Assert.notNull( site );
+    Assert.notNull( remoteDir );
+    Assert.notNull( localDir );
+
+    final File directory = new File( localDir );
+    if ( directory.exists() && !directory.isDirectory() ) {
+      Log.error( LogMsg.createMsg( CFT.MSG, "SFTP.file_reference_is_not_directory", directory.getAbsolutePath() ) );
+      return false;
+    }
+
+    final List<String> remoteFilesCopied = Collections.synchronizedList( new ArrayList<String>() );
+    boolean retval = false;
+
+    try {
+      // the client is returned to the pool for the transfers to use
+      final Map<String, FTPFile> files = new LinkedHashMap<String, FTPFile>();
+      FTPClient ftp = acquireClient( site );
+      try {
+        listFiles( ftp, remoteDir, StringUtil.isNotBlank( pattern ) ? Pattern.compile( pattern ) : null, recurse, files );
+      }
+      finally {
+        releaseClient( site, ftp );
+      }
+
+      final List<Callable<Boolean>> transfers = new ArrayList<Callable<Boolean>>();
+      for ( final Map.Entry<String, FTPFile> entry : files.entrySet() ) {
+        final String path = entry.getKey();
+        final FTPFile file = entry.getValue();
+        final String localname;
+        if ( preserve && path.startsWith( remoteDir + "/" ) ) {
+          localname = directory.getAbsolutePath() + FileUtil.FILE_SEPARATOR + path.substring( remoteDir.length() + 1 );
+        } else {
+          localname = directory.getAbsolutePath() + FileUtil.FILE_SEPARATOR + file.getName();
+        }
+        final File localFile = new File( FileUtil.normalizePath( localname ) );
+        final long mtime = ( file.getTimestamp() != null ) ? file.getTimestamp().getTimeInMillis() / 1000 : 0;
+
+        transfers.add( new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            final boolean retrieved = ParallelTransfer.retrieve( path, file.getSize(), mtime, localFile, manifest, new ParallelTransfer.Fetcher() {
+              @Override
+              public void fetch( final String remote, final File part ) throws FileTransferException {
+                transferToLocal( site, remote, part );
+              }
+            } );
+            if ( retrieved ) {
+              remoteFilesCopied.add( path );
+            }
+            return retrieved;
+          }
+        } );
+      }
+
+      retval = ParallelTransfer.run( transfers, site.getSessions() );
+
+      if ( delete && !remoteFilesCopied.isEmpty() ) {
+        ftp = acquireClient( site );
+        try {
+          for ( final String path : remoteFilesCopied ) {
+            if ( ftp.deleteFile( path ) ) {
+              if ( manifest != null ) {
+                manifest.remove( path );
+              }
+            } else {
+              Log.error( LogMsg.createMsg( CFT.MSG, "SFTP.could_not_delete_file", path, ftp.getReplyString() ) );
+            }
+          }
+        }
+        finally {
+          releaseClient( site, ftp );
+        }
+      }
+    } catch ( final FileTransferException | IOException e ) {
+      Log.error( "Could not retrieve directory " + remoteDir + " - " + e.getMessage() );
+      retval = false;
+    }
+    finally {
+      if ( manifest != null ) {
+        try {
+          manifest.save();
+        } catch ( IOException e ) {
+          Log.error( LogMsg.createMsg( CFT.MSG, "Transfer.could_not_save_manifest", manifest.getFile(), e.getMessage() ) );
+        }
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Accumulate the files in the remote directory whose absolute path matches 
+   * the regex.
+   */
+  private static void listFiles( final FTPClient ftp, final String directory, final Pattern regex, final boolean recurse, final Map<String, FTPFile> files ) throws IOException {
+    for ( final FTPFile file : ftp.listFiles( directory ) ) {
+      if ( ".".equals( file.getName() ) || "..".equals( file.getName() ) ) {
+        continue;
+      }
+      final String path = directory + "/" + file.getName();
+      if ( file.isDirectory() ) {
+        if ( recurse ) {
+          listFiles( ftp, path, regex, recurse, files );
+        }
+      } else if ( regex == null || regex.matcher( path ).matches() ) {
+        files.put( path, file );
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Transfer a remote file to a local file over a pooled client, restarting 
+   * the transfer at the current length of the local file.
+   */
+  private static void transferToLocal( final RemoteSite site, final String remote, final File part ) throws FileTransferException {
+    final FTPClient ftp = acquireClient( site );
+    try (OutputStream output = new FileOutputStream( part, true )) {
+      ftp.setRestartOffset( part.length() );
+      if ( !ftp.retrieveFile( remote, output ) ) {
+        throw new FileTransferException( "Could not retrieve " + remote + " - " + ftp.getReplyString() );
+      }
+    } catch ( final IOException e ) {
+      disconnect( ftp );
+      throw new FileTransferException( "Error retrieving " + remote + " - " + e.getMessage(), e );
+    }
+    finally {
+      ftp.setRestartOffset( 0 );
+      releaseClient( site, ftp );
+    }
+  }
+
+
+
+
+  /**
+   * Transfer a local file to the remote site over a pooled client.
+   * 
+   * <p>The data is written to a partial file, which replaces the remote file 
+   * when it is complete. Any partial file already on the remote site is 
+   * appended to from its current length only if requested, otherwise it is 
+   * overwritten.</p>
+   *
+   * @param site the site to which the file is sent
+   * @param local the local file
+   * @param remote the path of the remote file
+   * @param resume true if the partial file was written from this local file
+   * 
+   * @throws FileTransferException if the transfer did not complete
+   */
+  private static void transferToRemote( final RemoteSite site, final File local, final String remote, final boolean resume ) throws FileTransferException {
+    final String part = remote + ParallelTransfer.PART_SUFFIX;
+    final FTPClient ftp = acquireClient( site );
+    try {
+      long offset = 0;
+      if ( resume ) {
+        final FTPFile[] listing = ftp.listFiles( part );
+        if ( listing.length == 1 && listing[0].isFile() && listing[0].getSize() <= local.length() ) {
+          offset = listing[0].getSize();
+        }
+      }
+
+      try (InputStream input = new FileInputStream( local )) {
+        for ( long skipped = 0; skipped < offset; ) {
+          final long count = input.skip( offset - skipped );
+          if ( count <= 0 ) {
+            throw new IOException( "Could not skip to offset " + offset + " of " + local );
+          }
+          skipped += count;
+        }
+        final boolean sent = ( offset > 0 ) ? ftp.appendFile( part, input ) : ftp.storeFile( part, input );
+        if ( !sent ) {
+          throw new FileTransferException( "Could not send " + local + " to " + part + " - " + ftp.getReplyString() );
+        }
+      }
+
+      // most likely did not exist if it could not be deleted
+      ftp.deleteFile( remote );
+      if ( !ftp.rename( part, remote ) ) {
+        throw new FileTransferException( "Could not rename " + part + " to " + remote + " - " + ftp.getReplyString() );
+      }
+    } catch ( final IOException e ) {
+      disconnect( ftp );
+      throw new FileTransferException( "Error sending " + local + " - " + e.getMessage(), e );
+    }
+    finally {
+      releaseClient( site, ftp );
+    }
   }
 
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2021 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.commons.network.ftp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import coyote.commons.OrderedWorkQueue;
+import coyote.commons.network.FileTransferException;
+import coyote.commons.network.TransferManifest;
+import coyote.dx.CFT;
+import coyote.loader.log.Log;
+import coyote.loader.log.LogMsg;
+
+
+/**
+ * The protocol-independent parts of transferring a set of files over several
+ * sessions.
+ *
+ * <p>Files are retrieved into a partial file next to the target which is
+ * renamed when the transfer completes, so a transfer interrupted by a dropped
+ * connection is resumed from the offset reached instead of starting over.
+ * Each file is attempted several times, each attempt on a fresh session if
+ * the last one was lost, before it is considered failed. Completed transfers
+ * are recorded in an optional manifest so unchanged files are skipped the next
+ * time the set is transferred.</p>
+ *
+ * <p>A partial file left by an earlier run is only resumed if the manifest
+ * shows it was copied from a source of the same size and modification time,
+ * otherwise it is discarded and the transfer starts over.</p>
+ */
+final class ParallelTransfer {
+
+  /** The number of times a file transfer is attempted */
+  static final int ATTEMPTS = 3;
+
+  /** The suffix of files which are still being transferred */
+  static final String PART_SUFFIX = ".part";
+
+
+
+
+  /**
+   * Copies a remote file into a local partial file, appending to any data
+   * the partial file already contains.
+   */
+  interface Fetcher {
+    void fetch( String remote, File part ) throws FileTransferException;
+  }
+
+
+
+
+  /**
+   * Copies a local file to the remote site, resuming any partial copy
+   * already there if asked to, or replacing it otherwise.
+   */
+  interface Sender {
+    void send( File local, String remote, boolean resume ) throws FileTransferException;
+  }
+
+
+
+
+  private ParallelTransfer() {}
+
+
+
+
+  /**
+   * Run the transfers on the given number of threads, each of which uses its
+   * own session with the remote site.
+   *
+   * @param transfers the transfers to run, each returning true if it succeeded
+   * @param sessions the number of transfers to run at once
+   *
+   * @return true if all the transfers succeeded, false if any failed
+   */
+  static boolean run( final List<Callable<Boolean>> transfers, final int sessions ) {
+    boolean retval = true;
+
+    // all the transfers are queued so a slow one does not leave sessions idle
+    final OrderedWorkQueue<Boolean> queue = new OrderedWorkQueue<Boolean>( "Transfer", Math.min( sessions, transfers.size() ), transfers.size() );
+    try {
+      for ( final Callable<Boolean> transfer : transfers ) {
+        queue.submit( transfer );
+      }
+      while ( !queue.isEmpty() ) {
+        try {
+          retval &= queue.next();
+        } catch ( final IOException e ) {
+          Log.error( ( e.getCause() != null ) ? e.getCause().getMessage() : e.getMessage() );
+          retval = false;
+        }
+      }
+    }
+    finally {
+      queue.close();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Retrieve a remote file to a local file, resuming a previous partial
+   * transfer and skipping files the manifest shows to be unchanged.
+   *
+   * @param remote the path of the remote file
+   * @param size the size of the remote file
+   * @param mtime the modification time of the remote file in seconds
+   * @param local the local file to create
+   * @param manifest the manifest of completed transfers, may be null
+   * @param fetcher the protocol-specific copy of the data
+   *
+   * @return true if the local file is current, false if it could not be retrieved
+   */
+  static boolean retrieve( final String remote, final long size, final long mtime, final File local, final TransferManifest manifest, final Fetcher fetcher ) {
+    if ( manifest != null && local.exists() && local.length() == size && manifest.isUnchanged( remote, size, mtime ) ) {
+      Log.debug( LogMsg.createMsg( CFT.MSG, "Transfer.skipped_unchanged", remote ) );
+      return true;
+    }
+
+    local.getAbsoluteFile().getParentFile().mkdirs();
+    final File part = new File( local.getPath() + PART_SUFFIX );
+    if ( part.exists() && ( manifest == null || !manifest.isPartialOf( remote, size, mtime ) || part.length() > size ) ) {
+      // the partial file is not known to be from this version of the remote file
+      Log.debug( LogMsg.createMsg( CFT.MSG, "Transfer.discarded_partial", part.getAbsolutePath() ) );
+      part.delete();
+    }
+    final long offset = part.length();
+    final long start = System.currentTimeMillis();
+
+    for ( int attempt = 1; part.length() < size || !part.exists(); attempt++ ) {
+      try {
+        fetcher.fetch( remote, part );
+        break;
+      } catch ( final FileTransferException e ) {
+        if ( attempt >= ATTEMPTS ) {
+          Log.error( LogMsg.createMsg( CFT.MSG, "Transfer.failed", remote, attempt, e.getMessage() ) );
+          if ( manifest != null && part.exists() ) {
+            manifest.updatePartial( remote, size, mtime );
+          }
+          return false;
+        }
+        Log.warn( LogMsg.createMsg( CFT.MSG, "Transfer.retrying", remote, part.length(), e.getMessage() ) );
+      }
+    }
+
+    if ( ( local.exists() && !local.delete() ) || !part.renameTo( local ) ) {
+      Log.error( LogMsg.createMsg( CFT.MSG, "Transfer.could_not_rename", part.getAbsolutePath(), local.getAbsolutePath() ) );
+      return false;
+    }
+    if ( mtime > 0 ) {
+      local.setLastModified( mtime * 1000 );
+    }
+    if ( manifest != null ) {
+      manifest.update( remote, size, mtime );
+    }
+    logThroughput( remote, local.getAbsolutePath(), local.length() - offset, start );
+    return true;
+  }
+
+
+
+
+  /**
+   * Send a local file to the remote site, skipping files the manifest shows
+   * to be unchanged.
+   *
+   * <p>A partial remote file is only resumed if the manifest shows it was
+   * sent from this version of the local file, or by an earlier attempt of
+   * this call.</p>
+   *
+   * @param local the local file to send
+   * @param remote the path of the remote file to create
+   * @param manifest the manifest of completed transfers, may be null
+   * @param sender the protocol-specific copy of the data
+   *
+   * @return true if the remote file is current, false if it could not be sent
+   */
+  static boolean publish( final File local, final String remote, final TransferManifest manifest, final Sender sender ) {
+    final String path = local.getAbsolutePath();
+    final long size = local.length();
+    final long mtime = local.lastModified() / 1000;
+    if ( manifest != null && manifest.isUnchanged( path, size, mtime ) ) {
+      Log.debug( LogMsg.createMsg( CFT.MSG, "Transfer.skipped_unchanged", path ) );
+      return true;
+    }
+
+    final long start = System.currentTimeMillis();
+    boolean resume = manifest != null && manifest.isPartialOf( path, size, mtime );
+    for ( int attempt = 1;; attempt++ ) {
+      try {
+        sender.send( local, remote, resume );
+        break;
+      } catch ( final FileTransferException e ) {
+        if ( attempt >= ATTEMPTS ) {
+          Log.error( LogMsg.createMsg( CFT.MSG, "Transfer.failed", path, attempt, e.getMessage() ) );
+          if ( manifest != null ) {
+            manifest.updatePartial( path, size, mtime );
+          }
+          return false;
+        }
+        resume = true;
+        Log.warn( LogMsg.createMsg( CFT.MSG, "Transfer.retrying", path, 0, e.getMessage() ) );
+      }
+    }
+
+    if ( manifest != null ) {
+      manifest.update( path, size, mtime );
+    }
+    logThroughput( path, remote, size, start );
+    return true;
+  }
+
+
+
+
+  /**
+   * Accumulate the local files in the given directory whose absolute path
+   * matches the regex.
+   *
+   * @param directory the directory to list
+   * @param regex the pattern files must match, null for all files
+   * @param recurse flag indicating subdirectories are to be included
+   * @param files the list to which the files are added
+   */
+  static void listLocalFiles( final File directory, final Pattern regex, final boolean recurse, final List<File> files ) {
+    final File[] children = directory.listFiles();
+    if ( children != null ) {
+      for ( final File child : children ) {
+        if ( child.isDirectory() ) {
+          if ( recurse ) {
+            listLocalFiles( child, regex, recurse, files );
+          }
+        } else if ( regex == null || regex.matcher( child.getAbsolutePath() ).matches() ) {
+          files.add( child );
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Report the rate at which a file was transferred.
+   */
+  private static void logThroughput( final String source, final String target, final long bytes, final long start ) {
+    final long elapsed = Math.max( 1, System.currentTimeMillis() - start );
+    Log.info( LogMsg.createMsg( CFT.MSG, "Transfer.throughput", source, target, bytes, elapsed, String.format( "%.1f", ( bytes / 1024.0 ) / ( elapsed / 1000.0 ) ) ) );
+  }
+
+}
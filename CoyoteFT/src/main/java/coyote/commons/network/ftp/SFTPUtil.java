@@ -7,11 +7,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import com.jcraft.jsch.ChannelSftp;
@@ -57,6 +62,9 @@ public class SFTPUtil {
   // Cached connections
   private static final Map<String, ChannelSftp> connectionCache = new HashMap<String, ChannelSftp>();
 
+  // Idle connections for parallel transfers, each with its own session
+  private static final Map<String, Deque<ChannelSftp>> channelPool = new HashMap<String, Deque<ChannelSftp>>();
+
 
 
 
@@ -128,6 +136,106 @@ public class SFTPUtil {
 
 
 
+  /**
+   * Take an idle connection to the given site from the pool or open a new one.
+   * 
+   * <p>Pooled connections each have their own SSH session, so several 
+   * threads can transfer files to the same site at the same time. The 
+   * connection should be returned with {@link #releaseChannel(RemoteSite, 
+   * ChannelSftp)} when the transfer is complete.</p>
+   * 
+   * @param site the remote site to which the connection is made
+   * 
+   * @return an open connection to the SFTP server for the exclusive use of the caller
+   * 
+   * @throws FileTransferException If a connection could not be made
+   */
+  static ChannelSftp acquireChannel( final RemoteSite site ) throws FileTransferException {
+    final String key = ( "user:" + site.getUsername() + "_host:" + site.getHost() + "_port:" + site.getPort() );
+    synchronized( channelPool ) {
+      final Deque<ChannelSftp> idle = channelPool.get( key );
+      while ( idle != null && !idle.isEmpty() ) {
+        final ChannelSftp channelSftp = idle.poll();
+        if ( !channelSftp.isClosed() && channelSftp.isConnected() ) {
+          return channelSftp;
+        }
+        disconnect( channelSftp );
+      }
+    }
+    return SFTPUtil.openNewConnection( site.getHost(), site.getPort(), site.getUsername(), site.getPassword() );
+  }
+
+
+
+
+  /**
+   * Return a connection to the pool for the given site.
+   * 
+   * <p>The working directory of the connection is reset to the home 
+   * directory so relative paths resolve the same way on every pooled 
+   * connection. Connections which have been dropped are disconnected and 
+   * discarded so the next transfer opens a new one.</p>
+   * 
+   * @param site the remote site to which the connection is made
+   * @param channelSftp the connection to return
+   */
+  static void releaseChannel( final RemoteSite site, final ChannelSftp channelSftp ) {
+    if ( channelSftp.isClosed() || !channelSftp.isConnected() ) {
+      disconnect( channelSftp );
+      return;
+    }
+    try {
+      channelSftp.cd( channelSftp.getHome() );
+    } catch ( final SftpException e ) {
+      disconnect( channelSftp );
+      return;
+    }
+    final String key = ( "user:" + site.getUsername() + "_host:" + site.getHost() + "_port:" + site.getPort() );
+    synchronized( channelPool ) {
+      Deque<ChannelSftp> idle = channelPool.get( key );
+      if ( idle == null ) {
+        idle = new ArrayDeque<ChannelSftp>();
+        channelPool.put( key, idle );
+      }
+      idle.add( channelSftp );
+    }
+  }
+
+
+
+
+  /**
+   * Close all the pooled connections to the given site.
+   * 
+   * @param site the remote site to which the pooled connections are made
+   */
+  private static void closePool( final RemoteSite site ) {
+    final Deque<ChannelSftp> idle;
+    synchronized( channelPool ) {
+      idle = channelPool.remove( "user:" + site.getUsername() + "_host:" + site.getHost() + "_port:" + site.getPort() );
+    }
+    if ( idle != null ) {
+      for ( final ChannelSftp channelSftp : idle ) {
+        disconnect( channelSftp );
+      }
+    }
+  }
+
+
+
+
+  private static void disconnect( final ChannelSftp channelSftp ) {
+    try {
+      if ( channelSftp.getSession() != null ) {
+        channelSftp.getSession().disconnect();
+      }
+      channelSftp.exit();
+    } catch ( final Exception ignore ) {}
+  }
+
+
+
+
   /**
   * Open SFTP Channel using the authentication provided
   *
@@ -414,6 +522,33 @@ public class SFTPUtil {
    * @return true if the directory is transferred, false if it did not.
    */
   public static boolean retrieveDirectory( RemoteSite site, String remoteDir, String localDir, String pattern, boolean recurse, boolean preserve, boolean delete ) {
+    return retrieveDirectory( site, remoteDir, localDir, pattern, recurse, preserve, delete, null );
+  }
+
+
+
+
+  /**
+   * This retrieves a directory from the given remote site to a local directory.
+   * 
+   * <p>Files are retrieved over as many connections as the site has sessions 
+   * configured. Each file is first written to a partial file which is resumed 
+   * from its current length if the connection is lost. If a manifest is 
+   * given, files which have not changed since they were last retrieved are 
+   * skipped.</p>
+   * 
+   * @param site the remote sire to query
+   * @param remoteDir the path to the remote directory to retrieve
+   * @param localDir path to the local directory
+   * @param pattern RegEx to be used in selecting files (null results in everything)
+   * @param recurse flag indicating subdirectories are to be included
+   * @param preserve flag indicating the hierarchy of the recursed directories should be preserved
+   * @param delete flag indicating successfully retrieved files should be deleted from the server
+   * @param manifest record of previously retrieved files, may be null
+   * 
+   * @return true if the directory is transferred, false if it did not.
+   */
+  public static boolean retrieveDirectory( final RemoteSite site, final String remoteDir, String localDir, String pattern, boolean recurse, boolean preserve, boolean delete, final TransferManifest manifest ) {
     Assert.notNull( site );
     Assert.notNull( remoteDir );
     Assert.notNull( localDir );
@@ -440,21 +575,25 @@ public class SFTPUtil {
     }
 
     // This is a list of files copied successfully
-    List<String> remoteFilesCopied = new ArrayList<String>();
-
-    // reference to our SFTP connection
-    ChannelSftp channelSftp = null;
+    final List<String> remoteFilesCopied = Collections.synchronizedList( new ArrayList<String>() );
 
     try {
-      channelSftp = getConnection( site.getUsername(), site.getPassword(), site.getPort(), site.getHost() );
       Log.debug( LogMsg.createMsg( CFT.MSG, "SFTP.retrieving_from_remote", remoteDir ) );
 
-      // Get a listing of all the files
-      final List<RemoteFile> fileListings = listFiles( channelSftp, remoteDir, pattern, recurse );
+      // Get a listing of all the files, returning the connection to the pool for the transfers
+      final List<RemoteFile> fileListings;
+      final ChannelSftp channelSftp = acquireChannel( site );
+      try {
+        fileListings = listFiles( channelSftp, remoteDir, pattern, recurse );
+      }
+      finally {
+        releaseChannel( site, channelSftp );
+      }
 
       if ( fileListings.size() > 0 ) {
+        final List<Callable<Boolean>> transfers = new ArrayList<Callable<Boolean>>();
         String localname = null;
-        for ( RemoteFile remoteFile : fileListings ) {
+        for ( final RemoteFile remoteFile : fileListings ) {
           if ( !remoteFile.isDirectory() ) {
 
             if ( preserve ) {
@@ -469,31 +608,65 @@ public class SFTPUtil {
               localname = directory.getAbsolutePath() + FileUtil.FILE_SEPARATOR + remoteFile.getName();
             }
 
-            localname = FileUtil.normalizePath( localname );
-            transferToLocal( channelSftp, remoteFile.getAbsolutePath(), localname );
-            remoteFilesCopied.add( remoteFile.getAbsolutePath() );
+            final File localFile = new File( FileUtil.normalizePath( localname ) );
+            transfers.add( new Callable<Boolean>() {
+              @Override
+              public Boolean call() {
+                final boolean retrieved = ParallelTransfer.retrieve( remoteFile.getAbsolutePath(), remoteFile.getSize(), remoteFile.getAttrs().getMtime(), localFile, manifest, new ParallelTransfer.Fetcher() {
+                  @Override
+                  public void fetch( final String remote, final File part ) throws FileTransferException {
+                    transferToLocal( site, remote, part );
+                  }
+                } );
+                if ( retrieved ) {
+                  remoteFilesCopied.add( remoteFile.getAbsolutePath() );
+                }
+                return retrieved;
+              }
+            } );
           }
-
         }
+
+        // we made it all the way through if every file was retrieved
+        retval = ParallelTransfer.run( transfers, site.getSessions() );
       } else {
         Log.debug( LogMsg.createMsg( CFT.MSG, "SFTP.no_matching_files_found", remoteDir, pattern, recurse ) );
+        retval = true;
       }
-      // we made it all the way through
-      retval = true;
 
     } catch ( FileTransferException e ) {
-      e.printStackTrace();
+      Log.error( e.getMessage() );
     }
     finally {
-      if ( delete && channelSftp != null ) {
-        for ( String remoteFile : remoteFilesCopied ) {
+      if ( delete && !remoteFilesCopied.isEmpty() ) {
+        try {
+          final ChannelSftp channelSftp = acquireChannel( site );
           try {
-            deleteRemoteFile( channelSftp, remoteFile );
-          } catch ( FileTransferException e ) {
-            Log.error( LogMsg.createMsg( CFT.MSG, "SFTP.could_not_delete_file", remoteFile, e.getMessage() ) );
+            for ( String remoteFile : remoteFilesCopied ) {
+              try {
+                deleteRemoteFile( channelSftp, remoteFile );
+                if ( manifest != null ) {
+                  manifest.remove( remoteFile );
+                }
+              } catch ( FileTransferException e ) {
+                Log.error( LogMsg.createMsg( CFT.MSG, "SFTP.could_not_delete_file", remoteFile, e.getMessage() ) );
+              }
+            }
           }
+          finally {
+            releaseChannel( site, channelSftp );
+          }
+        } catch ( FileTransferException e ) {
+          Log.error( e.getMessage() );
         }
+      }
 
+      if ( manifest != null ) {
+        try {
+          manifest.save();
+        } catch ( IOException e ) {
+          Log.error( LogMsg.createMsg( CFT.MSG, "Transfer.could_not_save_manifest", manifest.getFile(), e.getMessage() ) );
+        }
       }
     }
 
@@ -503,6 +676,89 @@ public class SFTPUtil {
 
 
 
+  /**
+   * Publish the files in a local directory to a directory on the remote site.
+   * 
+   * <p>Files are sent over as many connections as the site has sessions 
+   * configured. Each file is written to a partial file on the remote site, 
+   * resumed from its current length if the connection is lost, and renamed 
+   * once complete. If a manifest is given, files which have not changed since 
+   * they were last published are skipped.</p>
+   * 
+   * @param site the remote site to which the files are sent
+   * @param localDir path to the local directory
+   * @param remoteDir the path to the remote directory to create
+   * @param pattern RegEx matching the absolute path of files to publish (null results in everything)
+   * @param recurse flag indicating subdirectories are to be included, preserving their hierarchy
+   * @param manifest record of previously published files, may be null
+   * 
+   * @return true if all the files were published, false otherwise
+   */
+  public static boolean publishDirectory( final RemoteSite site, final String localDir, final String remoteDir, final String pattern, final boolean recurse, final TransferManifest manifest ) {
+    Assert.notNull( site );
+    Assert.notNull( localDir );
+    Assert.notNull( remoteDir );
+
+    final File directory = new File( localDir );
+    final String base = remoteDir.replace( '\\', '/' );
+    final Pattern regex = StringUtil.isNotBlank( pattern ) ? Pattern.compile( pattern ) : null;
+    final List<File> files = new ArrayList<File>();
+    ParallelTransfer.listLocalFiles( directory, regex, recurse, files );
+
+    // create the remote directories before the files are sent in parallel
+    final TreeSet<String> directories = new TreeSet<String>();
+    final List<Callable<Boolean>> transfers = new ArrayList<Callable<Boolean>>();
+    for ( final File file : files ) {
+      final String relative = file.getAbsolutePath().substring( directory.getAbsolutePath().length() + 1 ).replace( File.separatorChar, '/' );
+      final String remote = base + "/" + relative;
+      for ( int index = relative.indexOf( '/' ); index > 0; index = relative.indexOf( '/', index + 1 ) ) {
+        directories.add( base + "/" + relative.substring( 0, index ) );
+      }
+      transfers.add( new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          return ParallelTransfer.publish( file, remote, manifest, new ParallelTransfer.Sender() {
+            @Override
+            public void send( final File local, final String target, final boolean resume ) throws FileTransferException {
+              transferToRemote( site, local, target, resume );
+            }
+          } );
+        }
+      } );
+    }
+
+    boolean retval = false;
+    try {
+      // the connection is returned to the pool for the transfers to use
+      final ChannelSftp channelSftp = acquireChannel( site );
+      try {
+        createRemoteDirectory( channelSftp, base );
+        for ( final String remote : directories ) {
+          createRemoteDirectory( channelSftp, remote );
+        }
+      }
+      finally {
+        releaseChannel( site, channelSftp );
+      }
+      retval = ParallelTransfer.run( transfers, site.getSessions() );
+    } catch ( final FileTransferException e ) {
+      Log.error( e.getMessage() );
+    }
+    finally {
+      if ( manifest != null ) {
+        try {
+          manifest.save();
+        } catch ( IOException e ) {
+          Log.error( LogMsg.createMsg( CFT.MSG, "Transfer.could_not_save_manifest", manifest.getFile(), e.getMessage() ) );
+        }
+      }
+    }
+    return retval;
+  }
+
+
+
+
   /**
    * Delete the remote file from the FTP channel
    *
@@ -628,12 +884,77 @@ public class SFTPUtil {
 
 
 
+  /**
+   * Transfer a remote file to a local file over a pooled connection, 
+   * appending to whatever data the local file already holds.
+   *
+   * @param site the site from which the file is retrieved
+   * @param sourceFile the path of the remote file
+   * @param targetFile the local (partial) file
+   * 
+   * @throws FileTransferException if the transfer did not complete
+   */
+  private static void transferToLocal( final RemoteSite site, final String sourceFile, final File targetFile ) throws FileTransferException {
+    final ChannelSftp channelSftp = acquireChannel( site );
+    try {
+      channelSftp.get( sourceFile, targetFile.getAbsolutePath(), null, ChannelSftp.RESUME );
+    } catch ( final SftpException e ) {
+      final String message = ( "Error transferring file from sftp to local [sourceFile=" + sourceFile + ", destinationPath=" + targetFile + "] - " + e.getMessage() );
+      throw new FileTransferException( message, e );
+    }
+    finally {
+      releaseChannel( site, channelSftp );
+    }
+  }
+
+
+
+
+  /**
+   * Transfer a local file to the remote site over a pooled connection.
+   * 
+   * <p>The data is written to a partial file, which replaces the remote file 
+   * when it is complete. Any partial file already on the remote site is 
+   * resumed from its current length only if requested, otherwise it is 
+   * overwritten.</p>
+   *
+   * @param site the site to which the file is sent
+   * @param localFile the local file
+   * @param remoteFile the path of the remote file
+   * @param resume true if the partial file was written from this local file
+   * 
+   * @throws FileTransferException if the transfer did not complete
+   */
+  private static void transferToRemote( final RemoteSite site, final File localFile, final String remoteFile, final boolean resume ) throws FileTransferException {
+    final String partFile = remoteFile + ParallelTransfer.PART_SUFFIX;
+    final ChannelSftp channelSftp = acquireChannel( site );
+    try {
+      channelSftp.put( localFile.getAbsolutePath(), partFile, null, resume ? ChannelSftp.RESUME : ChannelSftp.OVERWRITE );
+      try {
+        channelSftp.rm( remoteFile );
+      } catch ( final SftpException ignore ) {
+        // most likely did not exist
+      }
+      channelSftp.rename( partFile, remoteFile );
+    } catch ( final SftpException e ) {
+      final String message = ( "Error transferring file to sftp [sourcePath=" + localFile + ", remoteDestinationPath=" + remoteFile + "] - " + e.getMessage() );
+      throw new FileTransferException( message, e );
+    }
+    finally {
+      releaseChannel( site, channelSftp );
+    }
+  }
+
+
+
+
   /**
    * Close and remove all connections for this remote site.
    *  
    * @param site the remote site to which all connections should be closed.
    */
   public static void close( RemoteSite site ) {
+    closePool( site );
     try {
       ChannelSftp channelSftp = removeConnection( site.getUsername(), site.getPassword(), site.getPort(), site.getHost() );
       if ( channelSftp != null ) {
@@ -690,6 +1011,15 @@ public class SFTPUtil {
 
       connectionCache.clear();
     }
+
+    synchronized( channelPool ) {
+      for ( final Deque<ChannelSftp> idle : channelPool.values() ) {
+        for ( final ChannelSftp channelSftp : idle ) {
+          disconnect( channelSftp );
+        }
+      }
+      channelPool.clear();
+    }
   }
 
 
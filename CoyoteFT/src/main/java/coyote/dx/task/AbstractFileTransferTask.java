@@ -8,6 +8,7 @@
 package coyote.dx.task;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 
 import coyote.commons.Assert;
@@ -15,6 +16,7 @@ import coyote.commons.CipherUtil;
 import coyote.commons.UriUtil;
 import coyote.dx.ConfigTag;
 import coyote.commons.network.RemoteSite;
+import coyote.commons.network.TransferManifest;
 import coyote.loader.Loader;
 import coyote.loader.cfg.ConfigurationException;
 
@@ -65,6 +67,10 @@ public abstract class AbstractFileTransferTask extends AbstractFileTask {
       retval.setProtocol(getString(ConfigTag.PROTOCOL));
     }
 
+    if (contains(ConfigTag.WORKERS)) {
+      retval.setSessions(getInteger(ConfigTag.WORKERS));
+    }
+
     if (contains(Loader.ENCRYPT_PREFIX + ConfigTag.USERNAME)) {
       // a little more streamlined, uniform way to handle encrypted values
       retval.setUsername(CipherUtil.decryptString(getString(Loader.ENCRYPT_PREFIX + ConfigTag.USERNAME)));
@@ -125,4 +131,30 @@ public abstract class AbstractFileTransferTask extends AbstractFileTask {
     return retval;
   }
 
+
+
+
+  /**
+   * Open the transfer manifest named in our configuration.
+   *
+   * <p>As with all components, a relative manifest file is placed in the 
+   * JobDirectory.</p>
+   * 
+   * @return the manifest of previously transferred files or null if no 
+   *         manifest is configured
+   * 
+   * @throws IOException if the existing manifest could not be read
+   */
+  protected TransferManifest getManifest() throws IOException {
+    String name = getString(ConfigTag.MANIFEST);
+    if (name == null || name.trim().length() == 0) {
+      return null;
+    }
+    File file = new File(name.trim());
+    if (!file.isAbsolute()) {
+      file = new File(getJobDirectory(), file.getPath());
+    }
+    return new TransferManifest(file);
+  }
+
 }
@@ -10,6 +10,7 @@ package coyote.dx.task;
 import coyote.commons.network.FileAttributes;
 import coyote.commons.network.FileTransferException;
 import coyote.commons.network.RemoteSite;
+import coyote.commons.network.TransferManifest;
 import coyote.dx.CFT;
 import coyote.dx.ConfigTag;
 import coyote.dx.TaskException;
@@ -19,6 +20,7 @@ import coyote.loader.cfg.ConfigurationException;
 import coyote.loader.log.Log;
 import coyote.loader.log.LogMsg;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -32,6 +34,11 @@ import java.net.URISyntaxException;
  *   "target": "file:///path/to/file.txt"
  * }
  * </pre>
+ *
+ * <p>When the source is a directory, "workers" sets the number of sessions 
+ * used to retrieve its files in parallel. Interrupted transfers are resumed 
+ * from where they stopped and, if a "Manifest" file is named, files which 
+ * have not changed since they were last retrieved are skipped.</p>
  */
 public class Retrieve extends AbstractFileTransferTask implements TransformTask {
 
@@ -151,7 +158,13 @@ public class Retrieve extends AbstractFileTransferTask implements TransformTask
 
         try {
             if (!RemoteSite.SCP.equalsIgnoreCase(site.getProtocol()) && remoteFileAttributes.isDirectory()) {
-                if (!site.retrieveDirectory(remoteFile, localFile, pattern, recurse, preserve, delete)) {
+                TransferManifest manifest = null;
+                try {
+                    manifest = getManifest();
+                } catch (IOException e) {
+                    Log.warn("Could not read transfer manifest, retrieving all files - " + e.getMessage());
+                }
+                if (!site.retrieveDirectory(remoteFile, localFile, pattern, recurse, preserve, delete, manifest)) {
                     String msg = String.format("Retrieve task failed to retrieve all files from %s from %s to %s", remoteFile, site.getHost(), localFile);
                     Log.error(msg);
                     if (haltOnError()) {
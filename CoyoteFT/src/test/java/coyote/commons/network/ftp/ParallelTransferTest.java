@@ -0,0 +1,248 @@
+package coyote.commons.network.ftp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import coyote.commons.network.FileTransferException;
+import coyote.commons.network.TransferManifest;
+
+
+public class ParallelTransferTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+
+
+  /**
+   * Simulates a remote file whose connection drops after the given number of
+   * bytes on the first attempt.
+   */
+  private static class DroppingFetcher implements ParallelTransfer.Fetcher {
+    private final byte[] data;
+    private final int dropAt;
+    final AtomicInteger calls = new AtomicInteger();
+
+
+
+
+    DroppingFetcher( byte[] data, int dropAt ) {
+      this.data = data;
+      this.dropAt = dropAt;
+    }
+
+
+
+
+    @Override
+    public void fetch( String remote, File part ) throws FileTransferException {
+      int offset = (int)part.length();
+      boolean drop = calls.incrementAndGet() == 1;
+      int end = drop ? dropAt : data.length;
+      try (FileOutputStream out = new FileOutputStream( part, true )) {
+        out.write( data, offset, end - offset );
+      } catch ( IOException e ) {
+        throw new FileTransferException( e.getMessage(), e );
+      }
+      if ( drop ) {
+        throw new FileTransferException( "connection dropped" );
+      }
+    }
+  }
+
+
+
+
+  @Test
+  public void resumeAndSkip() throws Exception {
+    byte[] data = new byte[10000];
+    for ( int x = 0; x < data.length; x++ ) {
+      data[x] = (byte)x;
+    }
+    File local = new File( folder.getRoot(), "data/file.dat" );
+    TransferManifest manifest = new TransferManifest( new File( folder.getRoot(), "manifest.properties" ) );
+
+    DroppingFetcher fetcher = new DroppingFetcher( data, 4000 );
+    assertTrue( ParallelTransfer.retrieve( "/remote/file.dat", data.length, 1234567, local, manifest, fetcher ) );
+    assertEquals( 2, fetcher.calls.get() );
+    assertArrayEquals( data, Files.readAllBytes( local.toPath() ) );
+    assertFalse( new File( local.getPath() + ParallelTransfer.PART_SUFFIX ).exists() );
+    assertEquals( 1234567000L, local.lastModified() );
+    manifest.save();
+
+    // unchanged files are not transferred again
+    manifest = new TransferManifest( manifest.getFile() );
+    fetcher = new DroppingFetcher( data, 0 );
+    assertTrue( ParallelTransfer.retrieve( "/remote/file.dat", data.length, 1234567, local, manifest, fetcher ) );
+    assertEquals( 0, fetcher.calls.get() );
+
+    // changed files are
+    assertFalse( manifest.isUnchanged( "/remote/file.dat", data.length, 1234568 ) );
+    fetcher = new DroppingFetcher( data, 0 );
+    assertTrue( ParallelTransfer.retrieve( "/remote/file.dat", data.length, 1234568, local, manifest, fetcher ) );
+    assertEquals( 2, fetcher.calls.get() );
+  }
+
+
+
+
+  @Test
+  public void failure() throws Exception {
+    File local = new File( folder.getRoot(), "file.dat" );
+    final AtomicInteger calls = new AtomicInteger();
+    assertFalse( ParallelTransfer.retrieve( "/remote/file.dat", 10, 0, local, null, new ParallelTransfer.Fetcher() {
+      @Override
+      public void fetch( String remote, File part ) throws FileTransferException {
+        calls.incrementAndGet();
+        throw new FileTransferException( "no route to host" );
+      }
+    } ) );
+    assertEquals( ParallelTransfer.ATTEMPTS, calls.get() );
+    assertFalse( local.exists() );
+  }
+
+
+
+
+  @Test
+  public void partialProvenance() throws Exception {
+    byte[] data = new byte[1000];
+    for ( int x = 0; x < data.length; x++ ) {
+      data[x] = (byte)x;
+    }
+    File local = new File( folder.getRoot(), "file.dat" );
+    File part = new File( local.getPath() + ParallelTransfer.PART_SUFFIX );
+    TransferManifest manifest = new TransferManifest( new File( folder.getRoot(), "manifest.properties" ) );
+
+    // a partial file of unknown origin is discarded even if it is shorter
+    try (FileOutputStream out = new FileOutputStream( part )) {
+      out.write( new byte[400] );
+    }
+    DroppingFetcher fetcher = new DroppingFetcher( data, data.length );
+    assertTrue( ParallelTransfer.retrieve( "/remote/file.dat", data.length, 100, local, manifest, fetcher ) );
+    assertArrayEquals( data, Files.readAllBytes( local.toPath() ) );
+
+    // a failed transfer records its source so the next run resumes it
+    final AtomicInteger calls = new AtomicInteger();
+    assertFalse( ParallelTransfer.retrieve( "/remote/file.dat", data.length, 200, local, manifest, new ParallelTransfer.Fetcher() {
+      @Override
+      public void fetch( String remote, File part ) throws FileTransferException {
+        try (FileOutputStream out = new FileOutputStream( part, true )) {
+          if ( calls.incrementAndGet() == 1 ) {
+            out.write( data, 0, 300 );
+          }
+        } catch ( IOException e ) {
+          throw new FileTransferException( e.getMessage(), e );
+        }
+        throw new FileTransferException( "connection dropped" );
+      }
+    } ) );
+    assertTrue( manifest.isPartialOf( "/remote/file.dat", data.length, 200 ) );
+    assertEquals( 300, part.length() );
+    assertEquals( 1, manifest.size() );
+
+    fetcher = new DroppingFetcher( data, data.length );
+    assertTrue( ParallelTransfer.retrieve( "/remote/file.dat", data.length, 200, local, manifest, fetcher ) );
+    assertArrayEquals( data, Files.readAllBytes( local.toPath() ) );
+    assertFalse( manifest.isPartialOf( "/remote/file.dat", data.length, 200 ) );
+
+    // but not if the remote file changed in the meantime
+    assertFalse( ParallelTransfer.retrieve( "/remote/file.dat", data.length, 300, local, manifest, new ParallelTransfer.Fetcher() {
+      @Override
+      public void fetch( String remote, File part ) throws FileTransferException {
+        try (FileOutputStream out = new FileOutputStream( part, true )) {
+          out.write( new byte[300] );
+        } catch ( IOException e ) {
+          throw new FileTransferException( e.getMessage(), e );
+        }
+        throw new FileTransferException( "connection dropped" );
+      }
+    } ) );
+    assertTrue( part.length() > 0 );
+    fetcher = new DroppingFetcher( data, data.length );
+    assertTrue( ParallelTransfer.retrieve( "/remote/file.dat", data.length, 400, local, manifest, fetcher ) );
+    assertArrayEquals( data, Files.readAllBytes( local.toPath() ) );
+  }
+
+
+
+
+  @Test
+  public void publishResume() throws Exception {
+    File local = folder.newFile( "file.dat" );
+    Files.write( local.toPath(), new byte[100] );
+    TransferManifest manifest = new TransferManifest( new File( folder.getRoot(), "manifest.properties" ) );
+    final List<Boolean> resumes = new ArrayList<Boolean>();
+    ParallelTransfer.Sender failing = new ParallelTransfer.Sender() {
+      @Override
+      public void send( File file, String remote, boolean resume ) throws FileTransferException {
+        resumes.add( resume );
+        throw new FileTransferException( "connection dropped" );
+      }
+    };
+
+    // an existing remote part is only resumed by the retries of this call
+    assertFalse( ParallelTransfer.publish( local, "/remote/file.dat", manifest, failing ) );
+    assertEquals( "[false, true, true]", resumes.toString() );
+
+    // and by the next call if the local file is unchanged
+    resumes.clear();
+    assertTrue( ParallelTransfer.publish( local, "/remote/file.dat", manifest, new ParallelTransfer.Sender() {
+      @Override
+      public void send( File file, String remote, boolean resume ) {
+        resumes.add( resume );
+      }
+    } ) );
+    assertEquals( "[true]", resumes.toString() );
+    assertTrue( manifest.isUnchanged( local.getAbsolutePath(), 100, local.lastModified() / 1000 ) );
+
+    // a part left from an earlier version of the local file is replaced
+    Files.write( local.toPath(), new byte[200] );
+    resumes.clear();
+    assertFalse( ParallelTransfer.publish( local, "/remote/file.dat", manifest, failing ) );
+    Files.write( local.toPath(), new byte[300] );
+    resumes.clear();
+    assertFalse( ParallelTransfer.publish( local, "/remote/file.dat", manifest, failing ) );
+    assertEquals( "[false, true, true]", resumes.toString() );
+  }
+
+
+
+
+  @Test
+  public void run() {
+    final AtomicInteger count = new AtomicInteger();
+    List<Callable<Boolean>> transfers = new ArrayList<Callable<Boolean>>();
+    for ( int x = 0; x < 50; x++ ) {
+      final int index = x;
+      transfers.add( new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          count.incrementAndGet();
+          return index != 17;
+        }
+      } );
+    }
+    assertFalse( ParallelTransfer.run( transfers, 4 ) );
+    assertEquals( 50, count.get() );
+    assertTrue( ParallelTransfer.run( transfers.subList( 0, 10 ), 4 ) );
+    assertTrue( ParallelTransfer.run( transfers.subList( 0, 10 ), 1 ) );
+  }
+
+}
@@ -58,6 +58,17 @@ import java.util.*;
  *   "password": "s0mep4s5word"
  * }</pre>
  * <p>The above will send a preemptive basic authentication header with each request.</p>
+ *
+ * <p>Metrics are not pushed as they are written. They are accumulated for each job and instance and sent as a single
+ * exposition per group, with samples of the same metric merged into one metric family. Pending metrics are pushed
+ * when "FlushRows" metrics (default 1000) have been accumulated, when "FlushInterval" milliseconds have elapsed since
+ * the last push (if set) and when the writer is closed. A sample written more than once with the same labels only
+ * sends its last value. A change of action for a group pushes the metrics already pending for that group first, so a
+ * POST followed by a DELETE is still sent in that order.</p>
+ *
+ * <p>The gateway replaces a whole metric family on POST and a whole group on PUT, so a push only containing the
+ * samples written since the last push would erase the others. Each push of a group therefore re-sends every metric
+ * family accumulated for that group, not just the samples which changed.</p>
  */
 public class PushGatewayWriter extends AbstractFrameWriter implements FrameWriter {
     public final static String CONTENT_TYPE_004 = "text/plain; version=0.0.4; charset=utf-8";
@@ -77,6 +88,11 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
     private HttpConnectionFactory connectionFactory = new DefaultHttpConnectionFactory();
 
     private int rowCounter = 0;
+    private int flushRows = 1000;
+    private long flushInterval = 0;
+    private long lastFlush = 0;
+    private int pending = 0;
+    private final Map<String, Group> groups = new LinkedHashMap<>();
 
     private static String base64url(String value) {
         return DatatypeConverter.printBase64Binary(value.getBytes(StandardCharsets.UTF_8)).replace("+", "-").replace("/", "_");
@@ -165,6 +181,10 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
             connectionFactory = new BasicAuthHttpConnectionFactory(connectionFactory, username, password);
         }
 
+        flushRows = containsIgnoreCase(ConfigTag.FLUSH_ROWS) ? Math.max(1, getInteger(ConfigTag.FLUSH_ROWS)) : 1000;
+        flushInterval = getLong(ConfigTag.FLUSH_INTERVAL);
+        lastFlush = System.currentTimeMillis();
+
         Log.debug(LogMsg.createMsg(CMC.MSG, "Writer.init_complete"));
     }
 
@@ -173,6 +193,7 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
      */
     @Override
     public void close() throws IOException {
+        flush();
         Log.debug(LogMsg.createMsg(CMC.MSG, "Writer.records_processed", rowCounter, (context != null) ? context.getRow() : 0));
         super.close();
     }
@@ -200,10 +221,10 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
     }
 
     /**
-     * This is where we actually write a frame to the web service endpoint
+     * Add the metric in the given frame to the pending metrics of its group, pushing the pending metrics when the
+     * flush thresholds are reached.
      *
      * @param frame the frame to write
-     * @return the number of bytes written
      */
     private void writeFrame(DataFrame frame) {
         String jobName = frame.getAsString(JOB_FIELD);
@@ -226,28 +247,82 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
             return;
         }
 
-        Map<String, String> groupingKey = new HashMap<>();
-        if (frame.contains(INSTANCE_FIELD) && StringUtil.isNotBlank(frame.getAsString(INSTANCE_FIELD)))
-            groupingKey.put(INSTANCE_FIELD, frame.getAsString(INSTANCE_FIELD));
+        String instance = frame.getAsString(INSTANCE_FIELD);
+        if (StringUtil.isBlank(instance)) instance = null;
+
+        String key = jobName + "\n" + instance;
+        Group group = groups.get(key);
+        if (group != null && !group.method.equals(action)) {
+            // keep the order of the actions on the group
+            if (group.dirty) send(group);
+            groups.remove(key);
+            group = null;
+        }
+        if (group == null) {
+            Map<String, String> groupingKey = new HashMap<>();
+            if (instance != null) groupingKey.put(INSTANCE_FIELD, instance);
+            try {
+                group = new Group(getUrl(jobName, groupingKey), action);
+            } catch (IOException e) {
+                Log.error("Could not push metric: " + ExceptionUtil.toString(e));
+                return;
+            }
+            groups.put(key, group);
+        }
+        if (action.equals(DELETE)) {
+            group.dirty = true;
+        } else {
+            group.add(frame);
+        }
+
+        rowCounter++;
+        pending++;
+        if (pending >= flushRows || (flushInterval > 0 && System.currentTimeMillis() - lastFlush >= flushInterval)) {
+            flush();
+        }
+    }
+
+    /**
+     * Push all the groups with pending metrics to the gateway, one request per group.
+     *
+     * <p>Groups are kept after the push so the next push of the group contains all of its metric families. Deleted
+     * groups have nothing left to send and are discarded.</p>
+     */
+    private void flush() {
+        for (Iterator<Group> it = groups.values().iterator(); it.hasNext(); ) {
+            Group group = it.next();
+            if (group.dirty) {
+                send(group);
+                group.dirty = false;
+            }
+            if (group.method.equals(DELETE)) it.remove();
+        }
+        pending = 0;
+        lastFlush = System.currentTimeMillis();
+    }
 
+    /**
+     * Push the metrics of the given group, logging any errors.
+     *
+     * @param group the group to push
+     */
+    private void send(Group group) {
         try {
-            publishMetric(jobName, groupingKey, action, frame);
+            publishMetrics(group);
         } catch (IOException e) {
-            Log.error("Could not push metric: " + ExceptionUtil.toString(e));
+            Log.error("Could not push metrics: " + ExceptionUtil.toString(e));
         }
-        rowCounter++;
     }
 
     /**
-     * Publish the given frame as an OpenMetrics formatted metric.
+     * Generate the URL of the push gateway for the given grouping.
      *
      * @param job         primary grouping element representing the name of the job to which these metrics apply.
      * @param groupingKey additional grouping pairs such as "instance-myhost"
-     * @param method      One of the HTTP methods (e.g. POST, PUT, and DELETE)
-     * @param frame       the dataframe containing the metric to push.
-     * @throws IOException if there were problems sending metrics to the push gateway
+     * @return the URL for the grouping
+     * @throws UnsupportedEncodingException if the grouping could not be encoded
      */
-    void publishMetric(String job, Map<String, String> groupingKey, String method, DataFrame frame) throws IOException {
+    String getUrl(String job, Map<String, String> groupingKey) throws UnsupportedEncodingException {
         String url = gatewayUrl;
         if (job.contains("/")) {
             url += "job@base64/" + base64url(job);
@@ -264,6 +339,18 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
                 }
             }
         }
+        return url;
+    }
+
+    /**
+     * Publish the metrics of the given group as a single OpenMetrics formatted payload.
+     *
+     * @param group the group of metrics to push
+     * @throws IOException if there were problems sending metrics to the push gateway
+     */
+    void publishMetrics(Group group) throws IOException {
+        String url = group.url;
+        String method = group.method;
 
         HttpURLConnection connection = connectionFactory.create(url);
         connection.setRequestProperty("Content-Type", CONTENT_TYPE_004);
@@ -278,7 +365,7 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
         try {
             if (!method.equals(DELETE)) {
                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
-                convertToOpenMetrics(writer, frame);
+                group.write(writer);
                 writer.flush();
                 writer.close();
             }
@@ -301,31 +388,15 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
     }
 
     /**
-     * Convert the given frame into an OpenMetrics formatted representation
+     * Generate the OpenMetrics formatted labels of the given frame, sorted by name.
      *
-     * @param writer the writer to use in outputing the representation
-     * @param frame  the frame to format
+     * @param frame the frame to format
+     * @return the label set including the braces or an empty string if there are no labels
      * @throws IOException if problems were encountered writing the data
      */
-    private void convertToOpenMetrics(BufferedWriter writer, DataFrame frame) throws IOException {
-        String metricName = frame.getAsString(NAME_FIELD);
-
-        if (frame.contains(HELP_FIELD) && frame.getAsString(HELP_FIELD).trim().length() > 0) {
-            writer.append("# HELP ");
-            writer.append(metricName);
-            writer.write(' ');
-            writeEscapedHelp(writer, frame.getAsString(HELP_FIELD).trim());
-            writer.append("\n");
-        }
-        writer.append("# TYPE ");
-        writer.append(metricName);
-        writer.append(" ");
-        writer.append(frame.getAsString(TYPE_FIELD).trim());
-        writer.append("\n");
-        writer.append(metricName);
-        writer.append(" ");
-
+    static String getLabels(DataFrame frame) throws IOException {
         List<String> names = getLabelNames(frame);
+        StringWriter writer = new StringWriter();
         if (names.size() > 0) {
             writer.write('{');
             for (int i = 0; i < names.size(); ++i) {
@@ -335,11 +406,9 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
                 writer.write("\"");
                 if (i + 1 < names.size()) writer.write(",");
             }
-            writer.write("} ");
+            writer.write('}');
         }
-
-        writer.append(frame.getAsString(VALUE_FIELD));
-        writer.append("\n");
+        return writer.toString();
     }
 
     /**
@@ -348,8 +417,8 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
      * @param frame the frame to examine
      * @return a list o label names
      */
-    private List<String> getLabelNames(DataFrame frame) {
-        HashSet<String> hset = new HashSet<String>();
+    private static List<String> getLabelNames(DataFrame frame) {
+        TreeSet<String> hset = new TreeSet<String>();
         for (DataField field : frame.getFields()) {
             String name = field.getName();
             if (name != null &&
@@ -363,7 +432,89 @@ public class PushGatewayWriter extends AbstractFrameWriter implements FrameWrite
         }
         return new ArrayList<String>(hset);
     }
-}
 
+    /**
+     * The metrics accumulated for one job and grouping key, merged into metric families.
+     */
+    static class Group {
+        final String url;
+        final String method;
+        boolean dirty = false;
+        private final Map<String, Family> families = new LinkedHashMap<>();
+
+        Group(String url, String method) {
+            this.url = url;
+            this.method = method;
+        }
+
+        /**
+         * Add the metric sample in the given frame to its metric family.
+         *
+         * @param frame the frame containing the metric sample
+         */
+        void add(DataFrame frame) {
+            dirty = true;
+            String name = frame.getAsString(NAME_FIELD);
+            Family family = families.get(name);
+            if (family == null) {
+                family = new Family(frame.getAsString(TYPE_FIELD).trim());
+                families.put(name, family);
+            }
+            if (family.help == null && frame.contains(HELP_FIELD) && frame.getAsString(HELP_FIELD).trim().length() > 0) {
+                family.help = frame.getAsString(HELP_FIELD).trim();
+            }
+            try {
+                family.samples.put(getLabels(frame), frame.getAsString(VALUE_FIELD));
+            } catch (IOException e) {
+                // writing to a string does not fail
+            }
+        }
+
+        /**
+         * Write the OpenMetrics exposition of all the metric families in this group.
+         *
+         * @param writer the writer to use in outputing the representation
+         * @throws IOException if problems were encountered writing the data
+         */
+        void write(Writer writer) throws IOException {
+            for (Map.Entry<String, Family> entry : families.entrySet()) {
+                String metricName = entry.getKey();
+                Family family = entry.getValue();
+                if (family.help != null) {
+                    writer.append("# HELP ");
+                    writer.append(metricName);
+                    writer.write(' ');
+                    writeEscapedHelp(writer, family.help);
+                    writer.append("\n");
+                }
+                writer.append("# TYPE ");
+                writer.append(metricName);
+                writer.append(" ");
+                writer.append(family.type);
+                writer.append("\n");
+                for (Map.Entry<String, String> sample : family.samples.entrySet()) {
+                    writer.append(metricName);
+                    if (sample.getKey().length() > 0) {
+                        writer.append(sample.getKey());
+                    }
+                    writer.append(" ");
+                    writer.append(sample.getValue());
+                    writer.append("\n");
+                }
+            }
+        }
+    }
 
+    /**
+     * The type, help and samples (by label set) of one metric.
+     */
+    private static class Family {
+        final String type;
+        String help = null;
+        final Map<String, String> samples = new LinkedHashMap<>();
 
+        Family(String type) {
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package coyote.dx.writer;
+
+import coyote.commons.template.SymbolTable;
+import coyote.dataframe.DataFrame;
+import coyote.dx.ConfigTag;
+import coyote.dx.context.TransformContext;
+import coyote.loader.cfg.Config;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PushGatewayWriterTest {
+
+  /**
+   * Records the pushes instead of sending them to a gateway.
+   */
+  private static class RecordingWriter extends PushGatewayWriter {
+    final List<String> pushes = new ArrayList<>();
+
+    @Override
+    void publishMetrics(Group group) throws IOException {
+      StringWriter writer = new StringWriter();
+      if (!group.method.equals("DELETE")) group.write(writer);
+      pushes.add(group.method + " " + group.url + "\n" + writer.toString());
+    }
+  }
+
+  private static DataFrame metric(String name, String type, String value) {
+    return new DataFrame().set("name", name).set("type", type).set("value", value).set("job", "test");
+  }
+
+  private static RecordingWriter open(int flushRows) {
+    RecordingWriter retval = new RecordingWriter();
+    DataFrame cfg = new DataFrame().set(ConfigTag.TARGET, "http://localhost:9091").set(ConfigTag.FLUSH_ROWS, flushRows);
+    retval.setConfiguration(new Config(cfg));
+    TransformContext context = new TransformContext();
+    context.setSymbols(new SymbolTable());
+    retval.open(context);
+    return retval;
+  }
+
+  @Test
+  public void families() throws Exception {
+    PushGatewayWriter.Group group = new PushGatewayWriter.Group("http://localhost:9091/metrics/job/test", "POST");
+    group.add(metric("requests", "counter", "1").set("path", "/a").set("help", "Requests served"));
+    group.add(metric("latency", "gauge", "0.5"));
+    group.add(metric("requests", "counter", "2").set("path", "/b"));
+    group.add(metric("requests", "counter", "3").set("path", "/a"));
+
+    StringWriter writer = new StringWriter();
+    group.write(writer);
+    assertEquals("# HELP requests Requests served\n" +
+            "# TYPE requests counter\n" +
+            "requests{path=\"/a\"} 3\n" +
+            "requests{path=\"/b\"} 2\n" +
+            "# TYPE latency gauge\n" +
+            "latency 0.5\n", writer.toString());
+  }
+
+  @Test
+  public void flushResendsFamilies() throws Exception {
+    RecordingWriter writer = open(2);
+    writer.write(metric("requests", "counter", "1").set("path", "/a"));
+    writer.write(metric("requests", "counter", "2").set("path", "/b"));
+    // flushed mid-family, the next push must still contain path="/a"
+    writer.write(metric("requests", "counter", "5").set("path", "/b"));
+    writer.write(metric("latency", "gauge", "0.5"));
+    writer.close();
+
+    assertEquals(2, writer.pushes.size());
+    String last = writer.pushes.get(1);
+    assertTrue(last.contains("requests{path=\"/a\"} 1\n"));
+    assertTrue(last.contains("requests{path=\"/b\"} 5\n"));
+    assertTrue(last.contains("latency 0.5\n"));
+  }
+
+  @Test
+  public void unchangedGroupsNotPushed() throws Exception {
+    RecordingWriter writer = open(1);
+    writer.write(metric("requests", "counter", "1"));
+    writer.write(metric("other", "counter", "1").set("job", "other"));
+    writer.close();
+
+    // each flush only pushes the group which received a metric
+    assertEquals(2, writer.pushes.size());
+    assertTrue(writer.pushes.get(0).contains("/job/test"));
+    assertTrue(writer.pushes.get(1).contains("/job/other"));
+  }
+
+  @Test
+  public void delete() throws Exception {
+    RecordingWriter writer = open(1000);
+    writer.write(metric("requests", "counter", "1"));
+    writer.write(metric("requests", "counter", "1").set("action", "DELETE"));
+    writer.write(metric("requests", "counter", "2"));
+    writer.close();
+
+    assertEquals(3, writer.pushes.size());
+    assertTrue(writer.pushes.get(0).startsWith("POST"));
+    assertTrue(writer.pushes.get(1).startsWith("DELETE"));
+    assertTrue(writer.pushes.get(2).startsWith("POST"));
+    assertFalse(writer.pushes.get(2).contains("requests 1\n"));
+  }
+
+}
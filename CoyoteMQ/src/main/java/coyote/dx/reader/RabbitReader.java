@@ -12,16 +12,24 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.AlreadyClosedException;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.ConsumerCancelledException;
-import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.ShutdownSignalException;
 
 import coyote.commons.CipherUtil;
@@ -43,21 +51,48 @@ import coyote.loader.log.LogMsg;
 
 
 /**
+ * Reads messages from a RabbitMQ queue.
  * 
+ * <p>Messages are pushed to this reader by the broker through one or more 
+ * consumers and placed in a local buffer from which frames are read. The 
+ * broker is limited to sending {@code Prefetch} (default 100) unacknowledged
+ * messages to each consumer, which bounds the size of the buffer. Messages 
+ * are acknowledged only after their frames have been written; the reader 
+ * knows a frame is complete when the engine ends the transaction it was 
+ * read in, which in pipelined mode may be several frames after it was read.
+ * Acknowledgements are sent in batches covering all the completed messages 
+ * on a channel at once. Messages whose frames were not all completed when 
+ * the reader is closed are left unacknowledged for the broker to redeliver.
+ * 
+ * <p>A message containing a JSON array is read as one frame per element and 
+ * is acknowledged once all its frames are complete, which allows writers to
+ * batch many frames into a single message.
+ * 
+ * <p>{@code Channels} (default 1) sets the number of channels, each with its 
+ * own consumer, used to receive messages in parallel.
+ * 
+ * <p>When {@code Listen} is true, the reader never reaches EOF and waits for 
+ * messages to arrive. Otherwise EOF is reached when the buffer is empty and 
+ * there are no messages waiting in the queue.
  */
 public class RabbitReader extends AbstractFrameReader implements FrameReader, ConfigurableComponent {
 
   private static final boolean NO_AUTO_ACK = false;
-  private static final boolean REQUEUE = true;
+  private static final boolean MULTIPLE = true;
   private static final boolean DURABLE = true;
   private static final boolean PUBLIC = false;
   private static final boolean KEEP = false;
   private static final Map<String, Object> NO_ARGUMENTS = null;
+  private static final int DEFAULT_PREFETCH = 100;
+  private static final long POLL_INTERVAL = 250;
 
   private Connection connection = null;
-  private Channel channel = null;
-  private int prefetchCount = 1;
-  private boolean peekEofCheck = true;
+  private final List<Channel> channels = new ArrayList<Channel>();
+  private final List<Acknowledger> acknowledgers = new ArrayList<Acknowledger>();
+  private BlockingQueue<Delivery> buffer = null;
+  private Delivery current = null;
+  private List<DataFrame> frames = null;
+  private int nextFrame = 0;
 
 
 
@@ -134,6 +169,44 @@ public class RabbitReader extends AbstractFrameReader implements FrameReader, Co
 
 
 
+  /**
+   * @return the number of unacknowledged messages the broker may send to each consumer
+   */
+  public int getPrefetchCount() {
+    return getCount(ConfigTag.PREFETCH, DEFAULT_PREFETCH);
+  }
+
+
+
+
+  /**
+   * @return the number of channels (and consumers) to use
+   */
+  public int getChannelCount() {
+    return getCount(ConfigTag.CHANNELS, 1);
+  }
+
+
+
+
+  private int getCount(String name, int defaultValue) {
+    if (configuration.containsIgnoreCase(name)) {
+      try {
+        int retval = configuration.getInt(name);
+        if (retval > 0) {
+          return retval;
+        }
+      } catch (Exception e) {
+        // fall through to the default
+      }
+      Log.warn(LogMsg.createMsg(CMQ.MSG, "Reader.config_attribute_is_not_valid_count", name, configuration.getString(name), defaultValue));
+    }
+    return defaultValue;
+  }
+
+
+
+
   /**
    * @see coyote.dx.reader.AbstractFrameReader#open(coyote.dx.context.TransformContext)
    */
@@ -155,10 +228,20 @@ public class RabbitReader extends AbstractFrameReader implements FrameReader, Co
         factory.setPassword(getPassword());
       }
 
+      int prefetchCount = getPrefetchCount();
+      int count = getChannelCount();
+      buffer = new ArrayBlockingQueue<Delivery>(prefetchCount * count);
+
       connection = factory.newConnection();
-      channel = connection.createChannel();
-      channel.basicQos(prefetchCount);
-      channel.queueDeclare(getQueueName(), DURABLE, PUBLIC, KEEP, NO_ARGUMENTS);
+      for (int x = 0; x < count; x++) {
+        Channel channel = connection.createChannel();
+        channel.basicQos(prefetchCount);
+        channel.queueDeclare(getQueueName(), DURABLE, PUBLIC, KEEP, NO_ARGUMENTS);
+        Acknowledger acknowledger = new Acknowledger(channel, Math.max(1, prefetchCount / 2));
+        channels.add(channel);
+        acknowledgers.add(acknowledger);
+        channel.basicConsume(getQueueName(), NO_AUTO_ACK, new BufferingConsumer(acknowledger));
+      }
     } catch (KeyManagementException | NoSuchAlgorithmException | URISyntaxException | IOException | TimeoutException | ShutdownSignalException | ConsumerCancelledException e) {
       Log.error(e.getClass().getSimpleName() + ":" + e.getMessage() + "\n" + ExceptionUtil.stackTrace(e));
       getContext().setError("Could not open " + getClass().getSimpleName() + ": " + e.getMessage());
@@ -170,61 +253,98 @@ public class RabbitReader extends AbstractFrameReader implements FrameReader, Co
 
 
   /**
+   * Return the next frame from the buffer of delivered messages.
+   * 
+   * <p>Each frame is tied to the given transaction; when the engine ends the 
+   * transaction the frame is complete, and once all the frames of a message 
+   * are complete the message will be acknowledged with the next batch. If 
+   * the buffer is empty, any pending acknowledgements are sent before waiting
+   * a short time for more messages. 
+   * 
    * @see coyote.dx.FrameReader#read(coyote.dx.context.TransactionContext)
    */
   @Override
   public DataFrame read(TransactionContext context) {
     DataFrame retval = null;
+    if (frames != null && nextFrame < frames.size()) {
+      return track(context, frames.get(nextFrame++));
+    }
+    current = null;
+    frames = null;
+    if (buffer == null) {
+      return null;
+    }
+
     try {
       while (retval == null) {
-        GetResponse response = channel.basicGet(getQueueName(), NO_AUTO_ACK);
-        if (response != null) {
-          byte[] data = null;
-          try {
-            data = response.getBody();
-            channel.basicAck(response.getEnvelope().getDeliveryTag(), false);
-          } catch (IOException e) {
-            Log.error("Could not get data from message body: " + e.getClass().getName() + " - " + e.getMessage());
+        Delivery delivery = buffer.poll();
+        if (delivery == null) {
+          // nothing buffered; let the broker know where we are, then wait
+          for (Acknowledger acknowledger : acknowledgers) {
+            acknowledger.flush();
           }
-          if (data != null) {
-            try {
-              retval = new DataFrame(data);
-            } catch (Exception e) {
-              Log.debug("Received data not in dataframe wire format");
-              String text = StringUtil.getString(data);
-              try {
-                List<DataFrame> frames = JSONMarshaler.marshal(text);
-                if (frames != null && frames.size() > 0) {
-                  retval = frames.get(0);
-                } else {
-                  Log.notice("Received an empty JSON message");
-                }
-              } catch (MarshalException e1) {
-                Log.debug("Received data not in JSON format");
-                try {
-                  List<DataFrame> frames = XMLMarshaler.marshal(text);
-                  if (frames != null && frames.size() > 0) {
-                    retval = frames.get(0);
-                  } else {
-                    Log.notice("Received an empty XML message");
-                  }
-                } catch (MarshalException e2) {
-                  Log.error("Could not parse the data received from " + channel.toString());
-                }
-              }
-            }
+          delivery = buffer.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+          if (delivery == null) {
+            break;
+          }
+        }
+
+        current = delivery;
+        frames = parse(delivery.body);
+        // a message with nothing to process is acknowledged with the rest
+        delivery.acknowledger.expect(delivery, frames.size());
+        if (frames.size() > 0) {
+          retval = track(context, frames.get(0));
+          nextFrame = 1;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * Parse the body of a message into data frames.
+   * 
+   * @param data the body of the message
+   * 
+   * @return the data frames in the message, empty if the data could not be parsed
+   */
+  private List<DataFrame> parse(byte[] data) {
+    List<DataFrame> retval = new ArrayList<DataFrame>();
+    if (data != null) {
+      try {
+        retval.add(new DataFrame(data));
+      } catch (Exception e) {
+        Log.debug("Received data not in dataframe wire format");
+        String text = StringUtil.getString(data);
+        try {
+          List<DataFrame> frames = JSONMarshaler.marshal(text);
+          if (frames != null && frames.size() > 0) {
+            retval.addAll(frames);
           } else {
-            Log.warn("Retrieved an empty body from a message: " + response.getEnvelope().getDeliveryTag());
+            Log.notice("Received an empty JSON message");
           }
-        } else {
-          // If we are not in listen mode, break out of the loop and return null, otherwise loop
-          if (!isListening()) {
-            break;
+        } catch (MarshalException e1) {
+          Log.debug("Received data not in JSON format");
+          try {
+            List<DataFrame> frames = XMLMarshaler.marshal(text);
+            if (frames != null && frames.size() > 0) {
+              retval.add(frames.get(0));
+            } else {
+              Log.notice("Received an empty XML message");
+            }
+          } catch (MarshalException e2) {
+            Log.error("Could not parse the data received from queue " + getQueueName());
           }
         }
       }
-    } catch (IOException e) {
-      Log.warn("Exception on message retrieval: " + e.getClass().getName() + " - " + e.getMessage());
+    } else {
+      Log.warn("Retrieved an empty body from a message");
     }
     return retval;
   }
@@ -232,30 +352,50 @@ public class RabbitReader extends AbstractFrameReader implements FrameReader, Co
 
 
 
+  /**
+   * Complete a frame of the current message when the transaction in which it
+   * was read ends.
+   * 
+   * @param context the transaction in which the frame was read
+   * @param frame the frame being read
+   * 
+   * @return the frame
+   */
+  private DataFrame track(TransactionContext context, DataFrame frame) {
+    final Delivery delivery = current;
+    if (context != null) {
+      context.whenEnded(new Runnable() {
+        @Override
+        public void run() {
+          delivery.acknowledger.complete(delivery);
+        }
+      });
+    } else {
+      delivery.acknowledger.complete(delivery);
+    }
+    return frame;
+  }
+
+
+
+
   /**
    * @see coyote.dx.FrameReader#eof()
    */
   @Override
   public boolean eof() {
     boolean retval = true;
-    if (isListening()) {
+    if (isListening() || (frames != null && nextFrame < frames.size())) {
       retval = false;
-    } else {
-      if (peekEofCheck) {
-        try {
-          GetResponse response = channel.basicGet(getQueueName(), NO_AUTO_ACK);
-          if (response != null) {
-            retval = false;
-            try {
-              channel.basicReject(response.getEnvelope().getDeliveryTag(), REQUEUE);
-            } catch (Exception e) {
-              Log.error("Could not requeue message on EOF check: " + e.getClass().getName() + " - " + e.getMessage());
-            }
-          }
-        } catch (IOException e) {
-          Log.error("Exception on EOF check: " + e.getClass().getName() + " - " + e.getMessage());
-        }
+    } else if (buffer != null && buffer.isEmpty() && channels.size() > 0) {
+      // only ask the broker when there is nothing buffered locally
+      try {
+        retval = channels.get(0).messageCount(getQueueName()) == 0;
+      } catch (IOException e) {
+        Log.error("Exception on EOF check: " + e.getClass().getName() + " - " + e.getMessage());
       }
+    } else if (buffer != null) {
+      retval = buffer.isEmpty();
     }
     return retval;
   }
@@ -268,7 +408,10 @@ public class RabbitReader extends AbstractFrameReader implements FrameReader, Co
    */
   @Override
   public void close() throws IOException {
-    // perform our closing functions first
+    // perform our closing functions first, leaving any incomplete messages unacknowledged
+    for (Acknowledger acknowledger : acknowledgers) {
+      acknowledger.flush();
+    }
     if (connection != null) {
       try {
         connection.close();
@@ -281,4 +424,145 @@ public class RabbitReader extends AbstractFrameReader implements FrameReader, Co
     super.close();
   }
 
+
+
+
+  /**
+   * A message delivered by the broker waiting to be read.
+   */
+  private static class Delivery {
+    final Acknowledger acknowledger;
+    final long deliveryTag;
+    final byte[] body;
+
+    /** The number of frames not yet complete, -1 until the message is read; guarded by the acknowledger */
+    int incomplete = -1;
+
+
+
+
+    Delivery(Acknowledger acknowledger, long deliveryTag, byte[] body) {
+      this.acknowledger = acknowledger;
+      this.deliveryTag = deliveryTag;
+      this.body = body;
+    }
+  }
+
+
+
+
+  /**
+   * Tracks the completed messages on a channel and acknowledges them in 
+   * batches.
+   * 
+   * <p>Messages are kept in the order the channel delivers them and only the
+   * oldest messages whose frames are all complete are acknowledged, so a 
+   * single acknowledgement with the {@code multiple} flag never covers a 
+   * message still being processed, even when transactions end out of order.
+   */
+  private static class Acknowledger {
+    private final Channel channel;
+    private final int batchSize;
+    private final Deque<Delivery> outstanding = new ArrayDeque<Delivery>();
+    private long completedTag = 0;
+    private long acknowledgedTag = 0;
+
+
+
+
+    Acknowledger(Channel channel, int batchSize) {
+      this.channel = channel;
+      this.batchSize = batchSize;
+    }
+
+
+
+
+    synchronized void received(Delivery delivery) {
+      outstanding.add(delivery);
+    }
+
+
+
+
+    synchronized void expect(Delivery delivery, int frames) {
+      delivery.incomplete = frames;
+      advance();
+    }
+
+
+
+
+    synchronized void complete(Delivery delivery) {
+      delivery.incomplete--;
+      advance();
+    }
+
+
+
+
+    /**
+     * Move past the oldest messages which are complete, acknowledging them 
+     * once a batch has accumulated.
+     */
+    private void advance() {
+      while (!outstanding.isEmpty() && outstanding.peek().incomplete == 0) {
+        completedTag = outstanding.poll().deliveryTag;
+      }
+      if (completedTag - acknowledgedTag >= batchSize) {
+        flush();
+      }
+    }
+
+
+
+
+    synchronized void flush() {
+      if (completedTag > acknowledgedTag) {
+        try {
+          channel.basicAck(completedTag, MULTIPLE);
+          acknowledgedTag = completedTag;
+        } catch (IOException | AlreadyClosedException e) {
+          Log.error("Could not acknowledge messages: " + e.getClass().getName() + " - " + e.getMessage());
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Places each message delivered by the broker in the local buffer.
+   */
+  private class BufferingConsumer extends DefaultConsumer {
+    private final Acknowledger acknowledger;
+
+
+
+
+    BufferingConsumer(Acknowledger acknowledger) {
+      super(acknowledger.channel);
+      this.acknowledger = acknowledger;
+    }
+
+
+
+
+    /**
+     * @see com.rabbitmq.client.DefaultConsumer#handleDelivery(java.lang.String, com.rabbitmq.client.Envelope, com.rabbitmq.client.AMQP.BasicProperties, byte[])
+     */
+    @Override
+    public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
+      try {
+        // the prefetch limit keeps the broker from overfilling the buffer
+        Delivery delivery = new Delivery(acknowledger, envelope.getDeliveryTag(), body);
+        acknowledger.received(delivery);
+        buffer.put(delivery);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
 }
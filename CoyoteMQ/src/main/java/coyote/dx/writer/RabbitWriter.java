@@ -12,13 +12,22 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.AlreadyClosedException;
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.ConsumerCancelledException;
+import com.rabbitmq.client.MessageProperties;
 import com.rabbitmq.client.ShutdownSignalException;
 
 import coyote.commons.CipherUtil;
@@ -38,15 +47,45 @@ import coyote.loader.log.LogMsg;
 
 
 /**
+ * Writes frames as messages to a RabbitMQ queue.
  * 
+ * <p>When {@code Confirm} is true, the channel is placed in confirm mode and
+ * messages are published as persistent. Publishing does not wait for each 
+ * confirmation; instead up to {@code Window} (default 1000) messages may be 
+ * awaiting confirmation from the broker at once and publishing blocks only 
+ * when the window is full, for at most {@code Timeout} milliseconds (default
+ * 30000) before the frame is reported as an error. Any messages the broker 
+ * rejects are logged and reported as an error in the context. All 
+ * outstanding confirmations are waited for when the writer is closed.
+ * 
+ * <p>When {@code Batch} is greater than one and the format is JSON, that 
+ * many frames are packed into a single message as a JSON array, which 
+ * RabbitReader reads as individual frames. Any partial batch is sent when the
+ * writer is closed.
  */
 public class RabbitWriter extends AbstractFrameWriter implements FrameWriter, ConfigurableComponent {
 
   private static final String BINARY = "Binary";
   private static final String JSON = "JSON";
   private static final String XML = "XML";
+  private static final int DEFAULT_WINDOW = 1000;
+  private static final long DEFAULT_TIMEOUT = 30000;
   private Connection connection = null;
   private Channel channel = null;
+  private AMQP.BasicProperties properties = null;
+
+  /** Limits the number of messages awaiting confirmation, null if not confirming */
+  Semaphore window = null;
+  private int windowSize = DEFAULT_WINDOW;
+  private long timeout = DEFAULT_TIMEOUT;
+
+  /** Publish sequence numbers awaiting confirmation, mapped to their frame counts */
+  private final ConcurrentNavigableMap<Long, Integer> outstanding = new ConcurrentSkipListMap<Long, Integer>();
+  private final AtomicLong rejected = new AtomicLong();
+
+  private int batchSize = 1;
+  private final StringBuilder batch = new StringBuilder();
+  private int batchCount = 0;
 
 
 
@@ -134,6 +173,69 @@ public class RabbitWriter extends AbstractFrameWriter implements FrameWriter, Co
 
 
 
+  /**
+   * @return true if the broker is to confirm each published message
+   */
+  public boolean isConfirming() {
+    if (getConfiguration().containsIgnoreCase(ConfigTag.CONFIRM)) {
+      String fieldname = getConfiguration().getFieldIgnoreCase(ConfigTag.CONFIRM).getName();
+      return getConfiguration().getBoolean(fieldname);
+    }
+    return false;
+  }
+
+
+
+
+  /**
+   * @return the maximum number of messages which may be awaiting confirmation
+   */
+  public int getWindowSize() {
+    return getCount(ConfigTag.WINDOW, DEFAULT_WINDOW);
+  }
+
+
+
+
+  /**
+   * @return the number of milliseconds to wait for room in the window of messages awaiting confirmation
+   */
+  public long getTimeout() {
+    return getCount(ConfigTag.TIMEOUT, (int)DEFAULT_TIMEOUT);
+  }
+
+
+
+
+  /**
+   * @return the number of frames to pack into each message
+   */
+  public int getBatchSize() {
+    return getCount(ConfigTag.BATCH, 1);
+  }
+
+
+
+
+  private int getCount(String name, int defaultValue) {
+    if (getConfiguration().containsIgnoreCase(name)) {
+      String fieldname = getConfiguration().getFieldIgnoreCase(name).getName();
+      try {
+        int retval = getConfiguration().getInt(fieldname);
+        if (retval > 0) {
+          return retval;
+        }
+      } catch (Exception e) {
+        // fall through to the default
+      }
+      Log.warn(LogMsg.createMsg(CMQ.MSG, "Reader.config_attribute_is_not_valid_count", name, getConfiguration().getString(fieldname), defaultValue));
+    }
+    return defaultValue;
+  }
+
+
+
+
   /**
    * @see coyote.dx.writer.AbstractFrameFileWriter#open(coyote.dx.context.TransformContext)
    */
@@ -175,6 +277,34 @@ public class RabbitWriter extends AbstractFrameWriter implements FrameWriter, Co
       channel = connection.createChannel();
       channel.queueDeclare(getQueueName(), true, false, false, null);
 
+      if (isConfirming()) {
+        windowSize = getWindowSize();
+        timeout = getTimeout();
+        window = new Semaphore(windowSize);
+        properties = MessageProperties.PERSISTENT_BASIC;
+        channel.addConfirmListener(new ConfirmListener() {
+          @Override
+          public void handleAck(long deliveryTag, boolean multiple) {
+            confirmed(deliveryTag, multiple, true);
+          }
+
+
+
+
+          @Override
+          public void handleNack(long deliveryTag, boolean multiple) {
+            confirmed(deliveryTag, multiple, false);
+          }
+        });
+        channel.confirmSelect();
+      }
+
+      batchSize = getBatchSize();
+      if (batchSize > 1 && !JSON.equalsIgnoreCase(format)) {
+        Log.warn("Batching is only supported for the JSON format, sending one frame per message");
+        batchSize = 1;
+      }
+
     } catch (KeyManagementException | NoSuchAlgorithmException | URISyntaxException | IOException | TimeoutException | ShutdownSignalException | ConsumerCancelledException e) {
       Log.error(e.getClass().getSimpleName() + ":" + e.getMessage() + "\n" + ExceptionUtil.stackTrace(e));
       getContext().setError("Could not open " + getClass().getSimpleName() + ": " + e.getMessage());
@@ -190,59 +320,204 @@ public class RabbitWriter extends AbstractFrameWriter implements FrameWriter, Co
    */
   @Override
   public void write(DataFrame frame) {
-    if (frame != null) {
-      byte[] data;
-
+    if (frame != null && channel != null) {
       try {
-        String format = getFormat();
-        if (StringUtil.isNotBlank(format)) {
-
-          if (format.equalsIgnoreCase(BINARY)) {
-            data = frame.getBytes();
-          } else {
-            String datastring;
-            if (format.equalsIgnoreCase(JSON)) {
-              datastring = JSONMarshaler.marshal(frame);
-            } else if (format.equalsIgnoreCase(XML)) {
-              datastring = XMLMarshaler.marshal(frame);
-            } else {
-              Log.error("Unsupported message format of '" + format + "' JSON and XML are the currently supported options");
-              getContext().setError("Unsupported message format of '" + format + "'");
-              return;
-            }
-            String encoding = getEncoding();
-            if (StringUtil.isNotBlank(encoding)) {
-              try {
-                data = datastring.getBytes(encoding);
-              } catch (Exception e) {
-                Log.error("Unsupported string encoding of '" + encoding + "'");
-                getContext().setError("Unsupported string encoding of '" + encoding + "'");
-                return;
-              }
-            } else {
-              data = StringUtil.getBytes(datastring);
-            }
+        if (batchSize > 1) {
+          batch.append(batchCount == 0 ? '[' : ',').append(JSONMarshaler.marshal(frame));
+          if (++batchCount >= batchSize) {
+            sendBatch();
           }
         } else {
-          data = frame.getBytes();
+          byte[] data = encode(frame);
+          if (data != null) {
+            publish(data, 1);
+          }
         }
-
-        channel.basicPublish("", getQueueName(), null, data);
-        Log.debug("Sent " + data.length + " bytes to '" + getQueueName() + "'");
       } catch (IOException e) {
         Log.error(e.getClass().getSimpleName() + ":" + e.getMessage() + "\n" + ExceptionUtil.stackTrace(e));
+        getContext().setError("Could not publish to '" + getQueueName() + "': " + e.getMessage());
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Encode the frame in the configured message format.
+   * 
+   * @param frame the frame to encode
+   * 
+   * @return the body of the message or null if the frame could not be encoded
+   */
+  private byte[] encode(DataFrame frame) {
+    String format = getFormat();
+    if (StringUtil.isNotBlank(format)) {
+      if (format.equalsIgnoreCase(BINARY)) {
+        return frame.getBytes();
+      } else {
+        String datastring;
+        if (format.equalsIgnoreCase(JSON)) {
+          datastring = JSONMarshaler.marshal(frame);
+        } else if (format.equalsIgnoreCase(XML)) {
+          datastring = XMLMarshaler.marshal(frame);
+        } else {
+          Log.error("Unsupported message format of '" + format + "' JSON and XML are the currently supported options");
+          getContext().setError("Unsupported message format of '" + format + "'");
+          return null;
+        }
+        return toBytes(datastring);
+      }
+    } else {
+      return frame.getBytes();
+    }
+  }
+
+
+
+
+  /**
+   * @param datastring the text to convert
+   * 
+   * @return the text in the configured encoding or null if the encoding is not supported
+   */
+  private byte[] toBytes(String datastring) {
+    String encoding = getEncoding();
+    if (StringUtil.isNotBlank(encoding)) {
+      try {
+        return datastring.getBytes(encoding);
+      } catch (Exception e) {
+        Log.error("Unsupported string encoding of '" + encoding + "'");
+        getContext().setError("Unsupported string encoding of '" + encoding + "'");
+        return null;
+      }
+    } else {
+      return StringUtil.getBytes(datastring);
+    }
+  }
+
+
+
+
+  /**
+   * Send the frames accumulated in the current batch as a single JSON array.
+   */
+  private void sendBatch() throws IOException {
+    if (batchCount > 0) {
+      batch.append(']');
+      byte[] data = toBytes(batch.toString());
+      int frames = batchCount;
+      batch.setLength(0);
+      batchCount = 0;
+      if (data != null) {
+        publish(data, frames);
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Publish a message to the queue.
+   * 
+   * <p>When confirming, this blocks only while the window of messages 
+   * awaiting confirmation is full.
+   * 
+   * @param data the body of the message
+   * @param frames the number of frames in the message
+   */
+  private void publish(byte[] data, int frames) throws IOException {
+    if (window != null) {
+      try {
+        if (!window.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+          throw new IOException("Timed out waiting for the broker to confirm messages sent to '" + getQueueName() + "'");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for the broker to confirm messages sent to '" + getQueueName() + "'");
+      }
+
+      long sequence = channel.getNextPublishSeqNo();
+      outstanding.put(sequence, frames);
+      try {
+        channel.basicPublish("", getQueueName(), properties, data);
+      } catch (IOException | RuntimeException e) {
+        if (outstanding.remove(sequence) != null) {
+          window.release();
+        }
+        throw e;
+      }
+    } else {
+      channel.basicPublish("", getQueueName(), properties, data);
+    }
+    Log.debug("Sent " + data.length + " bytes to '" + getQueueName() + "'");
+  }
+
+
+
+
+  /**
+   * Called by the connection when the broker confirms (or rejects) one or 
+   * more published messages.
+   * 
+   * @param sequence the publish sequence number being confirmed
+   * @param multiple true if all the messages up to and including the sequence number are confirmed
+   * @param ack true if the messages were accepted, false if the broker rejected them
+   */
+  private void confirmed(long sequence, boolean multiple, boolean ack) {
+    int messages = 0;
+    long frames = 0;
+    if (multiple) {
+      NavigableMap<Long, Integer> confirmed = outstanding.headMap(sequence, true);
+      for (Integer count : confirmed.values()) {
+        messages++;
+        frames += count;
       }
+      confirmed.clear();
+    } else {
+      Integer count = outstanding.remove(sequence);
+      if (count != null) {
+        messages = 1;
+        frames = count;
+      }
+    }
+
+    if (!ack && messages > 0) {
+      rejected.addAndGet(frames);
+      Log.error(LogMsg.createMsg(CMQ.MSG, "Writer.messages_rejected", messages, frames, getQueueName()));
     }
+    window.release(messages);
   }
 
 
 
 
   /**
+   * Send any partial batch and wait for all outstanding confirmations before
+   * closing the connection.
+   * 
    * @see coyote.dx.writer.AbstractFrameFileWriter#close()
    */
   @Override
   public void close() throws IOException {
+    if (channel != null && channel.isOpen()) {
+      try {
+        sendBatch();
+        if (window != null && !window.tryAcquire(windowSize, timeout, TimeUnit.MILLISECONDS)) {
+          Log.error(LogMsg.createMsg(CMQ.MSG, "Writer.messages_not_confirmed", outstanding.size(), getQueueName()));
+          getContext().setError("Not all messages were confirmed by the broker");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (IOException e) {
+        Log.error(e.getClass().getSimpleName() + ":" + e.getMessage() + "\n" + ExceptionUtil.stackTrace(e));
+      }
+      if (rejected.get() > 0) {
+        getContext().setError("The broker rejected " + rejected.get() + " frames sent to '" + getQueueName() + "'");
+      }
+    }
+
     if (connection != null) {
       try {
         connection.close();
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017 Stephan D. Cote' - All rights reserved.
+ * 
+ * This program and the accompanying materials are made available under the 
+ * terms of the MIT License which accompanies this distribution, and is 
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+import coyote.dataframe.DataFrame;
+import coyote.dx.ConfigTag;
+import coyote.loader.cfg.Config;
+import coyote.mq.AbstractMessagingTest;
+
+
+/**
+ * Tests for the confirmation window of the RabbitWriter.
+ */
+public class RabbitWriterTest extends AbstractMessagingTest {
+  private static final String QUEUE_NAME = "rtw/window";
+  private static final long TIMEOUT = 500;
+
+
+
+
+  @Test
+  public void window() throws Exception {
+    Config cfg = new Config();
+    cfg.set(ConfigTag.TARGET, "amqp://localhost:" + broker.port);
+    cfg.set(ConfigTag.USERNAME, "guest");
+    cfg.set(ConfigTag.PASSWORD, "guest");
+    cfg.set(ConfigTag.QUEUE, QUEUE_NAME);
+    cfg.set(ConfigTag.USE_SSL, true);
+    cfg.set(ConfigTag.FORMAT, "Binary");
+    cfg.set(ConfigTag.CONFIRM, true);
+    cfg.set(ConfigTag.WINDOW, 2);
+    cfg.set(ConfigTag.TIMEOUT, TIMEOUT);
+
+    final RabbitWriter writer = new RabbitWriter();
+    writer.setConfiguration(cfg);
+    writer.open(getContext());
+    assertFalse(getContext().isInError());
+
+    // simulate a full window of messages the broker has not confirmed
+    final int held = writer.window.drainPermits();
+    assertEquals(2, held);
+    Thread confirmer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(TIMEOUT / 2);
+        } catch (InterruptedException ignore) {}
+        writer.window.release(held);
+      }
+    });
+    confirmer.start();
+
+    // publishing blocks until the confirmations make room in the window
+    long start = System.currentTimeMillis();
+    writer.write(new DataFrame().set("seq", 1));
+    assertTrue(System.currentTimeMillis() - start >= TIMEOUT / 2 - 50);
+    assertFalse(getContext().isInError());
+    confirmer.join();
+
+    // wait for the broker to confirm that message, then fill the window again
+    long endtime = System.currentTimeMillis() + 3000;
+    while (writer.window.availablePermits() < 2 && System.currentTimeMillis() < endtime) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, writer.window.drainPermits());
+
+    // the frame is not sent if there is no room before the timeout
+    start = System.currentTimeMillis();
+    writer.write(new DataFrame().set("seq", 2));
+    assertTrue(System.currentTimeMillis() - start >= TIMEOUT - 50);
+    assertTrue(getContext().isInError());
+
+    writer.window.release(2);
+    writer.close();
+    assertEquals(1, messageCount());
+  }
+
+
+
+
+  /**
+   * @return the number of messages waiting in the queue
+   */
+  private static long messageCount() throws Exception {
+    ConnectionFactory factory = new ConnectionFactory();
+    factory.setUri(broker.getBrokerUri());
+    factory.useSslProtocol();
+    try (Connection connection = factory.newConnection()) {
+      return connection.createChannel().messageCount(QUEUE_NAME);
+    }
+  }
+
+}
@@ -7,14 +7,21 @@
  */
 package coyote.mq;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
 
 import org.junit.Test;
 
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
 import coyote.dataframe.DataFrame;
 import coyote.dx.ConfigTag;
 import coyote.dx.FrameReader;
@@ -78,6 +85,144 @@ public class RabbitRoundTripTest extends AbstractMessagingTest {
 
 
 
+  /**
+   * Messages are acknowledged in batches once their transactions end, in 
+   * delivery order, and anything not acknowledged is redelivered after the 
+   * reader closes.
+   */
+  @Test
+  public void acknowledgeOnEnd() throws ConfigurationException, IOException {
+    Config cfg = config("rtw/ack");
+    cfg.set(ConfigTag.FORMAT, "Binary");
+    cfg.set(ConfigTag.PREFETCH, 4);
+
+    FrameWriter writer = new RabbitWriter();
+    writer.setConfiguration(cfg);
+    writer.open(getContext());
+    for (int x = 0; x < 10; x++) {
+      writer.write(new DataFrame().set("seq", x));
+    }
+    writer.close();
+
+    FrameReader reader = new RabbitReader();
+    reader.setConfiguration(cfg);
+    reader.open(getContext());
+
+    // more messages than the prefetch limit can only arrive if the ended ones were acknowledged
+    TransactionContext held = null;
+    for (int x = 0; x < 8; x++) {
+      TransactionContext txnContext = next(reader);
+      assertNotNull("Only received " + x + " messages", txnContext);
+      assertEquals(x, txnContext.getSourceFrame().getAsLong("seq").longValue());
+      if (x == 5) {
+        held = txnContext; // still in the pipeline when the reader closes
+      } else {
+        txnContext.end();
+      }
+    }
+    assertNotNull(held);
+    reader.close();
+
+    // the held message and those ended after it were not acknowledged
+    reader = new RabbitReader();
+    reader.setConfiguration(cfg);
+    reader.open(getContext());
+    TreeSet<Long> redelivered = new TreeSet<Long>();
+    for (TransactionContext txnContext = next(reader); txnContext != null; txnContext = next(reader)) {
+      redelivered.add(txnContext.getSourceFrame().getAsLong("seq"));
+      txnContext.end();
+    }
+    reader.close();
+    assertEquals("[5, 6, 7, 8, 9]", redelivered.toString());
+  }
+
+
+
+
+  /**
+   * A batch of frames is sent as one message which is read back as 
+   * individual frames.
+   */
+  @Test
+  public void batch() throws Exception {
+    Config cfg = config("rtw/batch");
+    cfg.set(ConfigTag.FORMAT, "JSON");
+    cfg.set(ConfigTag.BATCH, 5);
+
+    FrameWriter writer = new RabbitWriter();
+    writer.setConfiguration(cfg);
+    writer.open(getContext());
+    for (int x = 0; x < 12; x++) {
+      writer.write(new DataFrame().set("seq", x));
+    }
+    writer.close(); // sends the partial batch
+    assertEquals(3, messageCount("rtw/batch"));
+
+    FrameReader reader = new RabbitReader();
+    reader.setConfiguration(cfg);
+    reader.open(getContext());
+    for (int x = 0; x < 12; x++) {
+      TransactionContext txnContext = next(reader);
+      assertNotNull("Only received " + x + " frames", txnContext);
+      assertEquals(x, txnContext.getSourceFrame().getAsLong("seq").longValue());
+      txnContext.end();
+    }
+    reader.close();
+    assertEquals(0, messageCount("rtw/batch"));
+  }
+
+
+
+
+  /**
+   * @return the number of messages waiting in the given queue
+   */
+  private static long messageCount(String queue) throws Exception {
+    ConnectionFactory factory = new ConnectionFactory();
+    factory.setUri(broker.getBrokerUri());
+    factory.useSslProtocol();
+    try (Connection connection = factory.newConnection()) {
+      return connection.createChannel().messageCount(queue);
+    }
+  }
+
+
+
+
+  private Config config(String queue) {
+    Config cfg = new Config();
+    cfg.set(ConfigTag.SOURCE, "amqp://localhost:" + broker.port);
+    cfg.set(ConfigTag.TARGET, cfg.getAsString(ConfigTag.SOURCE));
+    cfg.set(ConfigTag.USERNAME, "guest");
+    cfg.set(ConfigTag.PASSWORD, "guest");
+    cfg.set(ConfigTag.QUEUE, queue);
+    cfg.set(ConfigTag.USE_SSL, true);
+    return cfg;
+  }
+
+
+
+
+  /**
+   * @return the transaction of the next frame read, or null if none arrived within 3 seconds
+   */
+  private TransactionContext next(FrameReader reader) {
+    long endtime = System.currentTimeMillis() + 3000;
+    while (System.currentTimeMillis() < endtime) {
+      TransactionContext txnContext = new TransactionContext(getContext());
+      getContext().setTransaction(txnContext);
+      DataFrame frame = reader.read(txnContext);
+      if (frame != null) {
+        txnContext.setSourceFrame(frame);
+        return txnContext;
+      }
+    }
+    return null;
+  }
+
+
+
+
   private void read(FrameReader reader, List<DataFrame> received) {
     TransactionContext txnContext = new TransactionContext(getContext());
     getContext().setTransaction(txnContext);
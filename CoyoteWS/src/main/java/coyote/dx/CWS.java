@@ -65,9 +65,19 @@ public class CWS {
   public static final String PAGINATION = "Pagination";
   private static final String STEP = "Step";
   private static final String START = "Start";
+  public static final String NEXT = "Next";
+  public static final String STREAM = "Stream";
 
   // For the WebServiceWriter
   public static final String RESPONSE_WRITER = "ResponseWriter";
+  public static final String RETRIES = "Retries";
+  public static final String BACKOFF = "Backoff";
+
+  // For the WebServiceLookup
+  public static final String CACHE_SIZE = "CacheSize";
+  public static final String CACHE_TTL = "CacheTTL";
+  public static final String NEGATIVE_TTL = "NegativeTTL";
+  public static final String CONCURRENCY = "Concurrency";
 
   // Message bundle for i18n
   public static final BundleBaseName MSG;
@@ -407,8 +417,9 @@ public class CWS {
         } catch (DataFrameException e) {
           throw new ConfigurationException("Configuration value '" + field.getName() + "' could not be parsed into a numeric value");
         }
-      } else {
-        throw new ConfigurationException("Pagination must contain a '" + STEP + "' value");
+      } else if (cfg.getFieldIgnoreCase(NEXT) == null) {
+        // cursor pagination follows the next link and needs no step
+        throw new ConfigurationException("Pagination must contain a '" + STEP + "' or '" + NEXT + "' value");
       }
 
       long start = 0;
@@ -22,6 +22,7 @@ import coyote.dx.context.TransactionContext;
 import coyote.dx.context.TransformContext;
 import coyote.dx.reader.WebServiceReader;
 import coyote.dx.web.Response;
+import coyote.dx.web.worker.WorkerPool;
 import coyote.dx.writer.WebServiceWriter;
 import coyote.i13n.SimpleMetric;
 
@@ -141,8 +142,8 @@ public class WebMetrics extends AbstractFileRecorder implements ContextListener
 
 
   private void performanceSummary() {
-    // TODO Auto-generated method stub
-
+    write( WorkerPool.getStatistics() );
+    write( StringUtil.LINE_FEED );
   }
 
 }
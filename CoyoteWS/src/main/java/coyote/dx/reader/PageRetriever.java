@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import coyote.commons.DataFrameUtil;
+import coyote.commons.StringUtil;
+import coyote.commons.template.SymbolTable;
+import coyote.commons.template.Template;
+import coyote.dataframe.DataField;
+import coyote.dataframe.DataFrame;
+import coyote.dataframe.selector.FrameSelector;
+import coyote.dx.CDX;
+import coyote.dx.Pagination;
+import coyote.dx.web.InvocationException;
+import coyote.dx.web.Resource;
+import coyote.dx.web.Response;
+import coyote.loader.log.Log;
+
+
+/**
+ * Retrieves the pages of a web service query one at a time, keeping requests
+ * for the following pages in progress while the current page is processed.
+ *
+ * <p>With offset (or page number) pagination, the URIs of the following
+ * pages are known in advance, so up to {@code prefetch} pages are requested
+ * at once and returned in order. A page with fewer records than the
+ * pagination step is the last page; any requests for pages past it are
+ * abandoned.
+ *
+ * <p>With cursor pagination, the URI of the next page is only known once the
+ * current page arrives. The {@code next} value names the field in the
+ * response which holds either the URL of the next page or a cursor which is
+ * placed in the {@code [name].cursor} symbol for the resource URL template.
+ * A value of {@code Link} uses the {@code rel="next"} link in the HTTP
+ * {@code Link} header of the response. The request for the next page is made
+ * as soon as the current page arrives and retrieval ends when a page has no
+ * next link or cursor. The cursor symbol is empty for the first page.
+ *
+ * <p>Each page is waited for up to the configured time-out. A page which
+ * does not arrive in time ends the retrieval and is reported as the error of
+ * the retriever.
+ *
+ * <p>Without pagination, a single request is made.
+ */
+class PageRetriever {
+  static final String LINK = "Link";
+
+  /** The default number of milliseconds to wait for a page, the same as the socket time-out of the workers */
+  static final long DEFAULT_TIMEOUT = 15 * 60 * 1000;
+
+  private final Resource resource;
+  private final String urlTemplate;
+  private final SymbolTable symbols;
+  private final Pagination pagination;
+  private final String selector;
+  private final String next;
+  private final int prefetch;
+  private final long timeout;
+  private final Deque<Response> inflight = new ArrayDeque<Response>();
+  private final List<String> visited = new ArrayList<String>();
+  private boolean exhausted = false;
+  private Response lastResponse = null;
+  private String error = null;
+
+
+
+
+  /**
+   * @param resource the resource to query
+   * @param urlTemplate the template of the resource URL
+   * @param symbols the symbols used to resolve the URL template
+   * @param pagination the offset pagination, may be null
+   * @param selector selects the records from each response, may be null
+   * @param next the name of the next link (or cursor) field, null for offset pagination
+   * @param prefetch the number of pages to have requested at once for offset pagination
+   * @param timeout the number of milliseconds to wait for each page, the default if not positive
+   */
+  PageRetriever(final Resource resource, final String urlTemplate, final SymbolTable symbols, final Pagination pagination, final String selector, final String next, final int prefetch, final long timeout) {
+    this.resource = resource;
+    this.urlTemplate = urlTemplate;
+    this.symbols = symbols;
+    this.pagination = pagination;
+    this.selector = selector;
+    this.next = StringUtil.isNotBlank(next) ? next : null;
+    this.prefetch = (this.next == null && pagination != null) ? Math.max(1, prefetch) : 1;
+    this.timeout = (timeout > 0) ? timeout : DEFAULT_TIMEOUT;
+    if (pagination != null) {
+      pagination.reset();
+    }
+  }
+
+
+
+
+  /**
+   * Return the records of the next page, waiting for it to arrive.
+   *
+   * @return the records of the next page (possibly empty) or null if there are no more pages
+   */
+  List<DataFrame> next() {
+    if (next == null) {
+      fill();
+    } else if (inflight.isEmpty() && !exhausted) {
+      // the first page of cursor pagination has no cursor
+      final SymbolTable pageSymbols = pageSymbols();
+      pageSymbols.put(getName() + ".cursor", "");
+      request(Template.preProcess(urlTemplate, pageSymbols));
+      exhausted = true;
+    }
+
+    final Response response = inflight.poll();
+    if (response == null) {
+      return null;
+    }
+    final long expiry = System.currentTimeMillis() + timeout;
+    while (!response.isComplete() && System.currentTimeMillis() < expiry) {
+      response.waitForComplete((int)Math.min(1000, Math.max(1, expiry - System.currentTimeMillis())));
+    }
+    lastResponse = response;
+    if (!response.isComplete()) {
+      error = "Page " + (visited.size() - inflight.size()) + " did not arrive within " + timeout + "ms";
+      Log.error(error);
+      exhausted = true;
+      inflight.clear();
+      return null;
+    }
+
+    final List<DataFrame> retval = new ArrayList<DataFrame>();
+    final DataFrame result = response.getResult();
+    long retrieved = 0;
+    if (result != null) {
+      if (StringUtil.isNotBlank(selector)) {
+        final List<DataFrame> results = new FrameSelector(selector, CDX.DEFAULT_FRAMEPATH_NAME).select(result);
+        retrieved = results.size();
+        Log.debug("Selected " + retrieved + " frames");
+        for (final DataFrame frame : results) {
+          retval.add(DataFrameUtil.flatten(frame));
+        }
+      } else {
+        // if no selector, place the entire result in the return value
+        retval.add(DataFrameUtil.flatten(result));
+      }
+    }
+
+    if (next != null) {
+      requestNext(response, result);
+    } else if (pagination == null || retrieved != pagination.getStep()) {
+      // this is the last page, abandon any requests past it
+      exhausted = true;
+      inflight.clear();
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @return the reason retrieval ended early or null if all the pages were retrieved
+   */
+  String getError() {
+    return error;
+  }
+
+
+
+
+  /**
+   * @return the response of the last page returned
+   */
+  Response getLastResponse() {
+    return lastResponse;
+  }
+
+
+
+
+  /**
+   * Keep the configured number of offset page requests in progress.
+   */
+  private void fill() {
+    while (!exhausted && inflight.size() < prefetch) {
+      request(Template.preProcess(urlTemplate, pageSymbols()));
+      if (pagination != null) {
+        pagination.step();
+      } else {
+        exhausted = true;
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Request the page after the one in the given response, if there is one.
+   */
+  private void requestNext(final Response response, final DataFrame result) {
+    String value = null;
+    if (LINK.equalsIgnoreCase(next)) {
+      value = response.getLink();
+    } else if (result != null) {
+      final DataField field = DataFrameUtil.flatten(result).getFieldIgnoreCase(next);
+      if (field != null) {
+        value = field.getStringValue();
+      }
+    }
+
+    if (StringUtil.isNotBlank(value)) {
+      String uri;
+      if (value.toLowerCase().startsWith("http:") || value.toLowerCase().startsWith("https:")) {
+        uri = value;
+      } else {
+        final SymbolTable pageSymbols = pageSymbols();
+        pageSymbols.put(getName() + ".cursor", value);
+        uri = Template.preProcess(urlTemplate, pageSymbols);
+      }
+      if (visited.contains(uri)) {
+        Log.warn("The next page link '" + uri + "' was already retrieved, ending retrieval");
+      } else {
+        request(uri);
+      }
+    }
+  }
+
+
+
+
+  private void request(final String uri) {
+    Log.debug("Retrieving batch for " + uri);
+    visited.add(uri);
+    try {
+      // the resource holds the request URI, so it is set and the request
+      // created together; the exchange itself runs asynchronously
+      synchronized (resource) {
+        resource.setBaseUri(uri);
+        inflight.add(resource.request());
+      }
+    } catch (final URISyntaxException | InvocationException e) {
+      Log.error("Could not retrieve " + uri + " - " + e.getClass().getSimpleName() + ": " + e.getMessage());
+      exhausted = true;
+    }
+  }
+
+
+
+
+  private SymbolTable pageSymbols() {
+    final SymbolTable retval = new SymbolTable();
+    retval.merge(symbols);
+    if (pagination != null) {
+      retval.merge(pagination.toSymbolTable());
+    }
+    return retval;
+  }
+
+
+
+
+  private String getName() {
+    return (pagination != null) ? pagination.getName() : "page";
+  }
+
+}
@@ -11,13 +11,11 @@
  */
 package coyote.dx.reader;
 
-import coyote.commons.DataFrameUtil;
 import coyote.commons.StringUtil;
 import coyote.commons.template.SymbolTable;
 import coyote.commons.template.Template;
 import coyote.dataframe.DataField;
 import coyote.dataframe.DataFrame;
-import coyote.dataframe.selector.FrameSelector;
 import coyote.dx.*;
 import coyote.dx.context.TransactionContext;
 import coyote.dx.context.TransformContext;
@@ -30,7 +28,6 @@ import coyote.loader.log.Log;
 import coyote.loader.log.LogMsg;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -58,6 +55,20 @@ import java.util.List;
  * those APIs which limit result limits. All results, regardless of the number 
  * of pages, are retrieved into memory before the read method returns the 
  * first data frame.
+ * 
+ * <p>When {@code Stream} is true, frames are returned as soon as the first 
+ * page arrives and only the current page is held in memory. The 
+ * {@code Prefetch} value sets the number of pages requested at once with 
+ * offset pagination (default 1) so the following pages are retrieved while 
+ * the current page is processed. APIs which return a cursor or a link to the 
+ * next page are followed by setting {@code Next} in the pagination section to 
+ * the name of the response field holding the cursor or link, or to 
+ * {@code Link} to follow the {@code Link} header of the response:<pre>
+ * "Pagination": { "Step": 100, "Next": "meta.next" }</pre>
+ * A cursor (a value which is not a URL) is placed in the 
+ * {@code [name].cursor} symbol for use in the source URL template; it is 
+ * empty for the first page. Each page is waited for up to {@code Timeout} 
+ * milliseconds (default 15 minutes) before the read fails.
  */
 public class WebServiceReader extends AbstractFrameReader implements FrameReader, ConfigurableComponent {
 
@@ -66,7 +77,9 @@ public class WebServiceReader extends AbstractFrameReader implements FrameReader
   private Response lastResponse = null;
   protected List<DataFrame> dataframes = null;
   private Pagination pagination = null;
+  private String nextField = null;
   private String resourceUrl = null;
+  private PageRetriever pages = null;
 
 
 
@@ -153,6 +166,10 @@ public class WebServiceReader extends AbstractFrameReader implements FrameReader
         if (field.isFrame()) {
           try {
             pagination = CWS.configPagination((DataFrame)field.getObjectValue());
+            DataField nfld = ((DataFrame)field.getObjectValue()).getFieldIgnoreCase(CWS.NEXT);
+            if (nfld != null) {
+              nextField = nfld.getStringValue();
+            }
             Log.debug("Using pagination settings: " + pagination.toString());
           } catch (ConfigurationException e) {
             Log.fatal(e);
@@ -237,11 +254,20 @@ public class WebServiceReader extends AbstractFrameReader implements FrameReader
     DataFrame retval = null;
 
     if (dataframes == null) {
-      dataframes = retrieveData();
+      if (isStreaming()) {
+        pages = createRetriever();
+        dataframes = nextPage();
+      } else {
+        dataframes = retrieveData();
+      }
     }
 
     if (dataframes.size() > 0) {
       retval = dataframes.remove(0);
+      if (dataframes.size() == 0 && pages != null) {
+        // wait for the next page to know if this is the last frame
+        dataframes = nextPage();
+      }
       if (dataframes.size() == 0) {
         context.setLastFrame(true);
       }
@@ -251,84 +277,90 @@ public class WebServiceReader extends AbstractFrameReader implements FrameReader
   }
 
 
+
+
   /**
    * @see java.io.Closeable#close()
    */
   @Override
   public void close() throws IOException {
     dataframes = null;
+    pages = null;
+    if (resource != null) {
+      resource.close();
+    }
     super.close();
   }
 
+
+
+
   /**
    * Read data from the web service call and populate a list of data frames 
    * representing the retrieved data.
    * 
+   * <p>All the pages are retrieved before returning, with the configured 
+   * number of pages requested at once.
+   * 
    * @return a list of retrieved data frames; it may be empty but never null.
    */
   protected List<DataFrame> retrieveData() {
     List<DataFrame> retval = new ArrayList<DataFrame>();
-
-    // If there is no pagination, create one
-    if (pagination == null) {
-      // use max long so only one read will occur
-      pagination = new Pagination(Long.MAX_VALUE);
+    PageRetriever retriever = createRetriever();
+    for (List<DataFrame> page = retriever.next(); page != null; page = retriever.next()) {
+      lastResponse = retriever.getLastResponse();
+      retval.addAll(page);
+    }
+    if (retriever.getError() != null) {
+      getContext().setError(retriever.getError());
     }
+    return retval;
+  }
 
-    // Create a symbol table to resolve the resource URI 
+
+
+
+  /**
+   * @return true if frames are to be returned as each page is retrieved 
+   *         instead of after all the pages are retrieved
+   */
+  protected boolean isStreaming() {
+    return getBoolean(CWS.STREAM);
+  }
+
+
+
+
+  /**
+   * @return a page retriever for the current resource, pagination and context
+   */
+  private PageRetriever createRetriever() {
     SymbolTable symbols = new SymbolTable();
     symbols.merge(getContext().getSymbols());
+    return new PageRetriever(resource, resourceUrl, symbols, pagination, getString(ConfigTag.SELECTOR), nextField, getInteger(ConfigTag.PREFETCH), getLong(ConfigTag.TIMEOUT));
+  }
 
-    long retrieved;
-    do {
-      retrieved = 0;
-      symbols.merge(pagination.toSymbolTable());
-      String uri = Template.preProcess(resourceUrl, symbols);
-      Log.debug("Retrieving batch for " + uri);
-      try {
-        resource.setBaseUri(uri);
-      } catch (URISyntaxException e) {
-        e.printStackTrace();
-      }
 
-      try {
-        lastResponse = resource.request();
-      } catch (InvocationException e) {
-        e.printStackTrace();
-      }
 
-      if (lastResponse != null) {
-        while (!lastResponse.isComplete()) {
-          Thread.yield();
-        }
-        // TODO: what about time-outs?
-        // TODO: What about errors?
-      }
 
-      if (lastResponse != null) {
-        DataFrame result = lastResponse.getResult();
-        // apply the selector to the results
-        String pattern = getString(ConfigTag.SELECTOR);
-        if (StringUtil.isNotBlank(pattern)) {
-          FrameSelector selector = new FrameSelector(pattern, CDX.DEFAULT_FRAMEPATH_NAME);
-          List<DataFrame> results = selector.select(result);
-          retrieved = results.size();
-          Log.debug("Selected " + retrieved + " frames");
-          // add the selected frames to the return value list
-          for (DataFrame frame : results) {
-            retval.add(DataFrameUtil.flatten(frame));
-          }
-        } else {
-          // if no selector, place the entire result in the return value
-          retval.add(DataFrameUtil.flatten(result));
+  /**
+   * Retrieve the next page with data when streaming.
+   * 
+   * @return the frames of the next page or an empty list if there are no more pages
+   */
+  private List<DataFrame> nextPage() {
+    List<DataFrame> retval = null;
+    while (pages != null && (retval == null || retval.isEmpty())) {
+      retval = pages.next();
+      lastResponse = pages.getLastResponse();
+      if (retval == null) {
+        if (pages.getError() != null) {
+          getContext().setError(pages.getError());
         }
+        pages = null;
       }
-      // set the variable to the next batch
-      pagination.step();
     }
-    while (retrieved == pagination.getStep());
-
-    return retval;
+    return (retval != null) ? retval : new ArrayList<DataFrame>();
   }
 
 
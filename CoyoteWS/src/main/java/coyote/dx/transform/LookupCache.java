@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.transform;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ * A bounded cache of lookup results keyed by the request which produced them.
+ *
+ * <p>Entries are evicted in least-recently-used order when the cache is full
+ * and expire after a time-to-live. A lookup which found nothing (a null
+ * result) is cached as a negative entry with its own time-to-live so repeated
+ * requests for missing data do not each go to the service.
+ *
+ * <p>Concurrent lookups of the same key are coalesced; only the first caller
+ * invokes the loader and the others wait for and share its result. A loader
+ * which throws an exception is not cached and the exception is passed to all
+ * the callers waiting on that key.
+ */
+class LookupCache {
+
+  private final int capacity;
+  private final long ttl;
+  private final long negativeTtl;
+  private final Map<String, Entry> entries;
+  private final ConcurrentHashMap<String, CompletableFuture<DataFrame>> inflight = new ConcurrentHashMap<String, CompletableFuture<DataFrame>>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+
+
+
+
+  /**
+   * @param capacity the maximum number of entries to hold, 0 disables caching
+   * @param ttl milliseconds a result remains valid, 0 for no expiry
+   * @param negativeTtl milliseconds a negative (null) result remains valid, 0 to not cache negative results
+   */
+  LookupCache(final int capacity, final long ttl, final long negativeTtl) {
+    this.capacity = capacity;
+    this.ttl = ttl;
+    this.negativeTtl = negativeTtl;
+    entries = new LinkedHashMap<String, Entry>(16, 0.75F, true) {
+      private static final long serialVersionUID = 1L;
+
+
+
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+        return size() > LookupCache.this.capacity;
+      }
+    };
+  }
+
+
+
+
+  /**
+   * Return the result for the given key, calling the loader only if there is
+   * no valid cached entry and no other lookup of that key is in progress.
+   *
+   * @param key the key identifying the request
+   * @param loader the call which performs the request, returning null if nothing was found
+   *
+   * @return the (possibly cached) result, null if nothing was found
+   *
+   * @throws Exception if the loader failed
+   */
+  DataFrame lookup(final String key, final Callable<DataFrame> loader) throws Exception {
+    final Entry entry = get(key);
+    if (entry != null) {
+      hits.incrementAndGet();
+      return entry.result;
+    }
+
+    final CompletableFuture<DataFrame> future = new CompletableFuture<DataFrame>();
+    final CompletableFuture<DataFrame> existing = inflight.putIfAbsent(key, future);
+    if (existing != null) {
+      coalesced.incrementAndGet();
+      try {
+        return existing.get();
+      } catch (final ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+          throw (Exception)e.getCause();
+        }
+        throw e;
+      }
+    }
+
+    misses.incrementAndGet();
+    try {
+      final DataFrame result = loader.call();
+      put(key, result);
+      future.complete(result);
+      return result;
+    } catch (final Exception e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inflight.remove(key);
+    }
+  }
+
+
+
+
+  /**
+   * @param key the key of the entry
+   *
+   * @return the valid entry for the key or null if there is no entry or it has expired
+   */
+  private Entry get(final String key) {
+    synchronized (entries) {
+      final Entry retval = entries.get(key);
+      if (retval != null && retval.expires > 0 && retval.expires <= System.currentTimeMillis()) {
+        entries.remove(key);
+        return null;
+      }
+      return retval;
+    }
+  }
+
+
+
+
+  private void put(final String key, final DataFrame result) {
+    final long life = (result != null) ? ttl : negativeTtl;
+    if (capacity > 0 && (result != null || negativeTtl > 0)) {
+      synchronized (entries) {
+        entries.put(key, new Entry(result, (life > 0) ? System.currentTimeMillis() + life : 0));
+      }
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of entries currently cached
+   */
+  int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+
+
+
+  /**
+   * @return the number of lookups answered from the cache
+   */
+  long getHits() {
+    return hits.get();
+  }
+
+
+
+
+  /**
+   * @return the number of lookups which called the loader
+   */
+  long getMisses() {
+    return misses.get();
+  }
+
+
+
+
+  /**
+   * @return the number of lookups which waited on an identical lookup in progress
+   */
+  long getCoalesced() {
+    return coalesced.get();
+  }
+
+
+
+
+  /**
+   * A cached result and the time it expires.
+   */
+  private static class Entry {
+    final DataFrame result;
+    final long expires;
+
+
+
+
+    Entry(final DataFrame result, final long expires) {
+      this.result = result;
+      this.expires = expires;
+    }
+  }
+
+}
@@ -1,22 +1,410 @@
 /*
  * Copyright (c) 2017 Stephan D. Cote' - All rights reserved.
- * 
- * This program and the accompanying materials are made available under the 
- * terms of the MIT License which accompanies this distribution, and is 
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
  * available at http://creativecommons.org/licenses/MIT/
  *
  * Contributors:
- *   Stephan D. Cote 
+ *   Stephan D. Cote
  *      - Initial concept and implementation
  */
 package coyote.dx.transform;
 
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import coyote.commons.DataFrameUtil;
+import coyote.commons.StringUtil;
+import coyote.commons.template.SymbolTable;
+import coyote.commons.template.Template;
+import coyote.dataframe.DataField;
+import coyote.dataframe.DataFrame;
+import coyote.dataframe.selector.FrameSelector;
+import coyote.dx.CDX;
+import coyote.dx.CWS;
+import coyote.dx.ConfigTag;
+import coyote.dx.FrameTransform;
+import coyote.dx.TransformException;
+import coyote.dx.context.TransformContext;
+import coyote.dx.web.InvocationException;
+import coyote.dx.web.Parameters;
+import coyote.dx.web.Proxy;
+import coyote.dx.web.Resource;
+import coyote.dx.web.Response;
+import coyote.dx.web.auth.AuthenticationException;
+import coyote.dx.web.auth.Authenticator;
+import coyote.dx.web.auth.NullAuthenticator;
+import coyote.loader.cfg.ConfigurationException;
+import coyote.loader.log.Log;
+import coyote.loader.log.LogMsg;
+
+
 /**
- * The vision for this component is to perform a web service lookup of a value 
- * and place the results in the working frame.
- * 
- * <p>The configuration for this transform can get complex and not expected to be easy to read. 
+ * Performs a web service lookup for each frame and places selected values
+ * from the response in the working frame.
+ *
+ * <p>The {@code target} URL, the optional {@code path} and the string values
+ * of the optional {@code Body} section are templates resolved against the
+ * fields of the frame being processed (and the context symbols), so each
+ * frame can make a different request:<pre>
+ * "WebServiceLookup": {
+ *   "target": "https://api.example.com/customers/[#$customer_id#]",
+ *   "Protocol": { "ExchangeType": "JSON_HTTP", "Method": "GET" },
+ *   "Selector": "customer",
+ *   "Fields": { "name": "customer_name", "tier": "customer_tier" },
+ *   "CacheSize": 10000, "CacheTTL": 600000, "Concurrency": 8
+ * }</pre>
+ *
+ * <p>{@code Fields} maps the names of the response fields to the names of the
+ * fields to set in the frame. If omitted, all the fields of the response are
+ * placed in the frame. {@code Selector} optionally selects the part of the
+ * response to use. The {@code Proxy}, {@code Authenticator}, {@code Protocol}
+ * and {@code Decorator} sections are the same as those of the
+ * WebServiceReader and WebServiceWriter.
+ *
+ * <p>Responses are cached by request (URL and body). {@code CacheSize}
+ * (default 1000, 0 disables the cache) limits the number of responses held,
+ * the least recently used being evicted first. {@code CacheTTL} is the number
+ * of milliseconds a response remains valid (default 0, no expiry). A request
+ * which finds nothing (a 404 or 410, or no selected data) is cached for
+ * {@code NegativeTTL} milliseconds (default 60000, 0 disables). Failed
+ * requests are never cached and leave the frame unchanged.
+ *
+ * <p>When the engine processes frames concurrently (i.e. it is pipelined),
+ * identical requests in progress at the same time are made only once and
+ * {@code Concurrency} (default 4) limits the number of requests the lookup
+ * will have in progress at once. {@code timeout} is the number of
+ * milliseconds to wait for each response (default 30000).
  */
-public class WebServiceLookup {
+public class WebServiceLookup extends AbstractFrameTransform implements FrameTransform {
+  private static final int DEFAULT_CACHE_SIZE = 1000;
+  private static final long DEFAULT_NEGATIVE_TTL = 60000;
+  private static final int DEFAULT_CONCURRENCY = 4;
+  private static final int DEFAULT_TIMEOUT = 30000;
+
+  private Resource resource = null;
+  private Authenticator authenticator = new NullAuthenticator();
+  private Proxy proxy = null;
+  private DataFrame protocol = null;
+  private DataFrame body = null;
+  private String targetUrl = null;
+  private String servicePath = null;
+  private String selector = null;
+  private DataFrame fieldMap = null;
+  private int timeout = DEFAULT_TIMEOUT;
+  private Semaphore permits = null;
+  private LookupCache cache = null;
+
+
+
+
+  /**
+   * @see coyote.dx.transform.AbstractFrameTransform#open(coyote.dx.context.TransformContext)
+   */
+  @Override
+  public void open(final TransformContext context) {
+    super.open(context);
+
+    targetUrl = getString(ConfigTag.TARGET);
+    if (StringUtil.isBlank(targetUrl)) {
+      context.setError("The Lookup configuration did not contain the '" + ConfigTag.TARGET + "' element");
+      context.setState("Configuration Error");
+      return;
+    }
+    servicePath = getString(ConfigTag.PATH);
+    selector = getString(ConfigTag.SELECTOR);
+
+    for (DataField field : getConfiguration().getFields()) {
+      if (field.getName() == null) {
+        continue;
+      }
+      if (field.getName().equalsIgnoreCase(CWS.AUTHENTICATOR)) {
+        if (field.isFrame()) {
+          try {
+            authenticator = CWS.configAuthenticator((DataFrame)field.getObjectValue());
+          } catch (ConfigurationException e) {
+            Log.fatal(e);
+            context.setError("Could not create authenticator: " + e.getMessage());
+            return;
+          }
+        } else {
+          Log.error("Invalid authenticator configuration, expected a section not an attribute");
+        }
+      } else if (field.getName().equalsIgnoreCase(CWS.PROXY)) {
+        if (field.isFrame()) {
+          try {
+            proxy = CWS.configProxy((DataFrame)field.getObjectValue());
+          } catch (ConfigurationException e) {
+            Log.fatal(e);
+            context.setError("Could not configure proxy: " + e.getMessage());
+            return;
+          }
+        } else {
+          context.setError("Invalid proxy configuration, expected a section not a scalar");
+          context.setState("Configuration Error");
+          return;
+        }
+      } else if (field.getName().equalsIgnoreCase(CWS.PROTOCOL)) {
+        if (field.isFrame()) {
+          protocol = (DataFrame)field.getObjectValue();
+          try {
+            // validate it now rather than on the first lookup
+            CWS.configParameters(protocol, getContext());
+          } catch (ConfigurationException e) {
+            Log.fatal(e);
+            context.setError("Could not configure protocol: " + e.getMessage());
+            return;
+          }
+        } else {
+          context.setError("Invalid protocol configuration, expected a section not an attribute");
+          context.setState("Configuration Error");
+          return;
+        }
+      } else if (field.getName().equalsIgnoreCase(CWS.BODY) && field.isFrame()) {
+        body = (DataFrame)field.getObjectValue();
+      } else if (field.getName().equalsIgnoreCase(ConfigTag.FIELDS) && field.isFrame()) {
+        fieldMap = (DataFrame)field.getObjectValue();
+      }
+    }
+
+    int cacheSize = containsIgnoreCase(CWS.CACHE_SIZE) ? Math.max(0, getInteger(CWS.CACHE_SIZE)) : DEFAULT_CACHE_SIZE;
+    long ttl = containsIgnoreCase(CWS.CACHE_TTL) ? Math.max(0, getLong(CWS.CACHE_TTL)) : 0;
+    long negativeTtl = containsIgnoreCase(CWS.NEGATIVE_TTL) ? Math.max(0, getLong(CWS.NEGATIVE_TTL)) : DEFAULT_NEGATIVE_TTL;
+    int concurrency = containsIgnoreCase(CWS.CONCURRENCY) ? Math.max(1, getInteger(CWS.CONCURRENCY)) : DEFAULT_CONCURRENCY;
+    if (containsIgnoreCase(ConfigTag.TIMEOUT) && getInteger(ConfigTag.TIMEOUT) > 0) {
+      timeout = getInteger(ConfigTag.TIMEOUT);
+    }
+    cache = new LookupCache(cacheSize, ttl, negativeTtl);
+    permits = new Semaphore(concurrency);
+
+    try {
+      resource = new Resource(targetUrl, null, proxy);
+      resource.setAuthenticator(authenticator);
+
+      for (DataField field : getConfiguration().getFields()) {
+        if (field.getName() != null && field.getName().equalsIgnoreCase(CWS.DECORATOR)) {
+          if (field.isFrame()) {
+            DataFrame cfgFrame = (DataFrame)field.getObjectValue();
+            for (DataField cfgfield : cfgFrame.getFields()) {
+              if (cfgfield.isFrame()) {
+                if (StringUtil.isNotBlank(cfgfield.getName())) {
+                  CWS.configDecorator(cfgfield.getName(), (DataFrame)cfgfield.getObjectValue(), resource, getContext());
+                } else {
+                  Log.error(LogMsg.createMsg(CWS.MSG, "Decorator.configuration_must_be_named"));
+                }
+              } else {
+                Log.error(LogMsg.createMsg(CWS.MSG, "Decorator.invalid_decorator_configuration_section"));
+              }
+            }
+          } else {
+            Log.error(LogMsg.createMsg(CWS.MSG, "Decorator.invalid_decorator_configuration_section"));
+          }
+        }
+      }
+
+      resource.open();
+    } catch (IOException e) {
+      context.setError("The Lookup could not connect the resource: " + e.getMessage());
+      context.setState("Connection Error");
+      return;
+    } catch (AuthenticationException e) {
+      context.setError("The Lookup could not authenticate the resource: " + e.getMessage());
+      context.setState("Authentication Error");
+      return;
+    }
+
+    Log.debug(LogMsg.createMsg(CWS.MSG, "Lookup.init_complete", resource, cacheSize, concurrency));
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.FrameTransform#process(coyote.dataframe.DataFrame)
+   */
+  @Override
+  public DataFrame process(final DataFrame frame) throws TransformException {
+    if (frame == null || resource == null) {
+      return frame;
+    }
+
+    final SymbolTable symbols = new SymbolTable();
+    if (getContext().getSymbols() != null) {
+      symbols.merge(getContext().getSymbols());
+    }
+    for (DataField field : frame.getFields()) {
+      if (field.getName() != null) {
+        symbols.put(field.getName(), field.getStringValue());
+      }
+    }
+
+    final String uri = Template.resolve(targetUrl, symbols);
+    final String path = (servicePath != null) ? Template.resolve(servicePath, symbols) : null;
+    final DataFrame payload = (body != null) ? resolve(body, symbols) : null;
+
+    StringBuilder key = new StringBuilder(uri);
+    if (path != null) {
+      key.append(path);
+    }
+    if (payload != null) {
+      key.append('\n').append(payload.toString());
+    }
+
+    try {
+      DataFrame result = cache.lookup(key.toString(), () -> invoke(uri, path, payload));
+      if (result != null) {
+        merge(result, frame);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TransformException("Interrupted during lookup of " + key);
+    } catch (Exception e) {
+      Log.warn(LogMsg.createMsg(CWS.MSG, "Lookup.failed", key, e.getMessage()));
+    }
+
+    return frame;
+  }
+
+
+
+
+  /**
+   * Make the request to the service.
+   *
+   * @param uri the resolved URI of the resource
+   * @param path the resolved path, may be null
+   * @param payload the resolved request payload, may be null
+   *
+   * @return the selected response data or null if the service found nothing
+   *
+   * @throws Exception if the request failed
+   */
+  private DataFrame invoke(final String uri, final String path, final DataFrame payload) throws Exception {
+    final Parameters params = (protocol != null) ? CWS.configParameters(protocol, getContext()) : new Parameters();
+    params.setPayload(payload);
+
+    Response response;
+    permits.acquire();
+    try {
+      // the resource holds the request URI, so only one thread may set it and
+      // create a request at a time; the exchange itself runs asynchronously
+      synchronized (resource) {
+        try {
+          resource.setBaseUri(uri);
+          resource.setPath(path);
+        } catch (URISyntaxException e) {
+          throw new InvocationException("Invalid lookup URI: " + e.getMessage());
+        }
+        response = resource.request(params);
+      }
+      response.waitForComplete(timeout);
+    } finally {
+      permits.release();
+    }
+
+    if (!response.isComplete()) {
+      throw new IOException("No response after " + timeout + "ms");
+    }
+
+    final int status = response.getHttpStatusCode();
+    if (status >= 200 && status < 300) {
+      return select(response.getResult());
+    } else if (status == 404 || status == 410) {
+      return null;
+    } else {
+      throw new IOException("HTTP " + status + " " + response.getHttpStatusPhrase());
+    }
+  }
+
+
+
+
+  /**
+   * Apply the selector (if any) to the response data.
+   *
+   * @param result the response data
+   *
+   * @return the flattened selection or null if there is nothing selected
+   */
+  private DataFrame select(final DataFrame result) {
+    DataFrame retval = result;
+    if (result != null && StringUtil.isNotBlank(selector)) {
+      List<DataFrame> results = new FrameSelector(selector, CDX.DEFAULT_FRAMEPATH_NAME).select(result);
+      retval = (results.size() > 0) ? results.get(0) : null;
+    }
+    return (retval != null) ? DataFrameUtil.flatten(retval) : null;
+  }
+
+
+
+
+  /**
+   * Place the configured fields of the result in the frame.
+   *
+   * @param result the (cached) lookup result, which is not modified
+   * @param frame the frame to enrich
+   */
+  private void merge(final DataFrame result, final DataFrame frame) {
+    if (fieldMap != null) {
+      for (DataField mapping : fieldMap.getFields()) {
+        DataField field = result.getFieldIgnoreCase(mapping.getName());
+        if (field != null) {
+          String name = StringUtil.isNotBlank(mapping.getStringValue()) ? mapping.getStringValue() : mapping.getName();
+          frame.put(name, field.getObjectValue());
+        }
+      }
+    } else {
+      for (DataField field : result.getFields()) {
+        if (field.getName() != null) {
+          frame.put(field.getName(), field.getObjectValue());
+        }
+      }
+    }
+  }
+
+
+
+
+  /**
+   * Resolve the string values of the given frame as templates.
+   *
+   * @param cfg the frame to resolve
+   * @param symbols the symbols to use
+   *
+   * @return a resolved copy of the frame
+   */
+  private static DataFrame resolve(final DataFrame cfg, final SymbolTable symbols) {
+    DataFrame retval = new DataFrame();
+    for (DataField field : cfg.getFields()) {
+      if (field.isFrame()) {
+        retval.add(field.getName(), resolve((DataFrame)field.getObjectValue(), symbols));
+      } else if (field.getType() == DataField.STRING) {
+        retval.add(field.getName(), Template.resolve(field.getStringValue(), symbols));
+      } else {
+        retval.add((DataField)field.clone());
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  /**
+   * @see coyote.dx.transform.AbstractFrameTransform#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (cache != null) {
+      Log.debug(LogMsg.createMsg(CWS.MSG, "Lookup.statistics", cache.getMisses(), cache.getHits(), cache.getCoalesced()));
+    }
+    if (resource != null) {
+      resource.close();
+    }
+    super.close();
+  }
 
 }
@@ -76,6 +76,30 @@ public class Parameters {
 
 
 
+  /**
+   * Create a copy of the given parameters.
+   * 
+   * <p>The payload and body of the copy can then be changed without 
+   * affecting any requests still in progress with the original.
+   * 
+   * @param params the parameters to copy
+   */
+  public Parameters( final Parameters params ) {
+    if ( params != null ) {
+      soapOperation = params.soapOperation;
+      soapNamespace = params.soapNamespace;
+      method = params.method;
+      exchangeType = params.exchangeType;
+      payload = params.payload;
+      body = params.body;
+      acceptTypes.addAll( params.acceptTypes );
+      contentType = params.contentType;
+    }
+  }
+
+
+
+
   /**
    * Create a SOAP namespace with a prefix and the URL describing the prefix.
    * 
@@ -16,7 +16,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import coyote.commons.StringUtil;
 import coyote.dx.web.auth.AuthenticationException;
@@ -38,8 +40,8 @@ public class Resource implements Closeable {
   /** optional decorators which enrich the requests before they are submitted */
   private final List<RequestDecorator> requestDecorators = new ArrayList<RequestDecorator>();
 
-  /** The worker which handles the specific protocol for the resource  */
-  private volatile ResourceWorker worker;
+  /** The workers which handle the specific protocols for the resource, by exchange type and host */
+  private final Map<String, ResourceWorker> workers = new HashMap<String, ResourceWorker>();
 
   /** The default request parameters (can be overridden on the request) */
   private final Parameters defaultParameters;
@@ -203,14 +205,17 @@ public class Resource implements Closeable {
 
 
   /**
-   * Close all resources (i,e, the worker) allocated to this resource.
+   * Close all resources (i,e, the workers) allocated to this resource.
    * 
    * @see java.io.Closeable#close()
    */
   @Override
   public void close() throws IOException {
-    if (worker != null) {
-      worker.close();
+    synchronized (workers) {
+      for (ResourceWorker worker : workers.values()) {
+        worker.close();
+      }
+      workers.clear();
     }
   }
 
@@ -374,6 +379,10 @@ public class Resource implements Closeable {
   /**
    * Return the ResourceWorker for the exchange type in the given parameters.
    * 
+   * <p>Workers are created once for each exchange type and host and reused 
+   * for subsequent requests. A new worker is created if the base URI of the
+   * resource is changed to another host.
+   * 
    * @param params The parameters containing the exchange type
    * 
    * @return ResourceWorker for the exchange type in the given parameters or 
@@ -382,10 +391,20 @@ public class Resource implements Closeable {
    *         parameters.
    */
   private ResourceWorker getWorker(Parameters params) {
-    if (params != null && params.getExchangeType() != null) {
-      return params.getExchangeType().getWorker(this);
-    } else {
-      return getWorker(defaultParameters);
+    ExchangeType type = (params != null) ? params.getExchangeType() : null;
+    if (type == null) {
+      type = (defaultParameters.getExchangeType() != null) ? defaultParameters.getExchangeType() : ExchangeType.HTML;
+    }
+    String key = type.toString() + " " + getScheme() + "://" + getHost() + ":" + getPort();
+    synchronized (workers) {
+      ResourceWorker retval = workers.get(key);
+      if (retval == null) {
+        retval = type.getWorker(this);
+        if (retval != null) {
+          workers.put(key, retval);
+        }
+      }
+      return retval;
     }
   }
 
@@ -545,7 +545,9 @@ public class Response {
    * request should go for the requested resource.
    * 
    * <p>Not all responses will contain a link. The most common scenario is when 
-   * the status code is in the 300 series.</p>
+   * the status code is in the 300 series. Successful responses carry the link
+   * to the next page of results when the service paginates its results with
+   * a {@code Link} header.</p>
    * 
    * @return the link set in this response
    */
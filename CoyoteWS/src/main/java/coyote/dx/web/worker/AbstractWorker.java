@@ -17,6 +17,7 @@ import org.apache.http.*;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.NTCredentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.RequestConfig;
@@ -24,6 +25,7 @@ import org.apache.http.client.methods.*;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -37,7 +39,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -54,8 +55,10 @@ public abstract class AbstractWorker implements ResourceWorker {
 
     // This is the persistent http client we will use to send all our requests
     protected CloseableHttpClient httpClient;
-    // Create a context in which we will execute our request
-    protected final HttpClientContext localContext = HttpClientContext.create();
+    // The credentials placed in the context of each request, null if there are none
+    protected CredentialsProvider credentialsProvider = null;
+    // Hosts which have challenged us, shared so only the first request is challenged
+    protected final AuthCache authCache = new BasicAuthCache();
 
     // HTTP Client configuration settings
     protected RequestConfig config;
@@ -76,9 +79,9 @@ public abstract class AbstractWorker implements ResourceWorker {
         // so as to allow configuration of many different aspects of the connection
         // process
 
-        // Define and configure the Connection Manager
-        final PoolingHttpClientConnectionManager connMgr = new PoolingHttpClientConnectionManager();
-        connMgr.closeIdleConnections(15, TimeUnit.MINUTES);
+        // All workers share one connection manager so connections to a host
+        // are pooled and reused across resources
+        final PoolingHttpClientConnectionManager connMgr = WorkerPool.getConnectionManager();
 
         // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
         // our own keep-alive strategy
@@ -107,8 +110,8 @@ public abstract class AbstractWorker implements ResourceWorker {
         };
         // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
-        // Define and configure the client
-        httpClient = HttpClientBuilder.create().setConnectionManager(connMgr).setKeepAliveStrategy(myStrategy).build();
+        // Define and configure the client, closing it must not close the shared pool
+        httpClient = HttpClientBuilder.create().setConnectionManager(connMgr).setConnectionManagerShared(true).setKeepAliveStrategy(myStrategy).build();
 
         // Setup our HTTP fixtures
         target = new HttpHost(resource.getHost(), resource.getPort(), resource.getScheme());
@@ -131,7 +134,7 @@ public abstract class AbstractWorker implements ResourceWorker {
 
         // If we have credentials, set them in the local client context
         if ((resource.getAuthenticator().getUsername() != null) && (resource.getAuthenticator().getPassword() != null)) {
-            final CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider = new BasicCredentialsProvider();
 
             // If we have proxy credentials, add them
             if (resource.getProxySettings() != null) {
@@ -147,14 +150,32 @@ public abstract class AbstractWorker implements ResourceWorker {
             credentialsProvider.setCredentials(new AuthScope(target.getHostName(), target.getPort()), new UsernamePasswordCredentials(resource.getAuthenticator().getUsername(), resource.getAuthenticator().getPassword()));
             log.debug("Adding basic auth credential support for %s", resource.getAuthenticator().getUsername());
 
-            // place the credentials provider in the client context
-            localContext.setCredentialsProvider(credentialsProvider);
-
         }
 
     }
 
 
+    /**
+     * Create the context in which a single request is executed.
+     *
+     * <p>Workers are cached by the resource and their requests run on the
+     * shared worker threads at the same time, so each request needs its own
+     * context; the auth and cookie state an HttpClientContext accumulates is
+     * not thread-safe. The credentials provider and auth cache are
+     * thread-safe and are shared by all the contexts.</p>
+     *
+     * @return a new context containing the credentials of this worker
+     */
+    protected HttpClientContext createContext() {
+        final HttpClientContext retval = HttpClientContext.create();
+        if (credentialsProvider != null) {
+            retval.setCredentialsProvider(credentialsProvider);
+            retval.setAuthCache(authCache);
+        }
+        return retval;
+    }
+
+
     @Override
     public void close() throws IOException {
         log.debug("Closing Worker...");
@@ -168,6 +189,41 @@ public abstract class AbstractWorker implements ResourceWorker {
     }
 
 
+    /**
+     * Find the URL of the next page in the {@code Link} headers of a response,
+     * as in {@code Link: <https://host/items?page=2>; rel="next"}.
+     *
+     * @param httpResponse the response to search
+     *
+     * @return the URL with a relation of "next" or null if there is none
+     */
+    protected static String getNextLink(final HttpResponse httpResponse) {
+        for (final Header header : httpResponse.getHeaders("Link")) {
+            // links are separated by commas, which may also appear in URLs
+            for (final String link : header.getValue().split(",(?=\\s*<)")) {
+                final int start = link.indexOf('<');
+                final int end = link.indexOf('>', start + 1);
+                if (start < 0 || end < 0) {
+                    continue;
+                }
+                for (final String param : link.substring(end + 1).split(";")) {
+                    final int eq = param.indexOf('=');
+                    if (eq > 0 && "rel".equalsIgnoreCase(param.substring(0, eq).trim())) {
+                        for (final String rel : param.substring(eq + 1).replace('"', ' ').trim().split("\\s+")) {
+                            if ("next".equalsIgnoreCase(rel)) {
+                                return link.substring(start + 1, end).trim();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+
+
+
     /**
      * This method enriches the given HTTP Request with any additional headers
      * required by the SOA environment.
@@ -302,9 +358,8 @@ public abstract class AbstractWorker implements ResourceWorker {
 
         setRequestHeaders(request, params);
 
-        // execute the request in a separate thread
-        final Thread thread = new Thread(new RequestRunner(request, retval, params));
-        thread.start();
+        // execute the request on the shared worker threads
+        WorkerPool.getExecutor().execute(new RequestRunner(request, retval, params));
 
         // return the results of processing the request
         return retval;
@@ -364,7 +419,7 @@ public abstract class AbstractWorker implements ResourceWorker {
             response.transactionStart();
             response.requestStart();
 
-            try (CloseableHttpResponse httpResponse = httpClient.execute(target, request, localContext)) {
+            try (CloseableHttpResponse httpResponse = httpClient.execute(target, request, createContext())) {
                 response.requestEnd();
 
                 final int status = httpResponse.getStatusLine().getStatusCode();
@@ -374,6 +429,11 @@ public abstract class AbstractWorker implements ResourceWorker {
                 log.debug("Request:\r\n    %s\r\nResponse:\r\n    %s", request.toString(), httpResponse.getStatusLine().toString());
                 if ((status >= 200) && (status < 300)) {
                     log.debug("Success - %s", httpResponse.getStatusLine().toString());
+                    // paginated APIs may link to the next page in the headers
+                    final String next = getNextLink(httpResponse);
+                    if (next != null) {
+                        response.setLink(next);
+                    }
                 } else if ((status >= 300) && (status < 400)) {
                     final String errmsg = "Unexpected Response - " + httpResponse.getStatusLine().toString();
                     log.debug(errmsg);
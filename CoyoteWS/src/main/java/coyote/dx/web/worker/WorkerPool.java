@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.web.worker;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import coyote.commons.DaemonThreadFactory;
+import coyote.loader.log.Log;
+
+
+/**
+ * The threads and connections shared by all the workers in the process.
+ *
+ * <p>Requests are executed on a single pool of daemon threads instead of a
+ * new thread for each request, and all workers draw their connections from a
+ * single connection manager so connections to a host are reused across
+ * resources. Idle and expired connections are closed by a background
+ * evictor.
+ *
+ * <p>The pools are created when first used and are sized through the
+ * following system properties:<ul>
+ * <li>{@code coyote.web.threads} - the maximum number of requests executing
+ * at once (default 64)</li>
+ * <li>{@code coyote.web.virtualThreads} - true to execute each request on a
+ * virtual thread when the runtime supports them (default false)</li>
+ * <li>{@code coyote.web.maxConnections} - the maximum number of connections
+ * in the pool (default 200)</li>
+ * <li>{@code coyote.web.maxPerHost} - the maximum number of connections to
+ * any one host (default 20); see {@link #setMaxPerHost(String, int, String,
+ * int)} to set the limit of a particular host</li>
+ * <li>{@code coyote.web.idleTimeout} - the number of seconds a connection
+ * may remain idle in the pool (default 300)</li></ul>
+ */
+public final class WorkerPool {
+  public static final String THREADS = "coyote.web.threads";
+  public static final String VIRTUAL_THREADS = "coyote.web.virtualThreads";
+  public static final String MAX_CONNECTIONS = "coyote.web.maxConnections";
+  public static final String MAX_PER_HOST = "coyote.web.maxPerHost";
+  public static final String IDLE_TIMEOUT = "coyote.web.idleTimeout";
+
+  private static volatile ExecutorService executor = null;
+  private static volatile PoolingHttpClientConnectionManager connectionManager = null;
+  private static IdleConnectionEvictor evictor = null;
+
+
+
+
+  private WorkerPool() {}
+
+
+
+
+  /**
+   * @return the executor on which all worker requests run
+   */
+  public static ExecutorService getExecutor() {
+    if (executor == null) {
+      synchronized (WorkerPool.class) {
+        if (executor == null) {
+          executor = createExecutor();
+        }
+      }
+    }
+    return executor;
+  }
+
+
+
+
+  /**
+   * @return the connection manager shared by all workers
+   */
+  public static PoolingHttpClientConnectionManager getConnectionManager() {
+    if (connectionManager == null) {
+      synchronized (WorkerPool.class) {
+        if (connectionManager == null) {
+          final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+          manager.setMaxTotal(getSetting(MAX_CONNECTIONS, 200));
+          manager.setDefaultMaxPerRoute(getSetting(MAX_PER_HOST, 20));
+          // check connections which have been idle a while before reuse
+          manager.setValidateAfterInactivity(2000);
+          final long idle = getSetting(IDLE_TIMEOUT, 300);
+          evictor = new IdleConnectionEvictor(manager, idle, TimeUnit.SECONDS, idle, TimeUnit.SECONDS);
+          evictor.start();
+          connectionManager = manager;
+        }
+      }
+    }
+    return connectionManager;
+  }
+
+
+
+
+  /**
+   * Set the maximum number of connections to a particular host.
+   *
+   * @param host the name of the host
+   * @param port the port on the host
+   * @param scheme the scheme (http or https)
+   * @param max the maximum number of connections
+   */
+  public static void setMaxPerHost(final String host, final int port, final String scheme, final int max) {
+    getConnectionManager().setMaxPerRoute(new HttpRoute(new HttpHost(host, port, scheme)), max);
+  }
+
+
+
+
+  /**
+   * @return a summary of the use of the connection and thread pools
+   */
+  public static String getStatistics() {
+    final StringBuilder b = new StringBuilder("WorkerPool: ");
+    final PoolingHttpClientConnectionManager manager = connectionManager;
+    if (manager != null) {
+      final PoolStats totals = manager.getTotalStats();
+      b.append("connections leased=").append(totals.getLeased());
+      b.append(" available=").append(totals.getAvailable());
+      b.append(" pending=").append(totals.getPending());
+      b.append(" max=").append(totals.getMax());
+      for (final HttpRoute route : manager.getRoutes()) {
+        final PoolStats stats = manager.getStats(route);
+        b.append("; ").append(route.getTargetHost()).append(" leased=").append(stats.getLeased());
+        b.append(" available=").append(stats.getAvailable()).append(" pending=").append(stats.getPending());
+        b.append(" max=").append(stats.getMax());
+      }
+    } else {
+      b.append("no connections");
+    }
+    final ExecutorService exec = executor;
+    if (exec instanceof ThreadPoolExecutor) {
+      final ThreadPoolExecutor pool = (ThreadPoolExecutor)exec;
+      b.append("; threads active=").append(pool.getActiveCount());
+      b.append(" size=").append(pool.getPoolSize());
+      b.append(" largest=").append(pool.getLargestPoolSize());
+      b.append(" queued=").append(pool.getQueue().size());
+      b.append(" completed=").append(pool.getCompletedTaskCount());
+    } else if (exec != null) {
+      b.append("; virtual threads");
+    }
+    return b.toString();
+  }
+
+
+
+
+  /**
+   * Close all the pooled connections and stop the threads.
+   *
+   * <p>The pools will be re-created if they are used again.
+   */
+  public static synchronized void shutdown() {
+    if (evictor != null) {
+      evictor.shutdown();
+      evictor = null;
+    }
+    if (connectionManager != null) {
+      connectionManager.shutdown();
+      connectionManager = null;
+    }
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+
+
+
+  private static ExecutorService createExecutor() {
+    if (Boolean.parseBoolean(System.getProperty(VIRTUAL_THREADS))) {
+      try {
+        // only available on runtimes which support virtual threads
+        return (ExecutorService)java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (final Exception e) {
+        Log.warn("Virtual threads are not supported by this runtime, using platform threads");
+      }
+    }
+
+    final int threads = getSetting(THREADS, 64);
+    final ThreadPoolExecutor retval = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("WebWorker"));
+    retval.allowCoreThreadTimeOut(true);
+    return retval;
+  }
+
+
+
+
+  private static int getSetting(final String name, final int defaultValue) {
+    final String value = System.getProperty(name);
+    if (value != null) {
+      try {
+        final int retval = Integer.parseInt(value.trim());
+        if (retval > 0) {
+          return retval;
+        }
+      } catch (final NumberFormatException e) {
+        // fall through to the default
+      }
+      Log.warn("Invalid value for " + name + " of '" + value + "', using " + defaultValue);
+    }
+    return defaultValue;
+  }
+
+}
@@ -13,8 +13,10 @@ package coyote.dx.writer;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.List;
 
 import coyote.commons.DataFrameUtil;
@@ -54,22 +56,53 @@ import coyote.loader.log.LogMsg;
  * input for other jobs. Any transform writer can be specified as it will be 
  * called in the exact same manner as it would be within a transform as a top-
  * level writer.
+ * 
+ * <p>By default, each write waits for the response before returning. Setting 
+ * {@code Window} to a value greater than one allows that many requests to be 
+ * in progress at once, with writes only waiting when the window is full. 
+ * Responses are still processed, and written to the ResponseWriter, in the 
+ * order the requests were made. Setting {@code Batch} to a value greater 
+ * than one sends that many frames in each request as an array payload; the 
+ * path of the frame completing the batch is used for the request.
+ * 
+ * <p>Requests which could not be sent, which fail to connect or which 
+ * receive a 429 (Too Many Requests) or 5xx status are retried up to 
+ * {@code Retries} times (default 0), waiting {@code Backoff} milliseconds 
+ * (default 1000) before the first retry and doubling the wait for each retry
+ * after that.
+ * 
+ * <p>Each response is waited for up to {@code Timeout} milliseconds (default 
+ * 15 minutes, the socket time-out of the workers). A request which times out
+ * is retried like a failed connection. A request which still has no 
+ * response after its retries is recorded as failed with a status of 0 and 
+ * sets an error in the context.
  */
 public class WebServiceWriter extends AbstractConfigurableComponent implements FrameWriter, ConfigurableComponent {
   /** Constant to assist in determining the full class name of writers */
   private static final String WRITER_PKG = AbstractFrameWriter.class.getPackage().getName();
 
+  private static final long DEFAULT_TIMEOUT = 15 * 60 * 1000;
+
   private Evaluator evaluator = new Evaluator();
   private String expression = null;
   private String servicePath = null;
   private int rowCounter = 0;
   private DataFrame lastRequest = null;
   private Response lastResponse = null;
-  private Resource resource = null;
+  Resource resource = null;
   private Authenticator authenticator = new NullAuthenticator();
   private Proxy proxy = null;
   private Parameters parameters = null;
   protected List<FrameWriter> writers = new ArrayList<FrameWriter>();
+  private int window = 1;
+  private int batchSize = 1;
+  private int retries = 0;
+  private long backoff = 1000;
+  private long timeout = DEFAULT_TIMEOUT;
+  private final Deque<Request> inflight = new ArrayDeque<Request>();
+  private DataFrame batch = null;
+  private int batchCount = 0;
+  private String requestPath = null;
 
 
 
@@ -107,7 +140,17 @@ public class WebServiceWriter extends AbstractConfigurableComponent implements F
     setContext(context);
 
     evaluator.setContext(context);
-    
+
+    window = getCount(ConfigTag.WINDOW, 1);
+    batchSize = getCount(ConfigTag.BATCH, 1);
+    retries = Math.max(0, getInteger(CWS.RETRIES));
+    if (getConfiguration().containsIgnoreCase(CWS.BACKOFF)) {
+      backoff = Math.max(0, getLong(CWS.BACKOFF));
+    }
+    if (getLong(ConfigTag.TIMEOUT) > 0) {
+      timeout = getLong(ConfigTag.TIMEOUT);
+    }
+
     // Look for a conditional statement the writer may use to control if it is 
     // to write the record or not
     expression = getConfiguration().getString(ConfigTag.CONDITION);
@@ -197,6 +240,10 @@ public class WebServiceWriter extends AbstractConfigurableComponent implements F
             }
           }
         }
+        if (parameters == null) {
+          parameters = new Parameters();
+        }
+
         try {
           resource = new Resource(targetUrl, parameters, proxy);
 
@@ -337,12 +384,6 @@ public class WebServiceWriter extends AbstractConfigurableComponent implements F
     lastRequest = frame;
 
     Log.debug(frame.toString());
-    // Set up an object to hold our request parameters these will over-ride 
-    // the default protocol parameters
-    //Parameters params = new Parameters();
-
-    // Place the request payload in the request parameters
-    parameters.setPayload(frame);
 
     // Treat the resource URI as a template, substituting variables in the URI 
     // (e.g. ReST identifiers in the path) for data in the transaction context
@@ -350,41 +391,178 @@ public class WebServiceWriter extends AbstractConfigurableComponent implements F
     // the data was written to the correct ReSTful resource URI.
     // This sets the path portion of the resource using a template
     if (StringUtil.isNotBlank(servicePath)) {
-      try {
-        resource.setPath(Template.resolve(servicePath, getContext().getTransaction().getSymbols()));
-      } catch (URISyntaxException e) {
-        super.context.setError("The Writer could not generate URI path: " + e.getMessage());
-        super.context.setState("Resource Path Error");
-        return bytesWritten;
+      requestPath = Template.resolve(servicePath, getContext().getTransaction().getSymbols());
+    }
+
+    if (batchSize > 1) {
+      if (batch == null) {
+        batch = new DataFrame();
       }
+      batch.add(frame);
+      if (++batchCount >= batchSize) {
+        sendBatch();
+      }
+    } else {
+      submit(new Request(frame, 1, requestPath));
     }
+
+    return bytesWritten;
+  }
+
+
+
+
+  /**
+   * Send the frames accumulated in the current batch as a single request.
+   */
+  private void sendBatch() {
+    if (batch != null) {
+      submit(new Request(batch, batchCount, requestPath));
+      batch = null;
+      batchCount = 0;
+    }
+  }
+
+
+
+
+  /**
+   * Send the request and then wait for the oldest requests to complete until 
+   * there is room in the window for the next request.
+   * 
+   * @param request the request to send
+   */
+  private void submit(Request request) {
+    if (send(request)) {
+      inflight.add(request);
+    }
+    drain(window - 1);
+  }
+
+
+
+
+  /**
+   * Send (or resend) the request to the resource.
+   * 
+   * <p>A request which could not be sent counts as an attempt without a 
+   * response, so it is retried and audited like a failed connection.
+   * 
+   * @param request the request to send
+   * 
+   * @return true if the request was attempted, false if its URI could not be generated
+   */
+  private boolean send(Request request) {
+    // each request gets its own parameters as the payload is marshaled when 
+    // the request is executed, after this method returns
+    Parameters params = new Parameters(parameters);
+    params.setPayload(request.payload);
     try {
-      // invoke the operation and receive a future object representing our results
-      lastResponse = resource.request(parameters);
-
-      // wait for results (invocation may be asynchronous)
-      while (!lastResponse.isComplete()) {
-        if (lastResponse.isTimedOut()) {
-          // nothing happened
-          System.err.println("Operation timed-out");
-          rowCounter--; // FIXME: hack!
-          break;
-        } else if (lastResponse.isInError()) {
-          // we received one or more errors
-          System.err.println("Operation failed");
-          rowCounter--; // FIXME: hack!
-          break;
-        } else {
-          // wait for the results to arrive
-          Thread.sleep(100);
+      synchronized (resource) {
+        if (request.path != null) {
+          resource.setPath(request.path);
+        }
+        request.url = resource.getFullURI().toString();
+        request.attempts++;
+        request.failure = null;
+        request.response = resource.request(params);
+      }
+    } catch (URISyntaxException e) {
+      context.setError("The Writer could not generate URI path: " + e.getMessage());
+      context.setState("Resource Path Error");
+      return false;
+    } catch (InvocationException e) {
+      Log.error(LogMsg.createMsg(CWS.MSG, "Writer.request_exception", request.url, e.getClass().getSimpleName(), e.getMessage()));
+      request.failure = e.getMessage();
+      request.response = null;
+    }
+    return true;
+  }
+
+
+
+
+  /**
+   * Complete the requests in the order they were sent, waiting until no more 
+   * than the given number of requests remain in progress. Requests which 
+   * have already completed are also processed.
+   * 
+   * @param max the number of requests which may remain in progress
+   */
+  private void drain(int max) {
+    while (!inflight.isEmpty() && (inflight.size() > max || inflight.peek().isComplete())) {
+      Request request = inflight.peek();
+      Response response = request.response;
+      if (request.failure == null) {
+        long expiry = System.currentTimeMillis() + timeout;
+        while (!response.isComplete() && System.currentTimeMillis() < expiry) {
+          response.waitForComplete((int)Math.min(1000, Math.max(1, expiry - System.currentTimeMillis())));
+        }
+        if (!response.isComplete()) {
+          // the exchange may still complete on the worker thread, it is abandoned
+          Log.warn(LogMsg.createMsg(CWS.MSG, "Writer.request_timed_out", request.url, timeout));
+          request.failure = "Timed out";
+        }
+      }
+
+      int status = (request.failure != null) ? 0 : response.getHttpStatusCode();
+      if (isRetryable(status) && request.attempts <= retries) {
+        long delay = backoff << Math.min(request.attempts - 1, 16);
+        Log.warn(LogMsg.createMsg(CWS.MSG, "Writer.retrying_request", request.url, status, delay, request.attempts, retries));
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        if (!Thread.currentThread().isInterrupted() && send(request)) {
+          continue;
         }
       }
 
-      // TODO: What do we do with the response of other than a 200?
+      inflight.poll();
+      complete(request);
+    }
+  }
+
+
+
+
+  /**
+   * @param status the HTTP status of the response, 0 if no response was received
+   * 
+   * @return true if a request with this response status should be retried
+   */
+  private static boolean isRetryable(int status) {
+    return status == 0 || status == 429 || status >= 500;
+  }
+
+
+
 
+  /**
+   * Write the audit record for the completed request to the response writers.
+   * 
+   * @param request the completed request
+   */
+  private void complete(Request request) {
+    // a request which could not be sent has no response, so audit an empty one
+    lastResponse = (request.response != null) ? request.response : new Response();
+
+    int status = (request.failure != null) ? 0 : lastResponse.getHttpStatusCode();
+    if (request.failure != null) {
+      Log.error(LogMsg.createMsg(CWS.MSG, "Writer.request_abandoned", request.url, request.attempts));
+      context.setError("Request to " + request.url + " was abandoned after " + request.attempts + " attempts without a response: " + request.failure);
+    } else if (status < 200 || status >= 300) {
+      Log.warn(LogMsg.createMsg(CWS.MSG, "Writer.request_failed", request.url, status, lastResponse.getHttpStatusPhrase()));
+    }
+
+    // Write the response frame to all the configured sub-writers
+    if (writers.size() > 0) {
       DataFrame auditFrame = new DataFrame();
-      auditFrame.add("RequestUrl", resource.getFullURI().toString());
-      auditFrame.add("RequestBody", (frame!=null)? frame.toString():"");
+      auditFrame.add("RequestUrl", request.url);
+      auditFrame.add("RequestBody", (request.payload != null) ? request.payload.toString() : "");
+      auditFrame.add("RecordCount", request.count);
+      auditFrame.add("Attempts", request.attempts);
       auditFrame.add("Start", new Date(lastResponse.getOperationStart()));
       auditFrame.add("WriteTime", lastResponse.getOperationTime());
       auditFrame.add("WriteElapsed", lastResponse.getOperationElapsed());
@@ -394,40 +572,42 @@ public class WebServiceWriter extends AbstractConfigurableComponent implements F
       auditFrame.add("WebResponseElapsed", lastResponse.getRequestElapsed());
       auditFrame.add("ParsingTime", lastResponse.getParsingTime());
       auditFrame.add("ParsingElapsed", lastResponse.getParsingElapsed());
-      auditFrame.add( "ResponseCode", lastResponse.getHttpStatusCode());
-      auditFrame.add( "ResponsePhrase", lastResponse.getHttpStatusPhrase());
-      auditFrame.add("Result",  (lastResponse.getResult()!=null) ? lastResponse.getResult().toString() : "");
-
-      // Write the response frame to all the configured sub-writers
-      if (writers.size() > 0) {
-        for (FrameWriter writer : writers) {
-          try {
-            // Write the target (new) frame
-            writer.write(auditFrame);
-          } catch (Exception e) {
-            Log.error(LogMsg.createMsg(CDX.MSG, "Engine.write_error", e.getClass().getSimpleName(), e.getMessage(), ExceptionUtil.stackTrace(e)));
-            e.printStackTrace();
-          }
+      auditFrame.add("ResponseCode", status);
+      auditFrame.add("ResponsePhrase", (request.failure != null) ? request.failure : lastResponse.getHttpStatusPhrase());
+      auditFrame.add("Result", (lastResponse.getResult() != null) ? lastResponse.getResult().toString() : "");
+
+      for (FrameWriter writer : writers) {
+        try {
+          // Write the target (new) frame
+          writer.write(auditFrame);
+        } catch (Exception e) {
+          Log.error(LogMsg.createMsg(CDX.MSG, "Engine.write_error", e.getClass().getSimpleName(), e.getMessage(), ExceptionUtil.stackTrace(e)));
         }
       }
+    }
 
-      rowCounter++;
-    } catch (InvocationException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    } catch (InterruptedException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
-    } finally {
-      if (Log.isLogging(Log.DEBUG_EVENTS)) {
-        Log.debug("Performance Metric: Write " + lastResponse.getOperationTime());
-        Log.debug("Performance Metric: Transaction " + lastResponse.getTransactionTime());
-        Log.debug("Performance Metric: WebResponse " + lastResponse.getRequestTime());
-        Log.debug("Performance Metric: Parsing " + lastResponse.getParsingTime());
-      }
+    rowCounter += request.count;
+
+    if (Log.isLogging(Log.DEBUG_EVENTS)) {
+      Log.debug("Performance Metric: Write " + lastResponse.getOperationTime());
+      Log.debug("Performance Metric: Transaction " + lastResponse.getTransactionTime());
+      Log.debug("Performance Metric: WebResponse " + lastResponse.getRequestTime());
+      Log.debug("Performance Metric: Parsing " + lastResponse.getParsingTime());
     }
+  }
 
-    return bytesWritten;
+
+
+
+  private int getCount(String name, int defaultValue) {
+    if (getConfiguration().containsIgnoreCase(name)) {
+      int retval = getInteger(name);
+      if (retval > 0) {
+        return retval;
+      }
+      Log.warn("Invalid value for " + name + " of '" + getString(name) + "', using " + defaultValue);
+    }
+    return defaultValue;
   }
 
 
@@ -438,6 +618,12 @@ public class WebServiceWriter extends AbstractConfigurableComponent implements F
    */
   @Override
   public void close() throws IOException {
+    // send any partial batch and wait for all the requests to complete
+    if (resource != null) {
+      sendBatch();
+      drain(0);
+    }
+
     // close our stuff first
     Log.debug(LogMsg.createMsg(CWS.MSG, "Writer.records_processed", rowCounter, (context != null) ? context.getRow() : 0));
 
@@ -479,4 +665,41 @@ public class WebServiceWriter extends AbstractConfigurableComponent implements F
     return lastRequest;
   }
 
+
+
+
+  /**
+   * A request in progress and the data needed to retry and audit it.
+   */
+  private static class Request {
+    final DataFrame payload;
+    final int count;
+    final String path;
+    String url = null;
+    Response response = null;
+    int attempts = 0;
+
+    /** Why the last attempt got no response (it could not be sent or timed out), null if it did */
+    String failure = null;
+
+
+
+
+    Request(DataFrame payload, int count, String path) {
+      this.payload = payload;
+      this.count = count;
+      this.path = path;
+    }
+
+
+
+
+    /**
+     * @return true if the last attempt failed or its response is complete
+     */
+    boolean isComplete() {
+      return failure != null || response.isComplete();
+    }
+  }
+
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import coyote.commons.NetUtil;
+import coyote.commons.network.MimeType;
+import coyote.commons.network.http.HTTPD;
+import coyote.commons.network.http.HTTPSession;
+import coyote.commons.network.http.Response;
+import coyote.commons.network.http.Status;
+import coyote.commons.template.SymbolTable;
+import coyote.dataframe.DataFrame;
+import coyote.dx.Pagination;
+import coyote.dx.web.ExchangeType;
+import coyote.dx.web.Parameters;
+import coyote.dx.web.Resource;
+import coyote.dx.web.TestingServer;
+
+
+/**
+ * Offset and cursor pagination against a server holding 25 items.
+ */
+public class PageRetrieverTest {
+  private static final int ITEMS = 25;
+  private static final List<String> cursors = Collections.synchronizedList(new ArrayList<String>());
+  private static HTTPD server = null;
+  private static int port = 54340;
+
+
+
+
+  /**
+   * Serves pages of items by offset or by cursor, and a page which never
+   * arrives in time.
+   */
+  private static class PagingServer extends TestingServer {
+
+    PagingServer(final int port) {
+      super(port);
+    }
+
+
+
+
+    @Override
+    public Response serve(final HTTPSession session) {
+      final Map<String, String> parms = session.getParms();
+      int start;
+      int size = 10;
+      String next = null;
+      if (session.getUri().startsWith("/offset")) {
+        start = Integer.parseInt(parms.get("start"));
+        size = Integer.parseInt(parms.get("size"));
+      } else if (session.getUri().startsWith("/cursor")) {
+        final String cursor = parms.containsKey("cursor") ? parms.get("cursor") : "missing";
+        cursors.add(cursor);
+        start = cursor.isEmpty() ? 0 : Integer.parseInt(cursor.substring(1));
+        if (start + size < ITEMS) {
+          next = "c" + (start + size);
+        }
+      } else if (session.getUri().startsWith("/slow")) {
+        try {
+          Thread.sleep(2000);
+        } catch (final InterruptedException ignore) {}
+        start = 0;
+      } else {
+        return super.serve(session);
+      }
+
+      final StringBuilder b = new StringBuilder("{\"items\":[");
+      for (int x = start; x < Math.min(start + size, ITEMS); x++) {
+        if (x > start) {
+          b.append(',');
+        }
+        b.append("{\"id\":").append(x).append('}');
+      }
+      b.append(']');
+      if (next != null) {
+        b.append(",\"next\":\"").append(next).append('"');
+      }
+      b.append('}');
+      return Response.createFixedLengthResponse(Status.OK, MimeType.JSON.getType(), b.toString());
+    }
+  }
+
+
+
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    port = NetUtil.getNextAvailablePort(port);
+    server = new PagingServer(port);
+    server.start(HTTPD.SOCKET_READ_TIMEOUT, true);
+  }
+
+
+
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    server.stop();
+  }
+
+
+
+
+  private static Resource createResource(final String path) throws Exception {
+    return new Resource("http://localhost:" + port + path, new Parameters().setExchangeType(ExchangeType.JSON_HTTP));
+  }
+
+
+
+
+  private static List<Integer> retrieveAll(final PageRetriever retriever) {
+    final List<Integer> retval = new ArrayList<Integer>();
+    for (List<DataFrame> page = retriever.next(); page != null; page = retriever.next()) {
+      for (final DataFrame frame : page) {
+        retval.add(frame.getAsInt("id"));
+      }
+    }
+    return retval;
+  }
+
+
+
+
+  private static List<Integer> expected() {
+    final List<Integer> retval = new ArrayList<Integer>();
+    for (int x = 0; x < ITEMS; x++) {
+      retval.add(x);
+    }
+    return retval;
+  }
+
+
+
+
+  @Test
+  public void offset() throws Exception {
+    try (Resource resource = createResource("/offset")) {
+      final String template = "http://localhost:" + port + "/offset?start=[#$page.start#]&size=[#$page.size#]";
+      final PageRetriever retriever = new PageRetriever(resource, template, new SymbolTable(), new Pagination(10), "items.*", null, 3, 0);
+      assertEquals(expected(), retrieveAll(retriever));
+      assertNull(retriever.getError());
+    }
+  }
+
+
+
+
+  @Test
+  public void cursor() throws Exception {
+    cursors.clear();
+    try (Resource resource = createResource("/cursor")) {
+      final String template = "http://localhost:" + port + "/cursor?cursor=[#$page.cursor#]";
+      final PageRetriever retriever = new PageRetriever(resource, template, new SymbolTable(), new Pagination(10), "items.*", "next", 1, 0);
+      assertEquals(expected(), retrieveAll(retriever));
+      assertNull(retriever.getError());
+      // the first page is requested with an empty cursor
+      assertEquals(Arrays.asList("", "c10", "c20"), cursors);
+    }
+  }
+
+
+
+
+  @Test
+  public void timeout() throws Exception {
+    try (Resource resource = createResource("/slow")) {
+      final PageRetriever retriever = new PageRetriever(resource, "http://localhost:" + port + "/slow", new SymbolTable(), null, "items.*", null, 1, 200);
+      final long start = System.currentTimeMillis();
+      assertNull(retriever.next());
+      assertNotNull(retriever.getError());
+      assertTrue(System.currentTimeMillis() - start < 1500);
+    }
+  }
+
+}
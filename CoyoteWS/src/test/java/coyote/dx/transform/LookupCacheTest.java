@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.transform;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import coyote.dataframe.DataFrame;
+
+
+/**
+ *
+ */
+public class LookupCacheTest {
+
+  @Test
+  public void cachedResult() throws Exception {
+    LookupCache cache = new LookupCache(10, 0, 0);
+    AtomicInteger calls = new AtomicInteger();
+    DataFrame frame = new DataFrame();
+    assertSame(frame, cache.lookup("a", () -> {
+      calls.incrementAndGet();
+      return frame;
+    }));
+    assertSame(frame, cache.lookup("a", () -> {
+      calls.incrementAndGet();
+      return new DataFrame();
+    }));
+    assertEquals(1, calls.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+
+
+
+  @Test
+  public void leastRecentlyUsedEviction() throws Exception {
+    LookupCache cache = new LookupCache(2, 0, 0);
+    AtomicInteger calls = new AtomicInteger();
+    cache.lookup("a", () -> new DataFrame());
+    cache.lookup("b", () -> new DataFrame());
+    cache.lookup("a", () -> new DataFrame()); // a is now the most recent
+    cache.lookup("c", () -> new DataFrame()); // evicts b
+    assertEquals(2, cache.size());
+    cache.lookup("a", () -> {
+      calls.incrementAndGet();
+      return new DataFrame();
+    });
+    assertEquals(0, calls.get());
+    cache.lookup("b", () -> {
+      calls.incrementAndGet();
+      return new DataFrame();
+    });
+    assertEquals(1, calls.get());
+  }
+
+
+
+
+  @Test
+  public void expiry() throws Exception {
+    LookupCache cache = new LookupCache(10, 20, 0);
+    AtomicInteger calls = new AtomicInteger();
+    for (int x = 0; x < 2; x++) {
+      cache.lookup("a", () -> {
+        calls.incrementAndGet();
+        return new DataFrame();
+      });
+    }
+    assertEquals(1, calls.get());
+    Thread.sleep(50);
+    cache.lookup("a", () -> {
+      calls.incrementAndGet();
+      return new DataFrame();
+    });
+    assertEquals(2, calls.get());
+  }
+
+
+
+
+  @Test
+  public void negativeResults() throws Exception {
+    LookupCache cache = new LookupCache(10, 0, 60000);
+    AtomicInteger calls = new AtomicInteger();
+    for (int x = 0; x < 3; x++) {
+      assertNull(cache.lookup("missing", () -> {
+        calls.incrementAndGet();
+        return null;
+      }));
+    }
+    assertEquals(1, calls.get());
+
+    // without negative caching, every lookup goes to the loader
+    cache = new LookupCache(10, 0, 0);
+    for (int x = 0; x < 3; x++) {
+      cache.lookup("missing", () -> {
+        calls.incrementAndGet();
+        return null;
+      });
+    }
+    assertEquals(4, calls.get());
+  }
+
+
+
+
+  @Test
+  public void failuresNotCached() throws Exception {
+    LookupCache cache = new LookupCache(10, 0, 60000);
+    try {
+      cache.lookup("a", () -> {
+        throw new IOException("down");
+      });
+      fail("expected the loader exception");
+    } catch (IOException e) {
+      assertEquals("down", e.getMessage());
+    }
+    assertEquals(0, cache.size());
+  }
+
+
+
+
+  @Test
+  public void coalescing() throws Exception {
+    final LookupCache cache = new LookupCache(0, 0, 0);
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch release = new CountDownLatch(1);
+    final DataFrame frame = new DataFrame();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      @SuppressWarnings("unchecked")
+      Future<DataFrame>[] results = new Future[4];
+      for (int x = 0; x < results.length; x++) {
+        results[x] = pool.submit(() -> cache.lookup("a", () -> {
+          calls.incrementAndGet();
+          release.await();
+          return frame;
+        }));
+      }
+
+      // wait for the other lookups to join the one in progress
+      long limit = System.currentTimeMillis() + 5000;
+      while (cache.getCoalesced() < results.length - 1 && System.currentTimeMillis() < limit) {
+        Thread.sleep(10);
+      }
+      release.countDown();
+
+      for (Future<DataFrame> result : results) {
+        assertSame(frame, result.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, calls.get());
+      assertEquals(results.length - 1, cache.getCoalesced());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.web.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+
+/**
+ *
+ */
+public class AbstractWorkerTest {
+
+  private static HttpResponse response(String... links) {
+    HttpResponse retval = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+    for (String link : links) {
+      retval.addHeader("Link", link);
+    }
+    return retval;
+  }
+
+
+
+
+  @Test
+  public void nextLink() {
+    assertEquals("https://host/items?page=2&size=10", AbstractWorker.getNextLink(response("<https://host/items?page=2&size=10>; rel=\"next\", <https://host/items?page=9>; rel=\"last\"")));
+    assertEquals("https://host/c", AbstractWorker.getNextLink(response("<https://host/a,b>; rel=\"prev\"", "<https://host/c>; rel=\"next last\"")));
+    assertEquals("https://host/d", AbstractWorker.getNextLink(response("<https://host/d>; title=\"x\"; rel=next")));
+  }
+
+
+
+
+  @Test
+  public void noNextLink() {
+    assertNull(AbstractWorker.getNextLink(response()));
+    assertNull(AbstractWorker.getNextLink(response("<https://host/a>; rel=\"prev\"")));
+    assertNull(AbstractWorker.getNextLink(response("https://host/a; rel=\"next\"")));
+  }
+
+}
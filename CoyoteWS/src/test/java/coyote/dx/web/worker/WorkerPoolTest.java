@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.web.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.client.protocol.HttpClientContext;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import coyote.commons.NetUtil;
+import coyote.commons.network.http.HTTPD;
+import coyote.dx.web.Resource;
+import coyote.dx.web.Response;
+import coyote.dx.web.TestingServer;
+import coyote.dx.web.auth.BasicAuthentication;
+
+
+/**
+ * Requests through one resource share a cached worker while they run at the
+ * same time on the worker pool.
+ */
+public class WorkerPoolTest {
+
+  private static HTTPD server = null;
+  private static int port = 54330;
+
+
+
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    port = NetUtil.getNextAvailablePort(port);
+    server = new TestingServer(port);
+    server.start(HTTPD.SOCKET_READ_TIMEOUT, true);
+  }
+
+
+
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    server.stop();
+  }
+
+
+
+
+  @Test
+  public void concurrentRequests() throws Exception {
+    try (Resource resource = new Resource("http://localhost:" + port + "/data/test.html")) {
+      resource.setAuthenticator(new BasicAuthentication("user", "secret"));
+
+      List<Response> responses = new ArrayList<>();
+      for (int x = 0; x < 40; x++) {
+        responses.add(resource.request());
+      }
+
+      long expiry = System.currentTimeMillis() + 30000;
+      for (Response response : responses) {
+        while (!response.isComplete() && System.currentTimeMillis() < expiry) {
+          response.waitForComplete(100);
+        }
+        assertTrue("request did not complete", response.isComplete());
+        assertEquals(200, response.getHttpStatusCode());
+        assertTrue(response.getBody().contains("Testing Server"));
+      }
+    }
+  }
+
+
+
+
+  @Test
+  public void contextPerRequest() throws IOException {
+    try (Resource resource = new Resource("http://localhost:" + port + "/data/test.html")) {
+      resource.setAuthenticator(new BasicAuthentication("user", "secret"));
+      AbstractWorker worker = new HtmlWorker(resource);
+      try {
+        HttpClientContext first = worker.createContext();
+        HttpClientContext second = worker.createContext();
+        assertNotSame(first, second);
+        assertNotNull(first.getCredentialsProvider());
+        assertSame(first.getCredentialsProvider(), second.getCredentialsProvider());
+        assertSame(first.getAuthCache(), second.getAuthCache());
+      } finally {
+        worker.close();
+      }
+    }
+  }
+
+}
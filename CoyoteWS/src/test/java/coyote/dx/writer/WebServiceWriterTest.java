@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2019 Stephan D. Cote' - All rights reserved.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the MIT License which accompanies this distribution, and is
+ * available at http://creativecommons.org/licenses/MIT/
+ */
+package coyote.dx.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import coyote.commons.NetUtil;
+import coyote.commons.network.MimeType;
+import coyote.commons.network.http.HTTPD;
+import coyote.commons.network.http.HTTPSession;
+import coyote.commons.network.http.Method;
+import coyote.commons.network.http.Response;
+import coyote.commons.network.http.Status;
+import coyote.dataframe.DataFrame;
+import coyote.dx.CWS;
+import coyote.dx.ConfigTag;
+import coyote.dx.context.TransformContext;
+import coyote.dx.web.ExchangeType;
+import coyote.dx.web.InvocationException;
+import coyote.dx.web.Parameters;
+import coyote.dx.web.Resource;
+import coyote.dx.web.TestingServer;
+import coyote.loader.cfg.Config;
+
+
+/**
+ * The request window, retries, batches and time-outs of the web service
+ * writer.
+ */
+public class WebServiceWriterTest {
+  private static final AtomicInteger requests = new AtomicInteger();
+  private static final AtomicInteger failures = new AtomicInteger();
+  private static HTTPD server = null;
+  private static int port = 54350;
+
+
+
+
+  /**
+   * Answers slowly, fails a number of requests with a 503, or never answers
+   * in time, depending on the path.
+   */
+  private static class WriterServer extends TestingServer {
+
+    WriterServer(final int port) {
+      super(port);
+    }
+
+
+
+
+    @Override
+    public Response serve(final HTTPSession session) {
+      requests.incrementAndGet();
+      try {
+        session.parseBody();
+      } catch (final Exception ignore) {}
+      try {
+        if (session.getUri().startsWith("/slow")) {
+          Thread.sleep(200);
+        } else if (session.getUri().startsWith("/hang")) {
+          Thread.sleep(2000);
+        } else if (session.getUri().startsWith("/flaky") && failures.getAndDecrement() > 0) {
+          return Response.createFixedLengthResponse(Status.UNAVAILABLE, MimeType.JSON.getType(), "{}");
+        }
+      } catch (final InterruptedException ignore) {}
+      return Response.createFixedLengthResponse(Status.OK, MimeType.JSON.getType(), "{\"status\":\"ok\"}");
+    }
+  }
+
+
+
+
+  /**
+   * Collects the audit records of the completed requests.
+   */
+  private static class AuditWriter extends AbstractFrameWriter {
+    final List<DataFrame> frames = Collections.synchronizedList(new ArrayList<DataFrame>());
+
+
+
+
+    @Override
+    public void write(final DataFrame frame) {
+      frames.add(frame);
+    }
+  }
+
+
+
+
+  /**
+   * A resource which cannot send its first few requests.
+   */
+  private static class FailingResource extends Resource {
+    final AtomicInteger sendFailures;
+
+
+
+
+    FailingResource(final String path, final int sendFailures) throws Exception {
+      super("http://localhost:" + port + path, new Parameters().setMethod(Method.POST).setExchangeType(ExchangeType.JSON_REST));
+      this.sendFailures = new AtomicInteger(sendFailures);
+    }
+
+
+
+
+    @Override
+    public coyote.dx.web.Response request(final Parameters params) throws InvocationException {
+      if (sendFailures.getAndDecrement() > 0) {
+        throw new InvocationException("no route to host");
+      }
+      return super.request(params);
+    }
+  }
+
+
+
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    port = NetUtil.getNextAvailablePort(port);
+    server = new WriterServer(port);
+    server.start(HTTPD.SOCKET_READ_TIMEOUT, true);
+  }
+
+
+
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    server.stop();
+  }
+
+
+
+
+  private static WebServiceWriter createWriter(final String path, final DataFrame settings, final AuditWriter audit) throws Exception {
+    final DataFrame cfg = new DataFrame().set(ConfigTag.TARGET, "http://localhost:" + port + path);
+    cfg.set(CWS.PROTOCOL, new DataFrame().set(CWS.METHOD, "POST").set(CWS.EXCHANGE_TYPE, "JSON_REST"));
+    for (final String name : settings.getNames()) {
+      cfg.set(name, settings.get(name));
+    }
+    final WebServiceWriter retval = new WebServiceWriter();
+    retval.setConfiguration(new Config(cfg));
+    retval.writers.add(audit);
+    retval.open(new TransformContext());
+    return retval;
+  }
+
+
+
+
+  @Test
+  public void window() throws Exception {
+    final AuditWriter audit = new AuditWriter();
+    final WebServiceWriter writer = createWriter("/slow", new DataFrame().set(ConfigTag.WINDOW, 4), audit);
+    final long start = System.currentTimeMillis();
+    for (int x = 0; x < 8; x++) {
+      writer.write(new DataFrame().set("record", "rec-" + x));
+    }
+    writer.close();
+    final long elapsed = System.currentTimeMillis() - start;
+
+    // eight 200ms requests, four at a time
+    assertTrue("took " + elapsed + "ms", elapsed < 8 * 200);
+    assertEquals(8, audit.frames.size());
+    for (int x = 0; x < 8; x++) {
+      final DataFrame frame = audit.frames.get(x);
+      assertTrue("completed out of order", frame.getAsString("RequestBody").contains("rec-" + x));
+      assertEquals(200, frame.getAsInt("ResponseCode"));
+    }
+  }
+
+
+
+
+  @Test
+  public void retry() throws Exception {
+    failures.set(2);
+    final AuditWriter audit = new AuditWriter();
+    final WebServiceWriter writer = createWriter("/flaky", new DataFrame().set(CWS.RETRIES, 2).set(CWS.BACKOFF, 10), audit);
+    writer.write(new DataFrame().set("record", "rec-0"));
+    writer.close();
+
+    assertEquals(1, audit.frames.size());
+    assertEquals(3, audit.frames.get(0).getAsInt("Attempts"));
+    assertEquals(200, audit.frames.get(0).getAsInt("ResponseCode"));
+  }
+
+
+
+
+  @Test
+  public void retriesExhausted() throws Exception {
+    failures.set(5);
+    final AuditWriter audit = new AuditWriter();
+    final WebServiceWriter writer = createWriter("/flaky", new DataFrame().set(CWS.RETRIES, 1).set(CWS.BACKOFF, 10), audit);
+    writer.write(new DataFrame().set("record", "rec-0"));
+    writer.close();
+
+    assertEquals(1, audit.frames.size());
+    assertEquals(2, audit.frames.get(0).getAsInt("Attempts"));
+    assertEquals(503, audit.frames.get(0).getAsInt("ResponseCode"));
+  }
+
+
+
+
+  @Test
+  public void sendFailure() throws Exception {
+    final AuditWriter audit = new AuditWriter();
+    final TransformContext context = new TransformContext();
+    final WebServiceWriter writer = new WebServiceWriter();
+    writer.setConfiguration(new Config(new DataFrame().set(CWS.RETRIES, 2).set(CWS.BACKOFF, 10)));
+    writer.resource = new FailingResource("/ok", 2);
+    writer.writers.add(audit);
+    writer.open(context);
+    writer.write(new DataFrame().set("record", "rec-0"));
+    writer.close();
+
+    assertEquals(1, audit.frames.size());
+    assertEquals(3, audit.frames.get(0).getAsInt("Attempts"));
+    assertEquals(200, audit.frames.get(0).getAsInt("ResponseCode"));
+    assertFalse(context.isInError());
+  }
+
+
+
+
+  @Test
+  public void sendFailureExhausted() throws Exception {
+    final AuditWriter audit = new AuditWriter();
+    final TransformContext context = new TransformContext();
+    final WebServiceWriter writer = new WebServiceWriter();
+    writer.setConfiguration(new Config(new DataFrame().set(CWS.RETRIES, 1).set(CWS.BACKOFF, 10).set(ConfigTag.BATCH, 2)));
+    writer.resource = new FailingResource("/ok", 5);
+    writer.writers.add(audit);
+    writer.open(context);
+    writer.write(new DataFrame().set("record", "rec-0"));
+    writer.write(new DataFrame().set("record", "rec-1"));
+    writer.close();
+
+    // the batch is audited and reported instead of silently dropped
+    assertEquals(1, audit.frames.size());
+    assertEquals(2, audit.frames.get(0).getAsInt("Attempts"));
+    assertEquals(2, audit.frames.get(0).getAsInt("RecordCount"));
+    assertEquals(0, audit.frames.get(0).getAsInt("ResponseCode"));
+    assertEquals("no route to host", audit.frames.get(0).getAsString("ResponsePhrase"));
+    assertTrue(context.isInError());
+  }
+
+
+
+
+  @Test
+  public void batch() throws Exception {
+    final AuditWriter audit = new AuditWriter();
+    final int before = requests.get();
+    final WebServiceWriter writer = createWriter("/batch", new DataFrame().set(ConfigTag.BATCH, 5).set(ConfigTag.WINDOW, 2), audit);
+    for (int x = 0; x < 12; x++) {
+      writer.write(new DataFrame().set("record", "rec-" + x));
+    }
+    writer.close();
+
+    assertEquals(3, requests.get() - before);
+    assertEquals(3, audit.frames.size());
+    assertEquals(5, audit.frames.get(0).getAsInt("RecordCount"));
+    assertEquals(5, audit.frames.get(1).getAsInt("RecordCount"));
+    assertEquals(2, audit.frames.get(2).getAsInt("RecordCount"));
+    assertTrue(audit.frames.get(2).getAsString("RequestBody").contains("rec-11"));
+  }
+
+
+
+
+  @Test
+  public void timeout() throws Exception {
+    final AuditWriter audit = new AuditWriter();
+    final WebServiceWriter writer = createWriter("/hang", new DataFrame().set(ConfigTag.TIMEOUT, 200), audit);
+    final long start = System.currentTimeMillis();
+    writer.write(new DataFrame().set("record", "rec-0"));
+    writer.close();
+
+    assertTrue(System.currentTimeMillis() - start < 1500);
+    assertEquals(1, audit.frames.size());
+    assertEquals(0, audit.frames.get(0).getAsInt("ResponseCode"));
+    assertFalse(audit.frames.get(0).getAsString("ResponsePhrase").isEmpty());
+  }
+
+}